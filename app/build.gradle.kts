@@ -43,6 +43,7 @@ android {
     buildFeatures {
         compose = true
         mlModelBinding = true
+        buildConfig = true
     }
 
     // No comprimir archivos TFLite
@@ -72,6 +73,9 @@ dependencies {
     implementation("androidx.lifecycle:lifecycle-viewmodel-compose:2.7.0")
     implementation("androidx.lifecycle:lifecycle-runtime-compose:2.7.0")
 
+    // Núcleo de visión (geometría, NMS/WBF, decisiones) compartido con :benchmarks
+    implementation(project(":vision-core"))
+
     // TensorFlow Lite - Clasificación de residuos (YOLOv8)
     implementation("org.tensorflow:tensorflow-lite:2.14.0")
     implementation("org.tensorflow:tensorflow-lite-support:0.4.4")
@@ -0,0 +1,59 @@
+package com.biowaymexico.utils
+
+import android.graphics.Bitmap
+import android.graphics.Color
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import kotlinx.coroutines.runBlocking
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Benchmark instrumentado: TTA secuencial (una invocación por vista) contra TTA en batch
+ * (una invocación de N vistas) con el modelo real de assets.
+ *
+ * Ejecutar con: ./gradlew connectedDebugAndroidTest
+ * Los resultados se imprimen en logcat con el tag "BatchedTTABench".
+ */
+@RunWith(AndroidJUnit4::class)
+class BatchedTTABenchmark {
+
+    companion object {
+        private const val TAG = "BatchedTTABench"
+        private const val WARMUP = 5
+        private const val ITERATIONS = 30
+    }
+
+    private fun createFrame(): Bitmap {
+        val bitmap = Bitmap.createBitmap(1280, 720, Bitmap.Config.ARGB_8888)
+        bitmap.eraseColor(Color.rgb(90, 120, 150))
+        return bitmap
+    }
+
+    private fun measure(classifier: WasteClassifierYOLO, frame: Bitmap): Double = runBlocking {
+        repeat(WARMUP) { classifier.classifyImage(frame) }
+        val start = System.nanoTime()
+        repeat(ITERATIONS) { classifier.classifyImage(frame) }
+        (System.nanoTime() - start) / 1_000_000.0 / ITERATIONS
+    }
+
+    @Test
+    fun compareSequentialAndBatched() = runBlocking {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        val classifier = WasteClassifierYOLO(context)
+        classifier.initialize()
+        val frame = createFrame()
+
+        for (multiScale in listOf(false, true)) {
+            classifier.multiScaleMode = multiScale
+            for (batchSize in listOf(1, 3, 9)) {
+                classifier.ttaBatchSize = batchSize
+                val ms = measure(classifier, frame)
+                Log.i(TAG, "multiScale=$multiScale batch=$batchSize: %.2f ms/frame".format(ms))
+            }
+        }
+
+        classifier.close()
+    }
+}
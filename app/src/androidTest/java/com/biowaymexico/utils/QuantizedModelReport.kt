@@ -0,0 +1,130 @@
+package com.biowaymexico.utils
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.RectF
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import kotlinx.coroutines.runBlocking
+import org.junit.Assume.assumeTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Reporte comparativo float32 vs INT8 sobre un conjunto fijo de imágenes.
+ *
+ * Modelos (assets de la app): models/best.tflite y su exportación cuantizada
+ * models/best_int8.tflite (`yolo export format=tflite int8=True`).
+ * Imágenes (assets del APK de prueba): src/androidTest/assets/report_images/.
+ * Si falta alguno de los dos, el reporte se omite.
+ *
+ * Por cada modelo se reporta la latencia (media, p50, p90) y, tomando el modelo float
+ * como referencia, la coincidencia de clase de la mejor detección y su IoU.
+ *
+ * Ejecutar con: ./gradlew connectedDebugAndroidTest
+ * Los resultados se imprimen en logcat con el tag "QuantizedReport".
+ */
+@RunWith(AndroidJUnit4::class)
+class QuantizedModelReport {
+
+    companion object {
+        private const val TAG = "QuantizedReport"
+        private const val FLOAT_MODEL = "models/best.tflite"
+        private const val INT8_MODEL = "models/best_int8.tflite"
+        private const val IMAGES_DIR = "report_images"
+        private const val WARMUP = 3
+        private const val RUNS_PER_IMAGE = 5
+    }
+
+    private class ModelRun(
+        val latenciesMs: List<Double>,
+        val topDetections: List<WasteClassifierYOLO.Detection?>
+    )
+
+    private fun run(modelPath: String, images: List<Bitmap>): ModelRun = runBlocking {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        val classifier = WasteClassifierYOLO(context, modelPath, modelStore = null)
+        classifier.initialize()
+
+        repeat(WARMUP) { classifier.classifyImage(images.first()) }
+
+        val latencies = mutableListOf<Double>()
+        val tops = images.map { image ->
+            var top: WasteClassifierYOLO.Detection? = null
+            repeat(RUNS_PER_IMAGE) {
+                val start = System.nanoTime()
+                val result = classifier.classifyImage(image)
+                latencies += (System.nanoTime() - start) / 1_000_000.0
+                top = result.detections.maxByOrNull { it.confidence }
+            }
+            top
+        }
+
+        classifier.close()
+        ModelRun(latencies, tops)
+    }
+
+    private fun percentile(values: List<Double>, p: Double): Double {
+        val sorted = values.sorted()
+        return sorted[((sorted.size - 1) * p).toInt()]
+    }
+
+    private fun iou(a: RectF, b: RectF): Float {
+        val w = minOf(a.right, b.right) - maxOf(a.left, b.left)
+        val h = minOf(a.bottom, b.bottom) - maxOf(a.top, b.top)
+        if (w <= 0f || h <= 0f) return 0f
+        val intersection = w * h
+        return intersection / (a.width() * a.height() + b.width() * b.height() - intersection)
+    }
+
+    @Test
+    fun compareFloatAndInt8() {
+        val appAssets = InstrumentationRegistry.getInstrumentation().targetContext.assets
+        val testAssets = InstrumentationRegistry.getInstrumentation().context.assets
+
+        assumeTrue("Falta $INT8_MODEL", appAssets.list("models")?.contains(INT8_MODEL.substringAfter('/')) == true)
+        val imageNames = testAssets.list(IMAGES_DIR)?.sorted().orEmpty()
+        assumeTrue("Sin imágenes en $IMAGES_DIR", imageNames.isNotEmpty())
+
+        val images = imageNames.map { name ->
+            testAssets.open("$IMAGES_DIR/$name").use { BitmapFactory.decodeStream(it) }
+        }
+
+        val reference = run(FLOAT_MODEL, images)
+        val quantized = run(INT8_MODEL, images)
+
+        for ((name, result) in listOf("float32" to reference, "int8" to quantized)) {
+            Log.i(TAG, "%-8s media %.2f ms | p50 %.2f ms | p90 %.2f ms".format(
+                name,
+                result.latenciesMs.average(),
+                percentile(result.latenciesMs, 0.5),
+                percentile(result.latenciesMs, 0.9)
+            ))
+        }
+
+        var sameClass = 0
+        var bothDetected = 0
+        var iouSum = 0f
+        images.indices.forEach { i ->
+            val expected = reference.topDetections[i]
+            val actual = quantized.topDetections[i]
+            val match = expected != null && actual != null && expected.classId == actual.classId
+            if (expected != null && actual != null) {
+                bothDetected++
+                iouSum += iou(expected.boundingBox, actual.boundingBox)
+            }
+            if (match || (expected == null && actual == null)) sameClass++
+            Log.i(TAG, "${imageNames[i]}: float=${expected?.className}(%.2f) int8=${actual?.className}(%.2f)".format(
+                expected?.confidence ?: 0f,
+                actual?.confidence ?: 0f
+            ))
+        }
+
+        Log.i(TAG, "Coincidencia de clase: $sameClass/${images.size} | IoU medio: %.3f (%d pares)".format(
+            if (bothDetected > 0) iouSum / bothDetected else 0f,
+            bothDetected
+        ))
+        Log.i(TAG, "Speedup INT8: %.2fx".format(reference.latenciesMs.average() / quantized.latenciesMs.average()))
+    }
+}
@@ -0,0 +1,104 @@
+package com.biowaymexico.utils.vision
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.graphics.Color
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.tensorflow.lite.DataType
+import org.tensorflow.lite.support.common.ops.NormalizeOp
+import org.tensorflow.lite.support.image.ImageProcessor
+import org.tensorflow.lite.support.image.TensorImage
+import kotlin.math.abs
+
+/**
+ * Benchmark instrumentado: compara el preprocesamiento anterior de WasteClassifierYOLO
+ * (TensorImage + Canvas + createScaledBitmap + NormalizeOp) con [LetterboxInputEngine].
+ *
+ * Ejecutar con: ./gradlew connectedDebugAndroidTest
+ * Los resultados se imprimen en logcat con el tag "InputEngineBench".
+ */
+@RunWith(AndroidJUnit4::class)
+class LetterboxInputEngineBenchmark {
+
+    companion object {
+        private const val TAG = "InputEngineBench"
+        private const val INPUT_SIZE = 320
+        private const val WARMUP = 20
+        private const val ITERATIONS = 200
+    }
+
+    private fun createFrame(): Bitmap {
+        val bitmap = Bitmap.createBitmap(1280, 720, Bitmap.Config.ARGB_8888)
+        val pixels = IntArray(bitmap.width * bitmap.height) { i ->
+            val x = i % bitmap.width
+            val y = i / bitmap.width
+            Color.rgb(x % 256, y % 256, (x + y) % 256)
+        }
+        bitmap.setPixels(pixels, 0, bitmap.width, 0, 0, bitmap.width, bitmap.height)
+        return bitmap
+    }
+
+    /**
+     * Réplica de la ruta anterior de preprocesamiento (una asignación por llamada de cada objeto)
+     */
+    private fun legacyPreprocess(bitmap: Bitmap): TensorImage {
+        val scale = minOf(INPUT_SIZE.toFloat() / bitmap.width, INPUT_SIZE.toFloat() / bitmap.height)
+        val scaledWidth = (bitmap.width * scale).toInt()
+        val scaledHeight = (bitmap.height * scale).toInt()
+        val padX = (INPUT_SIZE - scaledWidth) / 2f
+        val padY = (INPUT_SIZE - scaledHeight) / 2f
+
+        var tensorImage = TensorImage(DataType.FLOAT32)
+        tensorImage.load(bitmap)
+
+        val paddedBitmap = Bitmap.createBitmap(INPUT_SIZE, INPUT_SIZE, Bitmap.Config.ARGB_8888)
+        val canvas = Canvas(paddedBitmap)
+        canvas.drawColor(Color.rgb(114, 114, 114))
+        val scaledBitmap = Bitmap.createScaledBitmap(bitmap, scaledWidth, scaledHeight, true)
+        canvas.drawBitmap(scaledBitmap, padX, padY, null)
+        tensorImage.load(paddedBitmap)
+
+        val imageProcessor = ImageProcessor.Builder()
+            .add(NormalizeOp(0f, 255f))
+            .build()
+        tensorImage = imageProcessor.process(tensorImage)
+        return tensorImage
+    }
+
+    @Test
+    fun compareLegacyAndEngine() {
+        val frame = createFrame()
+        val engine = LetterboxInputEngine(INPUT_SIZE)
+
+        repeat(WARMUP) {
+            legacyPreprocess(frame)
+            engine.process(frame)
+        }
+
+        var start = System.nanoTime()
+        repeat(ITERATIONS) { legacyPreprocess(frame) }
+        val legacyMs = (System.nanoTime() - start) / 1_000_000.0 / ITERATIONS
+
+        start = System.nanoTime()
+        repeat(ITERATIONS) { engine.process(frame) }
+        val engineMs = (System.nanoTime() - start) / 1_000_000.0 / ITERATIONS
+
+        Log.i(TAG, "Legacy: %.3f ms/frame | Engine: %.3f ms/frame | Speedup: %.2fx".format(
+            legacyMs, engineMs, legacyMs / engineMs
+        ))
+
+        // Ambas rutas producen tensores del mismo tamaño; la diferencia de interpolación se reporta
+        val legacy = legacyPreprocess(frame).buffer.asFloatBuffer()
+        val current = engine.process(frame).asFloatBuffer()
+        assertEquals(legacy.remaining(), current.remaining())
+        var maxDiff = 0f
+        for (i in 0 until legacy.remaining()) {
+            maxDiff = maxOf(maxDiff, abs(legacy.get(i) - current.get(i)))
+        }
+        Log.i(TAG, "Diferencia máxima por canal: %.4f".format(maxDiff))
+    }
+}
@@ -1,5 +1,6 @@
 package com.biowaymexico
 
+import android.content.ComponentCallbacks2
 import android.os.Bundle
 import androidx.activity.ComponentActivity
 import androidx.activity.compose.setContent
@@ -11,6 +12,8 @@ import androidx.compose.ui.Modifier
 import androidx.navigation.compose.rememberNavController
 import com.biowaymexico.ui.navigation.BioWayNavHost
 import com.biowaymexico.ui.theme.BioWayTheme
+import com.biowaymexico.utils.vision.AndroidVision
+import com.biowaymexico.utils.vision.ModelRegistry
 
 /**
  * MainActivity de BioWay
@@ -19,6 +22,8 @@ import com.biowaymexico.ui.theme.BioWayTheme
 class MainActivity : ComponentActivity() {
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
+        // Logs del núcleo de visión (:vision-core) a logcat
+        AndroidVision.install()
         enableEdgeToEdge()
         setContent {
             BioWayTheme {
@@ -32,4 +37,12 @@ class MainActivity : ComponentActivity() {
             }
         }
     }
+
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        // Con poca memoria, liberar los modelos calientes que ninguna pantalla usa
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            ModelRegistry.evictIdle()
+        }
+    }
 }
\ No newline at end of file
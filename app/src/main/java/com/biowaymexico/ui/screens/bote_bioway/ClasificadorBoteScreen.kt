@@ -1,8 +1,6 @@
 package com.biowaymexico.ui.screens.bote_bioway
 
 import android.Manifest
-import android.graphics.Bitmap
-import android.graphics.Matrix
 import android.graphics.RectF
 import android.util.Log
 import android.util.Size
@@ -41,19 +39,26 @@ import androidx.compose.ui.viewinterop.AndroidView
 import androidx.core.content.ContextCompat
 import com.biowaymexico.ui.theme.BioWayColors
 import com.biowaymexico.utils.WasteClassifierYOLO
+import com.biowaymexico.utils.vision.CameraFramePipeline
+import com.biowaymexico.utils.vision.CameraFramePixels
+import com.biowaymexico.utils.vision.NormalizedRect
+import com.biowaymexico.utils.vision.bote.DetectionPhase
+import com.biowaymexico.utils.vision.bote.ZoomConfirmationVoting
+import com.biowaymexico.utils.vision.toNormalizedRect
+import com.biowaymexico.utils.vision.toRectF
 import com.google.accompanist.permissions.ExperimentalPermissionsApi
 import com.google.accompanist.permissions.isGranted
 import com.google.accompanist.permissions.rememberPermissionState
-import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
 import kotlinx.coroutines.withContext
-import java.util.concurrent.Executors
 // NFC imports
 import android.app.Activity
 import android.nfc.NfcAdapter
 import android.nfc.Tag
 import android.nfc.tech.IsoDep
+import android.os.Build
 import android.os.Bundle
 import android.os.Vibrator
 import android.os.VibrationEffect
@@ -251,25 +256,14 @@ object BoteNfcReaderSingleton {
     fun getRegistrationCount() = registrationCount
 }
 
-// Constantes de tiempo
-private const val COOLDOWN_DURATION_MS = 3000L  // 3 segundos después de enviar a ESP32
-private const val INITIAL_DETECTION_MS = 2000L  // 2 segundos de detección inicial antes de zoom
-private const val ZOOM_CONFIRMATION_MS = 3000L  // 3 segundos de confirmación con zoom
+// Constantes de tiempo (las de la votación con zoom están en ZoomConfirmationVoting)
+private const val MODEL_UPDATE_CHECK_MS = 5 * 60_000L  // Buscar versiones nuevas del modelo cada 5 minutos
 
 // Constantes de zoom
 private const val MIN_BASE_ZOOM = 1.0f   // Sin zoom base
 private const val MAX_BASE_ZOOM = 4.0f   // Máximo zoom base 4x
 private const val DEFAULT_BASE_ZOOM = 1.0f
 
-// Estados del sistema de detección con zoom adaptativo
-enum class DetectionPhase {
-    SCANNING,           // Escaneando, buscando objetos (sin zoom)
-    LOCKING_ON,         // Objeto detectado, esperando 2s para hacer zoom
-    ZOOMED_CONFIRMING,  // Zoom aplicado, confirmando material por 3s
-    CONFIRMED,          // Material confirmado, enviando a ESP32
-    COOLDOWN            // Esperando antes de siguiente detección
-}
-
 // Estado de la pantalla principal
 enum class ScreenState {
     ZOOM_CONFIG,        // Configurando zoom base inicial
@@ -324,7 +318,7 @@ fun ClasificadorBoteScreen(
 
     // Región de zoom base (calculada a partir de baseZoomLevel)
     // Representa el área central de la imagen que se usa como "nueva área completa"
-    var baseZoomRegion by remember { mutableStateOf<RectF?>(null) }
+    var baseZoomRegion by remember { mutableStateOf<NormalizedRect?>(null) }
 
     // ═══════════════════════════════════════
     // ESTADOS DE DETECCIÓN
@@ -336,38 +330,28 @@ fun ClasificadorBoteScreen(
     // ═══════════════════════════════════════
     // SISTEMA DE ZOOM ADAPTATIVO
     // ═══════════════════════════════════════
+    // La máquina de estados (fases, votos, zoom adaptativo) vive en :vision-core; aquí se
+    // reflejan sus campos en estado de Compose para la UI después de cada update
+    val zoomVoting = remember { ZoomConfirmationVoting() }
     var detectionPhase by remember { mutableStateOf(DetectionPhase.SCANNING) }
     var phaseStartTime by remember { mutableStateOf(0L) }
 
     // Objeto detectado durante LOCKING_ON (para comparar consistencia)
     var lockedMaterial by remember { mutableStateOf<String?>(null) }
-    var lockedBoundingBox by remember { mutableStateOf<RectF?>(null) }
-    var lockedDetectionCount by remember { mutableStateOf(0) }
 
     // Zoom region adaptativo - coordenadas normalizadas (0-1) del área a recortar
     // IMPORTANTE: Este zoom se aplica SOBRE el baseZoomRegion
-    var adaptiveZoomRegion by remember { mutableStateOf<RectF?>(null) }
+    var adaptiveZoomRegion by remember { mutableStateOf<NormalizedRect?>(null) }
 
-    // Zoom region final combinado (base + adaptativo)
+    // Zoom region final combinado (base + adaptativo), como RectF para la cámara y el recorte
     val effectiveZoomRegion: RectF? = remember(baseZoomRegion, adaptiveZoomRegion) {
+        val base = baseZoomRegion
+        val adaptive = adaptiveZoomRegion
         when {
-            // Solo zoom base activo
-            baseZoomRegion != null && adaptiveZoomRegion == null -> baseZoomRegion
-            // Zoom base + adaptativo: combinar
-            baseZoomRegion != null && adaptiveZoomRegion != null -> {
-                // El adaptiveZoomRegion es relativo al baseZoomRegion
-                // Convertir a coordenadas absolutas
-                RectF(
-                    baseZoomRegion!!.left + adaptiveZoomRegion!!.left * baseZoomRegion!!.width(),
-                    baseZoomRegion!!.top + adaptiveZoomRegion!!.top * baseZoomRegion!!.height(),
-                    baseZoomRegion!!.left + adaptiveZoomRegion!!.right * baseZoomRegion!!.width(),
-                    baseZoomRegion!!.top + adaptiveZoomRegion!!.bottom * baseZoomRegion!!.height()
-                )
-            }
-            // Solo zoom adaptativo (sin base)
-            adaptiveZoomRegion != null -> adaptiveZoomRegion
-            // Sin zoom
-            else -> null
+            // Zoom base + adaptativo: el adaptativo es relativo al base
+            base != null && adaptive != null -> adaptive.within(base).toRectF()
+            // Solo zoom base o solo adaptativo
+            else -> (base ?: adaptive)?.toRectF()
         }
     }
 
@@ -382,17 +366,14 @@ fun ClasificadorBoteScreen(
     var cooldownStartTime by remember { mutableStateOf(0L) }
 
     // Función para calcular la región de zoom base desde el nivel de zoom
-    fun calculateBaseZoomRegion(zoomLevel: Float): RectF? {
+    fun calculateBaseZoomRegion(zoomLevel: Float): NormalizedRect? {
         if (zoomLevel <= 1.0f) return null // Sin zoom base
 
         // El zoom es centrado: si zoom = 2x, usamos el 50% central
         // zoom = 1x → 100% del frame (null)
         // zoom = 2x → 50% central
         // zoom = 4x → 25% central
-        val regionSize = 1.0f / zoomLevel
-        val offset = (1.0f - regionSize) / 2.0f
-
-        return RectF(offset, offset, offset + regionSize, offset + regionSize)
+        return NormalizedRect.centered(1.0f / zoomLevel)
     }
 
     // ═══════════════════════════════════════
@@ -403,7 +384,6 @@ fun ClasificadorBoteScreen(
     // ═══════════════════════════════════════
     // CAMERAX
     // ═══════════════════════════════════════
-    val cameraExecutor = remember { Executors.newSingleThreadExecutor() }
     var cameraProvider: ProcessCameraProvider? by remember { mutableStateOf(null) }
 
     // ═══════════════════════════════════════
@@ -591,6 +571,19 @@ fun ClasificadorBoteScreen(
             // Activar modo multi-escala por defecto para mejor detección a distancia
             classifier.multiScaleMode = true
             classifier.confidenceThreshold = WasteClassifierYOLO.CONFIDENCE_THRESHOLD_DISTANT
+            // Cascada: rotaciones y escalas extra solo en frames ambiguos
+            classifier.cascadeMode = true
+            // Fusión NMS (por defecto): con WBF la confianza de un objeto que solo ve la
+            // pasada vertical baja de los umbrales de bloqueo/voto; falta validarlo con
+            // sesiones grabadas antes de activarlo aquí
+            // Objetos lejanos con mosaicos a resolución nativa en lugar de ampliar el centro
+            classifier.tiledMode = true
+            // Grabación de tensores para replay (solo debug, con el marcador .record); la cierra close()
+            classifier.recorder = classifier.openRecorder(
+                context.getExternalFilesDir("recordings"),
+                "clasificador",
+                "${Build.MANUFACTURER} ${Build.MODEL}"
+            )?.also { Log.d("ClasificadorBote", "🎞️ Grabando tensores en ${it.file}") }
             isClassifierReady = true
             Log.d("ClasificadorBote", "✅ Clasificador YOLOv8 inicializado (modo larga distancia activo)")
         } catch (e: Exception) {
@@ -599,6 +592,22 @@ fun ClasificadorBoteScreen(
         }
     }
 
+    // Versiones nuevas del modelo instaladas en el almacenamiento de la app: se cargan en
+    // segundo plano y se activan entre frames sin detener el análisis
+    LaunchedEffect(isClassifierReady) {
+        if (!isClassifierReady) return@LaunchedEffect
+        while (true) {
+            try {
+                if (classifier.checkForModelUpdate()) {
+                    Log.d("ClasificadorBote", "🔄 Modelo v${classifier.modelVersion} activo (a prueba)")
+                }
+            } catch (e: Exception) {
+                Log.e("ClasificadorBote", "❌ Error buscando actualización del modelo", e)
+            }
+            kotlinx.coroutines.delay(MODEL_UPDATE_CHECK_MS)
+        }
+    }
+
     // Conectar a ESP32
     LaunchedEffect(Unit) {
         estadoConexion = "Buscando ESP32_Detector..."
@@ -621,7 +630,6 @@ fun ClasificadorBoteScreen(
     DisposableEffect(Unit) {
         onDispose {
             classifier.close()
-            cameraExecutor.shutdown()
             cameraProvider?.unbindAll()
             bluetoothManager.desconectar()
             // Limpiar listener de sesión
@@ -658,33 +666,29 @@ fun ClasificadorBoteScreen(
     // LÓGICA DE ZOOM ADAPTATIVO Y DETECCIÓN
     // ═══════════════════════════════════════
 
+    // Refleja el estado de la máquina de votación en el estado de Compose
+    fun syncDetectionState() {
+        detectionPhase = zoomVoting.phase
+        phaseStartTime = zoomVoting.phaseStartTime
+        lockedMaterial = zoomVoting.lockedMaterial
+        adaptiveZoomRegion = zoomVoting.zoomRegion
+        zoomConfirmationVotes = zoomVoting.votes
+        confirmedMaterial = zoomVoting.confirmedMaterial
+        confirmedConfidence = zoomVoting.confirmedConfidence
+        cooldownStartTime = zoomVoting.cooldownStartTime
+    }
+
     // Función para resetear el sistema de detección
     fun resetDetectionSystem() {
-        detectionPhase = DetectionPhase.SCANNING
-        phaseStartTime = 0L
-        lockedMaterial = null
-        lockedBoundingBox = null
-        lockedDetectionCount = 0
-        adaptiveZoomRegion = null  // Solo resetear zoom adaptativo, NO el base
-        zoomConfirmationVotes = emptyMap()
-        confirmedMaterial = null
-        confirmedConfidence = 0f
+        zoomVoting.reset()  // Solo resetea el zoom adaptativo, NO el base
+        syncDetectionState()
         Log.d("ClasificadorBote", "🔄 Sistema de detección reseteado → SCANNING (zoom base: ${baseZoomLevel}x)")
     }
 
-    // Función para calcular la región de zoom con padding
-    fun calculateZoomRegion(boundingBox: RectF, padding: Float = 0.15f): RectF {
-        val width = boundingBox.width()
-        val height = boundingBox.height()
-        val paddingX = width * padding
-        val paddingY = height * padding
-
-        return RectF(
-            (boundingBox.left - paddingX).coerceIn(0f, 1f),
-            (boundingBox.top - paddingY).coerceIn(0f, 1f),
-            (boundingBox.right + paddingX).coerceIn(0f, 1f),
-            (boundingBox.bottom + paddingY).coerceIn(0f, 1f)
-        )
+    // Iniciar cooldown después del depósito (o directamente sin ESP32)
+    fun startCooldown() {
+        zoomVoting.startCooldown(System.currentTimeMillis())
+        syncDetectionState()
     }
 
     // Máquina de estados para el sistema de detección con zoom
@@ -692,212 +696,90 @@ fun ClasificadorBoteScreen(
         if (enviandoAESP32) return@LaunchedEffect
 
         val topDetection = currentDetections.maxByOrNull { it.confidence }
-        val currentTime = System.currentTimeMillis()
-
-        when (detectionPhase) {
-            DetectionPhase.SCANNING -> {
-                // Buscando objetos en el frame completo
-                if (topDetection != null && topDetection.confidence > 0.4f) {
-                    // Objeto detectado, iniciar fase de bloqueo
-                    detectionPhase = DetectionPhase.LOCKING_ON
-                    phaseStartTime = currentTime
-                    lockedMaterial = topDetection.className.lowercase()
-                    lockedBoundingBox = topDetection.boundingBox
-                    lockedDetectionCount = 1
-
-                    Log.d("ClasificadorBote", "═══════════════════════════════════════")
-                    Log.d("ClasificadorBote", "🎯 OBJETO DETECTADO: ${topDetection.className}")
-                    Log.d("ClasificadorBote", "   Confianza: ${(topDetection.confidence * 100).toInt()}%")
-                    Log.d("ClasificadorBote", "   BBox: ${topDetection.boundingBox}")
-                    Log.d("ClasificadorBote", "   → Iniciando LOCKING_ON (2s)")
-                    Log.d("ClasificadorBote", "═══════════════════════════════════════")
-                }
-            }
+        val candidate = topDetection?.let {
+            ZoomConfirmationVoting.Candidate(it.className, it.confidence, it.boundingBox.toNormalizedRect())
+        }
+        val transition = zoomVoting.update(candidate, System.currentTimeMillis())
+        syncDetectionState()
 
-            DetectionPhase.LOCKING_ON -> {
-                // Esperando 2 segundos con detección consistente antes de zoom
-                val elapsed = currentTime - phaseStartTime
-
-                if (topDetection != null && topDetection.confidence > 0.4f) {
-                    val detectedMaterial = topDetection.className.lowercase()
-
-                    // Verificar si es el mismo material (o similar)
-                    if (detectedMaterial == lockedMaterial) {
-                        lockedDetectionCount++
-                        // Actualizar bounding box con promedio móvil para estabilidad
-                        lockedBoundingBox?.let { current ->
-                            val alpha = 0.3f // Factor de suavizado
-                            lockedBoundingBox = RectF(
-                                current.left + alpha * (topDetection.boundingBox.left - current.left),
-                                current.top + alpha * (topDetection.boundingBox.top - current.top),
-                                current.right + alpha * (topDetection.boundingBox.right - current.right),
-                                current.bottom + alpha * (topDetection.boundingBox.bottom - current.bottom)
-                            )
-                        }
+        when (transition) {
+            ZoomConfirmationVoting.Transition.ZOOMED -> {
+                Log.d("ClasificadorBote", "   Zoom base: ${baseZoomLevel}x")
 
-                        // ¿Pasaron 2 segundos?
-                        if (elapsed >= INITIAL_DETECTION_MS) {
-                            // Calcular región de zoom ADAPTATIVO y activar
-                            lockedBoundingBox?.let { bbox ->
-                                adaptiveZoomRegion = calculateZoomRegion(bbox, padding = 0.2f)
-                                detectionPhase = DetectionPhase.ZOOMED_CONFIRMING
-                                phaseStartTime = currentTime
-                                zoomConfirmationVotes = mapOf(lockedMaterial!! to 1)
-
-                                Log.d("ClasificadorBote", "═══════════════════════════════════════")
-                                Log.d("ClasificadorBote", "🔍 ZOOM ADAPTATIVO ACTIVADO")
-                                Log.d("ClasificadorBote", "   Material: $lockedMaterial")
-                                Log.d("ClasificadorBote", "   Detecciones consistentes: $lockedDetectionCount")
-                                Log.d("ClasificadorBote", "   Zoom base: ${baseZoomLevel}x")
-                                Log.d("ClasificadorBote", "   Zoom adaptativo: $adaptiveZoomRegion")
-                                Log.d("ClasificadorBote", "   Zoom efectivo: $effectiveZoomRegion")
-                                Log.d("ClasificadorBote", "   → Iniciando ZOOMED_CONFIRMING (3s)")
-                                Log.d("ClasificadorBote", "═══════════════════════════════════════")
-
-                                // Vibrar para indicar zoom activado
-                                val vibrator = context.getSystemService(Context.VIBRATOR_SERVICE) as? Vibrator
-                                vibrator?.vibrate(VibrationEffect.createOneShot(50, VibrationEffect.DEFAULT_AMPLITUDE))
-                            }
-                        }
-                    } else {
-                        // Material diferente detectado, reiniciar con nuevo material
-                        Log.d("ClasificadorBote", "⚠️ Material cambió: $lockedMaterial → $detectedMaterial")
-                        lockedMaterial = detectedMaterial
-                        lockedBoundingBox = topDetection.boundingBox
-                        lockedDetectionCount = 1
-                        phaseStartTime = currentTime
-                    }
-                } else {
-                    // Objeto perdido durante bloqueo
-                    if (elapsed > 500) { // 500ms de gracia
-                        Log.d("ClasificadorBote", "⚠️ Objeto perdido durante LOCKING_ON → SCANNING")
-                        resetDetectionSystem()
-                    }
-                }
+                // Vibrar para indicar zoom activado
+                val vibrator = context.getSystemService(Context.VIBRATOR_SERVICE) as? Vibrator
+                vibrator?.vibrate(VibrationEffect.createOneShot(50, VibrationEffect.DEFAULT_AMPLITUDE))
             }
 
-            DetectionPhase.ZOOMED_CONFIRMING -> {
-                // Confirmando material con zoom durante 3 segundos
-                val elapsed = currentTime - phaseStartTime
+            ZoomConfirmationVoting.Transition.CONFIRMED -> {
+                val material = zoomVoting.confirmedMaterial ?: return@LaunchedEffect
 
-                if (topDetection != null && topDetection.confidence > 0.5f) {
-                    val detectedMaterial = topDetection.className.lowercase()
+                // Vibrar confirmación
+                val vibrator = context.getSystemService(Context.VIBRATOR_SERVICE) as? Vibrator
+                vibrator?.vibrate(VibrationEffect.createOneShot(200, VibrationEffect.DEFAULT_AMPLITUDE))
 
-                    // Agregar voto
-                    val newVotes = zoomConfirmationVotes.toMutableMap()
-                    newVotes[detectedMaterial] = (newVotes[detectedMaterial] ?: 0) + 1
-                    zoomConfirmationVotes = newVotes
+                // Enviar a ESP32 - ejecutar secuencia de depósito
+                if (bluetoothConectado) {
+                    enviandoAESP32 = true
 
-                    // ¿Pasaron 3 segundos?
-                    if (elapsed >= ZOOM_CONFIRMATION_MS) {
-                        // Verificar si el material dominante coincide con el bloqueado
-                        val winner = zoomConfirmationVotes.maxByOrNull { it.value }
-                        val totalVotes = zoomConfirmationVotes.values.sum()
-                        val winnerPercentage = if (totalVotes > 0) (winner?.value ?: 0) * 100 / totalVotes else 0
+                    scope.launch(Dispatchers.IO) {
+                        Log.d("ClasificadorBote", "📤 Ejecutando depósito para: $material")
+                        val sendResult = bluetoothManager.enviarMaterial(material)
 
-                        Log.d("ClasificadorBote", "📊 Resultados de confirmación:")
-                        zoomConfirmationVotes.forEach { (mat, votes) ->
-                            Log.d("ClasificadorBote", "   $mat: $votes votos")
-                        }
-
-                        if (winner != null && winner.key == lockedMaterial && winnerPercentage >= 60) {
-                            // ¡Material confirmado!
-                            confirmedMaterial = winner.key
-                            confirmedConfidence = topDetection.confidence
-                            detectionPhase = DetectionPhase.CONFIRMED
+                        withContext(Dispatchers.Main) {
+                            enviandoAESP32 = false
 
-                            Log.d("ClasificadorBote", "═══════════════════════════════════════")
-                            Log.d("ClasificadorBote", "✅ MATERIAL CONFIRMADO CON ZOOM: ${winner.key}")
-                            Log.d("ClasificadorBote", "   Votos: ${winner.value}/$totalVotes ($winnerPercentage%)")
-                            Log.d("ClasificadorBote", "   Confianza final: ${(confirmedConfidence * 100).toInt()}%")
-                            Log.d("ClasificadorBote", "═══════════════════════════════════════")
+                            if (sendResult.isSuccess) {
+                                Log.d("ClasificadorBote", "✅ Depósito completado correctamente")
 
-                            // Vibrar confirmación
-                            val vibrator = context.getSystemService(Context.VIBRATOR_SERVICE) as? Vibrator
-                            vibrator?.vibrate(VibrationEffect.createOneShot(200, VibrationEffect.DEFAULT_AMPLITUDE))
-
-                            // Enviar a ESP32 - ejecutar secuencia de depósito
-                            if (bluetoothConectado) {
-                                enviandoAESP32 = true
-
-                                scope.launch(Dispatchers.IO) {
-                                    Log.d("ClasificadorBote", "📤 Ejecutando depósito para: ${winner.key}")
-                                    val sendResult = bluetoothManager.enviarMaterial(winner.key)
-
-                                    withContext(Dispatchers.Main) {
-                                        enviandoAESP32 = false
-
-                                        if (sendResult.isSuccess) {
-                                            Log.d("ClasificadorBote", "✅ Depósito completado correctamente")
-
-                                            // Otorgar puntos al brindador (solo si hay sesión activa)
-                                            if (sesionActiva != null && brindadorId != null) {
-                                                scope.launch(Dispatchers.IO) {
-                                                    val puntosResult = boteSesionRepository.agregarMaterialASesion(
-                                                        brindadorId = brindadorId!!,
-                                                        tipoMaterial = winner.key,
-                                                        confianza = confirmedConfidence
-                                                    )
-                                                    withContext(Dispatchers.Main) {
-                                                        puntosResult.fold(
-                                                            onSuccess = { otorgamiento ->
-                                                                // Actualizar tiempo de última actividad
-                                                                tiempoUltimaActividad = System.currentTimeMillis()
-                                                                // Los contadores se actualizan vía el listener de Firestore
-                                                                Log.d("ClasificadorBote", "🎁 Material agregado a sesión: +${otorgamiento.puntosOtorgados} puntos")
-                                                            },
-                                                            onFailure = { error ->
-                                                                Log.e("ClasificadorBote", "❌ Error agregando material: ${error.message}")
-                                                            }
-                                                        )
-                                                    }
+                                // Otorgar puntos al brindador (solo si hay sesión activa)
+                                if (sesionActiva != null && brindadorId != null) {
+                                    scope.launch(Dispatchers.IO) {
+                                        val puntosResult = boteSesionRepository.agregarMaterialASesion(
+                                            brindadorId = brindadorId!!,
+                                            tipoMaterial = material,
+                                            confianza = confirmedConfidence
+                                        )
+                                        withContext(Dispatchers.Main) {
+                                            puntosResult.fold(
+                                                onSuccess = { otorgamiento ->
+                                                    // Actualizar tiempo de última actividad
+                                                    tiempoUltimaActividad = System.currentTimeMillis()
+                                                    // Los contadores se actualizan vía el listener de Firestore
+                                                    Log.d("ClasificadorBote", "🎁 Material agregado a sesión: +${otorgamiento.puntosOtorgados} puntos")
+                                                },
+                                                onFailure = { error ->
+                                                    Log.e("ClasificadorBote", "❌ Error agregando material: ${error.message}")
                                                 }
-                                            } else {
-                                                Log.w("ClasificadorBote", "⚠️ No hay sesión activa, material no registrado")
-                                            }
-
-                                            // Iniciar cooldown
-                                            detectionPhase = DetectionPhase.COOLDOWN
-                                            cooldownStartTime = System.currentTimeMillis()
-                                        } else {
-                                            Log.e("ClasificadorBote", "❌ Error en depósito ESP32, reseteando")
-                                            resetDetectionSystem()
+                                            )
                                         }
                                     }
+                                } else {
+                                    Log.w("ClasificadorBote", "⚠️ No hay sesión activa, material no registrado")
                                 }
+
+                                // Iniciar cooldown
+                                startCooldown()
                             } else {
-                                // Sin ESP32, solo cooldown
-                                detectionPhase = DetectionPhase.COOLDOWN
-                                cooldownStartTime = System.currentTimeMillis()
+                                Log.e("ClasificadorBote", "❌ Error en depósito ESP32, reseteando")
+                                resetDetectionSystem()
                             }
-                        } else {
-                            // Material no confirmado consistentemente, reiniciar
-                            Log.d("ClasificadorBote", "⚠️ Material no confirmado (${winnerPercentage}% < 60%), reseteando")
-                            resetDetectionSystem()
                         }
                     }
                 } else {
-                    // Objeto perdido durante confirmación con zoom
-                    if (elapsed > 1000) { // 1 segundo de gracia
-                        Log.d("ClasificadorBote", "⚠️ Objeto perdido durante ZOOMED_CONFIRMING → SCANNING")
-                        resetDetectionSystem()
-                    }
+                    // Sin ESP32, solo cooldown
+                    startCooldown()
                 }
             }
 
-            DetectionPhase.CONFIRMED -> {
-                // Esperando que se envíe a ESP32
-                // La transición a COOLDOWN se hace en el callback de ESP32
+            // La máquina ya volvió a SCANNING
+            ZoomConfirmationVoting.Transition.REJECTED,
+            ZoomConfirmationVoting.Transition.LOST,
+            ZoomConfirmationVoting.Transition.COOLDOWN_FINISHED -> {
+                Log.d("ClasificadorBote", "🔄 Sistema de detección reseteado → SCANNING (zoom base: ${baseZoomLevel}x)")
             }
 
-            DetectionPhase.COOLDOWN -> {
-                // Esperando antes de siguiente detección
-                val elapsed = currentTime - cooldownStartTime
-                if (elapsed >= COOLDOWN_DURATION_MS) {
-                    Log.d("ClasificadorBote", "✅ Cooldown terminado → SCANNING")
-                    resetDetectionSystem()
-                }
-            }
+            else -> Unit
         }
     }
 
@@ -1068,6 +950,7 @@ fun ClasificadorBoteScreen(
                                      !enviandoAESP32 && isClassifierReady,
                         zoomRegion = effectiveZoomRegion,  // Usa zoom combinado
                         cropRotation = cropRotation,
+                        detectionTier = detectionTierFor(detectionPhase),
                         onDetections = { detections ->
                             currentDetections = detections
                         }
@@ -1121,18 +1004,18 @@ fun ClasificadorBoteScreen(
                                     Text("🔍 Escaneando", color = Color(0xFF4CAF50), fontSize = 13.sp, fontWeight = FontWeight.Bold)
                                 }
                                 DetectionPhase.LOCKING_ON -> {
-                                    val remaining = ((INITIAL_DETECTION_MS - (System.currentTimeMillis() - phaseStartTime)) / 1000f).coerceAtLeast(0f)
+                                    val remaining = ((ZoomConfirmationVoting.INITIAL_DETECTION_MS - (System.currentTimeMillis() - phaseStartTime)) / 1000f).coerceAtLeast(0f)
                                     Text("🎯 Bloqueando ${String.format("%.1f", remaining)}s", color = Color(0xFF2196F3), fontSize = 13.sp, fontWeight = FontWeight.Bold)
                                 }
                                 DetectionPhase.ZOOMED_CONFIRMING -> {
-                                    val remaining = ((ZOOM_CONFIRMATION_MS - (System.currentTimeMillis() - phaseStartTime)) / 1000f).coerceAtLeast(0f)
+                                    val remaining = ((ZoomConfirmationVoting.ZOOM_CONFIRMATION_MS - (System.currentTimeMillis() - phaseStartTime)) / 1000f).coerceAtLeast(0f)
                                     Text("🔬 ZOOM ${String.format("%.1f", remaining)}s", color = Color(0xFFE040FB), fontSize = 13.sp, fontWeight = FontWeight.Bold)
                                 }
                                 DetectionPhase.CONFIRMED -> {
                                     Text("✅ Confirmado", color = Color(0xFF4CAF50), fontSize = 13.sp, fontWeight = FontWeight.Bold)
                                 }
                                 DetectionPhase.COOLDOWN -> {
-                                    val remaining = ((COOLDOWN_DURATION_MS - (System.currentTimeMillis() - cooldownStartTime)) / 1000).coerceAtLeast(0)
+                                    val remaining = ((ZoomConfirmationVoting.COOLDOWN_DURATION_MS - (System.currentTimeMillis() - cooldownStartTime)) / 1000).coerceAtLeast(0)
                                     Text("⏳ Espera ${remaining}s", color = Color(0xFFFFA726), fontSize = 13.sp, fontWeight = FontWeight.Bold)
                                 }
                             }
@@ -1256,15 +1139,53 @@ private fun CameraPreviewWithZoom(
     isAnalyzing: Boolean,
     zoomRegion: RectF?,
     cropRotation: Int = 0,
+    detectionTier: WasteClassifierYOLO.DetectionTier = WasteClassifierYOLO.DetectionTier.STANDARD,
     onDetections: (List<WasteClassifierYOLO.Detection>) -> Unit
 ) {
     val context = LocalContext.current
     val lifecycleOwner = LocalLifecycleOwner.current
-    val scope = rememberCoroutineScope()
 
     // Guardar referencia al zoomRegion y rotación actual para usar en el analyzer
+    val currentIsAnalyzing = rememberUpdatedState(isAnalyzing)
     val currentZoomRegion = rememberUpdatedState(zoomRegion)
     val currentCropRotation = rememberUpdatedState(cropRotation)
+    val currentDetectionTier = rememberUpdatedState(detectionTier)
+    val currentOnDetections = rememberUpdatedState(onDetections)
+
+    // Píxeles de frame reutilizados entre análisis (sin un Bitmap nuevo por frame); la
+    // rotación, el zoom y la rotación del recorte se aplican al muestrear el tensor.
+    // Dos en uso: el que se clasifica y el siguiente, convertido mientras tanto
+    val framePixels = remember { CameraFramePixels() }
+
+    // Entrada de frames fuera del hilo principal y clasificación en un hilo propio: la
+    // conversión del frame N+1 se solapa con la clasificación del N y solo espera el más
+    // reciente, así la latencia no crece detrás de una inferencia lenta
+    val framePipeline = remember {
+        val mainExecutor = ContextCompat.getMainExecutor(context)
+        CameraFramePipeline<CameraFramePixels.Frame>(
+            name = "clasificador-bote",
+            minIntervalMs = PROCESS_INTERVAL_MS,
+            prepare = { imageProxy ->
+                if (currentIsAnalyzing.value && classifier.isReady()) framePixels.convert(imageProxy) else null
+            },
+            recycle = { frame -> framePixels.release(frame) },
+            process = { frame ->
+                processFrameWithZoom(
+                    frame,
+                    classifier,
+                    currentZoomRegion.value,
+                    currentCropRotation.value,
+                    currentDetectionTier.value
+                ) { detections -> mainExecutor.execute { currentOnDetections.value(detections) } }
+            }
+        )
+    }
+
+    // Se libera antes que el clasificador de la pantalla (los efectos hijos se desechan
+    // primero); ninguno espera: si hay un frame en classifyFrame, él cierra el clasificador
+    DisposableEffect(Unit) {
+        onDispose { framePipeline.close() }
+    }
 
     // Aplicar rotación visual al preview
     // Cuando la rotación es 90 o 270, necesitamos escalar para compensar el cambio de aspecto
@@ -1311,20 +1232,7 @@ private fun CameraPreviewWithZoom(
                     .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_RGBA_8888)
                     .build()
 
-                imageAnalyzer.setAnalyzer(ContextCompat.getMainExecutor(ctx)) { imageProxy ->
-                    if (isAnalyzing && classifier.isReady()) {
-                        processImageWithZoom(
-                            imageProxy,
-                            classifier,
-                            scope,
-                            currentZoomRegion.value,
-                            currentCropRotation.value,
-                            onDetections
-                        )
-                    } else {
-                        imageProxy.close()
-                    }
-                }
+                framePipeline.bind(imageAnalyzer)
 
                 try {
                     cameraProvider.unbindAll()
@@ -1345,107 +1253,55 @@ private fun CameraPreviewWithZoom(
     )
 }
 
-private var lastProcessTime = 0L
 private const val PROCESS_INTERVAL_MS = 80L  // Más rápido para mejor respuesta durante zoom
 
 /**
- * Procesa imagen con soporte para zoom adaptativo y rotación.
+ * Nivel de detalle del clasificador por fase: una pasada barata mientras se busca objeto,
+ * el TTA configurado al fijarlo y la variante de mayor resolución sobre el recorte del zoom
+ */
+private fun detectionTierFor(phase: DetectionPhase): WasteClassifierYOLO.DetectionTier = when (phase) {
+    DetectionPhase.SCANNING -> WasteClassifierYOLO.DetectionTier.FAST
+    DetectionPhase.ZOOMED_CONFIRMING -> WasteClassifierYOLO.DetectionTier.DETAILED
+    else -> WasteClassifierYOLO.DetectionTier.STANDARD
+}
+
+/**
+ * Procesa un frame con soporte para zoom adaptativo y rotación, en el hilo de inferencia
+ * de la pipeline de cámara.
  * Si zoomRegion está definida, recorta la imagen a esa región antes de clasificar.
  * La rotación (0, 90, 180, 270) se aplica al área recortada.
+ * Rotaciones y recorte no crean bitmaps: se componen en una FrameTransform que el
+ * clasificador aplica al muestrear el frame crudo directo a los tensores de entrada.
  */
-private fun processImageWithZoom(
-    imageProxy: ImageProxy,
+private fun processFrameWithZoom(
+    frame: CameraFramePixels.Frame,
     classifier: WasteClassifierYOLO,
-    scope: CoroutineScope,
     zoomRegion: RectF?,
     cropRotation: Int = 0,
+    detectionTier: WasteClassifierYOLO.DetectionTier = WasteClassifierYOLO.DetectionTier.STANDARD,
     onDetections: (List<WasteClassifierYOLO.Detection>) -> Unit
 ) {
-    val currentTime = System.currentTimeMillis()
-    if (currentTime - lastProcessTime < PROCESS_INTERVAL_MS) {
-        imageProxy.close()
-        return
-    }
-    lastProcessTime = currentTime
-
-    scope.launch {
-        try {
-            val bitmap = imageProxy.toBitmap()
-            val rotation = imageProxy.imageInfo.rotationDegrees
-            val rotatedBitmap = if (rotation != 0) rotateBitmap(bitmap, rotation.toFloat()) else bitmap
-
-            // Aplicar zoom si hay región definida
-            val croppedBitmap = if (zoomRegion != null) {
-                cropBitmapToRegion(rotatedBitmap, zoomRegion)
-            } else {
-                rotatedBitmap
-            }
-
-            // Aplicar rotación del área de recorte si es necesario
-            // La rotación se aplica siempre que no sea 0, independiente del zoom
-            val bitmapToClassify = if (cropRotation != 0) {
-                rotateBitmap(croppedBitmap, cropRotation.toFloat())
-            } else {
-                croppedBitmap
-            }
-
-            val result = withContext(Dispatchers.Default) {
-                classifier.classifyImage(bitmapToClassify)
-            }
-
-            // Si estamos en modo zoom, ajustar las coordenadas de detección
-            val adjustedDetections = if (zoomRegion != null) {
-                result.detections.map { detection ->
-                    // Las coordenadas de la detección son relativas a la imagen recortada
-                    // Necesitamos convertirlas de vuelta al espacio del frame completo
-                    val adjustedBox = RectF(
-                        zoomRegion.left + detection.boundingBox.left * zoomRegion.width(),
-                        zoomRegion.top + detection.boundingBox.top * zoomRegion.height(),
-                        zoomRegion.left + detection.boundingBox.right * zoomRegion.width(),
-                        zoomRegion.top + detection.boundingBox.bottom * zoomRegion.height()
-                    )
-                    WasteClassifierYOLO.Detection(
-                        classId = detection.classId,
-                        className = detection.className,
-                        confidence = detection.confidence,
-                        boundingBox = adjustedBox
-                    )
-                }
-            } else {
-                result.detections
-            }
-
-            withContext(Dispatchers.Main) {
-                onDetections(adjustedDetections)
-            }
-
-            // Log para debug del zoom
-            if (zoomRegion != null && result.detections.isNotEmpty()) {
-                Log.d("ClasificadorBote", "🔬 ZOOM: Detectado ${result.detections.first().className} " +
-                    "con ${(result.detections.first().confidence * 100).toInt()}% en región recortada")
-            }
-        } catch (e: Exception) {
-            Log.e("ClasificadorBote", "Error procesando imagen", e)
-        } finally {
-            imageProxy.close()
+    try {
+        // Enderezar, recortar al zoom (si hay región definida) y rotar el área de recorte
+        // (siempre que no sea 0, independiente del zoom), en una sola transformación
+        val transform = frame.transform(zoomRegion?.toNormalizedRect(), cropRotation)
+
+        // En modo zoom las coordenadas relativas al recorte se convierten al espacio del
+        // frame completo dentro del clasificador, antes de crear las detecciones.
+        // El hilo de la pipeline espera al clasificador: un frame a la vez
+        val result = runBlocking {
+            classifier.classifyFrame(frame.pixels, frame.width, transform, outputRegion = zoomRegion, tier = detectionTier)
         }
-    }
-}
 
-/**
- * Recorta un bitmap a una región específica (coordenadas normalizadas 0-1)
- */
-private fun cropBitmapToRegion(bitmap: Bitmap, region: RectF): Bitmap {
-    val x = (region.left * bitmap.width).toInt().coerceIn(0, bitmap.width - 1)
-    val y = (region.top * bitmap.height).toInt().coerceIn(0, bitmap.height - 1)
-    val width = (region.width() * bitmap.width).toInt().coerceIn(1, bitmap.width - x)
-    val height = (region.height() * bitmap.height).toInt().coerceIn(1, bitmap.height - y)
+        onDetections(result.detections)
 
-    return try {
-        Bitmap.createBitmap(bitmap, x, y, width, height)
+        // Log para debug del zoom
+        if (zoomRegion != null && result.detections.isNotEmpty()) {
+            Log.d("ClasificadorBote", "🔬 ZOOM: Detectado ${result.detections.first().className} " +
+                "con ${(result.detections.first().confidence * 100).toInt()}% en región recortada")
+        }
     } catch (e: Exception) {
-        Log.e("ClasificadorBote", "Error recortando bitmap: ${e.message}")
-        bitmap // Fallback al bitmap original
+        Log.e("ClasificadorBote", "Error procesando imagen", e)
     }
 }
 
@@ -2128,18 +1984,6 @@ private fun mapMaterialToESP32(material: String): String {
     }
 }
 
-private fun rotateBitmap(bitmap: Bitmap, rotationDegrees: Float): Bitmap {
-    val matrix = Matrix().apply { postRotate(rotationDegrees) }
-    return Bitmap.createBitmap(bitmap, 0, 0, bitmap.width, bitmap.height, matrix, true)
-}
-
-private fun ImageProxy.toBitmap(): Bitmap {
-    val buffer = planes[0].buffer
-    val bytes = ByteArray(buffer.remaining())
-    buffer.get(bytes)
-    return android.graphics.BitmapFactory.decodeByteArray(bytes, 0, bytes.size)
-}
-
 // ═══════════════════════════════════════
 // NFC HELPER FUNCTIONS
 // ═══════════════════════════════════════
@@ -1,8 +1,7 @@
 package com.biowaymexico.ui.screens.bote_bioway
 
 import android.Manifest
-import android.graphics.Bitmap
-import android.graphics.RectF
+import android.os.Build
 import android.util.Log
 import android.view.ViewGroup
 import androidx.camera.core.CameraSelector
@@ -50,442 +49,43 @@ import androidx.compose.ui.viewinterop.AndroidView
 import androidx.core.content.ContextCompat
 import androidx.lifecycle.LifecycleOwner
 import com.ultralytics.yolo.Detection
+import com.ultralytics.yolo.DetectionBuffer
 import com.ultralytics.yolo.DetectionResult
 import com.ultralytics.yolo.WasteDetector
 import com.biowaymexico.ui.theme.BioWayColors
 import com.biowaymexico.utils.BluetoothManager
+import com.biowaymexico.utils.vision.CameraFramePipeline
+import com.biowaymexico.utils.vision.CameraFramePixels
+import com.biowaymexico.utils.vision.FrameTransform
+import com.biowaymexico.utils.vision.HotSwapModel
+import com.biowaymexico.utils.vision.ModelStore
+import com.biowaymexico.utils.vision.NormalizedRect
+import com.biowaymexico.utils.vision.TensorRecorder
+import com.biowaymexico.utils.vision.TensorRecording
+import com.biowaymexico.utils.vision.bote.BackgroundPlateFilter
+import com.biowaymexico.utils.vision.bote.DetectionStabilityTracker
+import com.biowaymexico.utils.vision.bote.MaterialCategory
 import com.google.accompanist.permissions.ExperimentalPermissionsApi
 import com.google.accompanist.permissions.isGranted
 import com.google.accompanist.permissions.rememberPermissionState
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import java.util.concurrent.Executors
-import java.util.concurrent.atomic.AtomicBoolean
 import kotlin.math.abs
 import kotlin.math.max
 import kotlin.math.min
 
 private const val TAG = "ClasificadorBoteYOLO"
-private const val TAG_FILTER = "PlateFilter"
+private const val DETECTOR_STORE_NAME = "waste_detector"  // files/models/waste_detector/v<N>/
+private const val MODEL_UPDATE_CHECK_MS = 5 * 60_000L  // Buscar versiones nuevas del modelo cada 5 minutos
 
 /**
- * Filtro inteligente para ignorar el plato blanco del bote
- *
- * Estrategia principal basada en CONFIANZA + FORMA + POSICIÓN:
- * - El plato tiene confianza BAJA (26-50%) porque es un falso positivo
- * - Los objetos reales tienen confianza ALTA (65%+)
- * - El plato es CIRCULAR (aspect ratio cercano a 1)
- * - El plato está CENTRADO en el ROI
- * - Cuando hay 2+ plásticos, descartar el de mayor área (el plato)
- * - Cuando hay 1 plástico con baja confianza, probablemente es el plato
+ * Umbrales de esta pantalla (se aplican también a cada versión nueva del modelo)
  */
-object BackgroundPlateFilter {
-
-    // Umbral de confianza - MÁS ESTRICTO para evitar falsos positivos
-    var minConfidenceThreshold = 0.60f  // Objetos reales tienen >60% confianza (antes 50%)
-
-    // Umbral de área - solo aplica junto con baja confianza
-    var suspiciousAreaThreshold = 0.25f  // Si área >25% Y confianza baja = plato (antes 35%)
-
-    // Umbral de aspect ratio para detectar objetos circulares (plato)
-    private const val CIRCULAR_ASPECT_MIN = 0.7f  // El plato tiene aspect ratio 0.7-1.3
-    private const val CIRCULAR_ASPECT_MAX = 1.3f
-
-    // Umbral de centrado - el plato está típicamente centrado
-    private const val CENTER_THRESHOLD = 0.35f  // Distancia máxima del centro (normalizada)
-
-    /**
-     * Filtra las detecciones, removiendo las que parecen ser el plato de fondo
-     */
-    fun filterDetections(
-        detections: List<Detection>,
-        roiWidth: Int,
-        roiHeight: Int
-    ): List<Detection> {
-        val roiArea = roiWidth.toFloat() * roiHeight.toFloat()
-
-        Log.d(TAG_FILTER, "═══════════════════════════════════════")
-        Log.d(TAG_FILTER, "📊 Analizando ${detections.size} detecciones")
-        Log.d(TAG_FILTER, "   ROI: ${roiWidth}x${roiHeight} = ${roiArea.toInt()} px²")
-
-        if (detections.isEmpty()) {
-            Log.d(TAG_FILTER, "   (sin detecciones)")
-            Log.d(TAG_FILTER, "═══════════════════════════════════════")
-            return emptyList()
-        }
-
-        // Separar por tipo de material
-        val plasticDetections = detections.filter {
-            it.className.lowercase().contains("plastic") ||
-            it.className.lowercase().contains("plastico")
-        }
-        val otherDetections = detections.filter {
-            !it.className.lowercase().contains("plastic") &&
-            !it.className.lowercase().contains("plastico")
-        }
-
-        Log.d(TAG_FILTER, "   🔹 Plásticos: ${plasticDetections.size}")
-        Log.d(TAG_FILTER, "   🔹 Otros materiales: ${otherDetections.size}")
-
-        // Procesar plásticos con la lógica especial
-        val filteredPlastics = filterPlasticDetections(plasticDetections, roiArea, roiWidth, roiHeight)
-
-        // Otros materiales pasan sin filtro (no son el plato)
-        otherDetections.forEach { detection ->
-            val box = detection.boundingBox
-            val areaRatio = (box.width() * box.height()) / roiArea
-            Log.d(TAG_FILTER, "─────────────────────────────────────")
-            Log.d(TAG_FILTER, "🔍 ${detection.className} (${(detection.confidence * 100).toInt()}%)")
-            Log.d(TAG_FILTER, "   📊 Área: ${(areaRatio * 100).toInt()}% del ROI")
-            Log.d(TAG_FILTER, "   ✅ ACEPTADO: No es plástico")
-        }
-
-        val result = filteredPlastics + otherDetections
-
-        Log.d(TAG_FILTER, "═══════════════════════════════════════")
-        Log.d(TAG_FILTER, "✅ Resultado: ${result.size}/${detections.size} detecciones válidas")
-        Log.d(TAG_FILTER, "═══════════════════════════════════════")
-
-        return result
-    }
-
-    private fun filterPlasticDetections(
-        plastics: List<Detection>,
-        roiArea: Float,
-        roiWidth: Int,
-        roiHeight: Int
-    ): List<Detection> {
-        if (plastics.isEmpty()) return emptyList()
-
-        // Calcular área y métricas de cada detección
-        data class PlasticWithMetrics(
-            val detection: Detection,
-            val area: Float,
-            val areaRatio: Float,
-            val confidence: Float,
-            val aspectRatio: Float,
-            val isCentered: Boolean,
-            val isCircular: Boolean
-        )
-
-        val plasticsWithMetrics = plastics.map { detection ->
-            val box = detection.boundingBox
-            val area = box.width() * box.height()
-            val areaRatio = area / roiArea
-
-            // Calcular aspect ratio (1.0 = cuadrado/circular)
-            val aspectRatio = if (box.height() > 0) box.width() / box.height() else 1f
-
-            // Verificar si es circular (aspect ratio cercano a 1)
-            val isCircular = aspectRatio in CIRCULAR_ASPECT_MIN..CIRCULAR_ASPECT_MAX
-
-            // Verificar si está centrado en el ROI
-            val boxCenterX = (box.left + box.right) / 2f / roiWidth
-            val boxCenterY = (box.top + box.bottom) / 2f / roiHeight
-            val distFromCenter = kotlin.math.sqrt(
-                (boxCenterX - 0.5f) * (boxCenterX - 0.5f) +
-                (boxCenterY - 0.5f) * (boxCenterY - 0.5f)
-            )
-            val isCentered = distFromCenter < CENTER_THRESHOLD
-
-            PlasticWithMetrics(detection, area, areaRatio, detection.confidence, aspectRatio, isCentered, isCircular)
-        }.sortedByDescending { it.area }  // Ordenar por área (mayor primero)
-
-        // Log de todas las detecciones de plástico
-        plasticsWithMetrics.forEach { p ->
-            Log.d(TAG_FILTER, "─────────────────────────────────────")
-            Log.d(TAG_FILTER, "🔍 ${p.detection.className}")
-            Log.d(TAG_FILTER, "   🎯 Confianza: ${(p.confidence * 100).toInt()}%")
-            Log.d(TAG_FILTER, "   📐 Tamaño: ${p.detection.boundingBox.width().toInt()}x${p.detection.boundingBox.height().toInt()} px")
-            Log.d(TAG_FILTER, "   📊 Área: ${(p.areaRatio * 100).toInt()}% del ROI")
-            Log.d(TAG_FILTER, "   ⭕ Aspect ratio: ${String.format("%.2f", p.aspectRatio)} (circular=${p.isCircular})")
-            Log.d(TAG_FILTER, "   📍 Centrado: ${p.isCentered}")
-        }
-
-        return when {
-            // CASO 1: Solo hay 1 plástico detectado
-            plasticsWithMetrics.size == 1 -> {
-                val single = plasticsWithMetrics[0]
-
-                // CRITERIOS PARA FILTRAR COMO PLATO:
-                // 1. Confianza baja (<60%)
-                // 2. Área grande (>25% del ROI)
-                // 3. Forma circular (aspect ratio 0.7-1.3)
-                // 4. Centrado en ROI
-
-                val isLowConfidence = single.confidence < minConfidenceThreshold
-                val isLargeArea = single.areaRatio > suspiciousAreaThreshold
-
-                // Más estricto: si tiene CUALQUIERA de estas combinaciones, filtrar
-                val isProbablyPlate = when {
-                    // Caso clásico: baja confianza + área grande
-                    isLowConfidence && isLargeArea -> true
-
-                    // Caso adicional: área MUY grande (>40%) sin importar confianza + circular + centrado
-                    single.areaRatio > 0.40f && single.isCircular && single.isCentered -> true
-
-                    // Caso adicional: confianza muy baja (<45%) + circular + centrado
-                    single.confidence < 0.45f && single.isCircular && single.isCentered -> true
-
-                    else -> false
-                }
-
-                if (isProbablyPlate) {
-                    Log.d(TAG_FILTER, "   🚫 FILTRADO COMO PLATO:")
-                    Log.d(TAG_FILTER, "      - Confianza: ${(single.confidence * 100).toInt()}% (umbral: ${(minConfidenceThreshold * 100).toInt()}%)")
-                    Log.d(TAG_FILTER, "      - Área: ${(single.areaRatio * 100).toInt()}% (umbral: ${(suspiciousAreaThreshold * 100).toInt()}%)")
-                    Log.d(TAG_FILTER, "      - Circular: ${single.isCircular}, Centrado: ${single.isCentered}")
-                    Log.d(TAG_FILTER, "   💡 Probablemente es el plato (falso positivo)")
-                    emptyList()
-                } else {
-                    Log.d(TAG_FILTER, "   ✅ ACEPTADO: Confianza ${(single.confidence * 100).toInt()}% >= umbral ${(minConfidenceThreshold * 100).toInt()}%")
-                    listOf(single.detection)
-                }
-            }
-
-            // CASO 2: Hay 2+ plásticos - descartar el más grande (el plato)
-            else -> {
-                val largest = plasticsWithMetrics[0]
-                val smaller = plasticsWithMetrics.drop(1)  // Todos excepto el más grande
-
-                Log.d(TAG_FILTER, "   🚫 FILTRADO: '${largest.detection.className}' - Mayor área (${(largest.areaRatio * 100).toInt()}%)")
-                Log.d(TAG_FILTER, "   💡 El plástico más grande es probablemente el plato")
-
-                // Filtrar también los otros plásticos con baja confianza
-                val validSmaller = smaller.filter { p ->
-                    val isValid = p.confidence >= minConfidenceThreshold
-                    if (isValid) {
-                        Log.d(TAG_FILTER, "   ✅ ACEPTADO: '${p.detection.className}' - Confianza ${(p.confidence * 100).toInt()}%, Área ${(p.areaRatio * 100).toInt()}%")
-                    } else {
-                        Log.d(TAG_FILTER, "   🚫 FILTRADO: '${p.detection.className}' - Confianza baja ${(p.confidence * 100).toInt()}%")
-                    }
-                    isValid
-                }
-
-                validSmaller.map { it.detection }
-            }
-        }
-    }
-
-    /**
-     * Resetear el filtro (por compatibilidad)
-     */
-    fun reset() {
-        Log.d(TAG_FILTER, "🔄 Filtro reseteado")
-    }
-
-    /**
-     * Log del estado actual de la configuración
-     */
-    fun logConfiguration() {
-        Log.d(TAG_FILTER, "═══════════════════════════════════════")
-        Log.d(TAG_FILTER, "⚙️ CONFIGURACIÓN DEL FILTRO (v2)")
-        Log.d(TAG_FILTER, "   Estrategia: CONFIANZA + ÁREA + FORMA + POSICIÓN")
-        Log.d(TAG_FILTER, "   Umbral confianza: ${(minConfidenceThreshold*100).toInt()}%")
-        Log.d(TAG_FILTER, "   Umbral área sospechosa: ${(suspiciousAreaThreshold*100).toInt()}%")
-        Log.d(TAG_FILTER, "   Aspect ratio circular: $CIRCULAR_ASPECT_MIN - $CIRCULAR_ASPECT_MAX")
-        Log.d(TAG_FILTER, "   Umbral centrado: $CENTER_THRESHOLD")
-        Log.d(TAG_FILTER, "   Filtros:")
-        Log.d(TAG_FILTER, "      1. Confianza <${(minConfidenceThreshold*100).toInt()}% + área >${(suspiciousAreaThreshold*100).toInt()}%")
-        Log.d(TAG_FILTER, "      2. Área >40% + circular + centrado")
-        Log.d(TAG_FILTER, "      3. Confianza <45% + circular + centrado")
-        Log.d(TAG_FILTER, "═══════════════════════════════════════")
-    }
-}
-
-/**
- * Categorías de materiales para el bote BioWay
- * Mapea las 12 clases YOLO a 4 categorías físicas del bote
- */
-enum class MaterialCategory(
-    val displayName: String,
-    val emoji: String,
-    val giro: Int,
-    val inclinacion: Int,
-    val color: Long  // Color en formato Long para usar con Color()
-) {
-    PLASTICO(
-        displayName = "Plástico",
-        emoji = "♻️",
-        giro = -30,
-        inclinacion = -45,
-        color = 0xFF2196F3  // Azul
-    ),
-    PAPEL_CARTON(
-        displayName = "Papel/Cartón",
-        emoji = "📄",
-        giro = -30,
-        inclinacion = 45,
-        color = 0xFF4CAF50  // Verde
-    ),
-    ALUMINIO_METAL(
-        displayName = "Aluminio/Metal",
-        emoji = "🥫",
-        giro = 59,
-        inclinacion = -45,
-        color = 0xFF9C27B0  // Morado
-    ),
-    GENERAL(
-        displayName = "General",
-        emoji = "🗑️",
-        giro = 59,
-        inclinacion = 45,
-        color = 0xFFFF9800  // Naranja
-    );
-
-    companion object {
-        private const val TAG_CAT = "MaterialCategory"
-
-        /**
-         * Clasifica una detección YOLO en una de las 4 categorías
-         */
-        fun fromYoloClass(className: String): MaterialCategory {
-            val lowerName = className.lowercase()
-
-            return when {
-                // PLÁSTICO: todos los tipos de plástico
-                lowerName.contains("plastic") -> {
-                    Log.d(TAG_CAT, "🔵 '$className' → PLÁSTICO")
-                    PLASTICO
-                }
-
-                // PAPEL/CARTÓN
-                lowerName == "paper" || lowerName == "cardboard" ||
-                lowerName.contains("papel") || lowerName.contains("carton") -> {
-                    Log.d(TAG_CAT, "🟢 '$className' → PAPEL/CARTÓN")
-                    PAPEL_CARTON
-                }
-
-                // ALUMINIO/METAL (incluye vidrio para reciclables)
-                lowerName == "metal" || lowerName == "glass" ||
-                lowerName.contains("aluminio") || lowerName.contains("vidrio") -> {
-                    Log.d(TAG_CAT, "🟣 '$className' → ALUMINIO/METAL")
-                    ALUMINIO_METAL
-                }
-
-                // GENERAL: biological, trash, y todo lo demás
-                else -> {
-                    Log.d(TAG_CAT, "🟠 '$className' → GENERAL")
-                    GENERAL
-                }
-            }
-        }
-    }
-}
-
-/**
- * Tracker de estabilidad de detección
- * Verifica que el mismo material se detecte consistentemente durante N segundos
- * Y que aparezca en al menos M frames consecutivos
- */
-object DetectionStabilityTracker {
-    private const val TAG_STAB = "StabilityTracker"
-    private const val STABILITY_DURATION_MS = 3000L  // 3 segundos
-    private const val MIN_CONSECUTIVE_FRAMES = 5     // Mínimo 5 frames consecutivos
-
-    private var currentCategory: MaterialCategory? = null
-    private var categoryStartTime: Long = 0L
-    private var isStable = false
-    private var consecutiveFrames = 0               // Contador de frames consecutivos
-    private var lastDetectionTime: Long = 0L        // Para detectar gaps
-
-    /**
-     * Actualiza el tracker con la detección actual
-     * @return MaterialCategory si está estable por 2 segundos Y al menos 5 frames consecutivos
-     */
-    fun update(detection: Detection?): MaterialCategory? {
-        val now = System.currentTimeMillis()
-
-        if (detection == null) {
-            // Sin detección - resetear
-            if (currentCategory != null) {
-                Log.d(TAG_STAB, "❌ Detección perdida, reseteando...")
-            }
-            reset()
-            return null
-        }
-
-        val newCategory = MaterialCategory.fromYoloClass(detection.className)
-
-        // Verificar si hay un gap en detecciones (más de 500ms sin detección)
-        val hasGap = lastDetectionTime > 0 && (now - lastDetectionTime) > 500
-        lastDetectionTime = now
-
-        if (newCategory != currentCategory || hasGap) {
-            // Cambió la categoría o hubo un gap - reiniciar contador
-            if (hasGap && newCategory == currentCategory) {
-                Log.d(TAG_STAB, "⚠️ Gap detectado (${now - lastDetectionTime}ms), reiniciando...")
-            } else {
-                Log.d(TAG_STAB, "🔄 Cambio de categoría: ${currentCategory?.displayName ?: "ninguna"} → ${newCategory.displayName}")
-            }
-            currentCategory = newCategory
-            categoryStartTime = now
-            consecutiveFrames = 1
-            isStable = false
-            return null
-        }
-
-        // Misma categoría - incrementar contador de frames
-        consecutiveFrames++
-
-        // Verificar tiempo y frames consecutivos
-        val elapsedTime = now - categoryStartTime
-        val remainingTime = STABILITY_DURATION_MS - elapsedTime
-        val hasEnoughFrames = consecutiveFrames >= MIN_CONSECUTIVE_FRAMES
-
-        if (elapsedTime >= STABILITY_DURATION_MS && hasEnoughFrames && !isStable) {
-            // ¡Estable por 2 segundos Y suficientes frames!
-            isStable = true
-            Log.d(TAG_STAB, "✅ ¡ESTABLE! ${newCategory.displayName}")
-            Log.d(TAG_STAB, "   Tiempo: ${elapsedTime}ms, Frames: $consecutiveFrames")
-            return newCategory
-        }
-
-        if (!isStable && remainingTime > 0) {
-            Log.d(TAG_STAB, "⏳ ${newCategory.displayName}: ${String.format("%.1f", remainingTime/1000.0)}s, frames: $consecutiveFrames/$MIN_CONSECUTIVE_FRAMES")
-        }
-
-        return null
-    }
-
-    /**
-     * Obtiene el progreso actual (0.0 a 1.0)
-     */
-    fun getProgress(): Float {
-        if (currentCategory == null) return 0f
-        val elapsed = System.currentTimeMillis() - categoryStartTime
-        return (elapsed.toFloat() / STABILITY_DURATION_MS).coerceIn(0f, 1f)
-    }
-
-    /**
-     * Obtiene la categoría actual siendo rastreada
-     */
-    fun getCurrentCategory(): MaterialCategory? = currentCategory
-
-    /**
-     * Verifica si ya se alcanzó estabilidad
-     */
-    fun isCurrentlyStable(): Boolean = isStable
-
-    /**
-     * Resetea el tracker (después de depositar o al perder detección)
-     */
-    fun reset() {
-        currentCategory = null
-        categoryStartTime = 0L
-        isStable = false
-        consecutiveFrames = 0
-        lastDetectionTime = 0L
-    }
-
-    /**
-     * Resetea solo el estado de estabilidad (para permitir nuevo depósito)
-     */
-    fun resetStability() {
-        isStable = false
-        categoryStartTime = System.currentTimeMillis()
-        consecutiveFrames = 0
-    }
+private fun configureDetector(detector: WasteDetector) {
+    detector.confidenceThreshold = 0.25f
+    detector.iouThreshold = 0.4f
+    detector.numItemsThreshold = 30
 }
 
 /**
@@ -1056,8 +656,10 @@ private fun DetectionScreen(
     val context = LocalContext.current
     val scope = rememberCoroutineScope()
 
-    // Estado del detector
-    var detector by remember { mutableStateOf<WasteDetector?>(null) }
+    // Estado del detector: compartido (caliente entre visitas a la pantalla) e
+    // intercambiable por versiones nuevas del modelo sin detener la cámara
+    var detector by remember { mutableStateOf<HotSwapModel<WasteDetector>?>(null) }
+    val modelStore = remember { ModelStore(context, DETECTOR_STORE_NAME) }
     var isDetectorReady by remember { mutableStateOf(false) }
     var detectorError by remember { mutableStateOf<String?>(null) }
 
@@ -1118,18 +720,17 @@ private fun DetectionScreen(
                 )
                 Log.d(TAG, "Etiquetas cargadas: ${labels.size}")
 
-                val newDetector = WasteDetector(
+                val models = WasteDetector.hotSwappable(
                     context = context,
                     modelPath = "models/waste_detector_v2.tflite",
                     labels = labels,
-                    useGpu = true
+                    store = modelStore,
+                    useGpu = true,
+                    autotune = true
                 )
+                configureDetector(models.current)
 
-                newDetector.confidenceThreshold = 0.25f
-                newDetector.iouThreshold = 0.4f
-                newDetector.numItemsThreshold = 30
-
-                detector = newDetector
+                detector = models
                 isDetectorReady = true
                 Log.d(TAG, "WasteDetector inicializado correctamente")
 
@@ -1147,6 +748,24 @@ private fun DetectionScreen(
         }
     }
 
+    // Versiones nuevas del modelo: se cargan en segundo plano y se activan entre frames
+    LaunchedEffect(isDetectorReady) {
+        if (!isDetectorReady) return@LaunchedEffect
+        while (true) {
+            val models = detector ?: break
+            withContext(Dispatchers.IO) {
+                try {
+                    if (WasteDetector.updateToLatest(context, models, modelStore, autotune = true, configure = ::configureDetector)) {
+                        Log.d(TAG, "Modelo v${models.version} activo (a prueba)")
+                    }
+                } catch (e: Exception) {
+                    Log.e(TAG, "Error buscando actualización del modelo: ${e.message}", e)
+                }
+            }
+            kotlinx.coroutines.delay(MODEL_UPDATE_CHECK_MS)
+        }
+    }
+
     // ═══════════════════════════════════════════════════════════════
     // LOGICA DE ESTABILIDAD Y AUTO-DEPOSITO
     // ═══════════════════════════════════════════════════════════════
@@ -1164,7 +783,7 @@ private fun DetectionScreen(
         val primaryDetection = detections.maxByOrNull { it.confidence }
 
         // Actualizar tracker de estabilidad
-        val stableCategory = DetectionStabilityTracker.update(primaryDetection)
+        val stableCategory = DetectionStabilityTracker.update(primaryDetection?.className)
 
         // Actualizar UI
         stabilityProgress = DetectionStabilityTracker.getProgress()
@@ -1233,6 +852,8 @@ private fun DetectionScreen(
     // Limpiar al salir
     DisposableEffect(Unit) {
         onDispose {
+            // Devolver el detector al registro cuando termine el frame en curso
+            // (se conserva caliente un tiempo)
             detector?.close()
             detector = null
             bluetoothManager.desconectar()
@@ -1500,22 +1121,55 @@ private fun DetectionScreen(
 @Composable
 private fun CameraPreviewWithDetection(
     lifecycleOwner: LifecycleOwner,
-    detector: WasteDetector,
+    detector: HotSwapModel<WasteDetector>,
     roiRect: ROIRect,
     onDetectionResult: (DetectionResult) -> Unit
 ) {
     val context = LocalContext.current
     var cameraProvider by remember { mutableStateOf<ProcessCameraProvider?>(null) }
-    val executor = remember { Executors.newSingleThreadExecutor() }
-    val isProcessing = remember { AtomicBoolean(false) }
+    val currentOnDetectionResult = rememberUpdatedState(onDetectionResult)
+    // Detecciones del frame, reutilizadas (solo las toca el hilo de inferencia)
+    val detections = remember { DetectionBuffer(32) }
+    // Frames YUV convertidos a arreglos ARGB reutilizados; rotación y ROI se aplican al
+    // muestrear el tensor (sin bitmaps rotados ni recortados). Solo los usa la etapa 1
+    val framePixels = remember { CameraFramePixels() }
+    // Grabación de tensores para replay (solo debug, con el marcador .record; ver TensorRecorder)
+    val recorder = remember {
+        detector.current.openRecorder(
+            context.getExternalFilesDir("recordings"),
+            "detector",
+            "${Build.MANUFACTURER} ${Build.MODEL}"
+        )?.also { Log.d(TAG, "Grabando tensores en ${it.file}") }
+    }
+    // Dos etapas: la entrada convierte el frame y muestrea el tensor del frame N+1 en un
+    // doble buffer mientras el hilo de inferencia (el intérprete no es thread-safe)
+    // procesa el N; solo espera el frame más reciente
+    val framePipeline = remember {
+        CameraFramePipeline<PreparedFrame>(
+            name = "detector-roi",
+            prepare = { imageProxy -> prepareFrameWithROI(imageProxy, detector.current, roiRect, framePixels) },
+            recycle = { frame -> frame.detector.releaseInput(frame.input) },
+            process = { frame ->
+                processFrameWithROI(
+                    frame = frame,
+                    detector = detector,
+                    detections = detections,
+                    recorder = recorder,
+                    onResult = { result -> currentOnDetectionResult.value(result) }
+                )
+            }
+        )
+    }
 
-    // Limpiar camara y executor al salir
+    // Limpiar camara y pipeline al salir
     DisposableEffect(Unit) {
         onDispose {
             try {
                 cameraProvider?.unbindAll()
-                executor.shutdown()
-                Log.d(TAG, "CameraPreviewWithDetection: Camara y executor liberados")
+                // Sin esperar al frame en inferencia: el grabador se cierra en el hilo de
+                // inferencia cuando ya nadie escribe en él
+                framePipeline.close { recorder?.close() }
+                Log.d(TAG, "CameraPreviewWithDetection: Camara y pipeline liberadas (${framePipeline.stats})")
             } catch (e: Exception) {
                 Log.e(TAG, "Error liberando recursos: ${e.message}")
             }
@@ -1544,26 +1198,7 @@ private fun CameraPreviewWithDetection(
                         val imageAnalysis = ImageAnalysis.Builder()
                             .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
                             .build()
-                            .also {
-                                it.setAnalyzer(executor) { imageProxy ->
-                                    if (!isProcessing.getAndSet(true)) {
-                                        processImageProxyWithROI(
-                                            imageProxy = imageProxy,
-                                            detector = detector,
-                                            roiRect = roiRect,
-                                            onResult = { result ->
-                                                onDetectionResult(result)
-                                                isProcessing.set(false)
-                                            },
-                                            onError = {
-                                                isProcessing.set(false)
-                                            }
-                                        )
-                                    } else {
-                                        imageProxy.close()
-                                    }
-                                }
-                            }
+                            .also { framePipeline.bind(it) }
 
                         provider.unbindAll()
                         provider.bindToLifecycle(
@@ -1583,152 +1218,96 @@ private fun CameraPreviewWithDetection(
     )
 }
 
-private fun processImageProxyWithROI(
+/**
+ * Frame listo para la etapa de inferencia: el tensor ya muestreado por [detector] (la
+ * versión activa al prepararlo) y la transformación para llevar las cajas al frame
+ */
+private class PreparedFrame(
+    val detector: WasteDetector,
+    val input: WasteDetector.PreparedInput,
+    val transform: FrameTransform,
+    val rotationDegrees: Int
+)
+
+/**
+ * Etapa 1, en el hilo de entrada de la pipeline de cámara: convierte el frame y muestrea
+ * su ROI en una entrada del detector; los píxeles vuelven al pool en cuanto se escribe
+ * el tensor
+ */
+private fun prepareFrameWithROI(
     imageProxy: ImageProxy,
     detector: WasteDetector,
     roiRect: ROIRect,
-    onResult: (DetectionResult) -> Unit,
-    onError: () -> Unit
-) {
+    framePixels: CameraFramePixels
+): PreparedFrame {
+    val frame = framePixels.convert(imageProxy)
     try {
-        val bitmap = imageProxyToBitmap(imageProxy)
-        if (bitmap != null) {
-            val rotatedBitmap = rotateBitmap(bitmap, imageProxy.imageInfo.rotationDegrees)
+        // Frame enderezado y recortado al ROI, resuelto al muestrear la entrada del detector
+        val transform = frame.transform(NormalizedRect(roiRect.left, roiRect.top, roiRect.right, roiRect.bottom))
+        val input = detector.prepareInput(frame.pixels, frame.width, transform)
+        return PreparedFrame(detector, input, transform, frame.rotationDegrees)
+    } finally {
+        framePixels.release(frame)
+    }
+}
 
-            // Recortar al ROI
-            val croppedBitmap = cropBitmapToROI(rotatedBitmap, roiRect)
-            val result = detector.detect(croppedBitmap)
+/**
+ * Etapa 2: detecta sobre el tensor preparado, en el hilo de inferencia de la pipeline de
+ * cámara (que devuelve la entrada al detector al terminar)
+ */
+private fun processFrameWithROI(
+    frame: PreparedFrame,
+    detector: HotSwapModel<WasteDetector>,
+    detections: DetectionBuffer,
+    recorder: TensorRecorder?,
+    onResult: (DetectionResult) -> Unit
+) {
+    try {
+        val rotationDegrees = frame.rotationDegrees
+        val transform = frame.transform
+        val fullWidth = transform.uprightWidth
+        val fullHeight = transform.uprightHeight
+        val roi = transform.region
+
+        // El detector activo se toma por frame: un cambio de versión surte efecto en el
+        // siguiente. Un tensor preparado por la versión anterior a un cambio se descarta
+        // sin contar para la prueba de la versión nueva
+        val adjustedResult = detector.useIfCurrent(frame.detector) { activeDetector ->
+            val recording = recorder?.beginFrame(
+                transform.width,
+                transform.height,
+                fullWidth,
+                fullHeight,
+                rotationDegrees,
+                TensorRecording.Region(roi.left, roi.top, roi.width, roi.height)
+            )
+            val inferenceTime = activeDetector.detectPrepared(frame.input, detections, recording)
 
             // ══════════════════════════════════════════════════════════
             // FILTRAR DETECCIONES DEL PLATO DE FONDO
             // ══════════════════════════════════════════════════════════
-            val filteredBoxes = BackgroundPlateFilter.filterDetections(
-                detections = result.boxes,
-                roiWidth = croppedBitmap.width,
-                roiHeight = croppedBitmap.height
+            BackgroundPlateFilter.filterDetections(
+                detections = detections,
+                labels = activeDetector.labels,
+                roiWidth = transform.width,
+                roiHeight = transform.height
             )
 
-            val filteredResult = DetectionResult(
-                boxes = filteredBoxes,
-                inferenceTimeMs = result.inferenceTimeMs,
-                fps = result.fps,
-                imageWidth = result.imageWidth,
-                imageHeight = result.imageHeight
-            )
-            // ══════════════════════════════════════════════════════════
+            // Ajustar coordenadas al espacio original (en el buffer, sin copiar cajas)
+            transform.mapToFrame(detections, 0)
+            recording?.end(detections, inferenceTime.toFloat())
 
-            // Ajustar coordenadas al espacio original
-            val adjustedResult = adjustDetectionsToFullImage(
-                filteredResult,
-                roiRect,
-                rotatedBitmap.width,
-                rotatedBitmap.height
+            DetectionResult(
+                boxes = activeDetector.toDetections(detections, fullWidth, fullHeight),
+                inferenceTimeMs = inferenceTime,
+                fps = 1000.0 / inferenceTime,
+                imageWidth = fullWidth,
+                imageHeight = fullHeight
             )
-            onResult(adjustedResult)
-        } else {
-            onError()
-        }
+        } ?: return
+        onResult(adjustedResult)
     } catch (e: Exception) {
         Log.e(TAG, "Error procesando imagen: ${e.message}", e)
-        onError()
-    } finally {
-        imageProxy.close()
-    }
-}
-
-private fun cropBitmapToROI(bitmap: Bitmap, roi: ROIRect): Bitmap {
-    val x = (roi.left * bitmap.width).toInt().coerceIn(0, bitmap.width - 1)
-    val y = (roi.top * bitmap.height).toInt().coerceIn(0, bitmap.height - 1)
-    val width = (roi.width * bitmap.width).toInt().coerceIn(1, bitmap.width - x)
-    val height = (roi.height * bitmap.height).toInt().coerceIn(1, bitmap.height - y)
-
-    return Bitmap.createBitmap(bitmap, x, y, width, height)
-}
-
-private fun adjustDetectionsToFullImage(
-    result: DetectionResult,
-    roi: ROIRect,
-    fullWidth: Int,
-    fullHeight: Int
-): DetectionResult {
-    val roiOffsetX = roi.left * fullWidth
-    val roiOffsetY = roi.top * fullHeight
-
-    val adjustedBoxes = result.boxes.map { detection ->
-        val adjustedBox = RectF(
-            detection.boundingBox.left + roiOffsetX,
-            detection.boundingBox.top + roiOffsetY,
-            detection.boundingBox.right + roiOffsetX,
-            detection.boundingBox.bottom + roiOffsetY
-        )
-        Detection(
-            classIndex = detection.classIndex,
-            className = detection.className,
-            confidence = detection.confidence,
-            boundingBox = adjustedBox,
-            normalizedBox = RectF(
-                adjustedBox.left / fullWidth,
-                adjustedBox.top / fullHeight,
-                adjustedBox.right / fullWidth,
-                adjustedBox.bottom / fullHeight
-            )
-        )
-    }
-
-    return DetectionResult(
-        boxes = adjustedBoxes,
-        inferenceTimeMs = result.inferenceTimeMs,
-        fps = result.fps,
-        imageWidth = fullWidth,
-        imageHeight = fullHeight
-    )
-}
-
-private fun rotateBitmap(bitmap: Bitmap, rotationDegrees: Int): Bitmap {
-    if (rotationDegrees == 0) return bitmap
-    val matrix = android.graphics.Matrix()
-    matrix.postRotate(rotationDegrees.toFloat())
-    return Bitmap.createBitmap(bitmap, 0, 0, bitmap.width, bitmap.height, matrix, true)
-}
-
-@androidx.annotation.OptIn(androidx.camera.core.ExperimentalGetImage::class)
-private fun imageProxyToBitmap(imageProxy: ImageProxy): Bitmap? {
-    return try {
-        val image = imageProxy.image ?: return null
-        val planes = image.planes
-        val yBuffer = planes[0].buffer
-        val uBuffer = planes[1].buffer
-        val vBuffer = planes[2].buffer
-
-        val ySize = yBuffer.remaining()
-        val uSize = uBuffer.remaining()
-        val vSize = vBuffer.remaining()
-
-        val nv21 = ByteArray(ySize + uSize + vSize)
-        yBuffer.get(nv21, 0, ySize)
-        vBuffer.get(nv21, ySize, vSize)
-        uBuffer.get(nv21, ySize + vSize, uSize)
-
-        val yuvImage = android.graphics.YuvImage(
-            nv21,
-            android.graphics.ImageFormat.NV21,
-            image.width,
-            image.height,
-            null
-        )
-
-        val out = java.io.ByteArrayOutputStream()
-        yuvImage.compressToJpeg(
-            android.graphics.Rect(0, 0, image.width, image.height),
-            90,
-            out
-        )
-
-        val imageBytes = out.toByteArray()
-        android.graphics.BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.size)
-    } catch (e: Exception) {
-        Log.e(TAG, "Error convirtiendo ImageProxy a Bitmap: ${e.message}")
-        null
     }
 }
 
@@ -2,12 +2,10 @@ package com.biowaymexico.ui.screens.bote_bioway.clasificador_gemini
 
 import android.Manifest
 import android.graphics.Bitmap
-import android.graphics.RectF
 import android.util.Log
 import android.view.ViewGroup
 import androidx.camera.core.CameraSelector
 import androidx.camera.core.ImageAnalysis
-import androidx.camera.core.ImageProxy
 import androidx.camera.core.Preview
 import androidx.camera.lifecycle.ProcessCameraProvider
 import androidx.camera.view.PreviewView
@@ -48,10 +46,15 @@ import androidx.compose.ui.viewinterop.AndroidView
 import androidx.core.content.ContextCompat
 import androidx.lifecycle.LifecycleOwner
 import com.ultralytics.yolo.Detection
+import com.ultralytics.yolo.DetectionBuffer
 import com.ultralytics.yolo.DetectionResult
 import com.ultralytics.yolo.WasteDetector
 import com.biowaymexico.ui.theme.BioWayColors
 import com.biowaymexico.utils.BluetoothManager
+import com.biowaymexico.utils.vision.CameraFrameBitmaps
+import com.biowaymexico.utils.vision.CameraFramePipeline
+import com.biowaymexico.utils.vision.ModelRegistry
+import com.biowaymexico.utils.vision.bote.PresenceStabilityTracker
 import com.google.accompanist.permissions.ExperimentalPermissionsApi
 import com.google.accompanist.permissions.isGranted
 import com.google.accompanist.permissions.rememberMultiplePermissionsState
@@ -60,7 +63,6 @@ import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.withContext
 import java.util.concurrent.Executors
-import java.util.concurrent.atomic.AtomicBoolean
 
 private const val TAG = "ClasificadorGemini"
 private const val TAG_FILTER = "PlateFilterGemini"
@@ -261,74 +263,6 @@ object MaterialPresenceFilter {
     }
 }
 
-/**
- * Tracker de presencia estable para disparar clasificación Gemini
- * Espera 2 segundos de detección consistente antes de enviar a Gemini
- * (para ahorrar tokens de API)
- */
-object PresenceStabilityTracker {
-    private const val TAG_STAB = "PresenceStability"
-    private const val STABILITY_DURATION_MS = 3000L  // 3 segundos
-
-    private var presenceStartTime: Long = 0L
-    private var hasPresence = false
-    private var isStable = false
-
-    /**
-     * Actualiza el tracker con el estado de presencia actual
-     * @return true si la presencia es estable por 1.5 segundos
-     */
-    fun update(hasMaterial: Boolean): Boolean {
-        val now = System.currentTimeMillis()
-
-        if (!hasMaterial) {
-            if (hasPresence) {
-                Log.d(TAG_STAB, "❌ Material perdido, reseteando...")
-            }
-            reset()
-            return false
-        }
-
-        if (!hasPresence) {
-            // Primera detección de material
-            Log.d(TAG_STAB, "🔄 Material detectado, iniciando contador...")
-            hasPresence = true
-            presenceStartTime = now
-            isStable = false
-            return false
-        }
-
-        val elapsedTime = now - presenceStartTime
-        val remainingTime = STABILITY_DURATION_MS - elapsedTime
-
-        if (elapsedTime >= STABILITY_DURATION_MS && !isStable) {
-            isStable = true
-            Log.d(TAG_STAB, "✅ ¡PRESENCIA ESTABLE! (${elapsedTime}ms)")
-            return true
-        }
-
-        if (!isStable && remainingTime > 0) {
-            Log.d(TAG_STAB, "⏳ Esperando: ${remainingTime/1000.0}s restantes...")
-        }
-
-        return false
-    }
-
-    fun getProgress(): Float {
-        if (!hasPresence) return 0f
-        val elapsed = System.currentTimeMillis() - presenceStartTime
-        return (elapsed.toFloat() / STABILITY_DURATION_MS).coerceIn(0f, 1f)
-    }
-
-    fun isCurrentlyStable(): Boolean = isStable
-
-    fun reset() {
-        hasPresence = false
-        presenceStartTime = 0L
-        isStable = false
-    }
-}
-
 /**
  * ROI para el recorte de imagen
  */
@@ -875,6 +809,8 @@ private fun DetectionScreenGemini(
 
     // Estado del detector YOLO
     var detector by remember { mutableStateOf<WasteDetector?>(null) }
+    // Referencia al detector compartido (caliente entre visitas a la pantalla)
+    var detectorLease by remember { mutableStateOf<ModelRegistry.Lease<WasteDetector>?>(null) }
     var isDetectorReady by remember { mutableStateOf(false) }
     var detectorError by remember { mutableStateOf<String?>(null) }
 
@@ -998,12 +934,15 @@ private fun DetectionScreenGemini(
                     "labels/waste_detector_labels.txt"
                 )
 
-                val newDetector = WasteDetector(
+                val lease = WasteDetector.acquire(
                     context = context,
                     modelPath = "models/waste_detector_v2.tflite",
                     labels = labels,
-                    useGpu = true
+                    useGpu = true,
+                    autotune = true
                 )
+                detectorLease = lease
+                val newDetector = lease.value
 
                 newDetector.confidenceThreshold = 0.20f  // Más sensible para detección
                 newDetector.iouThreshold = 0.4f
@@ -1227,7 +1166,9 @@ private fun DetectionScreenGemini(
     // Limpiar al salir
     DisposableEffect(Unit) {
         onDispose {
-            detector?.close()
+            // Devolver el detector al registro (se conserva caliente un tiempo)
+            detectorLease?.close()
+            detectorLease = null
             detector = null
             geminiClassifier?.close()
             geminiClassifier = null
@@ -1688,15 +1629,43 @@ private fun CameraPreviewWithDetectionGemini(
 ) {
     val context = LocalContext.current
     var cameraProvider by remember { mutableStateOf<ProcessCameraProvider?>(null) }
-    val executor = remember { Executors.newSingleThreadExecutor() }
-    val isProcessing = remember { AtomicBoolean(false) }
+    val currentOnDetectionResult = rememberUpdatedState(onDetectionResult)
+    val currentOnBitmapCaptured = rememberUpdatedState(onBitmapCaptured)
+    // Detecciones del frame, reutilizadas (solo las toca el hilo de inferencia)
+    val detections = remember { DetectionBuffer(32) }
+    // Frames YUV convertidos a bitmaps reutilizados (sin NV21 -> JPEG -> Bitmap); dos en
+    // uso: el que se detecta y el siguiente, convertido mientras tanto
+    val frameBitmaps = remember { CameraFrameBitmaps() }
+    // Entrada de frames fuera del hilo principal y detección en un hilo propio (el
+    // intérprete no es thread-safe); solo espera el frame más reciente
+    val framePipeline = remember {
+        CameraFramePipeline<GeminiFrame>(
+            name = "detector-gemini",
+            prepare = { imageProxy ->
+                GeminiFrame(frameBitmaps.convert(imageProxy), imageProxy.imageInfo.rotationDegrees)
+            },
+            recycle = { frame -> if (frame.pooled) frameBitmaps.release(frame.bitmap) },
+            process = { frame ->
+                processFrameWithROIGemini(
+                    frame = frame,
+                    detector = detector,
+                    roiRect = roiRect,
+                    detections = detections,
+                    onResult = { result, bitmap ->
+                        currentOnDetectionResult.value(result)
+                        currentOnBitmapCaptured.value(bitmap)
+                    }
+                )
+            }
+        )
+    }
 
     DisposableEffect(Unit) {
         onDispose {
             try {
                 cameraProvider?.unbindAll()
-                executor.shutdown()
-                Log.d(TAG, "CameraPreviewWithDetectionGemini: Recursos liberados")
+                framePipeline.close()
+                Log.d(TAG, "CameraPreviewWithDetectionGemini: Recursos liberados (${framePipeline.stats})")
             } catch (e: Exception) {
                 Log.e(TAG, "Error liberando recursos: ${e.message}")
             }
@@ -1725,27 +1694,7 @@ private fun CameraPreviewWithDetectionGemini(
                         val imageAnalysis = ImageAnalysis.Builder()
                             .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
                             .build()
-                            .also {
-                                it.setAnalyzer(executor) { imageProxy ->
-                                    if (!isProcessing.getAndSet(true)) {
-                                        processImageProxyWithROIGemini(
-                                            imageProxy = imageProxy,
-                                            detector = detector,
-                                            roiRect = roiRect,
-                                            onResult = { result, bitmap ->
-                                                onDetectionResult(result)
-                                                onBitmapCaptured(bitmap)
-                                                isProcessing.set(false)
-                                            },
-                                            onError = {
-                                                isProcessing.set(false)
-                                            }
-                                        )
-                                    } else {
-                                        imageProxy.close()
-                                    }
-                                }
-                            }
+                            .also { framePipeline.bind(it) }
 
                         provider.unbindAll()
                         provider.bindToLifecycle(
@@ -1765,40 +1714,57 @@ private fun CameraPreviewWithDetectionGemini(
     )
 }
 
-private fun processImageProxyWithROIGemini(
-    imageProxy: ImageProxy,
+/**
+ * Frame de la pipeline de cámara: bitmap del pool y la rotación que lo endereza
+ */
+private class GeminiFrame(val bitmap: Bitmap, val rotationDegrees: Int) {
+    // false cuando el bitmap pasó a quien recibió la captura: ya no vuelve al pool
+    var pooled = true
+}
+
+/**
+ * Detecta sobre el ROI de un frame, en el hilo de inferencia de la pipeline de cámara
+ */
+private fun processFrameWithROIGemini(
+    frame: GeminiFrame,
     detector: WasteDetector,
     roiRect: ROIRectGemini,
-    onResult: (DetectionResult, Bitmap) -> Unit,
-    onError: () -> Unit
+    detections: DetectionBuffer,
+    onResult: (DetectionResult, Bitmap) -> Unit
 ) {
     try {
-        val bitmap = imageProxyToBitmapGemini(imageProxy)
-        if (bitmap != null) {
-            val rotatedBitmap = rotateBitmapGemini(bitmap, imageProxy.imageInfo.rotationDegrees)
-            val croppedBitmap = cropBitmapToROIGemini(rotatedBitmap, roiRect)
-
-            val result = detector.detect(croppedBitmap)
-
-            val adjustedResult = adjustDetectionsToFullImageGemini(
-                result,
-                roiRect,
-                rotatedBitmap.width,
-                rotatedBitmap.height
-            )
+        val bitmap = frame.bitmap
+        val rotatedBitmap = rotateBitmapGemini(bitmap, frame.rotationDegrees)
+        val croppedBitmap = cropBitmapToROIGemini(rotatedBitmap, roiRect)
+
+        val inferenceTime = detector.detectInto(croppedBitmap, detections)
+
+        // Ajustar coordenadas al espacio original (en el buffer, sin copiar cajas)
+        val fullWidth = rotatedBitmap.width
+        val fullHeight = rotatedBitmap.height
+        detections.mapToRegion(
+            0,
+            roiRect.left,
+            roiRect.top,
+            croppedBitmap.width.toFloat() / fullWidth,
+            croppedBitmap.height.toFloat() / fullHeight
+        )
+        val adjustedResult = DetectionResult(
+            boxes = detector.toDetections(detections, fullWidth, fullHeight),
+            inferenceTimeMs = inferenceTime,
+            fps = 1000.0 / inferenceTime,
+            imageWidth = fullWidth,
+            imageHeight = fullHeight
+        )
 
-            // Pasar el bitmap COMPLETO (no recortado) para Gemini
-            // Gemini es capaz de interpretar la imagen completa y encontrar el objeto
-            // El ROI recortado (336x448) puede ser muy pequeño o cortar el objeto
-            onResult(adjustedResult, rotatedBitmap)
-        } else {
-            onError()
-        }
+        // Pasar el bitmap COMPLETO (no recortado) para Gemini
+        // Gemini es capaz de interpretar la imagen completa y encontrar el objeto
+        // El ROI recortado (336x448) puede ser muy pequeño o cortar el objeto
+        onResult(adjustedResult, rotatedBitmap)
+        // Sin rotación el bitmap capturado es el del pool: se queda con quien lo recibió
+        if (rotatedBitmap === bitmap) frame.pooled = false
     } catch (e: Exception) {
         Log.e(TAG, "Error procesando imagen: ${e.message}", e)
-        onError()
-    } finally {
-        imageProxy.close()
     }
 }
 
@@ -1811,45 +1777,6 @@ private fun cropBitmapToROIGemini(bitmap: Bitmap, roi: ROIRectGemini): Bitmap {
     return Bitmap.createBitmap(bitmap, x, y, width, height)
 }
 
-private fun adjustDetectionsToFullImageGemini(
-    result: DetectionResult,
-    roi: ROIRectGemini,
-    fullWidth: Int,
-    fullHeight: Int
-): DetectionResult {
-    val roiOffsetX = roi.left * fullWidth
-    val roiOffsetY = roi.top * fullHeight
-
-    val adjustedBoxes = result.boxes.map { detection ->
-        val adjustedBox = RectF(
-            detection.boundingBox.left + roiOffsetX,
-            detection.boundingBox.top + roiOffsetY,
-            detection.boundingBox.right + roiOffsetX,
-            detection.boundingBox.bottom + roiOffsetY
-        )
-        Detection(
-            classIndex = detection.classIndex,
-            className = detection.className,
-            confidence = detection.confidence,
-            boundingBox = adjustedBox,
-            normalizedBox = RectF(
-                adjustedBox.left / fullWidth,
-                adjustedBox.top / fullHeight,
-                adjustedBox.right / fullWidth,
-                adjustedBox.bottom / fullHeight
-            )
-        )
-    }
-
-    return DetectionResult(
-        boxes = adjustedBoxes,
-        inferenceTimeMs = result.inferenceTimeMs,
-        fps = result.fps,
-        imageWidth = fullWidth,
-        imageHeight = fullHeight
-    )
-}
-
 private fun rotateBitmapGemini(bitmap: Bitmap, rotationDegrees: Int): Bitmap {
     if (rotationDegrees == 0) return bitmap
     val matrix = android.graphics.Matrix()
@@ -1857,47 +1784,6 @@ private fun rotateBitmapGemini(bitmap: Bitmap, rotationDegrees: Int): Bitmap {
     return Bitmap.createBitmap(bitmap, 0, 0, bitmap.width, bitmap.height, matrix, true)
 }
 
-@androidx.annotation.OptIn(androidx.camera.core.ExperimentalGetImage::class)
-private fun imageProxyToBitmapGemini(imageProxy: ImageProxy): Bitmap? {
-    return try {
-        val image = imageProxy.image ?: return null
-        val planes = image.planes
-        val yBuffer = planes[0].buffer
-        val uBuffer = planes[1].buffer
-        val vBuffer = planes[2].buffer
-
-        val ySize = yBuffer.remaining()
-        val uSize = uBuffer.remaining()
-        val vSize = vBuffer.remaining()
-
-        val nv21 = ByteArray(ySize + uSize + vSize)
-        yBuffer.get(nv21, 0, ySize)
-        vBuffer.get(nv21, ySize, vSize)
-        uBuffer.get(nv21, ySize + vSize, uSize)
-
-        val yuvImage = android.graphics.YuvImage(
-            nv21,
-            android.graphics.ImageFormat.NV21,
-            image.width,
-            image.height,
-            null
-        )
-
-        val out = java.io.ByteArrayOutputStream()
-        yuvImage.compressToJpeg(
-            android.graphics.Rect(0, 0, image.width, image.height),
-            100,  // Máxima calidad para evitar imagen borrosa en Gemini
-            out
-        )
-
-        val imageBytes = out.toByteArray()
-        android.graphics.BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.size)
-    } catch (e: Exception) {
-        Log.e(TAG, "Error convirtiendo ImageProxy a Bitmap: ${e.message}")
-        null
-    }
-}
-
 @Composable
 private fun DetectionOverlayGemini(
     detections: List<Detection>,
@@ -52,15 +52,14 @@ import androidx.core.content.ContextCompat
 import com.biowaymexico.ui.theme.BioWayColors
 import com.biowaymexico.ui.theme.BioWayGradients
 import com.biowaymexico.utils.WasteClassifierYOLO
+import com.biowaymexico.utils.vision.CameraFramePipeline
+import com.biowaymexico.utils.vision.CameraFramePixels
 import com.google.accompanist.permissions.ExperimentalPermissionsApi
 import com.google.accompanist.permissions.isGranted
 import com.google.accompanist.permissions.rememberPermissionState
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.withContext
+import kotlinx.coroutines.runBlocking
 import java.nio.ByteBuffer
-import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
 import kotlin.coroutines.resume
 import kotlin.coroutines.suspendCoroutine
@@ -96,7 +95,6 @@ fun ClasificadorScreenYOLO(
     // CameraX
     var imageCapture: ImageCapture? by remember { mutableStateOf(null) }
     var imageAnalyzer: ImageAnalysis? by remember { mutableStateOf(null) }
-    val cameraExecutor = remember { Executors.newSingleThreadExecutor() }
     var cameraProvider: ProcessCameraProvider? by remember { mutableStateOf(null) }
 
     // Permiso de cámara
@@ -121,7 +119,6 @@ fun ClasificadorScreenYOLO(
     DisposableEffect(Unit) {
         onDispose {
             classifier.close()
-            cameraExecutor.shutdown()
             cameraProvider?.unbindAll()
         }
     }
@@ -303,7 +300,37 @@ fun CameraPreviewWithAnalysis(
 ) {
     val context = LocalContext.current
     val lifecycleOwner = LocalLifecycleOwner.current
-    val scope = rememberCoroutineScope()
+    val currentIsAnalyzing = rememberUpdatedState(isAnalyzing)
+    val currentOnDetections = rememberUpdatedState(onDetections)
+
+    // Píxeles de frame reutilizados (el que se clasifica y el siguiente, convertido
+    // mientras tanto); la rotación del sensor se aplica al muestrear el tensor
+    val framePixels = remember { CameraFramePixels() }
+
+    // Entrada de frames fuera del hilo principal y clasificación en un hilo propio, solo
+    // con el frame más reciente (la conversión del siguiente se solapa con la inferencia)
+    val framePipeline = remember {
+        val mainExecutor = ContextCompat.getMainExecutor(context)
+        CameraFramePipeline<CameraFramePixels.Frame>(
+            name = "clasificador-brindador",
+            minIntervalMs = PROCESS_INTERVAL_MS,
+            prepare = { imageProxy ->
+                // SIEMPRE procesar si el clasificador está listo y el análisis está activo
+                if (currentIsAnalyzing.value && classifier.isReady()) framePixels.convert(imageProxy) else null
+            },
+            recycle = { frame -> framePixels.release(frame) },
+            process = { frame ->
+                processFrame(frame, classifier) { detections ->
+                    // Actualizar detecciones en tiempo real
+                    mainExecutor.execute { currentOnDetections.value(detections) }
+                }
+            }
+        )
+    }
+
+    DisposableEffect(Unit) {
+        onDispose { framePipeline.close() }
+    }
 
     AndroidView(
         factory = { ctx ->
@@ -335,18 +362,7 @@ fun CameraPreviewWithAnalysis(
                     .build()
 
                 // Analizador que procesa cada frame de la cámara
-                imageAnalyzer.setAnalyzer(
-                    ContextCompat.getMainExecutor(ctx)
-                ) { imageProxy ->
-                    // SIEMPRE procesar si el clasificador está listo y el análisis está activo
-                    if (isAnalyzing && classifier.isReady()) {
-                        processImage(imageProxy, classifier, scope) { detections ->
-                            onDetections(detections)  // Actualizar detecciones en tiempo real
-                        }
-                    } else {
-                        imageProxy.close()
-                    }
-                }
+                framePipeline.bind(imageAnalyzer)
 
                 onAnalyzerReady(imageAnalyzer)
 
@@ -372,58 +388,31 @@ fun CameraPreviewWithAnalysis(
     )
 }
 
-// Variable para controlar el throttling
-private var lastProcessTime = 0L
+// Intervalo mínimo entre frames aceptados por la pipeline de cámara
 private const val PROCESS_INTERVAL_MS = 100L  // Procesar cada 100ms (10 FPS)
 
-// Procesar imagen del análisis en tiempo real
-private fun processImage(
-    imageProxy: ImageProxy,
+// Procesar frame del análisis en tiempo real (en el hilo de inferencia de la pipeline)
+private fun processFrame(
+    frame: CameraFramePixels.Frame,
     classifier: WasteClassifierYOLO,
-    scope: CoroutineScope,
     onDetections: (List<WasteClassifierYOLO.Detection>) -> Unit
 ) {
-    val currentTime = System.currentTimeMillis()
+    try {
+        // Log para debug
+        Log.d("YOLODebug", "Image rotation: ${frame.rotationDegrees} degrees")
+        Log.d("YOLODebug", "Image size: ${frame.width} x ${frame.height}")
 
-    // Throttling: procesar solo si ha pasado suficiente tiempo
-    if (currentTime - lastProcessTime < PROCESS_INTERVAL_MS) {
-        imageProxy.close()
-        return
-    }
-
-    lastProcessTime = currentTime
-
-    scope.launch {
-        try {
-            // Convertir ImageProxy a Bitmap y aplicar rotación si es necesaria
-            val bitmap = imageProxy.toBitmap()
-            val rotation = imageProxy.imageInfo.rotationDegrees
-
-            // Log para debug
-            Log.d("YOLODebug", "Image rotation: $rotation degrees")
-            Log.d("YOLODebug", "Image size: ${bitmap.width} x ${bitmap.height}")
-
-            // Aplicar rotación para que coincida con la vista
-            val rotatedBitmap = if (rotation != 0) {
-                rotateBitmap(bitmap, rotation.toFloat())
-            } else {
-                bitmap
-            }
-
-            // Procesar en background thread
-            val result = withContext(Dispatchers.Default) {
-                classifier.classifyImage(rotatedBitmap)
-            }
+        // La rotación para que coincida con la vista se aplica al muestrear el frame
+        val transform = frame.transform()
 
-            // Actualizar UI con las detecciones
-            withContext(Dispatchers.Main) {
-                onDetections(result.detections)
-            }
-        } catch (e: Exception) {
-            // Ignorar errores para mantener el flujo continuo
-        } finally {
-            imageProxy.close()
+        // El hilo de la pipeline espera al clasificador: un frame a la vez
+        val result = runBlocking {
+            classifier.classifyFrame(frame.pixels, frame.width, transform)
         }
+
+        onDetections(result.detections)
+    } catch (e: Exception) {
+        // Ignorar errores para mantener el flujo continuo
     }
 }
 
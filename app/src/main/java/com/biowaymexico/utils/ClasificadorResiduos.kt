@@ -3,12 +3,10 @@ package com.biowaymexico.utils
 import android.content.Context
 import android.graphics.Bitmap
 import android.util.Log
+import com.biowaymexico.utils.vision.ModelRegistry
 import org.tensorflow.lite.Interpreter
-import java.io.FileInputStream
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
-import java.nio.MappedByteBuffer
-import java.nio.channels.FileChannel
 
 /**
  * Clasificador de residuos utilizando TensorFlow Lite
@@ -17,6 +15,9 @@ import java.nio.channels.FileChannel
 class ClasificadorResiduos(context: Context) {
     private var interpreter: Interpreter? = null
 
+    // Referencia al intérprete compartido en ModelRegistry
+    private var interpreterLease: ModelRegistry.Lease<Interpreter>? = null
+
     // Etiquetas de clasificación (orden alfabético común en modelos de reciclaje)
     // Orden actualizado basado en nomenclatura estándar
     private val etiquetas = listOf(
@@ -34,11 +35,17 @@ class ClasificadorResiduos(context: Context) {
 
     companion object {
         private const val TAG = "ClasificadorResiduos"
+        private const val MODEL_PATH = "modelo_residuos.tflite"
     }
 
     init {
         try {
-            interpreter = Interpreter(cargarModelo(context))
+            // El modelo se mapea una sola vez y el intérprete se comparte (caliente) entre visitas
+            val lease = ModelRegistry.acquire("$TAG:$MODEL_PATH") {
+                Interpreter(ModelRegistry.mapModel(context, MODEL_PATH))
+            }
+            interpreterLease = lease
+            interpreter = lease.value
         } catch (e: Exception) {
             e.printStackTrace()
         }
@@ -137,25 +144,14 @@ class ClasificadorResiduos(context: Context) {
         return buffer
     }
 
-    /**
-     * Carga el modelo TFLite desde assets
-     */
-    private fun cargarModelo(context: Context): MappedByteBuffer {
-        val fileDescriptor = context.assets.openFd("modelo_residuos.tflite")
-        val inputStream = FileInputStream(fileDescriptor.fileDescriptor)
-        val fileChannel = inputStream.channel
-        val startOffset = fileDescriptor.startOffset
-        val declaredLength = fileDescriptor.declaredLength
-        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength)
-    }
-
     /**
      * Libera recursos del intérprete
      * Llamar cuando ya no se necesite el clasificador
      */
     fun cerrar() {
-        interpreter?.close()
         interpreter = null
+        interpreterLease?.close()
+        interpreterLease = null
     }
 
     /**
@@ -5,42 +5,83 @@ import android.graphics.Bitmap
 import android.graphics.RectF
 import android.util.Log
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import kotlinx.coroutines.withContext
-import org.tensorflow.lite.DataType
-import org.tensorflow.lite.Interpreter
-import org.tensorflow.lite.gpu.CompatibilityList
-import org.tensorflow.lite.gpu.GpuDelegate
-import org.tensorflow.lite.support.common.ops.NormalizeOp
-import org.tensorflow.lite.support.image.ImageProcessor
-import org.tensorflow.lite.support.image.TensorImage
-import org.tensorflow.lite.support.image.ops.ResizeOp
-import org.tensorflow.lite.support.tensorbuffer.TensorBuffer
+import com.biowaymexico.utils.vision.FrameTiler
+import com.biowaymexico.utils.vision.FrameTransform
+import com.biowaymexico.utils.vision.toNormalizedRect
+import com.biowaymexico.utils.vision.HotSwapModel
+import com.biowaymexico.utils.vision.InferenceAutotuner
+import com.biowaymexico.utils.vision.InferenceProfile
+import com.biowaymexico.utils.vision.InferenceAllocationTracker
+import com.biowaymexico.utils.vision.InterpreterPool
+import com.biowaymexico.utils.vision.LetterboxGeometry
+import com.biowaymexico.utils.vision.ModelRegistry
+import com.biowaymexico.utils.vision.ModelStore
+import com.biowaymexico.utils.vision.OutputTensorArena
+import com.biowaymexico.utils.vision.RotatedTensorSource
+import com.biowaymexico.utils.vision.TensorQuantization
+import com.biowaymexico.utils.vision.TensorRecorder
+import com.biowaymexico.utils.vision.TensorRecording
+import com.biowaymexico.utils.vision.TfliteBackend
+import com.biowaymexico.utils.vision.TtaPostprocessor
+import com.biowaymexico.utils.vision.YoloBatchSlot
+import com.biowaymexico.utils.vision.YoloInferenceSlot
+import com.ultralytics.yolo.DetectionBuffer
+import com.ultralytics.yolo.YoloOutputDecoder
 import java.io.BufferedReader
+import java.io.File
 import java.io.InputStreamReader
-import java.nio.ByteBuffer
-import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.util.IdentityHashMap
+import kotlin.math.nextUp
 
 /**
  * Clasificador de residuos usando YOLOv8 (modelo de clasificacionBioWay)
  * Detecta 12 categorías de residuos con bounding boxes
  * Modelo más eficiente: 3MB vs 43MB del modelo anterior
+ * Acepta también exportaciones cuantizadas por completo (entrada/salida UINT8 o INT8)
+ *
+ * Si [modelStore] tiene versiones nuevas del modelo (instaladas en el almacenamiento de la
+ * app), [checkForModelUpdate] las carga en segundo plano y las activa entre frames sin
+ * detener el análisis; una versión que empeora latencia o errores se revierte sola.
  */
-class WasteClassifierYOLO(private val context: Context) {
+class WasteClassifierYOLO(
+    private val context: Context,
+    private val modelPath: String = MODEL_PATH,
+    private val modelStore: ModelStore? = ModelStore(context, STORE_NAME)
+) {
 
     companion object {
         private const val TAG = "WasteClassifierYOLO"
         private const val MODEL_PATH = "models/best.tflite"
+        const val STORE_NAME = "waste_classifier"  // files/models/waste_classifier/v<N>/
         private const val LABELS_PATH = "labels/labels.txt"
         private const val INPUT_SIZE = 320
         const val CONFIDENCE_THRESHOLD = 0.45f  // Public para usar desde pantallas
         const val CONFIDENCE_THRESHOLD_DISTANT = 0.35f  // Umbral más bajo para objetos distantes/pequeños
-        private const val IOU_THRESHOLD = 0.50f
-        private const val MAX_DETECTIONS = 100
-        private const val NUM_THREADS = 4
+        const val CASCADE_CONFIDENCE_THRESHOLD = 0.70f  // Confianza para cortar la cascada de TTA
+        const val CASCADE_MARGIN_THRESHOLD = 0.25f  // Ventaja mínima sobre la segunda clase
+        const val CASCADE_AGREEMENT_PASSES = 3  // Con WBF: pasadas que deben coincidir para cortar la cascada
+        const val CASCADE_AGREEMENT_CONFIDENCE = 0.40f  // Con WBF: confianza fusionada mínima en ese caso
+        private const val NMS_INITIAL_CAPACITY = 2048
+        private const val PASS_INITIAL_CAPACITY = 256  // Candidatos de una pasada o un mosaico
 
         // Escalas para detección multi-escala (mejora reconocimiento a distancia)
         private val MULTI_SCALE_FACTORS = listOf(1.0f, 1.5f, 2.0f)  // Original, 1.5x, 2x
         private const val SMALL_OBJECT_THRESHOLD = 0.15f  // Objetos que ocupan menos del 15% del frame
+
+        // Exportaciones opcionales del mismo modelo a otra resolución (yolo export imgsz=N).
+        // La exportación TFLite fija la resolución en el grafo, así que cada una es un archivo
+        // aparte; si no está en assets, el nivel usa el modelo principal
+        private val TIER_MODEL_PATHS = mapOf(
+            DetectionTier.FAST to "models/best_256.tflite",
+            DetectionTier.DETAILED to "models/best_416.tflite"
+        )
     }
 
     // Threshold personalizable (solo para Bote)
@@ -53,65 +94,214 @@ class WasteClassifierYOLO(private val context: Context) {
     // Umbral de confianza para objetos distantes (más permisivo)
     var distantObjectThreshold = CONFIDENCE_THRESHOLD_DISTANT
 
-    private var interpreter: Interpreter? = null
+    // Modo cascada: empieza con la pasada más barata (escala 1, sin rotar) y solo agrega
+    // rotaciones y después escalas si el frame es ambiguo
+    var cascadeMode = false
+
+    // Condiciones de salida temprana de la cascada: confianza de la mejor detección y
+    // margen sobre la mejor detección de otra clase
+    var cascadeConfidenceThreshold = CASCADE_CONFIDENCE_THRESHOLD
+    var cascadeMarginThreshold = CASCADE_MARGIN_THRESHOLD
+
+    // Cómo se combinan las detecciones de rotaciones, escalas y mosaicos
+    var mergeMode = MergeMode.NMS
+
+    // Con WBF la cascada también se corta cuando cascadeAgreementPasses pasadas coinciden en
+    // la mejor detección y su confianza fusionada llega a cascadeAgreementConfidence
+    var cascadeAgreementPasses = CASCADE_AGREEMENT_PASSES
+    var cascadeAgreementConfidence = CASCADE_AGREEMENT_CONFIDENCE
+
+    // Modo mosaicos: en multi-escala, en lugar de recortar el centro y ampliarlo, se divide
+    // el frame (o tileRegion) en mosaicos superpuestos de 320x320 a resolución nativa
+    var tiledMode = false
+
+    // Región normalizada (0-1) a cubrir con mosaicos; null = frame completo
+    var tileRegion: RectF? = null
+
+    // Mosaicos y sus detecciones (en espacio del frame) del último frame en que cambiaron
+    private val frameTiler = FrameTiler(INPUT_SIZE)
+    private var tileCacheThreshold = Float.NaN
+    private var tileDetections = emptyArray<DetectionBuffer>()
+
+    // Píxeles ARGB del frame, reutilizados entre frames para muestrear los mosaicos
+    private var framePixels = IntArray(0)
+
+    // Etiquetas del motor con el que se procesa el frame actual
     private var labels: List<String> = emptyList()
-    private var gpuDelegate: GpuDelegate? = null
+
+    // Motor activo (compartido en ModelRegistry: modelo + perfil + pool caliente),
+    // intercambiable en caliente por versiones nuevas de modelStore
+    private var engines: HotSwapModel<YoloEngine>? = null
+
+    // Motor al que están ligados los tensores por frame (fuentes rotadas, caché de
+    // mosaicos); cambia cuando un swap activa otra versión
+    private var boundEngine: YoloEngine? = null
+
+    // Modelo mapeado, conservado para crear intérpretes adicionales (p. ej. batch)
+    private var modelBuffer: MappedByteBuffer? = null
+
+    /** Versión del modelo en uso: 0 = assets, N = versión de modelStore */
+    val modelVersion: Int get() = engines?.version ?: 0
+
+    // Configuración de intérprete medida en este dispositivo (delegado, hilos, FP16)
+    var inferenceProfile: InferenceProfile? = null
+        private set
+
+    // Tamaño de batch para TTA: 1 = una invocación por vista (secuencial por intérprete),
+    // N > 1 = las vistas aumentadas se agrupan en invocaciones de N imágenes (solo CPU)
+    var ttaBatchSize = 1
+
+    // Pools de intérpretes redimensionados a [ttaBatchSize, N, N, 3], creados bajo demanda,
+    // uno por modelo (principal y variantes) para alternar niveles sin reconstruirlos
+    private val batchPools = IdentityHashMap<MappedByteBuffer, InterpreterPool<YoloBatchSlot>>()
+    private val batchPoolMutex = Mutex()
+
+    // Variantes de otra resolución por nivel (ver TIER_MODEL_PATHS), cargadas y calentadas
+    // en initialize; solo se usan mientras el modelo principal es el de assets
+    private val tierEngines = mutableMapOf<DetectionTier, ModelRegistry.Lease<YoloEngine>>()
+
+    // Tensor base letterboxeado por escala; las rotaciones de TTA se generan permutándolo.
+    // Se reutiliza entre frames, por eso classifyImage se serializa con frameMutex.
+    // rotatedSources son las del motor del frame en curso, tomadas de sourcesByInput
+    // (una lista por resolución y cuantización de entrada)
+    private var rotatedSources: List<RotatedTensorSource> = emptyList()
+    private val sourcesByInput = HashMap<Pair<Int, TensorQuantization>, MutableList<RotatedTensorSource>>()
+    private val frameMutex = Mutex()
+
+    // close() pedido: lo completa quien tenga frameMutex al soltarlo (ver closeIfRequested).
+    // closed se lee y escribe bajo frameMutex
+    @Volatile
+    private var closeRequested = false
+    private var closed = false
+
+    // Parseo, transformaciones, NMS/WBF y criterio de la cascada (merge solo bajo frameMutex)
+    private val postprocessor = TtaPostprocessor(NMS_INITIAL_CAPACITY)
+
+    // Grabación de tensores crudos para replay en la JVM (solo builds debug; ver openRecorder).
+    // recordingFrame es el frame en curso, fijado bajo frameMutex
+    var recorder: TensorRecorder? = null
+    private var recordingFrame: TensorRecorder.Frame? = null
+
+    // Resolución del motor del frame en curso, para su cubeta de latencia (bajo frameMutex)
+    private var frameInputSize = 0
+
+    // Detecciones de cada pasada (cada pasada paralela escribe solo en la suya) y del frame
+    // fusionado. Se reutilizan entre frames: parseo, transformaciones y NMS/WBF trabajan
+    // sobre ellas y solo las detecciones finales se convierten en Detection
+    private var passBuffers = emptyArray<DetectionBuffer>()
+    private val frameDetections = DetectionBuffer(NMS_INITIAL_CAPACITY)
+
+    /**
+     * Fusión de las detecciones de todas las pasadas de un frame:
+     * - NMS: se queda la caja más confiable de cada grupo de duplicados (el resto se descarta)
+     * - WBF: promedia coordenadas y confianza de las cajas que coinciden, ponderadas por
+     *   confianza, y descuenta las que pocas pasadas vieron (ver BoxFusion)
+     */
+    enum class MergeMode { NMS, WBF }
+
+    /**
+     * Nivel de detalle de un frame, elegido por la pantalla según su fase:
+     * - FAST: una sola pasada (escala 1, sin rotar) con la variante de baja resolución si
+     *   existe; para barrer la escena mientras no hay objeto
+     * - STANDARD: la configuración de TTA del clasificador con el modelo principal
+     * - DETAILED: para confirmar sobre el recorte del zoom: la variante de alta resolución
+     *   con rotaciones y cascada, sin escalas ni mosaicos (el recorte ya amplía el objeto);
+     *   sin esa variante es igual a STANDARD
+     */
+    enum class DetectionTier { FAST, STANDARD, DETAILED }
 
     // Data class para resultados de detección
     data class Detection(
         val className: String,
         val confidence: Float,
         val boundingBox: RectF,
-        val classId: Int
+        val classId: Int,
+        val agreement: Int = 1  // Pasadas que coinciden en esta detección (WBF); 1 con NMS
     )
 
     data class ClassificationResult(
         val detections: List<Detection>,
-        val inferenceTime: Long
+        val inferenceTime: Long,
+        val passesUsed: Int = 1,  // Pasadas de inferencia (escala x rotación) usadas en este frame
+        val passesAvailable: Int = 1  // Pasadas que habría usado el TTA completo
     )
 
-    // Data class para información de preprocesamiento
-    private data class PreprocessingInfo(
-        val scaleFactor: Float,
-        val xOffset: Float,
-        val yOffset: Float
+    // Una vista aumentada (escala + rotación) con su umbral de confianza
+    private data class TTAPass(
+        val scaleIndex: Int,
+        val scale: Float,
+        val rotation: Float,
+        val threshold: Float
     )
 
+    // Umbrales inmutables por llamada: se capturan al inicio de classifyImage para que
+    // las pasadas paralelas no dependan de propiedades que la UI puede cambiar
+    private data class InferenceThresholds(
+        val confidence: Float,
+        val distant: Float,
+        val cascadeConfidence: Float,
+        val cascadeMargin: Float,
+        val cascadeAgreement: Int,  // 0 = sin regla de coincidencia (NMS)
+        val cascadeAgreementConfidence: Float
+    ) {
+        fun forScale(scale: Float): Float = if (scale > 1.0f) distant else confidence
+    }
+
+    // Motor compartido entre instancias del clasificador: lo que es caro de crear
+    // (modelo mapeado, perfil medido, intérpretes y delegados) junto con las etiquetas
+    // de su versión. La configuración de cada pantalla (umbrales, modos de TTA) y los
+    // tensores por frame siguen en cada instancia
+    private class YoloEngine(
+        val model: MappedByteBuffer,
+        val labels: List<String>,
+        val profile: InferenceProfile,
+        val inputSize: Int,
+        val inputQuantization: TensorQuantization,
+        val pool: InterpreterPool<YoloInferenceSlot>
+    ) : AutoCloseable {
+
+        /**
+         * Una inferencia por slot para que el primer frame real no pague la
+         * inicialización perezosa del delegado y de XNNPACK
+         */
+        suspend fun warmUp() {
+            repeat(pool.size) {
+                pool.withSlot { slot -> slot.run() }
+            }
+        }
+
+        override fun close() = pool.close()
+    }
+
     /**
-     * Inicializa el clasificador, cargando modelo y labels
+     * Inicializa el clasificador, cargando modelo y labels.
+     * Usa la última versión aceptada de modelStore si existe; si no, el modelo de assets.
+     * Si otra pantalla ya cargó el mismo modelo (o lo hizo hace poco), reutiliza sus
+     * intérpretes calientes desde ModelRegistry.
      */
     suspend fun initialize() = withContext(Dispatchers.IO) {
         try {
-            // Cargar labels
-            labels = loadLabels()
-            Log.d(TAG, "Labels cargados: ${labels.size} categorías")
-
-            // Cargar modelo
-            val modelBuffer = loadModelFile()
-
-            // Configurar opciones del intérprete
-            val options = Interpreter.Options().apply {
-                setNumThreads(NUM_THREADS)
-
-                // Intentar usar GPU si está disponible
-                val compatList = CompatibilityList()
-                if (compatList.isDelegateSupportedOnThisDevice) {
-                    try {
-                        val delegateOptions = compatList.bestOptionsForThisDevice
-                        gpuDelegate = GpuDelegate(delegateOptions)
-                        addDelegate(gpuDelegate)
-                        Log.d(TAG, "GPU Delegate habilitado")
-                    } catch (e: Exception) {
-                        Log.w(TAG, "No se pudo habilitar GPU, usando CPU", e)
-                        setUseXNNPACK(true)
+            if (engines == null) {
+                val store = modelStore
+                val installed = store?.find(store.activeVersion)
+                val installedLease = installed?.let { acquirePackage(it) }
+                val lease = installedLease ?: ModelRegistry.acquire("$TAG:$modelPath") {
+                    createEngine(ModelRegistry.mapModel(context, modelPath), loadLabels())
+                }
+                val version = if (installed != null && installedLease != null) installed.version else 0
+
+                engines = HotSwapModel(lease, version).apply {
+                    onVerdict = { candidate, accepted ->
+                        if (accepted) store?.markActive(candidate) else store?.markRejected(candidate)
                     }
-                } else {
-                    setUseXNNPACK(true)
-                    Log.d(TAG, "GPU no disponible, usando CPU con XNNPACK")
                 }
             }
 
-            interpreter = Interpreter(modelBuffer, options)
+            val engine = engines!!.current
+            bindEngine(engine)
+            Log.d(TAG, "Labels cargados: ${labels.size} categorías (modelo v$modelVersion)")
+
+            loadTierEngines()
 
             // Log información del modelo
             printModelInfo()
@@ -123,507 +313,777 @@ class WasteClassifierYOLO(private val context: Context) {
         }
     }
 
-    // Modo de TTA: false = 2 rotaciones (rápido), true = 4 rotaciones (completo)
-    var fullTTAMode = false
-
     /**
-     * Clasifica una imagen y retorna las detecciones
-     * Usa Test-Time Augmentation (TTA) con múltiples rotaciones para detección invariante a orientación
-     * Opcionalmente usa Multi-Scale Detection para mejorar reconocimiento a distancia
+     * Busca en modelStore una versión más nueva que la activa; si la hay, la valida,
+     * crea y calienta sus intérpretes en segundo plano y la activa entre dos frames.
+     * El análisis continúa con el modelo actual mientras tanto.
+     *
+     * @return true si se activó una versión nueva (queda a prueba; ver [HotSwapModel])
      */
-    suspend fun classifyImage(bitmap: Bitmap): ClassificationResult = withContext(Dispatchers.IO) {
-        val startTime = System.currentTimeMillis()
-
-        requireNotNull(interpreter) { "El clasificador no ha sido inicializado" }
-
-        val allDetections = mutableListOf<Detection>()
-
-        // Si está habilitado el modo multi-escala, ejecutar a diferentes escalas
-        val scales = if (multiScaleMode) MULTI_SCALE_FACTORS else listOf(1.0f)
-
-        for (scale in scales) {
-            // Escalar imagen si es necesario
-            val scaledBitmap = if (scale != 1.0f) {
-                scaleAndCropCenter(bitmap, scale)
-            } else {
-                bitmap
-            }
-
-            // TTA: 2 rotaciones (rápido) o 4 rotaciones (completo)
-            val rotations = if (fullTTAMode) {
-                listOf(0f, 90f, 180f, 270f)  // Completo: 4 rotaciones
-            } else {
-                listOf(0f, 90f, 180f)  // Rápido: 3 rotaciones (cubre la mayoría de casos)
-            }
-
-            for (rotation in rotations) {
-                // Rotar imagen
-                val rotatedBitmap = if (rotation != 0f) {
-                    rotateBitmapForTTA(scaledBitmap, rotation)
-                } else {
-                    scaledBitmap
-                }
-
-                // Clasificar imagen rotada con umbral ajustado por escala
-                // Para escalas mayores (zoom), usar umbral más permisivo ya que son objetos distantes
-                val originalThreshold = confidenceThreshold
-                if (scale > 1.0f) {
-                    confidenceThreshold = distantObjectThreshold
-                }
-
-                val detections = classifySingleOrientation(rotatedBitmap)
-
-                // Restaurar umbral
-                confidenceThreshold = originalThreshold
-
-                // Transformar detecciones de vuelta al espacio original
-                val transformedDetections = detections.map { detection ->
-                    val rotationTransformed = transformDetectionBack(detection, rotation, scaledBitmap.width, scaledBitmap.height)
-                    // Si usamos escala, transformar coordenadas al espacio original
-                    if (scale != 1.0f) {
-                        transformDetectionFromScale(rotationTransformed, scale)
-                    } else {
-                        rotationTransformed
-                    }
-                }
+    suspend fun checkForModelUpdate(): Boolean = withContext(Dispatchers.IO) {
+        val store = modelStore ?: return@withContext false
+        val models = engines ?: return@withContext false
+        if (models.inTrial) return@withContext false
+
+        val update = store.latestValid(newerThan = models.version) ?: return@withContext false
+        Log.i(TAG, "Cargando modelo ${update.key} en segundo plano...")
+
+        val lease = acquirePackage(update)
+        if (lease == null) {
+            store.markRejected(update.version)
+            return@withContext false
+        }
+        try {
+            lease.value.warmUp()
+        } catch (e: Exception) {
+            Log.e(TAG, "Falló el calentamiento de ${update.key}", e)
+            lease.close()
+            store.markRejected(update.version)
+            return@withContext false
+        }
 
-                allDetections.addAll(transformedDetections)
+        models.swap(lease, update.version)
+        true
+    }
 
-                // Reciclar bitmap rotado si no es el original/escalado
-                if (rotation != 0f && rotatedBitmap != scaledBitmap) {
-                    rotatedBitmap.recycle()
+    /**
+     * Carga y calienta las variantes de [TIER_MODEL_PATHS] que estén en assets, para que
+     * cambiar de nivel entre frames no pague la creación ni la primera inferencia
+     */
+    private suspend fun loadTierEngines() {
+        // Las variantes son exportaciones de best.tflite; otro modelo principal no las tiene
+        if (modelPath != MODEL_PATH) return
+        for ((tier, path) in TIER_MODEL_PATHS) {
+            if (tier in tierEngines || !assetExists(path)) continue
+            val lease = try {
+                ModelRegistry.acquire("$TAG:$path") {
+                    createEngine(ModelRegistry.mapModel(context, path), loadLabels())
+                        .also { requireCompatible(it, inputSize = null) }
                 }
+            } catch (e: Exception) {
+                Log.e(TAG, "No se pudo cargar la variante $path", e)
+                continue
             }
-
-            // Reciclar bitmap escalado si no es el original
-            if (scale != 1.0f && scaledBitmap != bitmap) {
-                scaledBitmap.recycle()
+            try {
+                lease.value.warmUp()
+            } catch (e: Exception) {
+                Log.e(TAG, "Falló el calentamiento de $path", e)
+                lease.close()
+                continue
             }
+            tierEngines[tier] = lease
+            Log.i(TAG, "Variante $tier: $path (${lease.value.inputSize}px, ${lease.value.profile})")
         }
+    }
 
-        // Aplicar NMS global para eliminar duplicados entre rotaciones y escalas
-        val nmsDetections = nonMaxSuppressionGlobal(allDetections)
-
-        val inferenceTime = System.currentTimeMillis() - startTime
-        val scalesInfo = if (multiScaleMode) " + ${scales.size} escalas" else ""
-        Log.d(TAG, "Clasificación completada: ${nmsDetections.size} detecciones en ${inferenceTime}ms$scalesInfo")
-
-        ClassificationResult(nmsDetections, inferenceTime)
+    private fun assetExists(path: String): Boolean {
+        val directory = path.substringBeforeLast('/', "")
+        return context.assets.list(directory)?.contains(path.substringAfterLast('/')) == true
     }
 
     /**
-     * Escala y recorta el centro de una imagen para detección multi-escala.
-     * Por ejemplo, scale=2.0 toma el 50% central de la imagen y lo amplía.
+     * Motor para [tier]: su variante si está cargada y el modelo principal es el de assets
+     * (una versión de modelStore no trae variantes); si no, [main]
      */
-    private fun scaleAndCropCenter(bitmap: Bitmap, scale: Float): Bitmap {
-        // Calcular el área central a recortar
-        val cropWidth = (bitmap.width / scale).toInt()
-        val cropHeight = (bitmap.height / scale).toInt()
-        val cropX = (bitmap.width - cropWidth) / 2
-        val cropY = (bitmap.height - cropHeight) / 2
+    private fun engineFor(tier: DetectionTier, main: YoloEngine): YoloEngine =
+        tierEngines[tier]?.value?.takeIf { modelVersion == 0 } ?: main
 
-        // Recortar la región central
-        val cropped = Bitmap.createBitmap(
-            bitmap,
-            cropX.coerceAtLeast(0),
-            cropY.coerceAtLeast(0),
-            cropWidth.coerceAtMost(bitmap.width - cropX),
-            cropHeight.coerceAtMost(bitmap.height - cropY)
-        )
+    /**
+     * Fuentes rotadas (al menos [count]) para la resolución y cuantización de [engine]
+     */
+    private fun sourcesFor(engine: YoloEngine, count: Int): List<RotatedTensorSource> {
+        val sources = sourcesByInput.getOrPut(engine.inputSize to engine.inputQuantization) { mutableListOf() }
+        while (sources.size < count) sources += RotatedTensorSource(engine.inputSize, engine.inputQuantization)
+        return sources
+    }
 
-        // Escalar de vuelta al tamaño original para mantener la resolución del modelo
-        return Bitmap.createScaledBitmap(cropped, bitmap.width, bitmap.height, true).also {
-            if (cropped != it) cropped.recycle()
+    /**
+     * Motor de una versión de modelStore; null si no es compatible con el clasificador
+     */
+    private fun acquirePackage(update: ModelStore.ModelPackage): ModelRegistry.Lease<YoloEngine>? {
+        return try {
+            ModelRegistry.acquire("$TAG:${update.key}") {
+                createEngine(ModelRegistry.mapFile(update.modelFile), update.labels).also { requireCompatible(it) }
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "No se pudo cargar ${update.key}", e)
+            null
         }
     }
 
     /**
-     * Transforma coordenadas de detección del espacio escalado al espacio original.
+     * Liga los tensores por frame al motor [engine]. Se llama al inicio de cada frame
+     * (bajo frameMutex), así que un swap surte efecto exactamente entre dos frames.
      */
-    private fun transformDetectionFromScale(detection: Detection, scale: Float): Detection {
-        // Las coordenadas en el espacio escalado corresponden al centro de la imagen original
-        // Necesitamos mapearlas de vuelta
-        val cropFactor = 1.0f / scale
-        val offset = (1.0f - cropFactor) / 2.0f
-
-        val box = detection.boundingBox
-        val newLeft = offset + box.left * cropFactor
-        val newTop = offset + box.top * cropFactor
-        val newRight = offset + box.right * cropFactor
-        val newBottom = offset + box.bottom * cropFactor
+    private fun bindEngine(engine: YoloEngine) {
+        if (boundEngine === engine) return
+        val previous = boundEngine
+        boundEngine = engine
+        labels = engine.labels
+        modelBuffer = engine.model
+        inferenceProfile = engine.profile
+        // Las detecciones guardadas por mosaico son del modelo anterior
+        frameTiler.invalidate()
+        if (previous != null) Log.i(TAG, "Modelo v$modelVersion activo desde este frame")
+    }
 
-        return Detection(
-            className = detection.className,
-            confidence = detection.confidence,
-            boundingBox = RectF(
-                newLeft.coerceIn(0f, 1f),
-                newTop.coerceIn(0f, 1f),
-                newRight.coerceIn(0f, 1f),
-                newBottom.coerceIn(0f, 1f)
-            ),
-            classId = detection.classId
-        )
+    /**
+     * Carga el modelo y crea el pool de intérpretes (solo cuando no hay uno caliente)
+     */
+    private fun createEngine(modelBuffer: MappedByteBuffer, labels: List<String>): YoloEngine {
+        // Resolución y tipo de entrada del modelo: float32 o cuantizado (UINT8/INT8)
+        val input = TfliteBackend(modelBuffer).use { probe -> probe.input }
+        val inputSize = input.shape[1]
+
+        // Delegado, hilos, precisión y tamaño del pool medidos en este dispositivo (solo
+        // la primera vez por modelo; después se lee el perfil guardado). Los modelos
+        // cuantizados solo prueban CPU: XNNPACK ejecuta INT8 nativo
+        val profile = InferenceAutotuner(context).profileFor(modelBuffer)
+
+        // La GPU serializa las inferencias, así que con GPU se usa un solo intérprete;
+        // en CPU, el pool paralelo con el tamaño y los hilos de mayor throughput medido
+        val slots = try {
+            createSlots(modelBuffer, profile, inputSize)
+        } catch (e: Exception) {
+            Log.w(TAG, "No se pudo crear el perfil $profile, usando CPU", e)
+            createSlots(modelBuffer, InferenceProfile.DEFAULT_CPU, inputSize)
+        }
+        return YoloEngine(modelBuffer, labels, profile, inputSize, input.quantization, InterpreterPool(slots))
     }
 
     /**
-     * Clasificación en una sola orientación (sin TTA)
+     * Una versión descargada con otra entrada u otras clases no puede reemplazar al
+     * modelo actual: se cierra y se rechaza. Las variantes por nivel pueden tener otra
+     * resolución ([inputSize] null) pero deben ser cuadradas y con las mismas clases
      */
-    private fun classifySingleOrientation(bitmap: Bitmap): List<Detection> {
-        // Preprocesar imagen con letterboxing
-        val (processedImage, preprocessingInfo) = preprocessImage(bitmap)
+    private fun requireCompatible(engine: YoloEngine, inputSize: Int? = INPUT_SIZE) {
+        val metadata = engine.pool.metadataSlot
+        val inputShape = metadata.backend.input.shape
+        val numClasses = metadata.outputDecoder.numClasses
+        val sizeMatches = if (inputSize != null) inputShape[1] == inputSize else inputShape[1] == inputShape[2]
+        if (!sizeMatches || numClasses != engine.labels.size) {
+            engine.close()
+            throw IllegalArgumentException(
+                "Modelo incompatible: entrada ${inputShape.contentToString()}, $numClasses clases, ${engine.labels.size} etiquetas"
+            )
+        }
+    }
 
-        // Preparar buffer de salida
-        val outputBuffer = ByteBuffer.allocateDirect(4 * 16 * 2100)
-        outputBuffer.order(ByteOrder.nativeOrder())
+    /**
+     * Crea los slots del pool según el perfil de inferencia
+     */
+    private fun createSlots(model: MappedByteBuffer, profile: InferenceProfile, inputSize: Int): List<YoloInferenceSlot> {
+        val poolSize = if (profile.useGpu) 1 else profile.poolSize
+        val created = mutableListOf<YoloInferenceSlot>()
+        try {
+            repeat(poolSize) {
+                created += YoloInferenceSlot(TfliteBackend.create(model, profile), inputSize)
+            }
+        } catch (e: Exception) {
+            created.forEach { it.close() }
+            throw e
+        }
+        Log.d(TAG, "Pool de intérpretes: $poolSize x $profile (${inputSize}px)")
+        return created
+    }
 
-        // Ejecutar inferencia
-        interpreter?.run(processedImage.buffer, outputBuffer)
+    // Modo de TTA: false = 2 rotaciones (rápido), true = 4 rotaciones (completo)
+    var fullTTAMode = false
 
-        // Parsear salida del modelo
-        outputBuffer.rewind()
-        val detections = parseOutput(
-            outputBuffer,
-            intArrayOf(1, 16, 2100),
-            bitmap.width,
-            bitmap.height,
-            preprocessingInfo
-        )
+    /**
+     * Clasifica una imagen y retorna las detecciones
+     * Usa Test-Time Augmentation (TTA) con múltiples rotaciones para detección invariante a orientación
+     * Opcionalmente usa Multi-Scale Detection para mejorar reconocimiento a distancia
+     *
+     * @param outputRegion Si [bitmap] es un recorte (p. ej. zoom), región normalizada que ocupa
+     *                     en el frame completo: las cajas se devuelven en coordenadas del frame
+     * @param tier Nivel de detalle del frame (modelo, resolución y pasadas; ver [DetectionTier])
+     */
+    suspend fun classifyImage(
+        bitmap: Bitmap,
+        outputRegion: RectF? = null,
+        tier: DetectionTier = DetectionTier.STANDARD
+    ): ClassificationResult = withContext(Dispatchers.Default) {
+        try {
+            frameMutex.withLock {
+                // Bajo el mutex: un close() pedido antes ya no deja empezar el frame
+                val models = requireOpenEngines()
+                // El motor se toma una vez por frame: un swap nunca cambia el modelo a mitad de frame
+                models.use(bucketOf = ::latencyBucket) { engine ->
+                    classifyImageLocked(engine, BitmapInput(bitmap), outputRegion, tier)
+                }
+            }
+        } finally {
+            closeIfRequested()
+        }
+    }
 
-        return detections
+    /**
+     * Como [classifyImage], pero desde el frame crudo de la cámara: [frame] (ARGB sin rotar,
+     * [frameStride] enteros por fila) se muestrea a través de [transform] directo a los
+     * tensores de entrada, sin bitmaps rotados, recortados ni ampliados.
+     *
+     * Las cajas se devuelven normalizadas a la imagen lógica de [transform] o, con
+     * [outputRegion], al frame como en [classifyImage]; [FrameTransform.mapToFrame] las
+     * lleva al frame enderezado deshaciendo también la rotación del recorte.
+     */
+    suspend fun classifyFrame(
+        frame: IntArray,
+        frameStride: Int,
+        transform: FrameTransform,
+        outputRegion: RectF? = null,
+        tier: DetectionTier = DetectionTier.STANDARD
+    ): ClassificationResult = withContext(Dispatchers.Default) {
+        transform.requireFrame(frame, frameStride)
+        try {
+            frameMutex.withLock {
+                val models = requireOpenEngines()
+                models.use(bucketOf = ::latencyBucket) { engine ->
+                    classifyImageLocked(engine, CameraFrameInput(frame, frameStride, transform), outputRegion, tier)
+                }
+            }
+        } finally {
+            closeIfRequested()
+        }
     }
 
     /**
-     * Rota un bitmap para TTA
+     * Cubeta de latencia de un frame para la prueba de una versión nueva (ver
+     * [HotSwapModel]): resolución del motor que corrió y número de inferencias. Así no se
+     * comparan salidas tempranas de la cascada con TTA completo, ni las variantes por
+     * nivel (solo con el modelo de assets) con el modelo principal. Bajo frameMutex
      */
-    private fun rotateBitmapForTTA(bitmap: Bitmap, degrees: Float): Bitmap {
-        val matrix = android.graphics.Matrix()
-        matrix.postRotate(degrees)
-        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.width, bitmap.height, matrix, true)
+    private fun latencyBucket(result: ClassificationResult): Int = frameInputSize * 1000 + result.passesUsed
+
+    // Bajo frameMutex
+    private fun requireOpenEngines(): HotSwapModel<YoloEngine> {
+        check(!closeRequested) { "El clasificador está cerrado" }
+        return requireNotNull(engines) { "El clasificador no ha sido inicializado" }
     }
 
     /**
-     * Transforma una detección del espacio rotado al espacio original
+     * Imagen a clasificar: un bitmap ya orientado y recortado, o el frame crudo de la
+     * cámara con su transformación hasta la imagen lógica
      */
-    private fun transformDetectionBack(
-        detection: Detection,
-        rotationDegrees: Float,
-        originalWidth: Int,
-        originalHeight: Int
-    ): Detection {
-        val box = detection.boundingBox
+    private interface FrameInput {
+        val width: Int
+        val height: Int
 
-        // Transformar coordenadas según la rotación aplicada
-        val (newLeft, newTop, newRight, newBottom) = when (rotationDegrees.toInt()) {
-            90 -> {
-                // Rotación 90° CW: (x,y) -> (1-y, x)
-                listOf(
-                    box.top,
-                    1f - box.right,
-                    box.bottom,
-                    1f - box.left
-                )
-            }
-            180 -> {
-                // Rotación 180°: (x,y) -> (1-x, 1-y)
-                listOf(
-                    1f - box.right,
-                    1f - box.bottom,
-                    1f - box.left,
-                    1f - box.top
-                )
-            }
-            270 -> {
-                // Rotación 270° CW (90° CCW): (x,y) -> (y, 1-x)
-                listOf(
-                    1f - box.bottom,
-                    box.left,
-                    1f - box.top,
-                    box.right
-                )
-            }
-            else -> {
-                // Sin rotación
-                listOf(box.left, box.top, box.right, box.bottom)
+        /** Letterboxea en [source] la imagen, o su centro ampliado [scale] veces */
+        fun load(source: RotatedTensorSource, scale: Float): LetterboxGeometry
+
+        /** Copia la imagen a resolución nativa en [out] (ARGB, [width] enteros por fila) */
+        fun readPixels(out: IntArray)
+    }
+
+    private inner class BitmapInput(private val bitmap: Bitmap) : FrameInput {
+        override val width: Int get() = bitmap.width
+        override val height: Int get() = bitmap.height
+
+        override fun load(source: RotatedTensorSource, scale: Float): LetterboxGeometry {
+            val scaledBitmap = if (scale != 1.0f) scaleAndCropCenter(bitmap, scale) else bitmap
+            try {
+                return source.load(scaledBitmap)
+            } finally {
+                if (scaledBitmap != bitmap) scaledBitmap.recycle()
             }
         }
 
-        return Detection(
-            className = detection.className,
-            confidence = detection.confidence,
-            boundingBox = RectF(
-                newLeft.coerceIn(0f, 1f),
-                newTop.coerceIn(0f, 1f),
-                newRight.coerceIn(0f, 1f),
-                newBottom.coerceIn(0f, 1f)
-            ),
-            classId = detection.classId
-        )
+        override fun readPixels(out: IntArray) = bitmap.getPixels(out, 0, width, 0, 0, width, height)
     }
 
-    /**
-     * NMS global que considera detecciones de todas las rotaciones
-     * Más agresivo para fusionar detecciones similares
-     */
-    private fun nonMaxSuppressionGlobal(detections: List<Detection>): List<Detection> {
-        if (detections.isEmpty()) return emptyList()
+    // Rotaciones, recorte y ampliación del centro se resuelven al muestrear el tensor
+    private class CameraFrameInput(
+        private val frame: IntArray,
+        private val frameStride: Int,
+        private val transform: FrameTransform
+    ) : FrameInput {
+        override val width: Int get() = transform.width
+        override val height: Int get() = transform.height
 
-        // Ordenar por confianza descendente
-        val sortedDetections = detections.sortedByDescending { it.confidence }
-        val selectedDetections = mutableListOf<Detection>()
+        override fun load(source: RotatedTensorSource, scale: Float): LetterboxGeometry =
+            source.load(frame, frameStride, transform.centerCrop(scale))
 
-        for (detection in sortedDetections) {
-            var shouldAdd = true
+        override fun readPixels(out: IntArray) {
+            transform.copyTo(frame, frameStride, out)
+        }
+    }
 
-            // Verificar overlap con detecciones ya seleccionadas
-            // Usamos un IOU más bajo (0.3) para fusionar detecciones de diferentes rotaciones
-            for (selected in selectedDetections) {
-                // Para TTA, fusionar si es la misma clase Y hay overlap significativo
-                if (detection.classId == selected.classId) {
-                    val iou = calculateIoU(detection.boundingBox, selected.boundingBox)
-                    if (iou > 0.3f) {  // IOU más bajo para TTA
-                        shouldAdd = false
-                        break
-                    }
-                }
-                // También fusionar si el centro está muy cerca aunque sean clases diferentes
-                val centerDist = calculateCenterDistance(detection.boundingBox, selected.boundingBox)
-                if (centerDist < 0.1f && detection.confidence < selected.confidence) {
-                    shouldAdd = false
-                    break
+    private suspend fun classifyImageLocked(
+        mainEngine: YoloEngine,
+        input: FrameInput,
+        outputRegion: RectF?,
+        tier: DetectionTier
+    ): ClassificationResult {
+        val startTime = System.currentTimeMillis()
+        val allocationMark = InferenceAllocationTracker.beginFrame()
+
+        bindEngine(mainEngine)
+        val engine = engineFor(tier, mainEngine)
+        frameInputSize = engine.inputSize
+        val pool = engine.pool
+        val recording = recorder?.beginFrame(
+            input.width,
+            input.height,
+            region = outputRegion?.let { TensorRecording.Region(it.left, it.top, it.width(), it.height()) }
+        )
+        recordingFrame = recording
+
+        // Capturar configuración una sola vez para toda la llamada
+        val thresholds = InferenceThresholds(
+            confidenceThreshold,
+            distantObjectThreshold,
+            cascadeConfidenceThreshold,
+            cascadeMarginThreshold,
+            if (mergeMode == MergeMode.WBF) cascadeAgreementPasses else 0,
+            cascadeAgreementConfidence
+        )
+        val merge = mergeMode
+        val cascade = cascadeMode
+        // FAST y las variantes de DETAILED trabajan a una sola escala, sin mosaicos
+        val multiScale = multiScaleMode && tier != DetectionTier.FAST && engine === mainEngine
+        val tiled = multiScale && tiledMode
+        val region = tileRegion?.let { RectF(it) }
+
+        // Si está habilitado el modo multi-escala, ejecutar a diferentes escalas
+        // (en modo mosaicos las escalas ampliadas se sustituyen por los mosaicos)
+        val scales = if (multiScale && !tiled) MULTI_SCALE_FACTORS else listOf(1.0f)
+        rotatedSources = sourcesFor(engine, scales.size)
+
+        // TTA: 3 rotaciones (rápido) o 4 rotaciones (completo); FAST solo la vista sin rotar
+        val rotations = when {
+            tier == DetectionTier.FAST -> listOf(0f)
+            fullTTAMode -> listOf(0f, 90f, 180f, 270f)  // Completo: 4 rotaciones
+            else -> listOf(0f, 90f, 180f)  // Rápido: 3 rotaciones (cubre la mayoría de casos)
+        }
+
+        val passes = scales.indices.flatMap { scaleIndex ->
+            rotations.map { rotation ->
+                TTAPass(scaleIndex, scales[scaleIndex], rotation, thresholds.forScale(scales[scaleIndex]))
+            }
+        }
+
+        // Cascada: [upright] -> [resto de rotaciones] -> [cada escala adicional]
+        // Sin cascada: una sola etapa con todas las pasadas
+        val stages = if (cascade) {
+            val upright = passes.filter { it.scaleIndex == 0 }
+            listOf(upright.take(1), upright.drop(1)) +
+                (1 until scales.size).map { scaleIndex -> passes.filter { it.scaleIndex == scaleIndex } }
+        } else {
+            listOf(passes)
+        }.filter { it.isNotEmpty() }
+
+        // Letterbox + normalización una sola vez por escala (solo para escalas que se usen);
+        // las rotaciones se obtienen permutando el tensor, sin bitmaps rotados
+        val geometries = arrayOfNulls<LetterboxGeometry>(scales.size)
+        // Un buffer por pasada en orden de ejecución (el índice identifica la pasada para
+        // WBF), más uno para los mosaicos
+        ensurePassBuffers(passes.size + 1)
+        val frame = frameDetections
+        frame.clear()
+        var passesRun = 0
+        var passesUsed = 0
+        var confident = false
+
+        for (stage in stages) {
+            stage.map { it.scaleIndex }.distinct().forEach { scaleIndex ->
+                if (geometries[scaleIndex] == null) {
+                    geometries[scaleIndex] = input.load(rotatedSources[scaleIndex], scales[scaleIndex])
                 }
             }
 
-            if (shouldAdd) {
-                selectedDetections.add(detection)
-                if (selectedDetections.size >= MAX_DETECTIONS) break
+            runPasses(engine, stage, geometries, firstBuffer = passesRun)
+            passesRun += stage.size
+            passesUsed += stage.size
+
+            // Fusionar duplicados entre rotaciones y escalas (NMS global o WBF)
+            mergePasses(passesRun, merge)
+            recording?.endStage(passesRun)
+
+            if (cascade && isConfidentEnough(frame, thresholds)) {
+                confident = true
+                break
             }
         }
 
-        return selectedDetections
-    }
+        // Última etapa en modo mosaicos: objetos lejanos a resolución nativa
+        var passesAvailable = passes.size
+        var scalesInfo = if (multiScale) " + ${scales.size} escalas" else ""
+        if (tiled) {
+            val tileStage = classifyTiles(pool, input, region, thresholds.distant, run = !confident,
+                out = passBuffers[passesRun], passIndex = passesRun)
+            passesAvailable += tileStage.tiles
+            scalesInfo = " + ${tileStage.tiles} mosaicos (${tileStage.inferred} inferidos)"
+            recording?.setTileCount(tileStage.tiles)
+            if (!confident && tileStage.tiles > 0) {
+                // Los mosaicos cubren zonas distintas: cuentan como una sola pasada para WBF
+                passesRun += 1
+                passesUsed += tileStage.inferred
+                mergePasses(passesRun, merge)
+                recording?.endStage(passesRun)
+            }
+        }
 
-    /**
-     * Calcula la distancia entre los centros de dos bounding boxes (normalizada)
-     */
-    private fun calculateCenterDistance(box1: RectF, box2: RectF): Float {
-        val center1X = (box1.left + box1.right) / 2
-        val center1Y = (box1.top + box1.bottom) / 2
-        val center2X = (box2.left + box2.right) / 2
-        val center2Y = (box2.top + box2.bottom) / 2
+        // Recorte -> frame completo, y solo aquí se crean objetos para la UI
+        outputRegion?.let { frame.mapToRegion(0, it.left, it.top, it.width(), it.height()) }
+        val detections = toDetections(frame)
+
+        val inferenceTime = System.currentTimeMillis() - startTime
+        recording?.end(frame, inferenceTime.toFloat(), earlyExit = confident)
+        recordingFrame = null
+        Log.d(TAG, "Clasificación completada: ${detections.size} detecciones en ${inferenceTime}ms$scalesInfo " +
+            "(pasadas: $passesUsed/$passesAvailable, pool: ${pool.size}, $tier ${engine.inputSize}px)")
+        InferenceAllocationTracker.endFrame(allocationMark)
+
+        return ClassificationResult(detections, inferenceTime, passesUsed, passesAvailable)
+    }
 
-        val dx = center1X - center2X
-        val dy = center1Y - center2Y
-        return kotlin.math.sqrt(dx * dx + dy * dy)
+    private fun ensurePassBuffers(count: Int) {
+        if (passBuffers.size < count) {
+            val existing = passBuffers
+            passBuffers = Array(count) { existing.getOrNull(it) ?: DetectionBuffer(PASS_INITIAL_CAPACITY) }
+        }
     }
 
     /**
-     * Preprocesa la imagen con letterboxing para mantener aspect ratio
-     * Retorna la imagen procesada y la información de transformación
+     * Detecciones finales del frame como objetos inmutables para la UI
      */
-    private fun preprocessImage(bitmap: Bitmap): Pair<TensorImage, PreprocessingInfo> {
-        // Calcular letterboxing
-        val originalWidth = bitmap.width
-        val originalHeight = bitmap.height
-        val targetSize = INPUT_SIZE
-
-        // Calcular escala manteniendo aspect ratio
-        val scale = minOf(
-            targetSize.toFloat() / originalWidth,
-            targetSize.toFloat() / originalHeight
+    private fun toDetections(buffer: DetectionBuffer): List<Detection> = List(buffer.size()) { i ->
+        val classId = buffer.getClassIndex(i)
+        Detection(
+            className = labels[classId],
+            confidence = buffer.getScore(i),
+            boundingBox = RectF(buffer.getLeft(i), buffer.getTop(i), buffer.getRight(i), buffer.getBottom(i)),
+            classId = classId,
+            agreement = buffer.getAgreement(i)
         )
+    }
 
-        val scaledWidth = (originalWidth * scale).toInt()
-        val scaledHeight = (originalHeight * scale).toInt()
+    // Resultado de la etapa de mosaicos: mosaicos de la rejilla y cuántos se infirieron
+    // (el resto no cambió)
+    private class TileStageResult(
+        val tiles: Int,
+        val inferred: Int
+    )
 
-        // Calcular padding
-        val padX = (targetSize - scaledWidth) / 2f
-        val padY = (targetSize - scaledHeight) / 2f
+    /**
+     * Inferencia por mosaicos superpuestos a resolución nativa (sin ampliar bitmaps).
+     * Los mosaicos cuyo contenido no cambió desde su última inferencia reutilizan sus
+     * detecciones; el resto se reparte entre los intérpretes del pool.
+     * Las detecciones de todos los mosaicos quedan en [out], en el espacio del frame.
+     */
+    private suspend fun classifyTiles(
+        pool: InterpreterPool<YoloInferenceSlot>,
+        input: FrameInput,
+        region: RectF?,
+        threshold: Float,
+        run: Boolean,
+        out: DetectionBuffer,
+        passIndex: Int
+    ): TileStageResult = coroutineScope {
+        out.clear()
+        val width = input.width
+        val height = input.height
+        val tiles = frameTiler.layout(width, height, region?.toNormalizedRect())
+
+        // Un solo mosaico equivale a la pasada a escala 1 que ya se ejecutó
+        if (tiles.size <= 1) return@coroutineScope TileStageResult(0, 0)
+        if (!run) return@coroutineScope TileStageResult(tiles.size, 0)
+
+        // Las detecciones guardadas solo valen para el umbral con el que se obtuvieron
+        if (threshold != tileCacheThreshold) {
+            frameTiler.invalidate()
+            tileCacheThreshold = threshold
+        }
 
-        // Crear TensorImage
-        var tensorImage = TensorImage(DataType.FLOAT32)
-        tensorImage.load(bitmap)
+        if (framePixels.size < width * height) framePixels = IntArray(width * height)
+        val pixels = framePixels
+        input.readPixels(pixels)
 
-        // Crear bitmap con letterbox (padding)
-        val paddedBitmap = Bitmap.createBitmap(targetSize, targetSize, Bitmap.Config.ARGB_8888)
-        val canvas = android.graphics.Canvas(paddedBitmap)
+        if (tileDetections.size < tiles.size) {
+            val existing = tileDetections
+            tileDetections = Array(tiles.size) { existing.getOrNull(it) ?: DetectionBuffer(PASS_INITIAL_CAPACITY) }
+        }
+        val buffers = tileDetections
 
-        // Fondo gris (114, 114, 114) como en YOLOv8 original
-        canvas.drawColor(android.graphics.Color.rgb(114, 114, 114))
+        val changed = tiles.filter { frameTiler.hasChanged(it, pixels, width) }
+        changed.map { tile ->
+            async { classifyTile(pool, tile, pixels, width, height, threshold, buffers[tile.index], passIndex) }
+        }.awaitAll()
+        changed.forEach { frameTiler.markInferred(it) }
 
-        // Redimensionar el bitmap original
-        val scaledBitmap = Bitmap.createScaledBitmap(bitmap, scaledWidth, scaledHeight, true)
+        for (tile in tiles) out.addAll(buffers[tile.index], 0)
+        TileStageResult(tiles.size, changed.size)
+    }
 
-        // Dibujar el bitmap escalado en el centro con padding
-        canvas.drawBitmap(scaledBitmap, padX, padY, null)
+    /**
+     * Un mosaico sobre un slot exclusivo del pool; deja en [out] sus detecciones
+     * normalizadas al frame
+     */
+    private suspend fun classifyTile(
+        pool: InterpreterPool<YoloInferenceSlot>,
+        tile: FrameTiler.Tile,
+        pixels: IntArray,
+        frameWidth: Int,
+        frameHeight: Int,
+        threshold: Float,
+        out: DetectionBuffer,
+        passIndex: Int
+    ) {
+        // Llevar las coordenadas del mosaico al frame completo
+        val tileRegion = TensorRecording.Region(
+            tile.left.toFloat() / frameWidth,
+            tile.top.toFloat() / frameHeight,
+            tile.width.toFloat() / frameWidth,
+            tile.height.toFloat() / frameHeight
+        )
 
-        // Crear tensor image con el bitmap padded
-        tensorImage.load(paddedBitmap)
+        out.clear()
+        pool.withSlot { slot ->
+            slot.inputEngine.process(pixels, tile.top * frameWidth + tile.left, frameWidth, tile.width, tile.height)
+            val geometry = slot.inputEngine.geometry()
+            classifySingleOrientation(slot, geometry, threshold, out)
+            recordPass(slot.outputArena, 0, passIndex, 0, 1f, threshold, geometry, tile.index, tileRegion)
+        }
 
-        // Aplicar normalización
-        val imageProcessor = ImageProcessor.Builder()
-            .add(NormalizeOp(0f, 255f))  // Normalizar a [0, 1]
-            .build()
+        out.mapToRegion(0, tileRegion.left, tileRegion.top, tileRegion.width, tileRegion.height)
+    }
 
-        tensorImage = imageProcessor.process(tensorImage)
+    /**
+     * Ejecuta un grupo de pasadas en paralelo (por slot o agrupadas en batches).
+     * La pasada i deja sus detecciones en passBuffers[firstBuffer + i]
+     */
+    private suspend fun runPasses(
+        engine: YoloEngine,
+        passes: List<TTAPass>,
+        geometries: Array<LetterboxGeometry?>,
+        firstBuffer: Int
+    ) = coroutineScope<Unit> {
+        val pool = engine.pool
+        val batchSize = ttaBatchSize
+        if (batchSize > 1 && passes.size > 1) {
+            // Agrupar vistas en batches de una sola invocación cada uno
+            val batches = batchPoolFor(engine, batchSize)
+            (passes.indices step batchSize).map { start ->
+                val chunk = passes.subList(start, minOf(start + batchSize, passes.size))
+                async { classifyBatch(batches, chunk, geometries, firstBuffer + start) }
+            }.awaitAll()
+        } else {
+            // Repartir escala x rotación entre los intérpretes del pool
+            passes.mapIndexed { index, pass ->
+                val passIndex = firstBuffer + index
+                async { classifyPass(pool, pass, geometries[pass.scaleIndex]!!, passBuffers[passIndex], passIndex) }
+            }.awaitAll()
+        }
+    }
 
-        val preprocessingInfo = PreprocessingInfo(
-            scaleFactor = scale,
-            xOffset = padX,
-            yOffset = padY
+    /**
+     * Criterio de salida de la cascada: la mejor detección es confiable (o, con WBF,
+     * suficientes pasadas coinciden en ella) y supera por margen suficiente a la mejor
+     * detección de otra clase
+     */
+    private fun isConfidentEnough(detections: DetectionBuffer, thresholds: InferenceThresholds): Boolean =
+        postprocessor.isConfidentEnough(
+            detections,
+            thresholds.cascadeConfidence,
+            thresholds.cascadeMargin,
+            thresholds.cascadeAgreement,
+            thresholds.cascadeAgreementConfidence
         )
 
-        return Pair(tensorImage, preprocessingInfo)
+    /**
+     * Una pasada de TTA (escala + rotación) sobre un slot exclusivo del pool.
+     * Deja en [out] las detecciones en el espacio de la imagen original.
+     */
+    private suspend fun classifyPass(
+        pool: InterpreterPool<YoloInferenceSlot>,
+        pass: TTAPass,
+        geometry: LetterboxGeometry,
+        out: DetectionBuffer,
+        passIndex: Int
+    ) {
+        val rotation = pass.rotation.toInt()
+        val rotatedGeometry = geometry.rotated(rotation)
+
+        // Clasificar vista rotada con umbral ajustado por escala
+        // Para escalas mayores (zoom), se usa el umbral más permisivo de objetos distantes
+        out.clear()
+        pool.withSlot { slot ->
+            rotatedSources[pass.scaleIndex].writeRotated(rotation, slot.inputEngine)
+            classifySingleOrientation(slot, rotatedGeometry, pass.threshold, out)
+            recordPass(slot.outputArena, 0, passIndex, rotation, pass.scale, pass.threshold, rotatedGeometry)
+        }
+        transformToOriginal(out, pass)
     }
 
-
     /**
-     * Parsea la salida del modelo YOLOv8
-     * Formato: [1, 16, 2100] donde 16 = 4 bbox + 12 clases
+     * Varias vistas de TTA en una sola invocación del intérprete ([N, 320, 320, 3] con el
+     * modelo principal).
+     * Las posiciones del batch que sobran (último grupo incompleto) no se decodifican.
+     * La vista i deja sus detecciones en passBuffers[firstBuffer + i]
      */
-    private fun parseOutput(
-        outputBuffer: ByteBuffer,
-        outputShape: IntArray,
-        originalWidth: Int,
-        originalHeight: Int,
-        preprocessingInfo: PreprocessingInfo
-    ): List<Detection> {
-        val detections = mutableListOf<Detection>()
-        val numAnchors = outputShape[2]  // 2100
-        val numClasses = labels.size  // 12
-
-        // El output está transpuesto: [1, features, anchors]
-        for (i in 0 until numAnchors) {
-            // Leer coordenadas del bounding box (normalizadas 0-1)
-            val xCenter = outputBuffer.getFloat(i * 4)
-            val yCenter = outputBuffer.getFloat(numAnchors * 4 + i * 4)
-            val width = outputBuffer.getFloat(2 * numAnchors * 4 + i * 4)
-            val height = outputBuffer.getFloat(3 * numAnchors * 4 + i * 4)
-
-            // Leer probabilidades de clases
-            var maxProb = 0f
-            var maxClass = 0
-            for (c in 0 until numClasses) {
-                val prob = outputBuffer.getFloat((4 + c) * numAnchors * 4 + i * 4)
-                if (prob > maxProb) {
-                    maxProb = prob
-                    maxClass = c
-                }
-            }
-
-            // Filtrar por threshold de confianza (usa threshold personalizable)
-            if (maxProb > confidenceThreshold) {
-                // Convertir de coordenadas del modelo a coordenadas originales
-                // Primero, deshacer la normalización del modelo (0-1 a pixeles)
-                var x1 = (xCenter - width / 2) * INPUT_SIZE
-                var y1 = (yCenter - height / 2) * INPUT_SIZE
-                var x2 = (xCenter + width / 2) * INPUT_SIZE
-                var y2 = (yCenter + height / 2) * INPUT_SIZE
-
-                // Deshacer el letterboxing
-                x1 = (x1 - preprocessingInfo.xOffset) / preprocessingInfo.scaleFactor
-                y1 = (y1 - preprocessingInfo.yOffset) / preprocessingInfo.scaleFactor
-                x2 = (x2 - preprocessingInfo.xOffset) / preprocessingInfo.scaleFactor
-                y2 = (y2 - preprocessingInfo.yOffset) / preprocessingInfo.scaleFactor
-
-                // Asegurar que las coordenadas estén dentro de los límites
-                x1 = x1.coerceIn(0f, originalWidth.toFloat())
-                y1 = y1.coerceIn(0f, originalHeight.toFloat())
-                x2 = x2.coerceIn(0f, originalWidth.toFloat())
-                y2 = y2.coerceIn(0f, originalHeight.toFloat())
-
-                // Normalizar coordenadas a valores entre 0 y 1 para ser independiente de la resolución
-                val normalizedX1 = x1 / originalWidth.toFloat()
-                val normalizedY1 = y1 / originalHeight.toFloat()
-                val normalizedX2 = x2 / originalWidth.toFloat()
-                val normalizedY2 = y2 / originalHeight.toFloat()
-
-                val boundingBox = RectF(normalizedX1, normalizedY1, normalizedX2, normalizedY2)
-
-                detections.add(
-                    Detection(
-                        className = labels[maxClass],
-                        confidence = maxProb,
-                        boundingBox = boundingBox,
-                        classId = maxClass
-                    )
-                )
-            }
+    private suspend fun classifyBatch(
+        pool: InterpreterPool<YoloBatchSlot>,
+        passes: List<TTAPass>,
+        geometries: Array<LetterboxGeometry?>,
+        firstBuffer: Int
+    ) = pool.withSlot { slot ->
+        // Llenar cada posición del batch con su vista rotada en espacio de tensor
+        passes.forEachIndexed { index, pass ->
+            rotatedSources[pass.scaleIndex].writeRotated(pass.rotation.toInt(), slot.inputEngines[index])
         }
 
-        return detections
+        // Una sola invocación para todas las vistas
+        slot.run()
+
+        // Decodificar cada salida y llevarla al espacio original
+        passes.forEachIndexed { index, pass ->
+            val out = passBuffers[firstBuffer + index]
+            val rotatedGeometry = geometries[pass.scaleIndex]!!.rotated(pass.rotation.toInt())
+            out.clear()
+            parseOutput(slot.outputDecoder, slot.outputArena, rotatedGeometry, pass.threshold, out, imageIndex = index)
+            recordPass(
+                slot.outputArena, index, firstBuffer + index, pass.rotation.toInt(), pass.scale, pass.threshold,
+                rotatedGeometry
+            )
+            transformToOriginal(out, pass)
+        }
     }
 
     /**
-     * Non-Maximum Suppression para eliminar detecciones duplicadas
+     * Transforma en el buffer las detecciones de una vista aumentada de vuelta al espacio original
      */
-    private fun nonMaxSuppression(detections: List<Detection>): List<Detection> {
-        if (detections.isEmpty()) return emptyList()
-
-        // Ordenar por confianza descendente
-        val sortedDetections = detections.sortedByDescending { it.confidence }
-        val selectedDetections = mutableListOf<Detection>()
+    private fun transformToOriginal(detections: DetectionBuffer, pass: TTAPass) {
+        postprocessor.toOriginal(detections, pass.rotation.toInt(), pass.scale)
+    }
 
-        for (detection in sortedDetections) {
-            var shouldAdd = true
+    /**
+     * Agrega al frame grabado (si se está grabando) la salida cruda de una inferencia,
+     * con el umbral tal como lo recibe el decodificador
+     */
+    private fun recordPass(
+        arena: OutputTensorArena,
+        imageIndex: Int,
+        passIndex: Int,
+        rotation: Int,
+        scale: Float,
+        threshold: Float,
+        geometry: LetterboxGeometry,
+        tileIndex: Int = -1,
+        tileRegion: TensorRecording.Region? = null
+    ) {
+        val recording = recordingFrame ?: return
+        recording.addPass(
+            TensorRecording.Pass(
+                passIndex, rotation, scale, threshold.nextUp(), geometry, tileIndex, tileRegion,
+                arena.record(imageIndex)
+            )
+        )
+    }
 
-            // Verificar overlap con detecciones ya seleccionadas
-            for (selected in selectedDetections) {
-                if (detection.classId == selected.classId) {
-                    val iou = calculateIoU(detection.boundingBox, selected.boundingBox)
-                    if (iou > IOU_THRESHOLD) {
-                        shouldAdd = false
-                        break
-                    }
-                }
+    /**
+     * Obtiene (o reconstruye) el pool de intérpretes en modo batch de [engine] para el
+     * tamaño pedido. Los intérpretes batch siempre usan CPU (con el perfil medido si no es de GPU).
+     */
+    private suspend fun batchPoolFor(
+        engine: YoloEngine,
+        batchSize: Int
+    ): InterpreterPool<YoloBatchSlot> = batchPoolMutex.withLock {
+        val model = engine.model
+        batchPools.remove(model)?.let { existing ->
+            if (existing.metadataSlot.batchSize == batchSize) {
+                batchPools[model] = existing
+                return@withLock existing
             }
+            existing.close()
+        }
 
-            if (shouldAdd) {
-                selectedDetections.add(detection)
-                if (selectedDetections.size >= MAX_DETECTIONS) break
-            }
+        // Los pools de un modelo reemplazado por un swap ya no se usarán
+        val live = tierEngines.values.map { it.value.model } + modelBuffer
+        batchPools.entries.removeAll { (pooled, pool) ->
+            (live.none { it === pooled }).also { stale -> if (stale) pool.close() }
         }
 
-        return selectedDetections
+        // Mismo reparto de pool e hilos que el pool de una imagen (con GPU, el de CPU por defecto)
+        val profile = engine.profile.takeIf { !it.useGpu } ?: InferenceProfile.DEFAULT_CPU
+        val poolSize = profile.poolSize
+        val slots = (0 until poolSize).map {
+            YoloBatchSlot(TfliteBackend.create(model, profile), engine.inputSize, batchSize)
+        }
+        Log.d(TAG, "Pool batch: $poolSize x batch $batchSize ($profile, ${engine.inputSize}px)")
+        InterpreterPool(slots).also { batchPools[model] = it }
     }
 
     /**
-     * Calcula Intersection over Union entre dos bounding boxes
+     * Escala y recorta el centro de una imagen para detección multi-escala.
+     * Por ejemplo, scale=2.0 toma el 50% central de la imagen y lo amplía.
      */
-    private fun calculateIoU(box1: RectF, box2: RectF): Float {
-        val intersectionLeft = maxOf(box1.left, box2.left)
-        val intersectionTop = maxOf(box1.top, box2.top)
-        val intersectionRight = minOf(box1.right, box2.right)
-        val intersectionBottom = minOf(box1.bottom, box2.bottom)
-
-        if (intersectionLeft >= intersectionRight || intersectionTop >= intersectionBottom) {
-            return 0f
-        }
+    private fun scaleAndCropCenter(bitmap: Bitmap, scale: Float): Bitmap {
+        // Calcular el área central a recortar
+        val cropWidth = (bitmap.width / scale).toInt()
+        val cropHeight = (bitmap.height / scale).toInt()
+        val cropX = (bitmap.width - cropWidth) / 2
+        val cropY = (bitmap.height - cropHeight) / 2
 
-        val intersectionArea = (intersectionRight - intersectionLeft) * (intersectionBottom - intersectionTop)
-        val box1Area = box1.width() * box1.height()
-        val box2Area = box2.width() * box2.height()
-        val unionArea = box1Area + box2Area - intersectionArea
+        // Recortar la región central
+        val cropped = Bitmap.createBitmap(
+            bitmap,
+            cropX.coerceAtLeast(0),
+            cropY.coerceAtLeast(0),
+            cropWidth.coerceAtMost(bitmap.width - cropX),
+            cropHeight.coerceAtMost(bitmap.height - cropY)
+        )
 
-        return if (unionArea > 0) intersectionArea / unionArea else 0f
+        // Escalar de vuelta al tamaño original para mantener la resolución del modelo
+        return Bitmap.createScaledBitmap(cropped, bitmap.width, bitmap.height, true).also {
+            if (cropped != it) cropped.recycle()
+        }
     }
 
     /**
-     * Carga el archivo del modelo desde assets
+     * Clasificación en una sola orientación (sin TTA); agrega las detecciones a [out]
      */
-    private fun loadModelFile(): ByteBuffer {
-        val assetFileDescriptor = context.assets.openFd(MODEL_PATH)
-        val inputStream = assetFileDescriptor.createInputStream()
-        val fileChannel = inputStream.channel
-        val startOffset = assetFileDescriptor.startOffset
-        val declaredLength = assetFileDescriptor.declaredLength
+    private fun classifySingleOrientation(
+        slot: YoloInferenceSlot,
+        geometry: LetterboxGeometry,
+        threshold: Float,
+        out: DetectionBuffer
+    ) {
+        // El tensor de entrada ya fue escrito en el buffer del slot; la salida reutiliza
+        // la arena del slot (sin asignación por inferencia)
+        slot.run()
 
-        val modelBuffer = ByteBuffer.allocateDirect(declaredLength.toInt())
-        modelBuffer.order(ByteOrder.nativeOrder())
+        // Parsear salida del modelo
+        parseOutput(slot.outputDecoder, slot.outputArena, geometry, threshold, out)
+    }
 
-        fileChannel.read(modelBuffer, startOffset)
-        modelBuffer.rewind()
+    /**
+     * Combina en frameDetections las detecciones de las primeras [passCount] pasadas según [mode]
+     */
+    private fun mergePasses(passCount: Int, mode: MergeMode) {
+        postprocessor.merge(passBuffers, passCount, mode == MergeMode.WBF, frameDetections)
+    }
 
-        return modelBuffer
+    /**
+     * Parsea la salida del modelo YOLOv8 con el decodificador compartido
+     * Formato leído del tensor: [1, 4 + clases, anchors], p. ej. [1, 16, 2100] donde 16 = 4 bbox + 12 clases
+     * Con salida cuantizada el umbral se aplica en el dominio cuantizado y solo se
+     * descuantizan los anchors que lo superan
+     * Las detecciones se agregan a [out] (normalizadas 0-1 a la imagen de entrada)
+     */
+    private fun parseOutput(
+        decoder: YoloOutputDecoder,
+        arena: OutputTensorArena,
+        preprocessingInfo: LetterboxGeometry,
+        threshold: Float,
+        out: DetectionBuffer,
+        imageIndex: Int = 0
+    ) {
+        // Filtrar por threshold de confianza de esta llamada (estrictamente mayor)
+        val count = arena.decode(decoder, threshold.nextUp(), imageIndex)
+
+        // Convertir de coordenadas del modelo a coordenadas originales normalizadas (0-1)
+        postprocessor.parse(decoder, count, preprocessingInfo, labels.size, out)
     }
 
     /**
@@ -647,18 +1107,17 @@ class WasteClassifierYOLO(private val context: Context) {
      * Imprime información del modelo para debugging
      */
     private fun printModelInfo() {
-        interpreter?.let { interp ->
-            Log.d(TAG, "=== Información del Modelo ===")
+        boundEngine?.pool?.let { pool ->
+            val backend = pool.metadataSlot.backend
+            Log.d(TAG, "=== Información del Modelo (${backend.name}) ===")
 
             // Input
-            val inputTensor = interp.getInputTensor(0)
-            Log.d(TAG, "Input shape: ${inputTensor.shape().contentToString()}")
-            Log.d(TAG, "Input type: ${inputTensor.dataType()}")
+            Log.d(TAG, "Input shape: ${backend.input.shape.contentToString()}")
+            Log.d(TAG, "Input type: ${backend.input.quantization}")
 
             // Output
-            val outputTensor = interp.getOutputTensor(0)
-            Log.d(TAG, "Output shape: ${outputTensor.shape().contentToString()}")
-            Log.d(TAG, "Output type: ${outputTensor.dataType()}")
+            Log.d(TAG, "Output shape: ${backend.output.shape.contentToString()}")
+            Log.d(TAG, "Output type: ${backend.output.quantization}")
 
             Log.d(TAG, "Número de clases: ${labels.size}")
             Log.d(TAG, "Clases: ${labels.joinToString(", ")}")
@@ -682,14 +1141,65 @@ class WasteClassifierYOLO(private val context: Context) {
     }
 
     /**
-     * Libera recursos del clasificador
+     * Grabador de tensores con la configuración actual de la cascada y la fusión, o null si
+     * no se pidió grabar (ver [TensorRecorder.openIfRequested]). Asignarlo a [recorder]
+     * después de inicializar; [close] lo cierra.
+     */
+    fun openRecorder(dir: File?, name: String, device: String): TensorRecorder? =
+        TensorRecorder.openIfRequested(
+            dir, name, TensorRecording.Source.CLASSIFIER, labels,
+            mapOf(
+                "cascade" to if (cascadeMode) 1f else 0f,
+                "wbf" to if (mergeMode == MergeMode.WBF) 1f else 0f,
+                "cascadeConfidence" to cascadeConfidenceThreshold,
+                "cascadeMargin" to cascadeMarginThreshold,
+                "cascadeAgreementPasses" to cascadeAgreementPasses.toFloat(),
+                "cascadeAgreementConfidence" to cascadeAgreementConfidence
+            ),
+            device
+        )
+
+    /**
+     * Libera recursos del clasificador sin bloquear (se llama desde el hilo principal al
+     * salir de la pantalla). Si hay un frame en inferencia (p. ej. en el hilo de la
+     * pipeline de la cámara), es ese frame el que suelta pools, tensores y modelos al
+     * terminar; los frames posteriores fallan enseguida
      */
     fun close() {
+        closeRequested = true
+        closeIfRequested()
+    }
+
+    // Quien consigue frameMutex cierra. Si un frame lo tiene, falla el tryLock aquí, pero
+    // ese frame vuelve a revisar closeRequested después de soltarlo
+    private fun closeIfRequested() {
+        if (closeRequested && frameMutex.tryLock()) {
+            try {
+                closeLocked()
+            } finally {
+                frameMutex.unlock()
+            }
+        }
+    }
+
+    private fun closeLocked() {
+        if (closed) return
+        closed = true
         try {
-            interpreter?.close()
-            interpreter = null
-            gpuDelegate?.close()
-            gpuDelegate = null
+            recorder?.close()
+            recorder = null
+            // El pool compartido no se cierra aquí: se devuelve al registro (cuando
+            // termina la inferencia en curso), que lo mantiene caliente un tiempo por si
+            // se vuelve a entrar a la pantalla
+            engines?.close()
+            engines = null
+            boundEngine = null
+            tierEngines.values.forEach { it.close() }
+            tierEngines.clear()
+            batchPools.values.forEach { it.close() }
+            batchPools.clear()
+            sourcesByInput.clear()
+            modelBuffer = null
             Log.d(TAG, "Recursos del clasificador liberados")
         } catch (e: Exception) {
             Log.e(TAG, "Error al cerrar clasificador", e)
@@ -699,5 +1209,5 @@ class WasteClassifierYOLO(private val context: Context) {
     /**
      * Verifica si el clasificador está listo
      */
-    fun isReady(): Boolean = interpreter != null
+    fun isReady(): Boolean = engines != null
 }
\ No newline at end of file
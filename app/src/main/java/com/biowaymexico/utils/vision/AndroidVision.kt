@@ -0,0 +1,43 @@
+package com.biowaymexico.utils.vision
+
+import android.graphics.Bitmap
+import android.graphics.RectF
+import android.util.Log
+import com.biowaymexico.BuildConfig
+import com.biowaymexico.utils.vision.bote.BackgroundPlateFilter
+import java.nio.ByteBuffer
+
+/**
+ * Adaptadores de Android para :vision-core: logcat para [VisionLog], conteo de
+ * [DirectBuffers] en InferenceAllocationTracker, conversión entre [NormalizedRect] y
+ * RectF en el borde con la cámara y la UI, y bitmaps como entrada del letterbox.
+ */
+object AndroidVision {
+
+    /**
+     * Conecta el núcleo de visión con logcat; se llama una vez al arrancar la actividad
+     */
+    fun install() {
+        VisionLog.sink = object : VisionLog.Sink {
+            override fun debug(tag: String, message: String) {
+                Log.d(tag, message)
+            }
+
+            override fun error(tag: String, message: String, throwable: Throwable?) {
+                Log.e(tag, message, throwable)
+            }
+        }
+        DirectBuffers.listener = DirectBuffers.Listener(InferenceAllocationTracker::recordDirectAllocation)
+        BackgroundPlateFilter.verboseLogging = BuildConfig.DEBUG
+    }
+}
+
+fun NormalizedRect.toRectF(): RectF = RectF(left, top, right, bottom)
+
+fun RectF.toNormalizedRect(): NormalizedRect = NormalizedRect(left, top, right, bottom)
+
+/**
+ * Letterbox + normalización de un bitmap ARGB_8888, leyendo sus filas bajo demanda
+ */
+fun LetterboxInputEngine.process(bitmap: Bitmap): ByteBuffer =
+    process(bitmap.width, bitmap.height) { y, row -> bitmap.getPixels(row, 0, bitmap.width, 0, y, bitmap.width, 1) }
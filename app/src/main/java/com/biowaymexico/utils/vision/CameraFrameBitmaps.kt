@@ -0,0 +1,87 @@
+package com.biowaymexico.utils.vision
+
+import android.graphics.Bitmap
+import android.graphics.ImageFormat
+import android.graphics.PixelFormat
+import androidx.camera.core.ImageProxy
+
+/**
+ * Frames de ImageAnalysis (RGBA_8888 o YUV_420_888) como bitmaps ARGB_8888 reutilizados.
+ *
+ * ImageProxy.toBitmap() crea un Bitmap nuevo (3.5 MB a 1280x720) en cada frame
+ * analizado, y la ruta NV21 -> JPEG -> BitmapFactory además comprime con pérdida y
+ * decodifica de nuevo. Aquí los planos se copian en un bitmap del pool:
+ * - RGBA_8888: con copyPixelsFromBuffer, directo si el plano no tiene relleno o
+ *   empaquetado antes por [RgbaPlaneConverter] si rowStride/pixelStride lo tienen
+ * - YUV_420_888: [YuvPlaneConverter] a un arreglo ARGB reutilizado y setPixels
+ *
+ * Cada bitmap de [convert] se devuelve con [release] cuando termina de usarse; se
+ * conservan hasta [maxPooled] libres. Con [CameraFramePipeline], [convert] corre en el
+ * hilo de entrada (la etapa 1) y el bitmap pertenece al frame desde ahí: se entrega al
+ * único hilo de inferencia, que lo usa sin copiarlo, y el recycle de la pipeline lo
+ * devuelve, en ese hilo al terminar o en el de entrada si un frame más nuevo lo
+ * reemplaza antes. Nunca hay más de dos en uso (el que se procesa y el siguiente), de
+ * ahí el pool de 2. Thread-safe: el pool y los convertidores se sincronizan porque
+ * [convert] y [release] llegan desde hilos distintos.
+ */
+class CameraFrameBitmaps(private val maxPooled: Int = 2) {
+
+    private val converter = RgbaPlaneConverter()
+    private val yuvConverter = YuvPlaneConverter()
+    private var argb = IntArray(0)
+    private val free = ArrayDeque<Bitmap>()
+
+    /**
+     * Copia el frame en un bitmap del pool (o uno nuevo si no hay libre del mismo tamaño)
+     */
+    fun convert(image: ImageProxy): Bitmap {
+        val bitmap = acquire(image.width, image.height)
+        try {
+            when (image.format) {
+                PixelFormat.RGBA_8888 -> synchronized(converter) { copyRgba(image, bitmap) }
+                ImageFormat.YUV_420_888 -> synchronized(yuvConverter) { copyYuv(image, bitmap) }
+                else -> throw IllegalArgumentException("Formato de cámara no soportado: ${image.format}")
+            }
+        } catch (e: Exception) {
+            release(bitmap)
+            throw e
+        }
+        return bitmap
+    }
+
+    private fun copyRgba(image: ImageProxy, bitmap: Bitmap) {
+        val plane = image.planes[0]
+        val source = plane.buffer.duplicate()
+        source.rewind()
+        val pixels = if (RgbaPlaneConverter.isPacked(image.width, plane.rowStride, plane.pixelStride)) {
+            source
+        } else {
+            converter.pack(source, image.width, image.height, plane.rowStride, plane.pixelStride)
+        }
+        bitmap.copyPixelsFromBuffer(pixels)
+    }
+
+    private fun copyYuv(image: ImageProxy, bitmap: Bitmap) {
+        val width = image.width
+        val height = image.height
+        if (argb.size < width * height) argb = IntArray(width * height)
+        val (y, u, v) = image.planes.map { plane ->
+            YuvPlaneConverter.Plane(plane.buffer.duplicate().apply { rewind() }, plane.rowStride, plane.pixelStride)
+        }
+        yuvConverter.toArgb(y, u, v, width, height, argb)
+        bitmap.setPixels(argb, 0, width, 0, 0, width, height)
+    }
+
+    /**
+     * Devuelve al pool un bitmap de [convert]; no debe usarse después
+     */
+    fun release(bitmap: Bitmap) = synchronized(free) {
+        if (free.size < maxPooled && !bitmap.isRecycled) free.addLast(bitmap)
+    }
+
+    private fun acquire(width: Int, height: Int): Bitmap = synchronized(free) {
+        // Un cambio de resolución deja obsoletos los bitmaps guardados
+        free.removeAll { it.width != width || it.height != height }
+        free.removeFirstOrNull()
+    } ?: Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+}
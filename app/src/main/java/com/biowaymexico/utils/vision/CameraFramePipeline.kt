@@ -0,0 +1,65 @@
+package com.biowaymexico.utils.vision
+
+import android.util.Log
+import androidx.camera.core.ImageAnalysis
+import androidx.camera.core.ImageProxy
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Analizador de CameraX sobre una [FramePipeline]: los frames llegan a un hilo de entrada
+ * propio (nunca el principal), que es la etapa 1: [prepare] copia cada ImageProxy a un
+ * frame del pool (y, si la pantalla lo hace, muestrea ya el tensor de entrada) y el
+ * ImageProxy se cierra en ese momento, así CameraX puede entregar el siguiente mientras
+ * [process] corre en el hilo de inferencia. Solo espera el frame más reciente; los que
+ * se reemplazan vuelven con [recycle] sin procesarse. Cada 100 frames aceptados se
+ * registran los contadores y los tiempos por etapa.
+ *
+ * [prepare] puede devolver null para saltar el frame (p. ej. con el análisis en pausa).
+ * Se registra con [bind] y se libera con [close] al salir de la pantalla, sin esperar al
+ * frame en inferencia: lo que usa [process] y no se cierra solo se libera en el callback
+ * de [close], que corre en el hilo de inferencia después del último frame.
+ */
+class CameraFramePipeline<T : Any>(
+    name: String,
+    minIntervalMs: Long = 0L,
+    private val prepare: (ImageProxy) -> T?,
+    recycle: (T) -> Unit = {},
+    process: (T) -> Unit
+) : ImageAnalysis.Analyzer, AutoCloseable {
+
+    private companion object {
+        const val TAG = "CameraFramePipeline"
+        const val STATS_EVERY = 100L
+    }
+
+    private val pipeline = FramePipeline("$name-inferencia", minIntervalMs, recycle, process)
+    private val intake: ExecutorService = Executors.newSingleThreadExecutor { Thread(it, "$name-entrada") }
+
+    val stats: FramePipeline.Stats
+        get() = pipeline.stats()
+
+    fun bind(analysis: ImageAnalysis) = analysis.setAnalyzer(intake, this)
+
+    override fun analyze(image: ImageProxy) {
+        try {
+            if (pipeline.offer { prepare(image) }) {
+                val stats = pipeline.stats()
+                if (stats.submitted % STATS_EVERY == 0L) Log.d(TAG, "${pipeline.name}: $stats")
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "Error preparando frame: ${e.message}", e)
+        } finally {
+            // El frame ya se copió (o se descartó): CameraX recupera su buffer enseguida
+            image.close()
+        }
+    }
+
+    override fun close() = close {}
+
+    /** Detiene la entrada sin esperar; [onStopped] corre tras el frame en inferencia */
+    fun close(onStopped: () -> Unit) {
+        intake.shutdown()
+        pipeline.close(onStopped)
+    }
+}
@@ -0,0 +1,79 @@
+package com.biowaymexico.utils.vision
+
+import android.graphics.ImageFormat
+import android.graphics.PixelFormat
+import androidx.camera.core.ImageProxy
+
+/**
+ * Frames de ImageAnalysis (RGBA_8888 o YUV_420_888) como arreglos ARGB reutilizados, sin
+ * orientar ni recortar: la rotación del sensor, el zoom/ROI y la rotación del recorte se
+ * aplican al muestrear el tensor ([FrameTransform] + LetterboxInputEngine), en lugar de
+ * rotar y recortar bitmaps intermedios.
+ *
+ * Cada frame de [convert] se devuelve con [release] cuando termina de usarse; se
+ * conservan hasta [maxPooled] libres. Thread-safe, como [CameraFrameBitmaps].
+ */
+class CameraFramePixels(private val maxPooled: Int = 2) {
+
+    /**
+     * Píxeles ARGB del frame tal como los entrega el sensor ([width] enteros por fila) y la
+     * rotación que lo endereza
+     */
+    class Frame internal constructor(val pixels: IntArray, val width: Int, val height: Int) {
+        var rotationDegrees = 0
+            internal set
+
+        /**
+         * Transformación del frame enderezado, recortado a [region] (normalizada al frame
+         * enderezado; null = completo) y rotado [cropRotation]
+         */
+        fun transform(region: NormalizedRect? = null, cropRotation: Int = 0): FrameTransform =
+            FrameTransform.of(width, height, rotationDegrees, region, cropRotation)
+    }
+
+    private val converter = RgbaPlaneConverter()
+    private val yuvConverter = YuvPlaneConverter()
+    private val free = ArrayDeque<Frame>()
+
+    /**
+     * Convierte el frame en un arreglo del pool (o uno nuevo si no hay libre del mismo tamaño)
+     */
+    fun convert(image: ImageProxy): Frame {
+        val frame = acquire(image.width, image.height)
+        try {
+            when (image.format) {
+                PixelFormat.RGBA_8888 -> {
+                    val plane = image.planes[0]
+                    val source = plane.buffer.duplicate()
+                    source.rewind()
+                    converter.toArgb(source, image.width, image.height, plane.rowStride, plane.pixelStride, frame.pixels)
+                }
+                ImageFormat.YUV_420_888 -> synchronized(yuvConverter) {
+                    val (y, u, v) = image.planes.map { plane ->
+                        YuvPlaneConverter.Plane(plane.buffer.duplicate().apply { rewind() }, plane.rowStride, plane.pixelStride)
+                    }
+                    yuvConverter.toArgb(y, u, v, image.width, image.height, frame.pixels)
+                }
+                else -> throw IllegalArgumentException("Formato de cámara no soportado: ${image.format}")
+            }
+        } catch (e: Exception) {
+            release(frame)
+            throw e
+        }
+        frame.rotationDegrees = image.imageInfo.rotationDegrees
+        return frame
+    }
+
+    /**
+     * Devuelve al pool un frame de [convert]; no debe usarse después
+     */
+    fun release(frame: Frame) = synchronized(free) {
+        if (free.size < maxPooled) free.addLast(frame)
+    }
+
+    private fun acquire(width: Int, height: Int): Frame = synchronized(free) {
+        // Un cambio de resolución deja obsoletos los arreglos guardados
+        free.removeAll { it.width != width || it.height != height }
+        free.removeFirstOrNull()
+    } ?: Frame(IntArray(width * height), width, height)
+}
@@ -0,0 +1,88 @@
+package com.biowaymexico.utils.vision
+
+import android.os.Debug
+import android.util.Log
+import com.biowaymexico.BuildConfig
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Contador de asignaciones de memoria del pipeline de inferencia (solo en build debug).
+ *
+ * - Nativa: cada buffer directo reservado por el pipeline se registra con
+ *   [recordDirectAllocation]. En estado estable el contador no debe crecer.
+ * - Heap: se mide la diferencia de `art.gc.bytes-allocated` entre [beginFrame] y
+ *   [endFrame]. Es un valor de todo el proceso, así que incluye lo que asigne la UI
+ *   en paralelo; sirve como cota superior.
+ *
+ * En release todas las llamadas son no-op.
+ */
+object InferenceAllocationTracker {
+
+    private const val TAG = "InferenceAllocTracker"
+    private const val REPORT_EVERY_FRAMES = 100
+
+    val enabled: Boolean = BuildConfig.DEBUG
+
+    private val directAllocations = AtomicInteger(0)
+    private val directBytes = AtomicLong(0)
+
+    private val frames = AtomicInteger(0)
+    private val framesWithDirectAllocation = AtomicInteger(0)
+    private val heapBytesInWindow = AtomicLong(0)
+
+    /**
+     * Estado capturado al inicio de un frame
+     */
+    class FrameMark internal constructor(
+        internal val directAllocations: Int,
+        internal val heapBytes: Long
+    )
+
+    private val disabledMark = FrameMark(0, 0)
+
+    fun recordDirectAllocation(bytes: Int) {
+        if (!enabled) return
+        directAllocations.incrementAndGet()
+        directBytes.addAndGet(bytes.toLong())
+    }
+
+    fun beginFrame(): FrameMark {
+        if (!enabled) return disabledMark
+        return FrameMark(directAllocations.get(), heapBytesAllocated())
+    }
+
+    fun endFrame(mark: FrameMark) {
+        if (!enabled) return
+        val newDirect = directAllocations.get() - mark.directAllocations
+        val heapDelta = heapBytesAllocated() - mark.heapBytes
+
+        if (newDirect > 0) framesWithDirectAllocation.incrementAndGet()
+        heapBytesInWindow.addAndGet(heapDelta.coerceAtLeast(0))
+
+        val count = frames.incrementAndGet()
+        if (count % REPORT_EVERY_FRAMES == 0) {
+            val heapPerFrame = heapBytesInWindow.getAndSet(0) / REPORT_EVERY_FRAMES
+            Log.d(
+                TAG,
+                "Frames: $count | Buffers directos: ${directAllocations.get()} (${directBytes.get() / 1024} KB) | " +
+                    "Frames con asignación nativa: ${framesWithDirectAllocation.get()} | " +
+                    "Heap/frame (proceso): ${heapPerFrame / 1024} KB"
+            )
+        }
+    }
+
+    /**
+     * Snapshot para pruebas y pantallas de debug
+     */
+    fun snapshot(): Map<String, Long> = mapOf(
+        "directAllocations" to directAllocations.get().toLong(),
+        "directBytes" to directBytes.get(),
+        "frames" to frames.get().toLong(),
+        "framesWithDirectAllocation" to framesWithDirectAllocation.get().toLong()
+    )
+
+    private fun heapBytesAllocated(): Long {
+        return Debug.getRuntimeStat("art.gc.bytes-allocated")?.toLongOrNull() ?: 0L
+    }
+}
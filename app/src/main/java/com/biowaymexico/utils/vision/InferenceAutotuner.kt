@@ -0,0 +1,236 @@
+package com.biowaymexico.utils.vision
+
+import android.content.Context
+import android.os.Build
+import android.util.Log
+import org.tensorflow.lite.gpu.CompatibilityList
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.security.MessageDigest
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicReference
+import kotlin.concurrent.thread
+
+/**
+ * Autotuner de delegado, número de hilos y tamaño del pool de intérpretes por dispositivo.
+ *
+ * En el primer arranque con un modelo mide en dos fases sobre una entrada de calibración
+ * fija y guarda el ganador en SharedPreferences:
+ * 1. Latencia de un intérprete con cada variante (XNNPACK sí/no, FP16 relajado y GPU si
+ *    el dispositivo la soporta), para elegir la variante de CPU más rápida.
+ * 2. Throughput (frames/s) de esa variante con cada combinación de pool e hilos que cabe
+ *    en los núcleos: [poolSize][InferenceProfile.poolSize] intérpretes infiriendo a la
+ *    vez. La latencia más baja suele ser la de más hilos, que deja el pool en 1; lo que
+ *    importa con las pasadas de TTA en paralelo es cuántos frames salen por segundo.
+ *
+ * La clave combina el hash SHA-256 del modelo, el pool máximo que acepta quien lo usa,
+ * fabricante, modelo y versión de Android, así que un modelo nuevo o una actualización
+ * del sistema vuelven a medir. Sin GPU (o con modelos cuantizados) solo se prueban
+ * candidatos de CPU; la GPU serializa las inferencias, así que siempre usa pool 1.
+ */
+class InferenceAutotuner(context: Context) {
+
+    companion object {
+        private const val TAG = "InferenceAutotuner"
+        private const val PREFS_NAME = "inference_profiles"
+        private const val WARMUP_RUNS = 3
+        private const val MEASURED_RUNS = 8
+
+        // Hilos candidatos (se filtran por los núcleos del dispositivo)
+        private val THREAD_CANDIDATES = listOf(1, 2, 4, 6, 8)
+
+        /**
+         * Hash SHA-256 (hex) del contenido del modelo, sin modificar la posición del buffer
+         */
+        fun modelHash(model: ByteBuffer): String {
+            val digest = MessageDigest.getInstance("SHA-256")
+            digest.update(model.duplicate().apply { rewind() })
+            return digest.digest().joinToString("") { "%02x".format(it) }
+        }
+    }
+
+    private val prefs = context.applicationContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    private val cores = Runtime.getRuntime().availableProcessors()
+
+    private fun profileKey(modelHash: String, maxPoolSize: Int): String =
+        "$modelHash|pool$maxPoolSize|${Build.MANUFACTURER}|${Build.MODEL}|${Build.VERSION.SDK_INT}"
+
+    /**
+     * Perfil guardado para este modelo y dispositivo, sin medir (null si no existe)
+     */
+    fun cachedProfile(model: ByteBuffer, maxPoolSize: Int = InterpreterPool.MAX_POOL_SIZE): InferenceProfile? =
+        prefs.getString(profileKey(modelHash(model), maxPoolSize), null)?.let { InferenceProfile.parse(it) }
+
+    /**
+     * Perfil para el modelo: el guardado si existe; si no, mide los candidatos y guarda
+     * el de mayor throughput (si ninguno se pudo medir, devuelve el perfil por defecto
+     * sin guardarlo). Bloquea durante la medición (llamar fuera del hilo principal).
+     *
+     * @param maxPoolSize Intérpretes en paralelo que puede usar quien llama (1 para un
+     *                    solo intérprete: entonces gana la latencia más baja)
+     */
+    fun profileFor(
+        model: ByteBuffer,
+        maxPoolSize: Int = InterpreterPool.MAX_POOL_SIZE,
+        retune: Boolean = false
+    ): InferenceProfile {
+        val key = profileKey(modelHash(model), maxPoolSize)
+        if (!retune) {
+            prefs.getString(key, null)?.let { InferenceProfile.parse(it) }?.let { cached ->
+                Log.d(TAG, "Perfil guardado: $cached")
+                return cached
+            }
+        }
+
+        val quantized = TfliteBackend(model).use { probe -> probe.input.quantization.isQuantized }
+        val variants = variants(quantized)
+        Log.d(TAG, "Midiendo ${variants.size} variantes...")
+        val single = variants.mapNotNull { variant -> measure(variant, model) }
+        single.forEach { Log.d(TAG, "  $it") }
+
+        // Fase 2: la variante de CPU más rápida, con cada reparto de núcleos entre el pool
+        val cpu = single.filter { !it.useGpu }.minByOrNull { it.latencyMs }
+        val pooled = cpu?.let { best ->
+            val combinations = poolCombinations(maxPoolSize)
+            Log.d(TAG, "Midiendo ${combinations.size} combinaciones de pool x hilos...")
+            combinations.mapNotNull { (poolSize, threads) ->
+                measure(best.copy(numThreads = threads, poolSize = poolSize), model)
+            }.onEach { Log.d(TAG, "  $it") }
+        }.orEmpty()
+
+        val best = (pooled + single.filter { it.useGpu }).maxByOrNull { it.framesPerSecond }
+        if (best == null) {
+            // Ningún candidato funcionó: el respaldo no se guarda, para volver a medir la
+            // próxima vez en lugar de quedarse con él para siempre en este dispositivo
+            val fallback = InferenceProfile.DEFAULT_CPU.copy(
+                poolSize = InferenceProfile.DEFAULT_CPU.poolSize.coerceAtMost(maxPoolSize)
+            )
+            Log.w(TAG, "Ningún candidato se pudo medir; perfil por defecto sin guardar: $fallback")
+            return fallback
+        }
+        Log.i(TAG, "Perfil elegido: $best")
+
+        prefs.edit().putString(key, best.serialize()).apply()
+        return best
+    }
+
+    private fun threadCandidates(): List<Int> = (THREAD_CANDIDATES.filter { it <= cores } + cores).distinct()
+
+    /**
+     * Variantes a medir en este dispositivo con un solo intérprete
+     */
+    private fun variants(quantized: Boolean): List<InferenceProfile> {
+        val cpu = threadCandidates().flatMap { n ->
+            listOfNotNull(
+                InferenceProfile(useGpu = false, useXnnpack = true, numThreads = n, allowFp16 = false),
+                InferenceProfile(useGpu = false, useXnnpack = false, numThreads = n, allowFp16 = false),
+                // FP16 relajado solo tiene sentido con pesos float
+                if (!quantized) InferenceProfile(useGpu = false, useXnnpack = true, numThreads = n, allowFp16 = true) else null
+            )
+        }
+
+        val gpuSupported = !quantized && try {
+            CompatibilityList().isDelegateSupportedOnThisDevice
+        } catch (e: Throwable) {
+            false
+        }
+        val gpu = if (gpuSupported) {
+            val n = InferenceProfile.DEFAULT_CPU.numThreads
+            listOf(
+                InferenceProfile(useGpu = true, useXnnpack = true, numThreads = n, allowFp16 = true),
+                InferenceProfile(useGpu = true, useXnnpack = true, numThreads = n, allowFp16 = false)
+            )
+        } else {
+            emptyList()
+        }
+
+        return cpu + gpu
+    }
+
+    /**
+     * Pares (pool, hilos por intérprete) sin sobresuscribir los núcleos; con pool 1 se
+     * prueban todos los hilos candidatos
+     */
+    private fun poolCombinations(maxPoolSize: Int): List<Pair<Int, Int>> =
+        (1..maxPoolSize.coerceIn(1, InterpreterPool.MAX_POOL_SIZE)).flatMap { poolSize ->
+            threadCandidates()
+                .filter { threads -> poolSize == 1 || poolSize * threads <= cores }
+                .map { threads -> poolSize to threads }
+        }
+
+    /**
+     * Mide [candidate] con [poolSize][InferenceProfile.poolSize] intérpretes, cada uno en
+     * su hilo y todos a la vez: latencia mediana de una inferencia y frames/s de pared.
+     * null si no se pudo crear o ejecutar
+     */
+    private fun measure(candidate: InferenceProfile, model: ByteBuffer): InferenceProfile? {
+        val backends = mutableListOf<InferenceBackend>()
+        return try {
+            repeat(candidate.poolSize) { backends += TfliteBackend.create(model, candidate) }
+            val times = Collections.synchronizedList(mutableListOf<Double>())
+            val failure = AtomicReference<Throwable>()
+            val ready = CountDownLatch(backends.size)
+            val go = CountDownLatch(1)
+
+            val workers = backends.mapIndexed { index, backend ->
+                thread(name = "$TAG-$index") {
+                    try {
+                        val input = calibrationInput(backend.input)
+                        val output = ByteBuffer.allocateDirect(backend.output.numBytes)
+                            .order(ByteOrder.nativeOrder())
+                        repeat(WARMUP_RUNS) { runOnce(backend, input, output) }
+                        ready.countDown()
+                        go.await()
+                        repeat(MEASURED_RUNS) {
+                            val start = System.nanoTime()
+                            runOnce(backend, input, output)
+                            times += (System.nanoTime() - start) / 1_000_000.0
+                        }
+                    } catch (e: Throwable) {
+                        failure.compareAndSet(null, e)
+                        ready.countDown()
+                    }
+                }
+            }
+            ready.await()
+            val start = System.nanoTime()
+            go.countDown()
+            workers.forEach { it.join() }
+            val wallSeconds = (System.nanoTime() - start) / 1e9
+            failure.get()?.let { throw it }
+
+            val sorted = times.sorted()
+            candidate.copy(
+                latencyMs = sorted[sorted.size / 2],
+                framesPerSecond = sorted.size / wallSeconds
+            )
+        } catch (e: Throwable) {
+            Log.w(TAG, "Configuración descartada ($candidate): ${e.message}")
+            null
+        } finally {
+            backends.forEach { it.close() }
+        }
+    }
+
+    private fun runOnce(backend: InferenceBackend, input: ByteBuffer, output: ByteBuffer) {
+        input.rewind()
+        output.rewind()
+        backend.run(input, output)
+    }
+
+    /**
+     * Entrada de calibración determinista: patrón de degradados RGB que ocupa todo el
+     * tensor, para que todas las configuraciones midan exactamente el mismo trabajo
+     */
+    private fun calibrationInput(tensor: InferenceBackend.TensorSpec): ByteBuffer {
+        val buffer = ByteBuffer.allocateDirect(tensor.numBytes).order(ByteOrder.nativeOrder())
+        val quantization = tensor.quantization
+        for (i in 0 until tensor.numElements) {
+            val value = ((i * 37) % 256) / 255f
+            if (quantization.isQuantized) buffer.put(quantization.quantize(value)) else buffer.putFloat(value)
+        }
+        buffer.rewind()
+        return buffer
+    }
+}
@@ -0,0 +1,99 @@
+package com.biowaymexico.utils.vision
+
+import org.tensorflow.lite.Interpreter
+import org.tensorflow.lite.gpu.CompatibilityList
+import org.tensorflow.lite.gpu.GpuDelegate
+
+/**
+ * Configuración de ejecución de TFLite: delegado GPU, XNNPACK, número de hilos por
+ * intérprete, precisión relajada FP16 y cuántos intérpretes corren en paralelo
+ * ([poolSize], ver [InterpreterPool]).
+ *
+ * La elige [InferenceAutotuner] midiendo en el dispositivo; [latencyMs] es la
+ * latencia mediana de una inferencia y [framesPerSecond] el throughput con [poolSize]
+ * inferencias simultáneas, ambos con la entrada de calibración (0 si no se midió).
+ */
+data class InferenceProfile(
+    val useGpu: Boolean,
+    val useXnnpack: Boolean,
+    val numThreads: Int,
+    val allowFp16: Boolean,
+    val poolSize: Int = 1,
+    val latencyMs: Double = 0.0,
+    val framesPerSecond: Double = 0.0
+) {
+
+    companion object {
+        private const val DEFAULT_THREADS = 4
+
+        /** Perfil por defecto cuando no hay medición: CPU + XNNPACK, pool según los núcleos */
+        val DEFAULT_CPU = DEFAULT_THREADS.coerceAtMost(Runtime.getRuntime().availableProcessors()).let { threads ->
+            InferenceProfile(
+                useGpu = false,
+                useXnnpack = true,
+                numThreads = threads,
+                allowFp16 = false,
+                poolSize = InterpreterPool.sizeForThreads(threads)
+            )
+        }
+
+        /**
+         * Lee un perfil guardado con [serialize]; null si el formato no es válido (los
+         * perfiles anteriores sin tamaño de pool también, así se vuelven a medir)
+         */
+        fun parse(value: String): InferenceProfile? {
+            val fields = value.split(';')
+                .mapNotNull { entry -> entry.split('=').takeIf { it.size == 2 }?.let { it[0] to it[1] } }
+                .toMap()
+            return try {
+                InferenceProfile(
+                    useGpu = fields.getValue("gpu") == "1",
+                    useXnnpack = fields.getValue("xnnpack") == "1",
+                    numThreads = fields.getValue("threads").toInt().coerceAtLeast(1),
+                    allowFp16 = fields.getValue("fp16") == "1",
+                    poolSize = fields.getValue("pool").toInt().coerceAtLeast(1),
+                    latencyMs = fields["ms"]?.toDouble() ?: 0.0,
+                    framesPerSecond = fields["fps"]?.toDouble() ?: 0.0
+                )
+            } catch (e: Exception) {
+                null
+            }
+        }
+
+        private fun flag(value: Boolean) = if (value) "1" else "0"
+    }
+
+    fun serialize(): String =
+        "gpu=${flag(useGpu)};xnnpack=${flag(useXnnpack)};threads=$numThreads;fp16=${flag(allowFp16)};" +
+            "pool=$poolSize;ms=$latencyMs;fps=$framesPerSecond"
+
+    /**
+     * Crea las opciones del intérprete (y el delegado GPU, que el llamador debe cerrar).
+     * [threads] permite repartir los núcleos cuando hay varios intérpretes en un pool.
+     */
+    fun newOptions(threads: Int = numThreads): Pair<Interpreter.Options, GpuDelegate?> {
+        val options = Interpreter.Options().apply {
+            setNumThreads(threads)
+            setUseXNNPACK(useXnnpack)
+            if (allowFp16 && !useGpu) {
+                @Suppress("DEPRECATION")
+                setAllowFp16PrecisionForFp32(true)
+            }
+        }
+
+        var gpuDelegate: GpuDelegate? = null
+        if (useGpu) {
+            val delegateOptions = CompatibilityList().bestOptionsForThisDevice
+            delegateOptions.setPrecisionLossAllowed(allowFp16)
+            gpuDelegate = GpuDelegate(delegateOptions)
+            options.addDelegate(gpuDelegate)
+        }
+        return options to gpuDelegate
+    }
+
+    override fun toString(): String {
+        val backend = if (useGpu) "GPU" else if (useXnnpack) "XNNPACK" else "CPU"
+        val precision = if (allowFp16) " fp16" else ""
+        return "$backend x$numThreads$precision, pool $poolSize (%.1f ms, %.1f fps)".format(latencyMs, framesPerSecond)
+    }
+}
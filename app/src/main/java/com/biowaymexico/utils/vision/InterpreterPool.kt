@@ -0,0 +1,60 @@
+package com.biowaymexico.utils.vision
+
+import kotlinx.coroutines.channels.Channel
+
+/**
+ * Pool de slots de inferencia (intérprete + buffers propios).
+ *
+ * Los intérpretes de TFLite no son thread-safe, así que cada corrutina toma un
+ * slot en exclusiva con [withSlot] y lo devuelve al terminar. Si todos los slots
+ * están ocupados, la corrutina se suspende hasta que uno se libere.
+ */
+class InterpreterPool<T : AutoCloseable>(private val slots: List<T>) : AutoCloseable {
+
+    companion object {
+        const val MAX_POOL_SIZE = 4
+
+        /**
+         * Tamaño de pool para intérpretes de [threadsPerInterpreter] hilos (p. ej. el
+         * número de hilos elegido por el autotuner) sin sobresuscribir los núcleos
+         */
+        fun sizeForThreads(
+            threadsPerInterpreter: Int,
+            cores: Int = Runtime.getRuntime().availableProcessors()
+        ): Int {
+            return (cores / threadsPerInterpreter.coerceAtLeast(1)).coerceIn(1, MAX_POOL_SIZE)
+        }
+    }
+
+    init {
+        require(slots.isNotEmpty()) { "El pool necesita al menos un slot" }
+    }
+
+    private val available = Channel<T>(slots.size).apply {
+        slots.forEach { trySend(it) }
+    }
+
+    val size: Int get() = slots.size
+
+    /**
+     * Slot para leer metadatos del modelo (shapes, tipos). Nunca usar para inferir.
+     */
+    val metadataSlot: T get() = slots.first()
+
+    /**
+     * Ejecuta [block] con un slot en exclusiva
+     */
+    suspend fun <R> withSlot(block: (T) -> R): R {
+        val slot = available.receive()
+        try {
+            return block(slot)
+        } finally {
+            available.trySend(slot)
+        }
+    }
+
+    override fun close() {
+        available.close()
+        slots.forEach { it.close() }
+    }
+}
@@ -0,0 +1,182 @@
+package com.biowaymexico.utils.vision
+
+import android.content.Context
+import android.os.Handler
+import android.os.Looper
+import android.util.Log
+import java.io.File
+import java.io.FileInputStream
+import java.io.RandomAccessFile
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.CountDownLatch
+
+/**
+ * Registro de modelos compartido por todo el proceso.
+ *
+ * - Cada modelo de assets se mapea en memoria una sola vez ([mapModel]).
+ * - Los recursos caros de crear (intérpretes, delegados GPU, detectores) se piden con
+ *   [acquire] y se comparten por clave con conteo de referencias. Cada pantalla recibe
+ *   un [Lease] y lo cierra al salir.
+ * - Cuando un recurso se queda sin referencias no se cierra de inmediato: sigue caliente
+ *   durante [idleTimeoutMs] por si se vuelve a entrar a la pantalla, y después se
+ *   libera. Volver a un clasificador cuesta milisegundos en lugar de cargar el modelo
+ *   e inicializar el delegado otra vez.
+ */
+object ModelRegistry {
+
+    private const val TAG = "ModelRegistry"
+    const val DEFAULT_IDLE_TIMEOUT_MS = 60_000L
+
+    /** Tiempo que un recurso sin referencias se conserva antes de liberarse */
+    @Volatile
+    var idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS
+
+    private val lock = Any()
+    private val mappedModels = mutableMapOf<String, MappedByteBuffer>()
+    private val entries = mutableMapOf<String, Entry>()
+    private val handler by lazy { Handler(Looper.getMainLooper()) }
+
+    /**
+     * Recurso por clave. Se registra antes de crearlo (con [ready] cerrado) para que la
+     * creación corra fuera de [lock]: quien pide la misma clave mientras tanto espera en
+     * [ready], y las demás claves, [release] y [evictIdle] no se bloquean
+     */
+    private class Entry {
+        val ready = CountDownLatch(1)
+        @Volatile var value: AutoCloseable? = null
+        @Volatile var failure: Throwable? = null
+        var refCount = 0
+        var eviction: Runnable? = null
+    }
+
+    /**
+     * Referencia a un recurso compartido. [close] libera la referencia (no el recurso);
+     * llamarlo más de una vez no tiene efecto.
+     */
+    class Lease<T : AutoCloseable> internal constructor(
+        val key: String,
+        override val value: T
+    ) : ModelLease<T> {
+
+        @Volatile
+        private var released = false
+
+        override fun close() {
+            if (released) return
+            released = true
+            release(key)
+        }
+    }
+
+    /**
+     * Modelo de assets mapeado en memoria (una sola vez por ruta en todo el proceso)
+     */
+    fun mapModel(context: Context, assetPath: String): MappedByteBuffer = synchronized(lock) {
+        mappedModels.getOrPut(assetPath) {
+            context.applicationContext.assets.openFd(assetPath).use { descriptor ->
+                FileInputStream(descriptor.fileDescriptor).use { inputStream ->
+                    inputStream.channel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        descriptor.startOffset,
+                        descriptor.declaredLength
+                    )
+                }
+            }.also { Log.d(TAG, "Modelo mapeado: $assetPath (${it.capacity() / 1024} KB)") }
+        }
+    }
+
+    /**
+     * Modelo del almacenamiento de la app (p. ej. una versión de [ModelStore]) mapeado
+     * en memoria. Cada versión vive en su propio archivo, así que la ruta basta como clave.
+     */
+    fun mapFile(file: File): MappedByteBuffer = synchronized(lock) {
+        mappedModels.getOrPut(file.absolutePath) {
+            RandomAccessFile(file, "r").use { raf ->
+                raf.channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+            }.also { Log.d(TAG, "Modelo mapeado: ${file.path} (${it.capacity() / 1024} KB)") }
+        }
+    }
+
+    /**
+     * Toma una referencia al recurso [key]; si no existe (o ya fue liberado) lo crea con
+     * [factory]. La creación ocurre en el hilo que llama (usar fuera del hilo principal) y
+     * sin el lock del registro; si otro hilo ya está creando [key], se espera a ese.
+     */
+    fun <T : AutoCloseable> acquire(key: String, factory: () -> T): Lease<T> {
+        var creating = false
+        val entry = synchronized(lock) {
+            val entry = entries.getOrPut(key) { creating = true; Entry() }
+            entry.eviction?.let {
+                handler.removeCallbacks(it)
+                entry.eviction = null
+                Log.d(TAG, "Reutilizando '$key' (caliente)")
+            }
+            // La referencia se toma ya: una entrada en creación nunca se desaloja
+            entry.refCount++
+            entry
+        }
+
+        if (creating) {
+            val start = System.currentTimeMillis()
+            try {
+                entry.value = factory()
+                Log.d(TAG, "Creado '$key' en ${System.currentTimeMillis() - start}ms")
+            } catch (e: Throwable) {
+                entry.failure = e
+                synchronized(lock) { if (entries[key] === entry) entries.remove(key) }
+                throw e
+            } finally {
+                entry.ready.countDown()
+            }
+        } else {
+            try {
+                entry.ready.await()
+            } catch (e: InterruptedException) {
+                release(key)
+                throw e
+            }
+            entry.failure?.let { throw IllegalStateException("No se pudo crear '$key'", it) }
+        }
+
+        @Suppress("UNCHECKED_CAST")
+        return Lease(key, entry.value as T)
+    }
+
+    private fun release(key: String) = synchronized(lock) {
+        val entry = entries[key] ?: return@synchronized
+        entry.refCount--
+        if (entry.refCount > 0) return@synchronized
+
+        // Sin referencias: conservar caliente y liberar tras el tiempo de inactividad
+        val eviction = Runnable { evict(key, entry) }
+        entry.eviction = eviction
+        handler.postDelayed(eviction, idleTimeoutMs)
+    }
+
+    private fun evict(key: String, entry: Entry) {
+        synchronized(lock) {
+            if (entries[key] !== entry || entry.refCount > 0) return
+            entries.remove(key)
+        }
+        try {
+            entry.value?.close()
+            Log.d(TAG, "Liberado '$key' por inactividad")
+        } catch (e: Exception) {
+            Log.e(TAG, "Error liberando '$key'", e)
+        }
+    }
+
+    /**
+     * Libera de inmediato todos los recursos sin referencias (p. ej. con poca memoria)
+     */
+    fun evictIdle() {
+        val idle = synchronized(lock) {
+            entries.filterValues { it.refCount <= 0 }.onEach { (_, entry) ->
+                entry.eviction?.let { handler.removeCallbacks(it) }
+                entry.eviction = null
+            }
+        }
+        idle.forEach { (key, entry) -> evict(key, entry) }
+    }
+}
@@ -0,0 +1,148 @@
+package com.biowaymexico.utils.vision
+
+import android.content.Context
+import android.util.Log
+import org.json.JSONObject
+import java.io.File
+import java.io.FileInputStream
+import java.security.MessageDigest
+
+/**
+ * Versiones de un modelo instaladas en el almacenamiento de la app (sin release).
+ *
+ * Estructura en disco, una carpeta por versión:
+ * ```
+ * files/models/<name>/v<N>/model.tflite
+ *                          labels.txt
+ *                          manifest.json   {"version": N, "sha256": "<hex del modelo>"}
+ * ```
+ * Una versión solo se entrega si el manifiesto coincide con su carpeta, el SHA-256
+ * del modelo coincide con el declarado, el archivo es un flatbuffer TFLite y las
+ * etiquetas no están vacías. Las versiones revertidas por regresión quedan marcadas
+ * y no se vuelven a ofrecer.
+ */
+class ModelStore(context: Context, val name: String) {
+
+    companion object {
+        private const val TAG = "ModelStore"
+        private const val PREFS_NAME = "model_store"
+        private const val MODEL_FILE = "model.tflite"
+        private const val LABELS_FILE = "labels.txt"
+        private const val MANIFEST_FILE = "manifest.json"
+        private const val VERSION_PREFIX = "v"
+
+        // Identificador de flatbuffer de TFLite (bytes 4-7 del archivo)
+        private val TFLITE_IDENTIFIER = "TFL3".toByteArray(Charsets.US_ASCII)
+    }
+
+    /** Versión de modelo validada, lista para cargarse */
+    data class ModelPackage(
+        val name: String,
+        val version: Int,
+        val modelFile: File,
+        val labels: List<String>,
+        val sha256: String
+    ) {
+        /** Clave estable para ModelRegistry y para los logs */
+        val key: String get() = "$name@v$version"
+    }
+
+    val directory = File(context.applicationContext.filesDir, "models/$name")
+    private val prefs = context.applicationContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+
+    /** Versión instalada y aceptada por última vez (0 = modelo de assets) */
+    val activeVersion: Int get() = prefs.getInt("$name.active", 0)
+
+    fun isRejected(version: Int): Boolean = prefs.getBoolean("$name.rejected.$version", false)
+
+    fun markActive(version: Int) {
+        prefs.edit().putInt("$name.active", version).apply()
+    }
+
+    /**
+     * Marca una versión como revertida; [latestValid] la ignorará en adelante
+     */
+    fun markRejected(version: Int) {
+        prefs.edit().putBoolean("$name.rejected.$version", true).apply()
+        Log.w(TAG, "$name v$version marcada como rechazada")
+    }
+
+    /**
+     * Versión más reciente que pasa la validación y no fue rechazada, si es mayor que
+     * [newerThan]. Las versiones inválidas se registran y se saltan.
+     * Calcula SHA-256 del modelo: llamar fuera del hilo principal.
+     */
+    fun latestValid(newerThan: Int = 0): ModelPackage? {
+        val versions = directory.listFiles()
+            ?.filter { it.isDirectory && it.name.startsWith(VERSION_PREFIX) }
+            ?.mapNotNull { dir -> dir.name.removePrefix(VERSION_PREFIX).toIntOrNull()?.let { it to dir } }
+            ?.filter { (version, _) -> version > newerThan && !isRejected(version) }
+            ?.sortedByDescending { (version, _) -> version }
+            .orEmpty()
+
+        for ((version, dir) in versions) {
+            try {
+                return validate(version, dir)
+            } catch (e: Exception) {
+                Log.w(TAG, "$name v$version inválida: ${e.message}")
+            }
+        }
+        return null
+    }
+
+    /**
+     * Una versión concreta si está instalada, es válida y no fue rechazada
+     */
+    fun find(version: Int): ModelPackage? {
+        if (version <= 0 || isRejected(version)) return null
+        return try {
+            validate(version, File(directory, "$VERSION_PREFIX$version"))
+        } catch (e: Exception) {
+            Log.w(TAG, "$name v$version inválida: ${e.message}")
+            null
+        }
+    }
+
+    private fun validate(version: Int, dir: File): ModelPackage {
+        val modelFile = File(dir, MODEL_FILE)
+        val labelsFile = File(dir, LABELS_FILE)
+        val manifestFile = File(dir, MANIFEST_FILE)
+        require(modelFile.isFile && labelsFile.isFile && manifestFile.isFile) {
+            "faltan $MODEL_FILE, $LABELS_FILE o $MANIFEST_FILE"
+        }
+
+        val manifest = JSONObject(manifestFile.readText())
+        require(manifest.getInt("version") == version) {
+            "el manifiesto declara la versión ${manifest.getInt("version")}"
+        }
+        val expectedHash = manifest.getString("sha256").lowercase()
+
+        require(hasTfliteIdentifier(modelFile)) { "$MODEL_FILE no es un modelo TFLite" }
+        val actualHash = sha256(modelFile)
+        require(actualHash == expectedHash) { "SHA-256 no coincide ($actualHash)" }
+
+        val labels = labelsFile.readLines().map { it.trim() }.filter { it.isNotEmpty() }
+        require(labels.isNotEmpty()) { "$LABELS_FILE está vacío" }
+
+        return ModelPackage(name, version, modelFile, labels, actualHash)
+    }
+
+    private fun hasTfliteIdentifier(file: File): Boolean {
+        val header = ByteArray(8)
+        val read = FileInputStream(file).use { it.read(header) }
+        return read == header.size && header.copyOfRange(4, 8).contentEquals(TFLITE_IDENTIFIER)
+    }
+
+    private fun sha256(file: File): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        FileInputStream(file).use { input ->
+            val chunk = ByteArray(64 * 1024)
+            while (true) {
+                val read = input.read(chunk)
+                if (read < 0) break
+                digest.update(chunk, 0, read)
+            }
+        }
+        return digest.digest().joinToString("") { "%02x".format(it) }
+    }
+}
@@ -0,0 +1,76 @@
+package com.biowaymexico.utils.vision
+
+import com.ultralytics.yolo.YoloOutputDecoder
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+
+/**
+ * Arena de salida reutilizable para un [InferenceBackend].
+ *
+ * El tamaño se obtiene de la forma de salida que reporta el backend en lugar de
+ * valores fijos (antes 16x2100), y el buffer directo se reserva una sola vez.
+ * Cada backend debe tener su propia arena: no se comparte entre hilos, así que
+ * varios intérpretes pueden ejecutar en paralelo sin pisarse la salida.
+ *
+ * Si la salida está cuantizada (UINT8/INT8), el buffer guarda los bytes crudos y
+ * [decode] los decodifica sin convertir el tensor completo a float.
+ */
+class OutputTensorArena(
+    val shape: IntArray,
+    bytesPerElement: Int = 4,
+    val quantization: TensorQuantization = TensorQuantization.FLOAT32
+) {
+
+    constructor(backend: InferenceBackend) : this(backend.output)
+
+    private constructor(spec: InferenceBackend.TensorSpec) :
+        this(spec.shape, spec.quantization.bytesPerElement, spec.quantization)
+
+    val numElements: Int = shape.fold(1) { acc, dim -> acc * dim }
+
+    val buffer: ByteBuffer = ByteBuffer
+        .allocateDirect(numElements * bytesPerElement)
+        .order(ByteOrder.nativeOrder())
+        .also { InferenceAllocationTracker.recordDirectAllocation(it.capacity()) }
+
+    /** Vista float de [buffer] (solo salidas float32) */
+    val floatView: FloatBuffer = buffer.asFloatBuffer()
+
+    /**
+     * Prepara el buffer para recibir una nueva inferencia
+     */
+    fun prepare(): ByteBuffer {
+        buffer.rewind()
+        return buffer
+    }
+
+    /**
+     * Decodifica la imagen [imageIndex] de la salida con [decoder], en float o en el
+     * dominio cuantizado según el tipo del tensor
+     */
+    fun decode(decoder: YoloOutputDecoder, threshold: Float, imageIndex: Int = 0): Int {
+        val offset = imageIndex * decoder.elementsPerImage
+        return if (quantization.isQuantized) {
+            decoder.decodeQuantized(
+                buffer,
+                offset,
+                quantization.scale,
+                quantization.zeroPoint,
+                quantization.isSigned,
+                threshold
+            )
+        } else {
+            decoder.decode(floatView, offset, threshold)
+        }
+    }
+
+    /**
+     * Copia de la salida de la imagen [imageIndex] para [TensorRecorder]
+     */
+    fun record(imageIndex: Int = 0): TensorRecording.Tensor {
+        return TensorRecording.Tensor.copyOf(
+            buffer, imageIndex, shape, quantization.dataType, quantization.scale, quantization.zeroPoint
+        )
+    }
+}
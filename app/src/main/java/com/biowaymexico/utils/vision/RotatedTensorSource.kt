@@ -0,0 +1,156 @@
+package com.biowaymexico.utils.vision
+
+import android.graphics.Bitmap
+import java.nio.ByteBuffer
+import java.nio.FloatBuffer
+
+/**
+ * Fuente de entradas rotadas para TTA en espacio de tensor.
+ *
+ * La imagen se letterboxea y normaliza una sola vez; las vistas de 90, 180 y 270°
+ * se obtienen permutando índices del tensor [inputSize, inputSize, 3] ya normalizado,
+ * sin crear ni remuestrear bitmaps rotados. Como el muestreo bilineal del letterbox es
+ * simétrico, el resultado coincide con letterboxear el bitmap rotado.
+ *
+ * Con entradas cuantizadas la permutación se hace sobre los bytes ya cuantizados.
+ *
+ * [load] no es thread-safe; una vez cargado, [writeRotated] puede llamarse en paralelo
+ * desde varios slots (solo lee el tensor base).
+ */
+class RotatedTensorSource(
+    val inputSize: Int,
+    val quantization: TensorQuantization = TensorQuantization.FLOAT32
+) {
+
+    companion object {
+        private const val CHANNELS = 3
+    }
+
+    private val engine = LetterboxInputEngine(inputSize, quantization = quantization)
+    private val quantized = quantization.isQuantized
+
+    // Tensor base: floats normalizados o bytes cuantizados según la entrada del modelo
+    private val base = FloatArray(if (quantized) 0 else inputSize * inputSize * CHANNELS)
+    private val quantizedBase = ByteArray(if (quantized) inputSize * inputSize * CHANNELS else 0)
+
+    // Fila de destino ya permutada, como la fila escalonada de LetterboxInputEngine. Una
+    // por hilo: writeRotated corre en paralelo desde varios slots
+    private val rowFloats = ThreadLocal.withInitial { FloatArray(if (quantized) 0 else inputSize * CHANNELS) }
+    private val rowBytes = ThreadLocal.withInitial { ByteArray(if (quantized) inputSize * CHANNELS else 0) }
+
+    /** Geometría del letterbox sin rotar */
+    var geometry: LetterboxGeometry? = null
+        private set
+
+    /**
+     * Letterboxea y normaliza [bitmap] una sola vez como tensor base
+     */
+    fun load(bitmap: Bitmap): LetterboxGeometry {
+        engine.process(bitmap)
+        return capture()
+    }
+
+    /**
+     * Letterboxea y normaliza la imagen lógica de [transform] muestreando directamente el
+     * frame de cámara [frame] (ARGB, [frameStride] enteros por fila), sin bitmaps intermedios
+     */
+    fun load(frame: IntArray, frameStride: Int, transform: FrameTransform): LetterboxGeometry {
+        engine.process(frame, frameStride, transform)
+        return capture()
+    }
+
+    /**
+     * Copia el tensor recién escrito por el motor como tensor base
+     */
+    private fun capture(): LetterboxGeometry {
+        if (quantized) {
+            engine.buffer.rewind()
+            engine.buffer.get(quantizedBase)
+            engine.buffer.rewind()
+        } else {
+            engine.floatView.rewind()
+            engine.floatView.get(base)
+        }
+        return engine.geometry().also { geometry = it }
+    }
+
+    /**
+     * Escribe en el buffer de [dst] el tensor base rotado [degrees] en sentido horario.
+     * [dst] debe tener el mismo tamaño de entrada y la misma cuantización.
+     */
+    fun writeRotated(degrees: Int, dst: LetterboxInputEngine) {
+        require(dst.inputSize == inputSize && dst.quantization == quantization) {
+            "Motor de destino incompatible con la fuente rotada"
+        }
+        if (quantized) {
+            writeRotatedBytes(degrees, dst.buffer)
+        } else {
+            writeRotatedFloats(degrees, dst.floatView)
+        }
+    }
+
+    private fun writeRotatedFloats(degrees: Int, dst: FloatBuffer) {
+        val src = base
+        dst.rewind()
+        if (degrees == 0 || degrees == 360) {
+            dst.put(src)
+        } else {
+            val row = rowFloats.get()
+            forEachRotatedRow(degrees) { first, step ->
+                // La fila se permuta en el arreglo y se escribe de una vez en el buffer directo
+                var pixel = first
+                var o = 0
+                repeat(inputSize) {
+                    val i = pixel * CHANNELS
+                    row[o] = src[i]
+                    row[o + 1] = src[i + 1]
+                    row[o + 2] = src[i + 2]
+                    pixel += step
+                    o += CHANNELS
+                }
+                dst.put(row, 0, o)
+            }
+        }
+        dst.rewind()
+    }
+
+    private fun writeRotatedBytes(degrees: Int, dst: ByteBuffer) {
+        val src = quantizedBase
+        dst.rewind()
+        if (degrees == 0 || degrees == 360) {
+            dst.put(src)
+        } else {
+            val row = rowBytes.get()
+            forEachRotatedRow(degrees) { first, step ->
+                var pixel = first
+                var o = 0
+                repeat(inputSize) {
+                    val i = pixel * CHANNELS
+                    row[o] = src[i]
+                    row[o + 1] = src[i + 1]
+                    row[o + 2] = src[i + 2]
+                    pixel += step
+                    o += CHANNELS
+                }
+                dst.put(row, 0, o)
+            }
+        }
+        dst.rewind()
+    }
+
+    /**
+     * Recorre las filas del destino entregando, para cada una, el índice de píxel de
+     * origen de su primera columna y el paso entre columnas
+     */
+    private inline fun forEachRotatedRow(degrees: Int, action: (first: Int, step: Int) -> Unit) {
+        val n = inputSize
+        for (y in 0 until n) {
+            when (degrees) {
+                90 -> action((n - 1) * n + y, -n)  // dst[y][x] = src[n-1-x][y]
+                180 -> action((n - 1 - y) * n + n - 1, -1)  // dst[y][x] = src[n-1-y][n-1-x]
+                270 -> action(n - 1 - y, n)  // dst[y][x] = src[x][n-1-y]
+                else -> action(y * n, 1)
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.biowaymexico.utils.vision
+
+import com.biowaymexico.BuildConfig
+import com.ultralytics.yolo.DetectionBuffer
+import java.io.Closeable
+import java.io.DataOutputStream
+import java.io.File
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Graba los tensores de salida de cada frame en un archivo `.bwr` (ver [TensorRecording])
+ * para repetir el post-procesado fuera del dispositivo.
+ *
+ * Solo existe en builds debug y solo si se pidió: [openIfRequested] busca el marcador
+ * `.record` en el directorio de grabaciones, que se crea con adb en el bote:
+ *
+ *   adb shell touch /sdcard/Android/data/com.biowaymexico/files/recordings/.record
+ *   adb pull /sdcard/Android/data/com.biowaymexico/files/recordings/
+ *
+ * Uso por frame: [beginFrame], [Frame.addPass] por cada inferencia (desde cualquier hilo)
+ * y [Frame.end] con las detecciones finales. Cada frame se escribe completo y con flush,
+ * así que un cierre inesperado de la app solo pierde el frame en curso.
+ */
+class TensorRecorder(
+    val file: File,
+    header: TensorRecording.Header
+) : Closeable {
+
+    companion object {
+        const val MARKER_FILE = ".record"
+        private const val MAX_FILE_BYTES = 512L * 1024 * 1024  // Tope por archivo (~2 min de TTA completo)
+
+        /**
+         * Grabador nuevo en [dir] si el build es debug y existe [MARKER_FILE], o null
+         */
+        fun openIfRequested(
+            dir: File?,
+            name: String,
+            source: TensorRecording.Source,
+            labels: List<String>,
+            params: Map<String, Float>,
+            device: String
+        ): TensorRecorder? {
+            if (!BuildConfig.DEBUG || dir == null || !File(dir, MARKER_FILE).exists()) return null
+            val stamp = SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(Date())
+            val header = TensorRecording.Header(source, System.currentTimeMillis(), device, labels, params)
+            return TensorRecorder(File(dir, "$name-$stamp.bwr"), header)
+        }
+    }
+
+    private val output = DataOutputStream(GZIPOutputStream(file.outputStream().buffered(), true))
+    private var nextFrameId = 0
+    private var closed = false
+
+    init {
+        TensorRecording.writeHeader(output, header)
+        output.flush()
+    }
+
+    /**
+     * Un frame en curso. Las pasadas se pueden agregar en paralelo; se escriben en el
+     * orden de su índice.
+     *
+     * @param imageWidth  Imagen que recibió el modelo (p. ej. el recorte del ROI)
+     * @param frameWidth  Frame completo del que sale la imagen
+     * @param region      Región de la imagen dentro del frame (ROI o zoom), null = todo
+     */
+    inner class Frame internal constructor(
+        private val id: Int,
+        private val imageWidth: Int,
+        private val imageHeight: Int,
+        private val frameWidth: Int,
+        private val frameHeight: Int,
+        private val rotation: Int,
+        private val region: TensorRecording.Region?
+    ) {
+        private val passes = ArrayList<TensorRecording.Pass>()
+        private val stages = ArrayList<Int>()
+        private var tileCount = 0
+
+        fun addPass(pass: TensorRecording.Pass) {
+            synchronized(passes) { passes += pass }
+        }
+
+        /** Fin de una etapa de la cascada, con [passesRun] pasadas acumuladas */
+        fun endStage(passesRun: Int) {
+            stages += passesRun
+        }
+
+        /** Tamaño de la rejilla de mosaicos del frame (incluye los que no se infirieron) */
+        fun setTileCount(count: Int) {
+            tileCount = count
+        }
+
+        /**
+         * Escribe el frame con las detecciones finales [result] (como las recibe la app)
+         */
+        fun end(result: DetectionBuffer, inferenceMs: Float, earlyExit: Boolean = false) {
+            val sorted = synchronized(passes) { passes.sortedWith(compareBy({ it.tileIndex }, { it.index })) }
+            val frame = TensorRecording.Frame(
+                id, System.currentTimeMillis(), imageWidth, imageHeight, frameWidth, frameHeight, rotation,
+                region, inferenceMs, stages.toIntArray(), earlyExit, tileCount, sorted,
+                DetectionBuffer(result.size()).apply { copyFrom(result) }
+            )
+            write(frame)
+        }
+    }
+
+    @Synchronized
+    fun beginFrame(
+        imageWidth: Int,
+        imageHeight: Int,
+        frameWidth: Int = imageWidth,
+        frameHeight: Int = imageHeight,
+        rotation: Int = 0,
+        region: TensorRecording.Region? = null
+    ): Frame = Frame(nextFrameId++, imageWidth, imageHeight, frameWidth, frameHeight, rotation, region)
+
+    @Synchronized
+    private fun write(frame: TensorRecording.Frame) {
+        if (closed) return
+        TensorRecording.writeFrame(output, frame)
+        output.flush()
+        if (file.length() > MAX_FILE_BYTES) close()
+    }
+
+    @Synchronized
+    override fun close() {
+        if (closed) return
+        closed = true
+        output.close()
+    }
+}
@@ -0,0 +1,85 @@
+package com.biowaymexico.utils.vision
+
+import org.tensorflow.lite.DataType
+import org.tensorflow.lite.Interpreter
+import org.tensorflow.lite.Tensor
+import org.tensorflow.lite.gpu.GpuDelegate
+import java.nio.ByteBuffer
+
+/**
+ * [InferenceBackend] de TensorFlow Lite: un intérprete con sus opciones y, si las
+ * opciones lo usan, el delegado GPU (se cierra junto con el intérprete).
+ *
+ * Los argumentos de `runForMultipleInputsOutputs` se construyen una sola vez, así que
+ * [run] no reserva memoria (Interpreter.run crea un arreglo y un mapa por llamada).
+ */
+class TfliteBackend(
+    model: ByteBuffer,
+    options: Interpreter.Options = Interpreter.Options(),
+    private val gpuDelegate: GpuDelegate? = null,
+    override val name: String = "TFLite"
+) : InferenceBackend {
+
+    companion object {
+        /**
+         * Backend con la configuración de [profile]; [threads] permite repartir los núcleos
+         * cuando hay varios intérpretes en un pool
+         */
+        fun create(model: ByteBuffer, profile: InferenceProfile, threads: Int = profile.numThreads): TfliteBackend {
+            val (options, gpuDelegate) = profile.newOptions(threads)
+            try {
+                return TfliteBackend(model, options, gpuDelegate, "TFLite $profile")
+            } catch (e: Exception) {
+                gpuDelegate?.close()
+                throw e
+            }
+        }
+    }
+
+    val interpreter = Interpreter(model, options)
+
+    override var input = spec(interpreter.getInputTensor(0))
+        private set
+
+    override var output = spec(interpreter.getOutputTensor(0))
+        private set
+
+    private val runInputs = arrayOfNulls<Any>(1)
+    private val runOutputs = HashMap<Int, Any>(1)
+
+    override fun resizeBatch(batchSize: Int) {
+        require(batchSize >= 1) { "batchSize debe ser >= 1" }
+        val shape = input.shape.copyOf().also { it[0] = batchSize }
+        interpreter.resizeInput(0, shape)
+        interpreter.allocateTensors()
+        input = spec(interpreter.getInputTensor(0))
+        output = spec(interpreter.getOutputTensor(0))
+    }
+
+    override fun run(input: ByteBuffer, output: ByteBuffer) {
+        runInputs[0] = input
+        runOutputs[0] = output
+        interpreter.runForMultipleInputsOutputs(runInputs, runOutputs)
+    }
+
+    override fun close() {
+        interpreter.close()
+        gpuDelegate?.close()
+    }
+
+    private fun spec(tensor: Tensor) = InferenceBackend.TensorSpec(tensor.shape(), TensorQuantization.of(tensor))
+}
+
+/**
+ * Lee tipo y parámetros de cuantización directamente del tensor del intérprete
+ */
+fun TensorQuantization.Companion.of(tensor: Tensor): TensorQuantization {
+    val params = tensor.quantizationParams()
+    val type = when (tensor.dataType()) {
+        DataType.UINT8 -> TensorRecording.ElementType.UINT8
+        DataType.INT8 -> TensorRecording.ElementType.INT8
+        DataType.FLOAT32 -> TensorRecording.ElementType.FLOAT32
+        else -> throw IllegalArgumentException("Tipo de tensor no soportado: ${tensor.dataType()}")
+    }
+    return TensorQuantization(type, params.scale, params.zeroPoint)
+}
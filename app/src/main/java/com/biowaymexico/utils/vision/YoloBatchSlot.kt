@@ -0,0 +1,67 @@
+package com.biowaymexico.utils.vision
+
+import com.ultralytics.yolo.YoloOutputDecoder
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Backend YOLO redimensionado a un batch de [batchSize] imágenes.
+ *
+ * La entrada se redimensiona a [batchSize, inputSize, inputSize, 3] y se rellena con
+ * un [LetterboxInputEngine] por imagen, cada uno escribiendo en su porción del buffer
+ * del batch. Una sola invocación del backend procesa todas las vistas aumentadas,
+ * amortizando el coste fijo por invocación en CPU/XNNPACK.
+ *
+ * Pensado para CPU: el delegado GPU no soporta bien el cambio de tamaño dinámico.
+ */
+class YoloBatchSlot(
+    val backend: InferenceBackend,
+    val inputSize: Int,
+    val batchSize: Int
+) : AutoCloseable {
+
+    val inputBuffer: ByteBuffer
+    val inputEngines: List<LetterboxInputEngine>
+    val outputArena: OutputTensorArena
+    val outputDecoder: YoloOutputDecoder
+
+    init {
+        require(batchSize >= 1) { "batchSize debe ser >= 1" }
+
+        backend.resizeBatch(batchSize)
+
+        val inputQuantization = backend.input.quantization
+        val bytesPerImage = LetterboxInputEngine.bytesPerImage(inputSize, inputQuantization.bytesPerElement)
+        inputBuffer = ByteBuffer.allocateDirect(bytesPerImage * batchSize)
+            .order(ByteOrder.nativeOrder())
+            .also { InferenceAllocationTracker.recordDirectAllocation(it.capacity()) }
+
+        // Cada motor escribe en su porción del batch (sin copias intermedias)
+        inputEngines = (0 until batchSize).map { index ->
+            val slice = inputBuffer.duplicate()
+            slice.position(index * bytesPerImage)
+            slice.limit((index + 1) * bytesPerImage)
+            LetterboxInputEngine(inputSize, slice.slice(), inputQuantization)
+        }
+
+        outputArena = OutputTensorArena(backend)
+        val shape = outputArena.shape
+        outputDecoder = YoloOutputDecoder(intArrayOf(1, shape[1], shape[2]))
+    }
+
+    /**
+     * Ejecuta una sola inferencia para todo el batch
+     */
+    fun run() {
+        inputBuffer.rewind()
+        outputArena.prepare()
+        backend.run(inputBuffer, outputArena.buffer)
+    }
+
+    /**
+     * Decodifica la salida de la imagen [index] del batch
+     */
+    fun decode(index: Int, threshold: Float): Int = outputArena.decode(outputDecoder, threshold, index)
+
+    override fun close() = backend.close()
+}
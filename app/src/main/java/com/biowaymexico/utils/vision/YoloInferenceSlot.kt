@@ -0,0 +1,30 @@
+package com.biowaymexico.utils.vision
+
+import com.ultralytics.yolo.YoloOutputDecoder
+
+/**
+ * Un backend YOLO con sus buffers exclusivos (entrada, salida y decodificador).
+ *
+ * Varios slots pueden compartir el mismo modelo mapeado en memoria; lo único que
+ * no se comparte es el estado mutable de cada inferencia.
+ */
+class YoloInferenceSlot(
+    val backend: InferenceBackend,
+    inputSize: Int
+) : AutoCloseable {
+
+    val inputEngine = LetterboxInputEngine(inputSize, quantization = backend.input.quantization)
+    val outputArena = OutputTensorArena(backend)
+    val outputDecoder = YoloOutputDecoder(outputArena.shape)
+
+    /**
+     * Ejecuta el backend con el tensor ya escrito en [inputEngine]; la salida queda en [outputArena]
+     */
+    fun run() {
+        val input = inputEngine.buffer
+        input.rewind()
+        backend.run(input, outputArena.prepare())
+    }
+
+    override fun close() = backend.close()
+}
@@ -0,0 +1,25 @@
+package com.ultralytics.yolo
+
+import android.graphics.RectF
+
+/**
+ * Representa una detección individual
+ */
+data class Detection(
+    val classIndex: Int,
+    val className: String,
+    val confidence: Float,
+    val boundingBox: RectF,      // Coordenadas en píxeles
+    val normalizedBox: RectF     // Coordenadas normalizadas (0-1)
+)
+
+/**
+ * Resultado de la detección
+ */
+data class DetectionResult(
+    val boxes: List<Detection>,
+    val inferenceTimeMs: Double,
+    val fps: Double,
+    val imageWidth: Int,
+    val imageHeight: Int
+)
@@ -4,15 +4,23 @@ import android.content.Context
 import android.graphics.Bitmap
 import android.graphics.RectF
 import android.util.Log
+import com.biowaymexico.utils.vision.FrameTransform
+import com.biowaymexico.utils.vision.HotSwapModel
+import com.biowaymexico.utils.vision.InferenceAutotuner
+import com.biowaymexico.utils.vision.InferenceBackend
+import com.biowaymexico.utils.vision.LetterboxInputEngine
+import com.biowaymexico.utils.vision.ModelRegistry
+import com.biowaymexico.utils.vision.ModelStore
+import com.biowaymexico.utils.vision.TensorRecorder
+import com.biowaymexico.utils.vision.TensorRecording
+import com.biowaymexico.utils.vision.TfliteBackend
 import org.tensorflow.lite.Interpreter
 import org.tensorflow.lite.gpu.GpuDelegate
-import java.io.FileInputStream
+import java.io.File
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
+import java.nio.FloatBuffer
 import java.nio.MappedByteBuffer
-import java.nio.channels.FileChannel
-import kotlin.math.max
-import kotlin.math.min
 
 /**
  * Detector de residuos usando modelo YOLO
@@ -20,14 +28,39 @@ import kotlin.math.min
  * - Confidence threshold: 0.25
  * - IoU threshold: 0.4
  * - Max detections: 30
+ *
+ * Soporta modelos float32 y exportaciones cuantizadas por completo (UINT8/INT8):
+ * la entrada recibe píxeles ya cuantizados y la salida se decodifica en el
+ * dominio cuantizado.
+ *
+ * El modelo puede venir de assets o de una versión instalada en el almacenamiento de la
+ * app ([ModelStore]); con [hotSwappable] y [updateToLatest] se cambia de versión sin
+ * detener la cámara.
+ *
+ * La inferencia pasa por un [InferenceBackend] (TFLite en el dispositivo); el detector
+ * toma posesión del backend y lo cierra en [close].
  */
 class WasteDetector(
-    private val context: Context,
-    modelPath: String,
-    val labels: List<String>,
-    useGpu: Boolean = true
+    private val backend: InferenceBackend,
+    val labels: List<String>
 ) : AutoCloseable {
 
+    constructor(
+        context: Context,
+        modelBuffer: MappedByteBuffer,
+        labels: List<String>,
+        useGpu: Boolean = true,
+        autotune: Boolean = false  // Usar el perfil medido en el dispositivo en lugar de GPU/4 hilos fijos
+    ) : this(createBackend(context, modelBuffer, useGpu, autotune), labels)
+
+    constructor(
+        context: Context,
+        modelPath: String,
+        labels: List<String>,
+        useGpu: Boolean = true,
+        autotune: Boolean = false
+    ) : this(context, ModelRegistry.mapModel(context, modelPath), labels, useGpu, autotune)
+
     companion object {
         private const val TAG = "WasteDetector"
         private const val DEFAULT_CONFIDENCE_THRESHOLD = 0.25f
@@ -35,103 +68,252 @@ class WasteDetector(
         private const val DEFAULT_NUM_ITEMS_THRESHOLD = 30
         private const val INPUT_MEAN = 0.0f
         private const val INPUT_STD = 255.0f
+        private const val PREPARED_INPUTS = 2  // Doble buffer: uno en inferencia, otro preparándose
 
         fun loadLabels(context: Context, labelsPath: String): List<String> {
             return context.assets.open(labelsPath).bufferedReader().readLines()
         }
-    }
 
-    private var interpreter: Interpreter? = null
-    private var gpuDelegate: GpuDelegate? = null
-    private val inputSize: Int
-    private val numClasses: Int
-    private val numDetections: Int  // Numero de detecciones candidatas del modelo
+        /**
+         * Backend TFLite: el perfil medido en el dispositivo con [autotune]; si no, GPU
+         * (con caída a CPU si el delegado no se puede crear) y 4 hilos
+         */
+        private fun createBackend(
+            context: Context,
+            modelBuffer: MappedByteBuffer,
+            useGpu: Boolean,
+            autotune: Boolean
+        ): InferenceBackend {
+            if (autotune) {
+                // Configuración medida en este dispositivo (delegado, hilos, FP16) para un
+                // solo intérprete. La primera vez mide los candidatos; después lee el perfil guardado
+                val profile = InferenceAutotuner(context).profileFor(modelBuffer, maxPoolSize = 1)
+                Log.d(TAG, "Using tuned profile: $profile")
+                return TfliteBackend.create(modelBuffer, profile)
+            }
 
-    var confidenceThreshold = DEFAULT_CONFIDENCE_THRESHOLD
-    var iouThreshold = DEFAULT_IOU_THRESHOLD
-    var numItemsThreshold = DEFAULT_NUM_ITEMS_THRESHOLD
+            var gpuDelegate: GpuDelegate? = null
+            val options = Interpreter.Options().apply {
+                if (useGpu) {
+                    try {
+                        gpuDelegate = GpuDelegate()
+                        addDelegate(gpuDelegate)
+                        Log.d(TAG, "GPU delegate enabled")
+                    } catch (e: Exception) {
+                        Log.w(TAG, "GPU delegate failed, using CPU: ${e.message}")
+                    }
+                }
+                setNumThreads(4)
+            }
+            return try {
+                TfliteBackend(modelBuffer, options, gpuDelegate, if (gpuDelegate != null) "TFLite GPU" else "TFLite CPU x4")
+            } catch (e: Exception) {
+                Log.e(TAG, "Error initializing detector: ${e.message}")
+                gpuDelegate?.close()
+                throw e
+            }
+        }
 
-    init {
-        try {
-            val options = Interpreter.Options()
+        /**
+         * Detector compartido por el proceso: las pantallas que usan el mismo modelo
+         * reciben el mismo detector caliente (intérprete y delegado ya creados).
+         * Cerrar el lease al salir de la pantalla, no el detector.
+         */
+        fun acquire(
+            context: Context,
+            modelPath: String,
+            labels: List<String>,
+            useGpu: Boolean = true,
+            autotune: Boolean = false
+        ): ModelRegistry.Lease<WasteDetector> = ModelRegistry.acquire("$TAG:$modelPath") {
+            WasteDetector(context.applicationContext, modelPath, labels, useGpu, autotune)
+        }
 
-            if (useGpu) {
+        /**
+         * Detector de una versión de [ModelStore], compartido y ya calentado.
+         * Lanza excepción si el modelo no coincide con sus etiquetas.
+         */
+        fun acquire(
+            context: Context,
+            model: ModelStore.ModelPackage,
+            useGpu: Boolean = true,
+            autotune: Boolean = false
+        ): ModelRegistry.Lease<WasteDetector> = ModelRegistry.acquire("$TAG:${model.key}") {
+            val modelBuffer = ModelRegistry.mapFile(model.modelFile)
+            WasteDetector(context.applicationContext, modelBuffer, model.labels, useGpu, autotune).apply {
                 try {
-                    gpuDelegate = GpuDelegate()
-                    options.addDelegate(gpuDelegate)
-                    Log.d(TAG, "GPU delegate enabled")
+                    require(numClasses == labels.size) {
+                        "${model.key}: $numClasses clases en el modelo, ${labels.size} etiquetas"
+                    }
+                    warmUp()
                 } catch (e: Exception) {
-                    Log.w(TAG, "GPU delegate failed, using CPU: ${e.message}")
+                    close()
+                    throw e
                 }
             }
+        }
 
-            options.setNumThreads(4)
-            interpreter = Interpreter(loadModelFile(modelPath), options)
-
-            val inputTensor = interpreter!!.getInputTensor(0)
-            val inputShape = inputTensor.shape()
-            inputSize = inputShape[1]
+        /**
+         * Detector intercambiable en caliente: arranca con la última versión aceptada de
+         * [store] (o con el modelo de assets) y guarda en [store] el resultado de cada prueba
+         */
+        fun hotSwappable(
+            context: Context,
+            modelPath: String,
+            labels: List<String>,
+            store: ModelStore,
+            useGpu: Boolean = true,
+            autotune: Boolean = false
+        ): HotSwapModel<WasteDetector> {
+            val installed = store.find(store.activeVersion)
+            val installedLease = installed?.let { tryAcquire(context, it, useGpu, autotune) }
+            val lease = installedLease ?: acquire(context, modelPath, labels, useGpu, autotune)
+            val version = if (installed != null && installedLease != null) installed.version else 0
+
+            return HotSwapModel(lease, version).apply {
+                onVerdict = { candidate, accepted ->
+                    if (accepted) store.markActive(candidate) else store.markRejected(candidate)
+                }
+            }
+        }
 
-            val outputTensor = interpreter!!.getOutputTensor(0)
-            val outputShape = outputTensor.shape()
-            // Output shape: [1, 4+numClasses, numDetections]
-            numClasses = outputShape[1] - 4
-            numDetections = outputShape[2]
+        /**
+         * Si [store] tiene una versión más nueva que la activa, la carga y calienta en el
+         * hilo que llama (usar fuera del hilo principal) y la activa en [models] para el
+         * siguiente frame. [configure] aplica los umbrales de la pantalla al detector nuevo.
+         *
+         * @return true si se activó una versión nueva (queda a prueba)
+         */
+        fun updateToLatest(
+            context: Context,
+            models: HotSwapModel<WasteDetector>,
+            store: ModelStore,
+            useGpu: Boolean = true,
+            autotune: Boolean = false,
+            configure: (WasteDetector) -> Unit = {}
+        ): Boolean {
+            if (models.inTrial) return false
+            val update = store.latestValid(newerThan = models.version) ?: return false
+            val lease = tryAcquire(context, update, useGpu, autotune)
+            if (lease == null) {
+                store.markRejected(update.version)
+                return false
+            }
+            configure(lease.value)
+            models.swap(lease, update.version)
+            return true
+        }
 
-            Log.d(TAG, "Model loaded: input=$inputSize, classes=$numClasses, detections=$numDetections")
+        private fun tryAcquire(
+            context: Context,
+            model: ModelStore.ModelPackage,
+            useGpu: Boolean,
+            autotune: Boolean
+        ): ModelRegistry.Lease<WasteDetector>? = try {
+            acquire(context, model, useGpu, autotune)
         } catch (e: Exception) {
-            Log.e(TAG, "Error initializing detector: ${e.message}")
-            throw e
+            Log.e(TAG, "Could not load ${model.key}: ${e.message}")
+            null
         }
     }
 
-    private fun loadModelFile(modelPath: String): MappedByteBuffer {
-        val assetFileDescriptor = context.assets.openFd(modelPath)
-        val fileInputStream = FileInputStream(assetFileDescriptor.fileDescriptor)
-        val fileChannel = fileInputStream.channel
-        val startOffset = assetFileDescriptor.startOffset
-        val declaredLength = assetFileDescriptor.declaredLength
-        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength)
+    @Volatile
+    private var closed = false
+    private val inputSize: Int
+    val numClasses: Int
+    private val numDetections: Int  // Numero de detecciones candidatas del modelo
+    private val outputDecoder: YoloOutputDecoder
+    private val nms: NmsEngine  // NMS sobre arreglos primitivos, reutilizado entre inferencias
+    private val results: DetectionBuffer  // Detecciones de detect(), reutilizadas entre inferencias
+
+    // Tipos de entrada/salida leídos del modelo
+    private val inputQuantized: Boolean
+    private val outputSpec: InferenceBackend.TensorSpec
+
+    // Buffers reutilizados entre inferencias
+    private val inputBuffer: ByteBuffer
+    private val pixels: IntArray
+    private val outputBuffer: ByteBuffer  // Salida cruda [1, 4+numClasses, numDetections]
+    private val outputFloats: FloatBuffer  // Vista float de outputBuffer (solo salida float32)
+    private val inputQuantTable: ByteArray  // Valor de canal (0-255) -> byte cuantizado
+
+    // Muestreo directo desde el frame de cámara (detectInto con FrameTransform) sobre el
+    // mismo inputBuffer; se crea con el primer frame que llega por esa ruta
+    private val frameEngine: LetterboxInputEngine by lazy {
+        LetterboxInputEngine(inputSize, inputBuffer, backend.input.quantization)
     }
 
-    fun detect(bitmap: Bitmap): DetectionResult {
-        val startTime = System.nanoTime()
-
-        // Resize bitmap to model input size
-        val resizedBitmap = Bitmap.createScaledBitmap(bitmap, inputSize, inputSize, true)
-
-        // Prepare input buffer
-        val inputBuffer = ByteBuffer.allocateDirect(1 * inputSize * inputSize * 3 * 4)
-        inputBuffer.order(ByteOrder.nativeOrder())
-
-        val pixels = IntArray(inputSize * inputSize)
-        resizedBitmap.getPixels(pixels, 0, inputSize, 0, 0, inputSize, inputSize)
+    // Entradas de prepareInput libres (hasta PREPARED_INPUTS)
+    private val freeInputs = ArrayDeque<PreparedInput>()
+
+    /**
+     * Tensor de entrada ya muestreado de un frame fuera del hilo de inferencia (la etapa 1
+     * de CameraFramePipeline), listo para [detectPrepared]. Cada una tiene su propio
+     * buffer, así que se puede preparar una mientras el intérprete lee otra.
+     */
+    inner class PreparedInput internal constructor() {
+        internal val buffer: ByteBuffer = ByteBuffer.allocateDirect(backend.input.numBytes).order(ByteOrder.nativeOrder())
+        internal val engine = LetterboxInputEngine(inputSize, buffer, backend.input.quantization)
+        internal val detector: WasteDetector get() = this@WasteDetector
+
+        /** Tiempo de muestreo del frame en ms */
+        var prepareTimeMs = 0.0
+            internal set
+    }
 
-        for (pixel in pixels) {
-            val r = ((pixel shr 16) and 0xFF)
-            val g = ((pixel shr 8) and 0xFF)
-            val b = (pixel and 0xFF)
+    var confidenceThreshold = DEFAULT_CONFIDENCE_THRESHOLD
+    var iouThreshold = DEFAULT_IOU_THRESHOLD
+    var numItemsThreshold = DEFAULT_NUM_ITEMS_THRESHOLD
 
-            // Normalize: (pixel - mean) / std = pixel / 255
-            inputBuffer.putFloat((r - INPUT_MEAN) / INPUT_STD)
-            inputBuffer.putFloat((g - INPUT_MEAN) / INPUT_STD)
-            inputBuffer.putFloat((b - INPUT_MEAN) / INPUT_STD)
+    init {
+        try {
+            val inputSpec = backend.input
+            inputSize = inputSpec.shape[1]
+
+            // Entrada cuantizada: cada canal se escribe como byte con la escala del tensor
+            val inputQuantization = inputSpec.quantization
+            inputQuantized = inputQuantization.isQuantized
+            inputQuantTable = ByteArray(if (inputQuantized) 256 else 0) { value ->
+                inputQuantization.quantize((value - INPUT_MEAN) / INPUT_STD)
+            }
+            inputBuffer = ByteBuffer.allocateDirect(inputSpec.numBytes).order(ByteOrder.nativeOrder())
+            pixels = IntArray(inputSize * inputSize)
+
+            outputSpec = backend.output
+            // Output shape: [1, 4+numClasses, numDetections] (layout leído por el decoder)
+            outputDecoder = YoloOutputDecoder(outputSpec.shape)
+            numClasses = outputDecoder.numClasses
+            numDetections = outputDecoder.numAnchors
+            nms = NmsEngine(numDetections)
+            results = DetectionBuffer(DEFAULT_NUM_ITEMS_THRESHOLD)
+
+            outputBuffer = ByteBuffer.allocateDirect(outputSpec.numBytes).order(ByteOrder.nativeOrder())
+            outputFloats = outputBuffer.asFloatBuffer()
+
+            Log.d(TAG, "Model loaded (${backend.name}): input=$inputSize (${inputSpec.quantization}), " +
+                "output=${outputSpec.quantization}, classes=$numClasses, detections=$numDetections")
+        } catch (e: Exception) {
+            Log.e(TAG, "Error initializing detector: ${e.message}")
+            backend.close()
+            throw e
         }
+    }
 
-        // Prepare output buffer [1, 4+numClasses, numDetections]
-        val outputBuffer = Array(1) { Array(4 + numClasses) { FloatArray(numDetections) } }
-
-        // Run inference
+    /**
+     * Una inferencia sobre la entrada vacía para que el primer frame real no pague la
+     * inicialización perezosa del delegado
+     */
+    fun warmUp() {
+        if (closed) return
         inputBuffer.rewind()
-        interpreter?.run(inputBuffer, outputBuffer)
-
-        val inferenceTime = (System.nanoTime() - startTime) / 1_000_000.0
-
-        // Post-process results
-        val detections = postprocess(outputBuffer[0], bitmap.width, bitmap.height)
+        outputBuffer.rewind()
+        backend.run(inputBuffer, outputBuffer)
+    }
 
+    fun detect(bitmap: Bitmap): DetectionResult {
+        val inferenceTime = detectInto(bitmap, results)
         return DetectionResult(
-            boxes = detections,
+            boxes = toDetections(results, bitmap.width, bitmap.height),
             inferenceTimeMs = inferenceTime,
             fps = 1000.0 / inferenceTime,
             imageWidth = bitmap.width,
@@ -139,126 +321,201 @@ class WasteDetector(
         )
     }
 
-    private fun postprocess(output: Array<FloatArray>, imgWidth: Int, imgHeight: Int): List<Detection> {
-        val candidates = mutableListOf<Detection>()
-        val numDetections = output[0].size
-
-        for (i in 0 until numDetections) {
-            // Get coordinates (normalized 0-1)
-            val cx = output[0][i]
-            val cy = output[1][i]
-            val w = output[2][i]
-            val h = output[3][i]
-
-            // Find best class
-            var maxConf = 0f
-            var maxIdx = 0
-            for (c in 0 until numClasses) {
-                val conf = output[4 + c][i]
-                if (conf > maxConf) {
-                    maxConf = conf
-                    maxIdx = c
-                }
-            }
-
-            if (maxConf >= confidenceThreshold) {
-                // Convert to corner coordinates (normalized)
-                val x1 = cx - w / 2
-                val y1 = cy - h / 2
-                val x2 = cx + w / 2
-                val y2 = cy + h / 2
+    /**
+     * Como [detect], pero deja las detecciones después de NMS en [out] (cajas normalizadas
+     * 0-1, mejor confianza primero) sin crear objetos, para que los filtros y las
+     * transformaciones siguientes trabajen sobre el mismo buffer.
+     *
+     * @param recording Frame de [TensorRecorder] en curso: se le agrega la salida cruda del modelo
+     * @return Tiempo de preprocesado + inferencia en ms
+     */
+    fun detectInto(bitmap: Bitmap, out: DetectionBuffer, recording: TensorRecorder.Frame? = null): Double {
+        val startTime = System.nanoTime()
 
-                // Clamp normalized values
-                val nx1 = max(0f, min(1f, x1))
-                val ny1 = max(0f, min(1f, y1))
-                val nx2 = max(0f, min(1f, x2))
-                val ny2 = max(0f, min(1f, y2))
+        // Resize bitmap to model input size
+        val resizedBitmap = Bitmap.createScaledBitmap(bitmap, inputSize, inputSize, true)
 
-                // Convert to pixel coordinates
-                val px1 = nx1 * imgWidth
-                val py1 = ny1 * imgHeight
-                val px2 = nx2 * imgWidth
-                val py2 = ny2 * imgHeight
-
-                val className = if (maxIdx < labels.size) labels[maxIdx] else "unknown"
-
-                candidates.add(
-                    Detection(
-                        classIndex = maxIdx,
-                        className = className,
-                        confidence = maxConf,
-                        boundingBox = RectF(px1, py1, px2, py2),
-                        normalizedBox = RectF(nx1, ny1, nx2, ny2)
-                    )
-                )
+        // Prepare input buffer (reutilizado)
+        inputBuffer.rewind()
+        resizedBitmap.getPixels(pixels, 0, inputSize, 0, 0, inputSize, inputSize)
+        if (resizedBitmap != bitmap) resizedBitmap.recycle()
+
+        if (inputQuantized) {
+            // Píxeles crudos cuantizados: sin conversión a float
+            val table = inputQuantTable
+            for (pixel in pixels) {
+                inputBuffer.put(table[(pixel shr 16) and 0xFF])
+                inputBuffer.put(table[(pixel shr 8) and 0xFF])
+                inputBuffer.put(table[pixel and 0xFF])
+            }
+        } else {
+            for (pixel in pixels) {
+                val r = ((pixel shr 16) and 0xFF)
+                val g = ((pixel shr 8) and 0xFF)
+                val b = (pixel and 0xFF)
+
+                // Normalize: (pixel - mean) / std = pixel / 255
+                inputBuffer.putFloat((r - INPUT_MEAN) / INPUT_STD)
+                inputBuffer.putFloat((g - INPUT_MEAN) / INPUT_STD)
+                inputBuffer.putFloat((b - INPUT_MEAN) / INPUT_STD)
             }
         }
 
-        // Apply NMS
-        return applyNMS(candidates)
+        return infer(startTime, out, recording)
     }
 
-    private fun applyNMS(detections: List<Detection>): List<Detection> {
-        if (detections.isEmpty()) return emptyList()
+    /**
+     * Como [detectInto] con un bitmap, pero muestreando el frame crudo de la cámara [frame]
+     * (ARGB sin rotar, [frameStride] enteros por fila) a través de [transform]: rotación,
+     * recorte (ROI) y redimensionado en una sola pasada bilineal, sin bitmaps intermedios.
+     * Las cajas de [out] quedan normalizadas a la imagen lógica de [transform]
+     * ([FrameTransform.mapToFrame] las lleva al frame enderezado).
+     */
+    fun detectInto(
+        frame: IntArray,
+        frameStride: Int,
+        transform: FrameTransform,
+        out: DetectionBuffer,
+        recording: TensorRecorder.Frame? = null
+    ): Double {
+        val startTime = System.nanoTime()
+        // La entrada se estira al tamaño del modelo (como createScaledBitmap): el letterbox
+        // de la imagen cuadrada resultante no escala ni rellena
+        frameEngine.process(frame, frameStride, transform.resized(inputSize, inputSize))
+        return infer(startTime, out, recording)
+    }
+
+    /**
+     * Primera mitad de [detectInto] con un frame de cámara: muestrea [frame] a través de
+     * [transform] en una entrada propia (de un doble buffer), en el hilo que llama y sin
+     * tocar el intérprete, para que el muestreo del frame siguiente se solape con la
+     * inferencia del actual. La entrada se devuelve con [releaseInput].
+     */
+    fun prepareInput(frame: IntArray, frameStride: Int, transform: FrameTransform): PreparedInput {
+        val startTime = System.nanoTime()
+        val input = synchronized(freeInputs) { freeInputs.removeFirstOrNull() } ?: PreparedInput()
+        input.engine.process(frame, frameStride, transform.resized(inputSize, inputSize))
+        input.prepareTimeMs = (System.nanoTime() - startTime) / 1_000_000.0
+        return input
+    }
 
-        // Sort by confidence descending
-        val sorted = detections.sortedByDescending { it.confidence }.toMutableList()
-        val result = mutableListOf<Detection>()
+    fun releaseInput(input: PreparedInput) = synchronized(freeInputs) {
+        if (freeInputs.size < PREPARED_INPUTS) freeInputs.addLast(input)
+    }
 
-        while (sorted.isNotEmpty() && result.size < numItemsThreshold) {
-            val best = sorted.removeAt(0)
-            result.add(best)
+    /**
+     * Segunda mitad: inferencia, decodificación y NMS de una entrada de [prepareInput] de
+     * este detector, con las cajas en [out] como en [detectInto]
+     *
+     * @return Tiempo de inferencia + posprocesado en ms (sin el muestreo, ver [PreparedInput.prepareTimeMs])
+     */
+    fun detectPrepared(input: PreparedInput, out: DetectionBuffer, recording: TensorRecorder.Frame? = null): Double {
+        require(input.detector === this) { "La entrada se preparó para otro detector" }
+        return infer(System.nanoTime(), out, recording, input.buffer)
+    }
 
-            sorted.removeAll { other ->
-                other.classIndex == best.classIndex &&
-                        calculateIoU(best.normalizedBox, other.normalizedBox) > iouThreshold
-            }
+    /**
+     * Inferencia sobre [input] ya escrito (por defecto el inputBuffer), decodificación y
+     * NMS hacia [out]. Con el detector cerrado no hay inferencia: [out] queda vacío (el
+     * buffer de salida tendría el tensor de un frame anterior)
+     *
+     * @return Tiempo desde [startTime] en ms
+     */
+    private fun infer(
+        startTime: Long,
+        out: DetectionBuffer,
+        recording: TensorRecorder.Frame?,
+        input: ByteBuffer = inputBuffer
+    ): Double {
+        if (closed) {
+            out.clear()
+            return (System.nanoTime() - startTime) / 1_000_000.0
+        }
+        // Run inference; output buffer [1, 4+numClasses, numDetections] reutilizado
+        input.rewind()
+        outputBuffer.rewind()
+        backend.run(input, outputBuffer)
+        val quantization = outputSpec.quantization
+        val count = if (quantization.isQuantized) {
+            // Umbral aplicado en el dominio cuantizado; solo se descuantizan los anchors que lo pasan
+            outputDecoder.decodeQuantized(
+                outputBuffer, 0, quantization.scale, quantization.zeroPoint,
+                quantization.isSigned, confidenceThreshold
+            )
+        } else {
+            outputDecoder.decode(outputFloats, 0, confidenceThreshold)
         }
 
-        return result
+        val inferenceTime = (System.nanoTime() - startTime) / 1_000_000.0
+        recording?.let { recordOutput(it) }
+
+        // Post-process results
+        postprocess(count, out)
+        return inferenceTime
     }
 
-    private fun calculateIoU(box1: RectF, box2: RectF): Float {
-        val x1 = max(box1.left, box2.left)
-        val y1 = max(box1.top, box2.top)
-        val x2 = min(box1.right, box2.right)
-        val y2 = min(box1.bottom, box2.bottom)
+    /**
+     * Detecciones de [buffer] (normalizadas a una imagen de [imageWidth]x[imageHeight])
+     * como objetos para la UI
+     */
+    fun toDetections(buffer: DetectionBuffer, imageWidth: Int, imageHeight: Int): List<Detection> =
+        List(buffer.size()) { i ->
+            val nx1 = buffer.getLeft(i)
+            val ny1 = buffer.getTop(i)
+            val nx2 = buffer.getRight(i)
+            val ny2 = buffer.getBottom(i)
+            val classIndex = buffer.getClassIndex(i)
+
+            Detection(
+                classIndex = classIndex,
+                className = if (classIndex < labels.size) labels[classIndex] else "unknown",
+                confidence = buffer.getScore(i),
+                // Convert to pixel coordinates
+                boundingBox = RectF(nx1 * imageWidth, ny1 * imageHeight, nx2 * imageWidth, ny2 * imageHeight),
+                normalizedBox = RectF(nx1, ny1, nx2, ny2)
+            )
+        }
+
+    private fun postprocess(count: Int, out: DetectionBuffer) {
+        out.clear()
 
-        val intersection = max(0f, x2 - x1) * max(0f, y2 - y1)
-        val area1 = (box1.right - box1.left) * (box1.bottom - box1.top)
-        val area2 = (box2.right - box2.left) * (box2.bottom - box2.top)
-        val union = area1 + area2 - intersection
+        // Convert to corner coordinates and clamp (normalized 0-1)
+        out.addDecoded(outputDecoder, count)
 
-        return if (union > 0) intersection / union else 0f
+        // Apply NMS (same class, IoU > iouThreshold) in place
+        out.suppress(nms, iouThreshold, true, 0f, numItemsThreshold)
+    }
+
+    /**
+     * Grabador de tensores para este detector con sus umbrales actuales, o null si no se
+     * pidió grabar (ver [TensorRecorder.openIfRequested]). Lo cierra quien lo abre.
+     */
+    fun openRecorder(dir: File?, name: String, device: String): TensorRecorder? =
+        TensorRecorder.openIfRequested(
+            dir, name, TensorRecording.Source.DETECTOR, labels,
+            mapOf(
+                "confidenceThreshold" to confidenceThreshold,
+                "iouThreshold" to iouThreshold,
+                "numItemsThreshold" to numItemsThreshold.toFloat()
+            ),
+            device
+        )
+
+    /**
+     * Copia la salida de la última inferencia al frame grabado. La entrada se estira sin
+     * letterbox, así que la pasada no lleva geometría
+     */
+    private fun recordOutput(recording: TensorRecorder.Frame) {
+        val quantization = outputSpec.quantization
+        val tensor = TensorRecording.Tensor.copyOf(
+            outputBuffer, 0, outputSpec.shape, quantization.dataType, quantization.scale, quantization.zeroPoint
+        )
+        recording.addPass(TensorRecording.Pass(0, 0, 1f, confidenceThreshold, null, -1, null, tensor))
     }
 
     override fun close() {
-        interpreter?.close()
-        gpuDelegate?.close()
-        interpreter = null
-        gpuDelegate = null
+        if (!closed) backend.close()
+        closed = true
         Log.d(TAG, "Detector closed")
     }
 }
-
-/**
- * Representa una detección individual
- */
-data class Detection(
-    val classIndex: Int,
-    val className: String,
-    val confidence: Float,
-    val boundingBox: RectF,      // Coordenadas en píxeles
-    val normalizedBox: RectF     // Coordenadas normalizadas (0-1)
-)
-
-/**
- * Resultado de la detección
- */
-data class DetectionResult(
-    val boxes: List<Detection>,
-    val inferenceTimeMs: Double,
-    val fps: Double,
-    val imageWidth: Int,
-    val imageHeight: Int
-)
@@ -0,0 +1,97 @@
+import org.jetbrains.kotlin.gradle.dsl.JvmTarget
+
+// Benchmarks JMH de la ruta de post-procesado de visión y herramientas de evaluación
+// en la JVM (replay de grabaciones, inferencia por lotes con ONNX Runtime), sin dispositivo
+plugins {
+    alias(libs.plugins.kotlin.jvm)
+    alias(libs.plugins.jmh)
+}
+
+// El post-procesado y la lógica de decisión vienen de :vision-core; de :app solo se
+// compilan tal cual las fuentes sueltas sin dependencias de Android.
+val appSources = listOf(
+    "com/biowaymexico/utils/CalculadoraImpactoReciclaje.kt"
+)
+
+val syncAppSources by tasks.registering(Sync::class) {
+    from(rootProject.file("app/src/main/java")) { include(appSources) }
+    into(layout.buildDirectory.dir("generated/appSources"))
+}
+
+kotlin {
+    sourceSets.main {
+        kotlin.srcDir(syncAppSources)
+    }
+    compilerOptions {
+        jvmTarget.set(JvmTarget.JVM_11)
+    }
+}
+
+dependencies {
+    implementation(project(":vision-core"))
+    // Backend de inferencia en CPU x86/ARM de escritorio para la evaluación por lotes
+    implementation(libs.onnxruntime)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+
+    // Configuración fija para que los resultados de dos commits sean comparables
+    fork.set(1)
+    warmupIterations.set(3)
+    warmup.set("1s")
+    iterations.set(5)
+    timeOnIteration.set("1s")
+    benchmarkMode.set(listOf("avgt"))
+    timeUnit.set("us")
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+
+    // Tensores grabados (*.bwt); sin archivos se usan los fixtures sintéticos deterministas
+    jvmArgsAppend.addAll(
+        "-Dbioway.fixtures=${file("fixtures").absolutePath}",
+        "-Dbioway.labels=${rootProject.file("app/src/main/assets/labels/waste_detector_labels.txt").absolutePath}"
+    )
+
+    // ./gradlew :benchmarks:jmh -Pjmh.includes=Nms
+    providers.gradleProperty("jmh.includes").orNull?.let { includes.set(listOf(it)) }
+}
+
+// Replay de grabaciones de tensores del dispositivo (ver README):
+// ./gradlew :benchmarks:replay --args="ruta/a/grabaciones"
+tasks.register<JavaExec>("replay") {
+    description = "Repite grabaciones .bwr con el post-procesado actual y compara bit a bit"
+    group = "verification"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.biowaymexico.replay.ReplayToolKt")
+    workingDir = rootProject.projectDir
+    jvmArgs("-Dstdout.encoding=UTF-8")
+}
+
+// Inferencia por lotes de un directorio de imágenes con ONNX Runtime (ver README):
+// ./gradlew :benchmarks:evaluate --args="--model best.onnx fotos/"
+tasks.register<JavaExec>("evaluate") {
+    description = "Clasifica un directorio de imágenes con ONNX Runtime y reporta latencia y throughput"
+    group = "verification"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.biowaymexico.eval.BatchEvalToolKt")
+    workingDir = rootProject.projectDir
+    jvmArgs("-Dstdout.encoding=UTF-8")
+}
+
+// Simulación de la cascada de TTA con NMS y con WBF sobre objetos sintéticos (ver README):
+// ./gradlew :benchmarks:simulateCascade --args="--trials 20000"
+tasks.register<JavaExec>("simulateCascade") {
+    description = "Compara pasadas por decisión y aciertos de la cascada con NMS y con WBF"
+    group = "verification"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.biowaymexico.eval.CascadeSimulationToolKt")
+    workingDir = rootProject.projectDir
+    jvmArgs("-Dstdout.encoding=UTF-8")
+}
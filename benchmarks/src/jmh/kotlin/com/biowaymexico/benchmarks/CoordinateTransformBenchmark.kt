@@ -0,0 +1,61 @@
+package com.biowaymexico.benchmarks
+
+import com.biowaymexico.utils.vision.LetterboxGeometry
+import com.ultralytics.yolo.DetectionBuffer
+import com.ultralytics.yolo.YoloOutputDecoder
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+ * Transformaciones de coordenadas por frame: deshacer el letterbox de los candidatos
+ * decodificados y devolver una pasada de TTA (rotación + escala + zoom) a la imagen original
+ */
+@State(Scope.Thread)
+open class CoordinateTransformBenchmark {
+
+    private lateinit var decoder: YoloOutputDecoder
+    private lateinit var candidates: DetectionBuffer
+    private val work = DetectionBuffer(512)
+    private lateinit var geometry: LetterboxGeometry
+
+    @Setup
+    fun setUp() {
+        decoder = YoloOutputDecoder(intArrayOf(1, TensorFixtures.FEATURES, TensorFixtures.ANCHORS))
+        candidates = DetectionBuffer(512)
+        // Decodificado una sola vez (el decoder conserva los candidatos): aquí solo se mide la geometría
+        TensorFixtures.candidates(decoder, TensorFixtures.directBuffer(TensorFixtures.frames[0]), candidates)
+        geometry = TensorFixtures.geometry
+    }
+
+    @Benchmark
+    fun unprojectLetterbox(): Int {
+        work.clear()
+        for (i in 0 until decoder.count) {
+            geometry.addUnprojected(
+                work,
+                decoder.getCenterX(i), decoder.getCenterY(i), decoder.getWidth(i), decoder.getHeight(i),
+                decoder.getScore(i), decoder.getClassIndex(i)
+            )
+        }
+        return work.size()
+    }
+
+    @Benchmark
+    fun rotateScaleZoomBack(): Int {
+        work.copyFrom(candidates)
+        work.rotateBack(0, 90)
+        work.mapFromCenterCrop(0, 1.5f)
+        work.mapToRegion(0, 0.15f, 0.15f, 0.7f, 0.7f)
+        return work.size()
+    }
+
+    @Benchmark
+    fun rotatedGeometries(blackhole: Blackhole) {
+        blackhole.consume(geometry.rotated(90))
+        blackhole.consume(geometry.rotated(180))
+        blackhole.consume(geometry.rotated(270))
+    }
+}
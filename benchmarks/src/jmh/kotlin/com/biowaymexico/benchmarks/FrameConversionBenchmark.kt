@@ -0,0 +1,72 @@
+package com.biowaymexico.benchmarks
+
+import com.biowaymexico.utils.vision.RgbaPlaneConverter
+import com.biowaymexico.utils.vision.YuvPlaneConverter
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.nio.ByteBuffer
+import kotlin.random.Random
+
+/**
+ * Conversión de un frame de 1280x720 de los analizadores de cámara, con planos contiguos
+ * o con [rowPadding] bytes de relleno por fila: RGBA_8888 (contra copiar el plano a un
+ * ByteArray nuevo en cada frame) y YUV_420_888 con crominancia intercalada (NV21)
+ */
+@State(Scope.Thread)
+open class FrameConversionBenchmark {
+
+    @Param("0", "64")
+    var rowPadding = 0
+
+    private val width = 1280
+    private val height = 720
+    private var rowStride = 0
+    private lateinit var plane: ByteBuffer
+    private val converter = RgbaPlaneConverter()
+    private val argb = IntArray(width * height)
+
+    private lateinit var yPlane: YuvPlaneConverter.Plane
+    private lateinit var uPlane: YuvPlaneConverter.Plane
+    private lateinit var vPlane: YuvPlaneConverter.Plane
+    private val yuvConverter = YuvPlaneConverter()
+
+    @Setup
+    fun setUp() {
+        rowStride = width * RgbaPlaneConverter.BYTES_PER_PIXEL + rowPadding
+        val bytes = RgbaPlaneConverter.requiredBytes(width, height, rowStride, RgbaPlaneConverter.BYTES_PER_PIXEL)
+        plane = ByteBuffer.allocateDirect(bytes)
+        plane.put(Random(7).nextBytes(bytes)).flip()
+
+        val lumaStride = width + rowPadding
+        val luma = ByteBuffer.allocateDirect((height - 1) * lumaStride + width)
+        luma.put(Random(11).nextBytes(luma.capacity())).flip()
+        val chroma = ByteBuffer.allocateDirect((height / 2 - 1) * lumaStride + width)
+        chroma.put(Random(13).nextBytes(chroma.capacity())).flip()
+        yPlane = YuvPlaneConverter.Plane(luma, lumaStride, 1)
+        vPlane = YuvPlaneConverter.Plane(chroma, lumaStride, 2)
+        uPlane = YuvPlaneConverter.Plane(chroma.duplicate().apply { position(1) }, lumaStride, 2)
+    }
+
+    @Benchmark
+    fun copyToNewArray(): ByteArray {
+        val source = plane.duplicate()
+        val bytes = ByteArray(source.remaining())
+        source.get(bytes)
+        return bytes
+    }
+
+    @Benchmark
+    fun packReused(): ByteBuffer =
+        converter.pack(plane, width, height, rowStride, RgbaPlaneConverter.BYTES_PER_PIXEL)
+
+    @Benchmark
+    fun toArgbReused(): IntArray =
+        converter.toArgb(plane, width, height, rowStride, RgbaPlaneConverter.BYTES_PER_PIXEL, argb)
+
+    @Benchmark
+    fun yuvToArgbReused(): IntArray =
+        yuvConverter.toArgb(yPlane, uPlane, vPlane, width, height, argb)
+}
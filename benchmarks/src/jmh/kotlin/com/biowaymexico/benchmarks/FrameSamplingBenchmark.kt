@@ -0,0 +1,58 @@
+package com.biowaymexico.benchmarks
+
+import com.biowaymexico.utils.vision.FrameTransform
+import com.biowaymexico.utils.vision.LetterboxInputEngine
+import com.biowaymexico.utils.vision.NormalizedRect
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.nio.ByteBuffer
+import kotlin.random.Random
+
+/**
+ * Frame de cámara de 1280x720 a tensor de 640 con [sensorRotation], zoom y rotación del
+ * recorte de 90°: la cadena de imágenes intermedias de la ruta de bitmaps
+ * (rotar el frame, recortar, rotar el recorte, letterbox; un arreglo nuevo por paso como
+ * Bitmap.createBitmap) contra el muestreo fusionado de [FrameTransform]
+ */
+@State(Scope.Thread)
+open class FrameSamplingBenchmark {
+
+    @Param("0", "90")
+    var sensorRotation = 0
+
+    private val width = 1280
+    private val height = 720
+    private val region = NormalizedRect(0.2f, 0.25f, 0.8f, 0.75f)
+    private val frame = IntArray(width * height)
+    private val engine = LetterboxInputEngine(640)
+    private lateinit var transform: FrameTransform
+
+    // Un paso de la cadena por transformación: enderezar, recortar, rotar el recorte
+    private lateinit var upright: FrameTransform
+    private lateinit var crop: FrameTransform
+    private lateinit var cropRotation: FrameTransform
+
+    @Setup
+    fun setUp() {
+        val random = Random(17)
+        for (i in frame.indices) frame[i] = random.nextInt() or (0xFF shl 24)
+        transform = FrameTransform.of(width, height, sensorRotation, region, 90)
+        upright = FrameTransform.of(width, height, sensorRotation)
+        crop = FrameTransform.of(upright.width, upright.height, 0, region)
+        cropRotation = FrameTransform.of(crop.width, crop.height, 0, null, 90)
+    }
+
+    @Benchmark
+    fun intermediateCopies(): ByteBuffer {
+        val rotated = upright.copyTo(frame, width, IntArray(upright.width * upright.height))
+        val cropped = crop.copyTo(rotated, upright.width, IntArray(crop.width * crop.height))
+        val turned = cropRotation.copyTo(cropped, crop.width, IntArray(cropRotation.width * cropRotation.height))
+        return engine.process(turned, 0, cropRotation.width, cropRotation.width, cropRotation.height)
+    }
+
+    @Benchmark
+    fun fusedSampler(): ByteBuffer = engine.process(frame, width, transform)
+}
@@ -0,0 +1,26 @@
+package com.biowaymexico.benchmarks
+
+import com.biowaymexico.utils.CalculadoraImpactoReciclaje
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+
+/**
+ * CalculadoraImpactoReciclaje.calcularImpactoTotal para un depósito típico con varios materiales
+ */
+@State(Scope.Thread)
+open class ImpactoBenchmark {
+
+    private val materiales = mapOf(
+        "PET" to 1.25,
+        "PEAD" to 0.4,
+        "Aluminio" to 0.3,
+        "Cartón" to 2.0,
+        "Vidrio" to 0.8,
+        "Papel" to 1.1
+    )
+
+    @Benchmark
+    fun calcularImpactoTotal(): CalculadoraImpactoReciclaje.ImpactoAmbiental =
+        CalculadoraImpactoReciclaje.calcularImpactoTotal(materiales)
+}
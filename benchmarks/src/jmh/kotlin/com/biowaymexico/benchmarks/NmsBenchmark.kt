@@ -0,0 +1,128 @@
+package com.biowaymexico.benchmarks
+
+import com.ultralytics.yolo.BoxFusion
+import com.ultralytics.yolo.DetectionBuffer
+import com.ultralytics.yolo.NmsEngine
+import com.ultralytics.yolo.YoloOutputDecoder
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import kotlin.math.sqrt
+
+/**
+ * Variantes de supresión sobre los candidatos de una cascada de TTA completa (9 pasadas,
+ * un frame grabado por pasada), con los mismos parámetros que WasteDetector y
+ * WasteClassifierYOLO. Como referencia, las rutas anteriores con listas de objetos
+ * (`legacy*`; `NmsEngineTest` prueba que conservan las mismas cajas que [NmsEngine])
+ */
+@State(Scope.Thread)
+open class NmsBenchmark {
+
+    companion object {
+        private const val TTA_PASSES = 9
+        private const val MAX_DETECTIONS = 100
+    }
+
+    private val nms = NmsEngine(4096)
+    private val fusion = BoxFusion(4096)
+    private val singlePass = DetectionBuffer(512)
+    private val allPasses = DetectionBuffer(4096)
+    private val work = DetectionBuffer(4096)
+    private lateinit var singlePassList: List<Candidate>
+    private lateinit var allPassesList: List<Candidate>
+
+    // Representación anterior: un objeto por candidato
+    private data class Candidate(
+        val left: Float,
+        val top: Float,
+        val right: Float,
+        val bottom: Float,
+        val score: Float,
+        val classId: Int
+    )
+
+    @Setup
+    fun setUp() {
+        val decoder = YoloOutputDecoder(intArrayOf(1, TensorFixtures.FEATURES, TensorFixtures.ANCHORS))
+        val pass = DetectionBuffer(512)
+        for (p in 0 until TTA_PASSES) {
+            val frame = TensorFixtures.frames[p % TensorFixtures.frames.size]
+            TensorFixtures.candidates(decoder, TensorFixtures.directBuffer(frame), pass)
+            if (p == 0) singlePass.copyFrom(pass)
+            allPasses.addAll(pass, p)
+        }
+        singlePassList = candidates(singlePass)
+        allPassesList = candidates(allPasses)
+    }
+
+    private fun candidates(buffer: DetectionBuffer): List<Candidate> = List(buffer.size()) { i ->
+        Candidate(
+            buffer.getLeft(i), buffer.getTop(i), buffer.getRight(i), buffer.getBottom(i),
+            buffer.getScore(i), buffer.getClassIndex(i)
+        )
+    }
+
+    private fun iou(a: Candidate, b: Candidate): Float {
+        val w = minOf(a.right, b.right) - maxOf(a.left, b.left)
+        val h = minOf(a.bottom, b.bottom) - maxOf(a.top, b.top)
+        if (w <= 0f || h <= 0f) return 0f
+        val intersection = w * h
+        val union = (a.right - a.left) * (a.bottom - a.top) + (b.right - b.left) * (b.bottom - b.top) - intersection
+        return if (union > 0f) intersection / union else 0f
+    }
+
+    // WasteDetector.postprocess: NMS por clase de un frame
+    @Benchmark
+    fun perClassSingleFrame(): Int {
+        work.copyFrom(singlePass)
+        return work.suppress(nms, 0.4f, true, 0f, 30)
+    }
+
+    // Ruta anterior de WasteDetector.applyNMS
+    @Benchmark
+    fun legacyPerClassSingleFrame(): Int {
+        val sorted = singlePassList.sortedByDescending { it.score }.toMutableList()
+        val result = mutableListOf<Candidate>()
+        while (sorted.isNotEmpty() && result.size < 30) {
+            val best = sorted.removeAt(0)
+            result.add(best)
+            sorted.removeAll { other -> other.classId == best.classId && iou(best, other) > 0.4f }
+        }
+        return result.size
+    }
+
+    // WasteClassifierYOLO.nonMaxSuppressionGlobal
+    @Benchmark
+    fun ttaGlobal(): Int {
+        work.copyFrom(allPasses)
+        return work.suppress(nms, 0.3f, true, 0.1f, MAX_DETECTIONS)
+    }
+
+    // Ruta anterior de WasteClassifierYOLO.nonMaxSuppressionGlobal
+    @Benchmark
+    fun legacyTtaGlobal(): Int {
+        val selected = mutableListOf<Candidate>()
+        for (candidate in allPassesList.sortedByDescending { it.score }) {
+            val suppressed = selected.any { kept ->
+                val sameClassOverlap = candidate.classId == kept.classId && iou(candidate, kept) > 0.3f
+                val dx = (candidate.left + candidate.right) / 2 - (kept.left + kept.right) / 2
+                val dy = (candidate.top + candidate.bottom) / 2 - (kept.top + kept.bottom) / 2
+                sameClassOverlap || (sqrt(dx * dx + dy * dy) < 0.1f && candidate.score < kept.score)
+            }
+            if (!suppressed) {
+                selected.add(candidate)
+                if (selected.size >= MAX_DETECTIONS) break
+            }
+        }
+        return selected.size
+    }
+
+    // WasteClassifierYOLO.weightedBoxFusion
+    @Benchmark
+    fun ttaWeightedBoxFusion(): Int {
+        work.copyFrom(allPasses)
+        work.fuse(fusion, 0.3f, TTA_PASSES, MAX_DETECTIONS)
+        return work.suppress(nms, 1f, true, 0.1f, MAX_DETECTIONS)
+    }
+}
@@ -0,0 +1,76 @@
+package com.biowaymexico.benchmarks
+
+import com.ultralytics.yolo.YoloOutputDecoder
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+
+/**
+ * Decodificación de la salida YOLO por frame: tensor float y tensor UINT8 (modelo
+ * cuantizado), y como referencia la ruta anterior (un `ByteBuffer.getFloat` absoluto por
+ * clase y anchor; su equivalencia con el decodificador la prueba `YoloOutputDecoderTest`)
+ */
+@State(Scope.Thread)
+open class OutputDecodeBenchmark {
+
+    companion object {
+        private const val QUANT_SCALE = 1f / 255f
+    }
+
+    private lateinit var decoder: YoloOutputDecoder
+    private lateinit var floatFrames: Array<FloatBuffer>
+    private lateinit var byteFrames: Array<ByteBuffer>
+    private lateinit var quantizedFrames: Array<ByteBuffer>
+    private var next = 0
+
+    @Setup
+    fun setUp() {
+        decoder = YoloOutputDecoder(intArrayOf(1, TensorFixtures.FEATURES, TensorFixtures.ANCHORS))
+        floatFrames = TensorFixtures.frames.map { TensorFixtures.directBuffer(it) }.toTypedArray()
+        byteFrames = TensorFixtures.frames.map { frame ->
+            ByteBuffer.allocateDirect(4 * frame.size).order(ByteOrder.nativeOrder()).apply {
+                asFloatBuffer().put(frame)
+            }
+        }.toTypedArray()
+        quantizedFrames = TensorFixtures.frames.map { frame ->
+            ByteBuffer.allocateDirect(frame.size).apply {
+                for (v in frame) put((v / QUANT_SCALE).toInt().coerceIn(0, 255).toByte())
+                rewind()
+            }
+        }.toTypedArray()
+    }
+
+    private fun nextFrame(): Int {
+        val index = next
+        next = (next + 1) % floatFrames.size
+        return index
+    }
+
+    @Benchmark
+    fun decodeLegacy(): Int {
+        val buffer = byteFrames[nextFrame()]
+        val numClasses = TensorFixtures.FEATURES - 4
+        val anchors = TensorFixtures.ANCHORS
+        var count = 0
+        for (i in 0 until anchors) {
+            var maxProb = 0f
+            for (c in 0 until numClasses) {
+                val prob = buffer.getFloat((4 + c) * anchors * 4 + i * 4)
+                if (prob > maxProb) maxProb = prob
+            }
+            if (maxProb >= TensorFixtures.DECODE_THRESHOLD) count++
+        }
+        return count
+    }
+
+    @Benchmark
+    fun decodeFloat(): Int = decoder.decode(floatFrames[nextFrame()], 0, TensorFixtures.DECODE_THRESHOLD)
+
+    @Benchmark
+    fun decodeQuantized(): Int =
+        decoder.decodeQuantized(quantizedFrames[nextFrame()], 0, QUANT_SCALE, 0, false, TensorFixtures.DECODE_THRESHOLD)
+}
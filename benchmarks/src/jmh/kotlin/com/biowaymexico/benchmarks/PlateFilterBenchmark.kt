@@ -0,0 +1,48 @@
+package com.biowaymexico.benchmarks
+
+import com.biowaymexico.utils.vision.bote.BackgroundPlateFilter
+import com.ultralytics.yolo.DetectionBuffer
+import com.ultralytics.yolo.NmsEngine
+import com.ultralytics.yolo.YoloOutputDecoder
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+/**
+ * BackgroundPlateFilter.filterDetections sobre la salida ya suprimida de cada frame
+ * (lo que recibe en ClasificadorBoteYOLOScreen), con el ROI por defecto de 336x448
+ */
+@State(Scope.Thread)
+open class PlateFilterBenchmark {
+
+    companion object {
+        private const val ROI_WIDTH = 336
+        private const val ROI_HEIGHT = 448
+    }
+
+    private lateinit var frames: Array<DetectionBuffer>
+    private val work = DetectionBuffer(64)
+    private val labels = TensorFixtures.labels
+    private var next = 0
+
+    @Setup
+    fun setUp() {
+        val decoder = YoloOutputDecoder(intArrayOf(1, TensorFixtures.FEATURES, TensorFixtures.ANCHORS))
+        val nms = NmsEngine(512)
+        frames = TensorFixtures.frames.map { frame ->
+            DetectionBuffer(64).also {
+                TensorFixtures.candidates(decoder, TensorFixtures.directBuffer(frame), it)
+                it.suppress(nms, 0.4f, true, 0f, 30)
+            }
+        }.toTypedArray()
+    }
+
+    @Benchmark
+    fun filterDetections(): Int {
+        work.copyFrom(frames[next])
+        next = (next + 1) % frames.size
+        BackgroundPlateFilter.filterDetections(work, labels, ROI_WIDTH, ROI_HEIGHT)
+        return work.size()
+    }
+}
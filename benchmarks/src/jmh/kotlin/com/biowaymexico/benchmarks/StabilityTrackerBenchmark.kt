@@ -0,0 +1,43 @@
+package com.biowaymexico.benchmarks
+
+import com.biowaymexico.utils.vision.bote.DetectionStabilityTracker
+import com.biowaymexico.utils.vision.bote.MaterialCategory
+import com.ultralytics.yolo.DetectionBuffer
+import com.ultralytics.yolo.NmsEngine
+import com.ultralytics.yolo.YoloOutputDecoder
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+/**
+ * DetectionStabilityTracker.update con la clase de la mejor detección de cada frame (o
+ * ninguna, para los frames donde el filtro no deja nada), en el orden grabado
+ */
+@State(Scope.Thread)
+open class StabilityTrackerBenchmark {
+
+    private lateinit var topClasses: Array<String?>
+    private var next = 0
+
+    @Setup
+    fun setUp() {
+        val decoder = YoloOutputDecoder(intArrayOf(1, TensorFixtures.FEATURES, TensorFixtures.ANCHORS))
+        val nms = NmsEngine(512)
+        val buffer = DetectionBuffer(64)
+        topClasses = TensorFixtures.frames.map { frame ->
+            TensorFixtures.candidates(decoder, TensorFixtures.directBuffer(frame), buffer)
+            buffer.suppress(nms, 0.4f, true, 0f, 30)
+            val best = buffer.bestIndex()
+            if (best < 0) null else TensorFixtures.labels[buffer.getClassIndex(best)]
+        }.toTypedArray()
+        DetectionStabilityTracker.reset()
+    }
+
+    @Benchmark
+    fun update(): MaterialCategory? {
+        val className = topClasses[next]
+        next = (next + 1) % topClasses.size
+        return DetectionStabilityTracker.update(className)
+    }
+}
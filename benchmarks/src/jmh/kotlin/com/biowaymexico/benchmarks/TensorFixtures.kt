@@ -0,0 +1,179 @@
+package com.biowaymexico.benchmarks
+
+import com.biowaymexico.utils.vision.LetterboxGeometry
+import com.biowaymexico.utils.vision.TensorRecording
+import com.ultralytics.yolo.DetectionBuffer
+import com.ultralytics.yolo.YoloOutputDecoder
+import java.io.DataInputStream
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+import kotlin.random.Random
+
+/**
+ * Tensores de salida YOLOv8 [1, 16, 2100] para los benchmarks.
+ *
+ * Se leen de los archivos `*.bwt` del directorio `bioway.fixtures` (benchmarks/fixtures).
+ * Formato, little-endian:
+ *
+ *   int magic ("BWT1"), int features, int anchors, int frames,
+ *   frames x (features x anchors) float32 en el layout del modelo
+ *
+ * También se leen las grabaciones `*.bwr` del dispositivo (ver TensorRecording): cada
+ * pasada con la forma esperada es un frame (las cuantizadas se descuantizan).
+ *
+ * Sin archivos se generan [SYNTHETIC_FRAMES] frames deterministas (semilla fija): ruido
+ * de fondo, 2-4 objetos con anchors vecinos que se solapan y el plato de fondo como
+ * plástico circular centrado con confianza baja. Con la misma semilla, dos commits
+ * miden exactamente los mismos datos.
+ */
+object TensorFixtures {
+
+    const val FEATURES = 16
+    const val ANCHORS = 2100
+    const val INPUT_SIZE = 320
+    const val DECODE_THRESHOLD = 0.25f
+
+    private const val MAGIC = 0x31545742  // "BWT1"
+    private const val SYNTHETIC_FRAMES = 32
+    private const val SEED = 20251117
+
+    // Mismo orden que assets/labels/waste_detector_labels.txt
+    private val DEFAULT_LABELS = listOf(
+        "biological", "cardboard", "glass", "metal", "paper", "plastic",
+        "plastic-Others", "plastic-PET", "plastic-PE_HD", "plastic-PP", "plastic-PS", "trash"
+    )
+
+    val labels: List<String> by lazy {
+        System.getProperty("bioway.labels")?.let { File(it) }?.takeIf { it.isFile }
+            ?.readLines()?.filter { it.isNotBlank() }
+            ?: DEFAULT_LABELS
+    }
+
+    /**
+     * Frames en layout [features, anchors], cada uno en su propio arreglo
+     */
+    val frames: List<FloatArray> by lazy {
+        val dir = System.getProperty("bioway.fixtures")?.let { File(it) }
+        val files = dir?.listFiles { f -> f.name.endsWith(".bwt") || f.name.endsWith(".bwr") }
+            ?.sortedBy { it.name }.orEmpty()
+        if (files.isEmpty()) synthetic()
+        else files.flatMap { if (it.name.endsWith(".bwr")) readRecording(it) else read(it) }
+    }
+
+    // Geometría de una cámara 4:3 vertical (480x640) letterboxeada a 320
+    val geometry = LetterboxGeometry(
+        inputSize = INPUT_SIZE,
+        srcWidth = 480,
+        srcHeight = 640,
+        scaleFactor = 0.5f,
+        xOffset = 40f,
+        yOffset = 0f,
+        scaledWidth = 240,
+        scaledHeight = 320
+    )
+
+    fun directBuffer(frame: FloatArray): FloatBuffer =
+        ByteBuffer.allocateDirect(frame.size * 4).order(ByteOrder.nativeOrder()).asFloatBuffer().apply {
+            put(frame)
+            rewind()
+        }
+
+    /**
+     * Candidatos de [frame] en coordenadas 0-1 de la imagen (decodificación + letterbox),
+     * como los deja WasteClassifierYOLO.parseOutput antes de NMS
+     */
+    fun candidates(decoder: YoloOutputDecoder, frame: FloatBuffer, out: DetectionBuffer) {
+        out.clear()
+        val count = decoder.decode(frame, 0, DECODE_THRESHOLD)
+        for (i in 0 until count) {
+            geometry.addUnprojected(
+                out,
+                decoder.getCenterX(i), decoder.getCenterY(i), decoder.getWidth(i), decoder.getHeight(i),
+                decoder.getScore(i), decoder.getClassIndex(i)
+            )
+        }
+    }
+
+    private fun read(file: File): List<FloatArray> {
+        val bytes = file.readBytes()
+        val buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)
+        require(buffer.int == MAGIC) { "${file.name}: no es un archivo BWT1" }
+        val features = buffer.int
+        val anchors = buffer.int
+        val count = buffer.int
+        require(features == FEATURES && anchors == ANCHORS) {
+            "${file.name}: forma [$features, $anchors], se esperaba [$FEATURES, $ANCHORS]"
+        }
+        val floats = buffer.asFloatBuffer()
+        return List(count) { FloatArray(features * anchors).also { floats.get(it) } }
+    }
+
+    private fun readRecording(file: File): List<FloatArray> =
+        TensorRecording.readAll(file).second.flatMap { frame -> frame.passes.map { it.tensor } }
+            .filter { it.shape.contentEquals(intArrayOf(1, FEATURES, ANCHORS)) }
+            .map { tensor ->
+                val data = tensor.buffer()
+                FloatArray(FEATURES * ANCHORS) { i ->
+                    when (tensor.type) {
+                        TensorRecording.ElementType.FLOAT32 -> data.getFloat(i * 4)
+                        TensorRecording.ElementType.UINT8 -> ((data.get(i).toInt() and 0xFF) - tensor.zeroPoint) * tensor.scale
+                        TensorRecording.ElementType.INT8 -> (data.get(i) - tensor.zeroPoint) * tensor.scale
+                    }
+                }
+            }
+
+    private fun synthetic(): List<FloatArray> {
+        val random = Random(SEED)
+        val numClasses = FEATURES - 4
+        val plastic = labels.indexOf("plastic").coerceAtLeast(0)
+
+        return List(SYNTHETIC_FRAMES) {
+            val frame = FloatArray(FEATURES * ANCHORS)
+            fun set(anchor: Int, cx: Float, cy: Float, w: Float, h: Float) {
+                frame[anchor] = cx
+                frame[ANCHORS + anchor] = cy
+                frame[2 * ANCHORS + anchor] = w
+                frame[3 * ANCHORS + anchor] = h
+            }
+
+            // Fondo: cajas al azar con confianza baja en todas las clases
+            for (a in 0 until ANCHORS) {
+                set(a, random.nextFloat(), random.nextFloat(), 0.02f + random.nextFloat() * 0.2f, 0.02f + random.nextFloat() * 0.2f)
+                for (c in 0 until numClasses) frame[(4 + c) * ANCHORS + a] = random.nextFloat() * 0.12f
+            }
+
+            // Objetos: varios anchors vecinos sobre la misma caja, a veces con otra clase
+            var anchor = random.nextInt(ANCHORS - 200)
+            fun placeObject(cx: Float, cy: Float, size: Float, classIndex: Int, confidence: Float) {
+                repeat(12 + random.nextInt(12)) {
+                    val a = anchor++ % ANCHORS
+                    val jitter = 0.015f
+                    set(
+                        a,
+                        cx + (random.nextFloat() - 0.5f) * jitter,
+                        cy + (random.nextFloat() - 0.5f) * jitter,
+                        size * (0.9f + random.nextFloat() * 0.2f),
+                        size * (0.9f + random.nextFloat() * 0.2f)
+                    )
+                    val cls = if (random.nextFloat() < 0.8f) classIndex else random.nextInt(numClasses)
+                    frame[(4 + cls) * ANCHORS + a] = (confidence + (random.nextFloat() - 0.5f) * 0.2f).coerceIn(0.01f, 0.99f)
+                }
+            }
+
+            // Plato de fondo: plástico grande, circular, centrado y con confianza baja
+            placeObject(0.5f, 0.5f, 0.6f, plastic, 0.38f)
+            repeat(2 + random.nextInt(3)) {
+                placeObject(
+                    0.3f + random.nextFloat() * 0.4f,
+                    0.3f + random.nextFloat() * 0.4f,
+                    0.1f + random.nextFloat() * 0.2f,
+                    random.nextInt(numClasses),
+                    0.45f + random.nextFloat() * 0.45f
+                )
+            }
+            frame
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.biowaymexico.eval
+
+import com.biowaymexico.utils.vision.InferenceBackend
+import com.biowaymexico.utils.vision.LetterboxInputEngine
+import com.biowaymexico.utils.vision.TtaPostprocessor
+import com.ultralytics.yolo.DetectionBuffer
+import com.ultralytics.yolo.YoloOutputDecoder
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.concurrent.atomic.AtomicInteger
+import javax.imageio.ImageIO
+import kotlin.concurrent.thread
+import kotlin.math.nextUp
+import kotlin.system.exitProcess
+
+/**
+ * Clasificación por lotes de un directorio de imágenes en la JVM, con el mismo
+ * preprocesado (LetterboxInputEngine) y post-procesado (decodificación + NMS global de
+ * TtaPostprocessor) que la pasada a escala 1 de WasteClassifierYOLO, sobre ONNX Runtime
+ * en CPU. Sirve para dimensionar modelos y umbrales en una estación de trabajo antes de
+ * instalarlos en los botes.
+ *
+ *   ./gradlew :benchmarks:evaluate --args="--model best.onnx fotos/"
+ *   ./gradlew :benchmarks:evaluate --args="--model best.onnx --threads 4 --csv eval.csv fotos/"
+ *
+ * Opciones:
+ *   --model M          Exportación ONNX del modelo (`yolo export format=onnx imgsz=320`)
+ *   --labels L         Etiquetas, una por línea (por defecto las del clasificador)
+ *   --threads N        Hilos de evaluación, cada uno con su sesión (por defecto, los núcleos)
+ *   --intra-threads K  Hilos de ONNX Runtime por sesión (por defecto, núcleos / N)
+ *   --confidence C     Umbral de confianza (por defecto 0.45, el del clasificador)
+ *   --warmup W         Inferencias de calentamiento por hilo antes de medir (por defecto 3)
+ *   --csv F            Escribe una fila por imagen en F
+ *   --quiet            Solo el resumen
+ *
+ * Reporta por imagen lectura (decodificar el archivo), preprocesado, inferencia y
+ * post-procesado en ms, y al final throughput (imágenes/s de pared) y percentiles.
+ * La latencia "total" no incluye la lectura: es lo que cuesta un frame en el bote.
+ */
+fun main(args: Array<String>) {
+    val options = try {
+        EvalOptions.parse(args)
+    } catch (e: IllegalArgumentException) {
+        System.err.println(e.message)
+        System.err.println(
+            "Uso: evaluate --model <modelo.onnx> [--labels L] [--threads N] [--intra-threads K] " +
+                "[--confidence C] [--warmup W] [--csv F] [--quiet] <imagen | directorio>..."
+        )
+        exitProcess(2)
+    }
+
+    val workers = (0 until options.threads).map {
+        Worker(OnnxBackend(options.model, options.intraThreads), options.labels, options.confidence)
+    }
+    val first = workers.first()
+    println("== ${options.model.name}: ${options.images.size} imágenes, ${options.threads} hilos, ${first.backend.name}")
+    println("   entrada ${first.backend.input}, salida ${first.backend.output}, ${options.labels.size} etiquetas")
+    workers.forEach { it.warmUp(options.warmup) }
+
+    val results = arrayOfNulls<ImageResult>(options.images.size)
+    val next = AtomicInteger()
+    val start = System.nanoTime()
+    workers.mapIndexed { index, worker ->
+        thread(name = "evaluate-$index") {
+            while (true) {
+                val i = next.getAndIncrement()
+                if (i >= results.size) break
+                results[i] = worker.classify(options.images[i])
+            }
+        }
+    }.forEach { it.join() }
+    val wallSeconds = (System.nanoTime() - start) / 1e9
+    workers.forEach { it.close() }
+
+    val completed = results.filterNotNull()
+    if (!options.quiet) completed.forEach { println("   ${it.describe()}") }
+    options.csv?.let { writeCsv(it, completed) }
+    printSummary(completed, wallSeconds, options.threads)
+    exitProcess(if (completed.any { it.error != null }) 1 else 0)
+}
+
+private class EvalOptions(
+    val model: File,
+    val labels: List<String>,
+    val images: List<File>,
+    val threads: Int,
+    val intraThreads: Int,
+    val confidence: Float,
+    val warmup: Int,
+    val csv: File?,
+    val quiet: Boolean
+) {
+    companion object {
+        private const val DEFAULT_LABELS = "app/src/main/assets/labels/labels.txt"
+        private const val DEFAULT_CONFIDENCE = 0.45f  // WasteClassifierYOLO.CONFIDENCE_THRESHOLD
+        private const val DEFAULT_WARMUP = 3
+        private val IMAGE_EXTENSIONS = setOf("jpg", "jpeg", "png", "bmp")
+
+        fun parse(args: Array<String>): EvalOptions {
+            var model: File? = null
+            var labels = File(DEFAULT_LABELS)
+            val paths = mutableListOf<File>()
+            val cores = Runtime.getRuntime().availableProcessors()
+            var threads = cores
+            var intraThreads = 0
+            var confidence = DEFAULT_CONFIDENCE
+            var warmup = DEFAULT_WARMUP
+            var csv: File? = null
+            var quiet = false
+
+            var i = 0
+            fun value(name: String): String =
+                args.getOrNull(++i) ?: throw IllegalArgumentException("$name necesita un valor")
+            fun number(name: String): Int =
+                value(name).toIntOrNull()?.takeIf { it >= 0 } ?: throw IllegalArgumentException("$name necesita un número")
+
+            while (i < args.size) {
+                when (val arg = args[i]) {
+                    "--model" -> model = File(value(arg))
+                    "--labels" -> labels = File(value(arg))
+                    "--threads" -> threads = number(arg).coerceAtLeast(1)
+                    "--intra-threads" -> intraThreads = number(arg)
+                    "--confidence" -> confidence = value(arg).toFloatOrNull()
+                        ?: throw IllegalArgumentException("--confidence necesita un número")
+                    "--warmup" -> warmup = number(arg)
+                    "--csv" -> csv = File(value(arg))
+                    "--quiet" -> quiet = true
+                    else -> paths += File(arg)
+                }
+                i++
+            }
+
+            val modelFile = requireNotNull(model) { "Falta --model" }
+            require(modelFile.isFile) { "No existe: $modelFile" }
+            require(labels.isFile) { "No existen las etiquetas: $labels" }
+            val images = paths.flatMap { path ->
+                when {
+                    path.isDirectory -> path.walkTopDown().filter { it.isFile && it.extension.lowercase() in IMAGE_EXTENSIONS }
+                        .sortedBy { it.path }.toList()
+                    path.isFile -> listOf(path)
+                    else -> throw IllegalArgumentException("No existe: $path")
+                }
+            }
+            require(images.isNotEmpty()) { "Sin imágenes (${IMAGE_EXTENSIONS.joinToString()})" }
+
+            return EvalOptions(
+                model = modelFile,
+                labels = labels.readLines().map { it.trim() }.filter { it.isNotEmpty() },
+                images = images,
+                threads = threads.coerceAtMost(images.size),
+                intraThreads = if (intraThreads > 0) intraThreads else (cores / threads).coerceAtLeast(1),
+                confidence = confidence,
+                warmup = warmup,
+                csv = csv,
+                quiet = quiet
+            )
+        }
+    }
+}
+
+/**
+ * Resultado de una imagen; los tiempos en ms
+ */
+private class ImageResult(
+    val file: File,
+    val width: Int = 0,
+    val height: Int = 0,
+    val readMs: Double = 0.0,
+    val preprocessMs: Double = 0.0,
+    val inferenceMs: Double = 0.0,
+    val postprocessMs: Double = 0.0,
+    val detections: Int = 0,
+    val topClass: String? = null,
+    val topConfidence: Float = 0f,
+    val error: String? = null
+) {
+    val totalMs: Double
+        get() = preprocessMs + inferenceMs + postprocessMs
+
+    fun describe(): String {
+        if (error != null) return "${file.name}: ERROR $error"
+        val top = topClass?.let { " | $it ${(topConfidence * 100).toInt()}%" } ?: ""
+        return "${file.name} (${width}x$height): lectura ${ms(readMs)}, pre ${ms(preprocessMs)}, " +
+            "inferencia ${ms(inferenceMs)}, post ${ms(postprocessMs)}, total ${ms(totalMs)} ms | " +
+            "$detections detecciones$top"
+    }
+}
+
+/**
+ * Estado de un hilo de evaluación: su backend, entrada, salida y buffers de detección,
+ * todos reutilizados entre imágenes (como un slot del pool de la app)
+ */
+private class Worker(
+    val backend: InferenceBackend,
+    private val labels: List<String>,
+    confidence: Float
+) : AutoCloseable {
+
+    private val inputEngine = LetterboxInputEngine(backend.input.shape[1], quantization = backend.input.quantization)
+    private val output = ByteBuffer.allocateDirect(backend.output.numBytes).order(ByteOrder.nativeOrder())
+    private val outputFloats = output.asFloatBuffer()
+    private val decoder = YoloOutputDecoder(backend.output.shape)
+    private val postprocessor = TtaPostprocessor()
+    private val passes = arrayOf(DetectionBuffer(PASS_CAPACITY))
+    private val frame = DetectionBuffer(PASS_CAPACITY)
+    private var pixels = IntArray(0)
+
+    // Estrictamente mayor que el umbral, igual que el clasificador
+    private val threshold = confidence.nextUp()
+
+    fun warmUp(runs: Int) = repeat(runs) { infer() }
+
+    fun classify(file: File): ImageResult {
+        val start = System.nanoTime()
+        val image = try {
+            ImageIO.read(file) ?: return ImageResult(file, error = "formato no soportado")
+        } catch (e: Exception) {
+            return ImageResult(file, error = e.message ?: e.toString())
+        }
+        val width = image.width
+        val height = image.height
+        if (pixels.size < width * height) pixels = IntArray(width * height)
+        image.getRGB(0, 0, width, height, pixels, 0, width)
+        val read = System.nanoTime()
+
+        inputEngine.process(pixels, 0, width, width, height)
+        val preprocessed = System.nanoTime()
+
+        infer()
+        val inferred = System.nanoTime()
+
+        val count = decoder.decode(outputFloats, 0, threshold)
+        val pass = passes[0]
+        pass.clear()
+        postprocessor.parse(decoder, count, inputEngine.geometry(), labels.size, pass)
+        postprocessor.merge(passes, 1, false, frame)
+        val done = System.nanoTime()
+
+        val best = frame.bestIndex()
+        return ImageResult(
+            file, width, height,
+            readMs = millis(start, read),
+            preprocessMs = millis(read, preprocessed),
+            inferenceMs = millis(preprocessed, inferred),
+            postprocessMs = millis(inferred, done),
+            detections = frame.size(),
+            topClass = if (best >= 0) labels[frame.getClassIndex(best)] else null,
+            topConfidence = if (best >= 0) frame.getScore(best) else 0f
+        )
+    }
+
+    private fun infer() {
+        val input = inputEngine.buffer
+        input.rewind()
+        output.rewind()
+        backend.run(input, output)
+    }
+
+    override fun close() = backend.close()
+
+    private companion object {
+        const val PASS_CAPACITY = 256
+    }
+}
+
+private fun printSummary(results: List<ImageResult>, wallSeconds: Double, threads: Int) {
+    val ok = results.filter { it.error == null }
+    val failed = results.size - ok.size
+    println("   ${ok.size} imágenes en ${"%.2f".format(wallSeconds)} s: " +
+        "${"%.1f".format(ok.size / wallSeconds)} imágenes/s con $threads hilos" +
+        if (failed > 0) ", $failed con error" else "")
+    if (ok.isEmpty()) return
+
+    println("   %-12s %8s %8s %8s %8s".format("ms", "media", "p50", "p95", "máx"))
+    val stages = listOf<Pair<String, (ImageResult) -> Double>>(
+        "lectura" to { it.readMs },
+        "preproceso" to { it.preprocessMs },
+        "inferencia" to { it.inferenceMs },
+        "postproceso" to { it.postprocessMs },
+        "total" to { it.totalMs }
+    )
+    for ((name, stage) in stages) {
+        val values = ok.map(stage).sorted()
+        println("   %-12s %8s %8s %8s %8s".format(
+            name, ms(values.average()), ms(percentile(values, 0.5)), ms(percentile(values, 0.95)), ms(values.last())
+        ))
+    }
+}
+
+private fun writeCsv(file: File, results: List<ImageResult>) {
+    file.printWriter().use { out ->
+        out.println("archivo,ancho,alto,lectura_ms,preproceso_ms,inferencia_ms,postproceso_ms,total_ms,detecciones,clase,confianza,error")
+        for (r in results) {
+            out.println(listOf(
+                r.file.path, r.width, r.height, ms(r.readMs), ms(r.preprocessMs), ms(r.inferenceMs),
+                ms(r.postprocessMs), ms(r.totalMs), r.detections, r.topClass.orEmpty(), r.topConfidence, r.error.orEmpty()
+            ).joinToString(",") { value -> value.toString().let { if (',' in it) "\"$it\"" else it } })
+        }
+    }
+    println("   CSV: $file")
+}
+
+/** Percentil de valores ya ordenados (índice truncado, sin interpolar) */
+private fun percentile(sorted: List<Double>, fraction: Double): Double =
+    sorted[((sorted.size - 1) * fraction).toInt()]
+
+private fun millis(from: Long, to: Long): Double = (to - from) / 1_000_000.0
+
+private fun ms(value: Double): String = "%.2f".format(value)
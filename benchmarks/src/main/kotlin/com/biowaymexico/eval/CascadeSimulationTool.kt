@@ -0,0 +1,195 @@
+package com.biowaymexico.eval
+
+import com.ultralytics.yolo.BoxFusion
+import com.ultralytics.yolo.NmsEngine
+import java.util.Random
+import kotlin.system.exitProcess
+
+/**
+ * Pasadas por decisión de la cascada de TTA: NMS global contra Weighted Box Fusion, con
+ * objetos sintéticos (sin modelo ni dispositivo).
+ *
+ * Simula la cascada de WasteClassifierYOLO ([upright] -> [2 rotaciones] -> [3 rotaciones
+ * a 1.5x] -> [3 rotaciones a 2x]): cada pasada puede no ver el objeto, verlo con la clase
+ * correcta o confundirlo con otra clase, con confianza ruidosa. Las dos estrategias
+ * reciben exactamente las mismas pasadas y la misma regla de salida (confianza >= 0.70 y
+ * margen >= 0.25); WBF además puede salir cuando 3 pasadas coinciden con confianza
+ * fusionada >= 0.40.
+ *
+ *   ./gradlew :benchmarks:simulateCascade
+ *   ./gradlew :benchmarks:simulateCascade --args="--trials 20000 --seed 3"
+ *
+ * Reporta pasadas por decisión, porcentaje de salidas tempranas, aciertos y pasadas por
+ * decisión correcta (una decisión incorrecta en la pantalla cuesta frames de votación).
+ * Los umbrales de acuerdo salieron de esta simulación; antes de cambiar el modo de la
+ * pantalla hay que confirmarlos con sesiones grabadas (`replay`).
+ */
+fun main(args: Array<String>) {
+    var trials = 2000
+    var seed = 7L
+    try {
+        var i = 0
+        while (i < args.size) {
+            val arg = args[i]
+            val value = args.getOrNull(++i)?.toLongOrNull()?.takeIf { it >= 0 }
+                ?: throw IllegalArgumentException("$arg necesita un número")
+            when (arg) {
+                "--trials" -> trials = value.toInt()
+                "--seed" -> seed = value
+                else -> throw IllegalArgumentException("Opción desconocida: $arg")
+            }
+            i++
+        }
+    } catch (e: IllegalArgumentException) {
+        System.err.println(e.message)
+        System.err.println("Uso: simulateCascade [--trials N] [--seed S]")
+        exitProcess(2)
+    }
+    CascadeSimulation(seed).run(trials)
+}
+
+private class CascadeSimulation(seed: Long) {
+
+    companion object {
+        private val STAGES = intArrayOf(1, 2, 3, 3)
+        private const val NUM_PASSES = 9
+        private const val NUM_CLASSES = 12
+        private const val MAX_DETECTIONS = 100
+
+        // Mismos valores que WasteClassifierYOLO
+        private const val TTA_IOU_THRESHOLD = 0.3f
+        private const val TTA_CENTER_DISTANCE = 0.1f
+        private const val CASCADE_CONFIDENCE = 0.70f
+        private const val CASCADE_MARGIN = 0.25f
+        private const val AGREEMENT_PASSES = 3
+        private const val AGREEMENT_CONFIDENCE = 0.40f
+
+        // Modelo sintético de cada pasada
+        private const val SEEN_PROBABILITY = 0.85f
+        private const val CORRECT_CLASS_PROBABILITY = 0.8f
+    }
+
+    private class Box(
+        val left: Float,
+        val top: Float,
+        val right: Float,
+        val bottom: Float,
+        val score: Float,
+        val classId: Int,
+        val pass: Int
+    )
+
+    // Detección ya fusionada: confianza, clase y pasadas que coinciden
+    private class Merged(val score: Float, val classId: Int, val agreement: Int)
+
+    private class Decision(val passes: Int, val classId: Int, val early: Boolean)
+
+    private class Tally {
+        var passes = 0L
+        var early = 0
+        var correct = 0
+    }
+
+    private val random = Random(seed)
+    private val nms = NmsEngine(256)
+    private val fusion = BoxFusion(256)
+
+    fun run(trials: Int) {
+        val nmsTally = Tally()
+        val wbfTally = Tally()
+
+        repeat(trials) {
+            val trueClass = random.nextInt(NUM_CLASSES)
+            val confusedClass = (trueClass + 1 + random.nextInt(NUM_CLASSES - 1)) % NUM_CLASSES
+            val boxes = syntheticPasses(trueClass, confusedClass)
+
+            for ((tally, wbf) in listOf(nmsTally to false, wbfTally to true)) {
+                val decision = decide(boxes, wbf)
+                tally.passes += decision.passes
+                if (decision.early) tally.early++
+                if (decision.classId == trueClass) tally.correct++
+            }
+        }
+
+        println("== $trials objetos sintéticos, $NUM_PASSES pasadas en ${STAGES.size} etapas")
+        for ((name, tally) in listOf("NMS" to nmsTally, "WBF" to wbfTally)) {
+            println("   $name: %.2f pasadas/decisión | salida temprana %.1f%% | aciertos %.1f%% | %.2f pasadas/decisión correcta"
+                .format(
+                    tally.passes.toDouble() / trials,
+                    tally.early * 100.0 / trials,
+                    tally.correct * 100.0 / trials,
+                    tally.passes.toDouble() / tally.correct
+                ))
+        }
+    }
+
+    /**
+     * Detecciones de las 9 pasadas para un objeto de clase [trueClass]
+     */
+    private fun syntheticPasses(trueClass: Int, confusedClass: Int): List<Box> {
+        val cx = 0.3f + random.nextFloat() * 0.4f
+        val cy = 0.3f + random.nextFloat() * 0.4f
+        val size = 0.15f + random.nextFloat() * 0.2f
+        // Qué tan fácil es el objeto: confianza media de las pasadas que aciertan
+        val mean = 0.45 + random.nextDouble() * 0.25
+
+        val boxes = mutableListOf<Box>()
+        for (pass in 0 until NUM_PASSES) {
+            if (random.nextFloat() >= SEEN_PROBABILITY) continue
+            val correct = random.nextFloat() < CORRECT_CLASS_PROBABILITY
+            val score = ((if (correct) mean else mean - 0.1) + random.nextGaussian() * 0.15)
+                .coerceIn(0.01, 0.99).toFloat()
+            val x = cx + (random.nextFloat() - 0.5f) * 0.02f
+            val y = cy + (random.nextFloat() - 0.5f) * 0.02f
+            val w = size * (1 + (random.nextFloat() - 0.5f) * 0.2f)
+            boxes += Box(x - w / 2, y - w / 2, x + w / 2, y + w / 2, score,
+                if (correct) trueClass else confusedClass, pass)
+        }
+        return boxes
+    }
+
+    // Ruta de nonMaxSuppressionGlobal
+    private fun mergeNms(boxes: List<Box>): List<Merged> {
+        nms.clear()
+        for (b in boxes) nms.add(b.left, b.top, b.right, b.bottom, b.score, b.classId)
+        val kept = nms.run(TTA_IOU_THRESHOLD, true, TTA_CENTER_DISTANCE, MAX_DETECTIONS)
+        return List(kept) { boxes[nms.getKept(it)].let { b -> Merged(b.score, b.classId, 1) } }
+    }
+
+    // Ruta de weightedBoxFusion: WBF por clase y después solo la regla de centros
+    private fun mergeWbf(boxes: List<Box>, passesRun: Int): List<Merged> {
+        fusion.clear()
+        for (b in boxes) fusion.add(b.left, b.top, b.right, b.bottom, b.score, b.classId, b.pass)
+        val fused = fusion.run(TTA_IOU_THRESHOLD, passesRun, MAX_DETECTIONS)
+        nms.clear()
+        for (r in 0 until fused) {
+            nms.add(fusion.getLeft(r), fusion.getTop(r), fusion.getRight(r), fusion.getBottom(r),
+                fusion.getScore(r), fusion.getClassIndex(r))
+        }
+        val kept = nms.run(1f, true, TTA_CENTER_DISTANCE, MAX_DETECTIONS)
+        return List(kept) { i ->
+            val r = nms.getKept(i)
+            Merged(fusion.getScore(r), fusion.getClassIndex(r), fusion.getAgreement(r))
+        }
+    }
+
+    private fun decide(boxes: List<Box>, wbf: Boolean): Decision {
+        var used = 0
+        var decision = -1
+        for (stage in STAGES) {
+            used += stage
+            val visible = boxes.filter { it.pass < used }
+            val merged = if (wbf) mergeWbf(visible, used) else mergeNms(visible)
+
+            val top = merged.maxByOrNull { it.score } ?: continue
+            val runnerUp = merged.filter { it.classId != top.classId }.maxOfOrNull { it.score } ?: 0f
+            decision = top.classId
+
+            val agreed = wbf && top.agreement >= AGREEMENT_PASSES && top.score >= AGREEMENT_CONFIDENCE
+            if ((top.score >= CASCADE_CONFIDENCE || agreed) && top.score - runnerUp >= CASCADE_MARGIN) {
+                return Decision(used, decision, early = true)
+            }
+        }
+        return Decision(used, decision, early = false)
+    }
+}
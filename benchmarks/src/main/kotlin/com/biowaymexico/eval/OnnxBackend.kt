@@ -0,0 +1,214 @@
+package com.biowaymexico.eval
+
+import ai.onnxruntime.OnnxJavaType
+import ai.onnxruntime.OnnxTensor
+import ai.onnxruntime.OrtEnvironment
+import ai.onnxruntime.OrtSession
+import ai.onnxruntime.TensorInfo
+import com.biowaymexico.utils.vision.InferenceBackend
+import com.biowaymexico.utils.vision.TensorQuantization
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+
+/**
+ * [InferenceBackend] de ONNX Runtime en CPU para la exportación ONNX del mismo YOLOv8
+ * (`yolo export format=onnx`), para evaluar modelos y umbrales en una estación de
+ * trabajo Linux x86 sin teléfono.
+ *
+ * La exportación ONNX es NCHW [1, 3, alto, ancho] y la de TFLite NHWC; el backend
+ * reporta la entrada como NHWC (lo que escribe LetterboxInputEngine) y la transpone en
+ * [run] a su propio tensor NCHW. La salida [1, 4 + clases, anchors] es la misma en ambos
+ * formatos y se escribe directamente en el buffer de salida del llamador.
+ *
+ * Solo modelos float32 (los QDQ de ONNX reciben y devuelven float igualmente).
+ * No es thread-safe: una instancia por hilo, como los slots de la app.
+ *
+ * @param intraOpThreads Hilos de ONNX Runtime para esta sesión
+ */
+class OnnxBackend(
+    model: File,
+    intraOpThreads: Int
+) : InferenceBackend {
+
+    private val environment = OrtEnvironment.getEnvironment()
+    private val session: OrtSession
+    private val inputName: String
+    private val outputName: String
+    private val channelsFirst: Boolean
+    private val modelInputShape: LongArray
+    private val modelOutputShape: LongArray
+
+    override val name = "ONNX Runtime CPU x$intraOpThreads"
+
+    override var input: InferenceBackend.TensorSpec
+        private set
+
+    override var output: InferenceBackend.TensorSpec
+        private set
+
+    // Tensor de entrada de la sesión (NCHW o NHWC según el modelo) sobre un buffer directo
+    private var inputFloats: FloatBuffer
+    private var inputTensor: OnnxTensor
+
+    // Tensor de salida fijado sobre el último buffer de salida recibido en [run]
+    private var pinnedBuffer: ByteBuffer? = null
+    private var pinnedOutput: OnnxTensor? = null
+
+    // Argumentos de session.run, reconstruidos solo cuando cambian los tensores
+    private var runInputs: Map<String, OnnxTensor>
+    private var runOutputs: Map<String, OnnxTensor> = emptyMap()
+
+    init {
+        val options = OrtSession.SessionOptions().apply {
+            setIntraOpNumThreads(intraOpThreads.coerceAtLeast(1))
+            setInterOpNumThreads(1)
+            setExecutionMode(OrtSession.SessionOptions.ExecutionMode.SEQUENTIAL)
+            setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT)
+        }
+        session = options.use { environment.createSession(model.absolutePath, it) }
+
+        try {
+            require(session.numInputs == 1L && session.numOutputs == 1L) {
+                "Se esperaba un modelo de una entrada y una salida: ${session.inputNames} -> ${session.outputNames}"
+            }
+            inputName = session.inputNames.first()
+            outputName = session.outputNames.first()
+            val inputInfo = session.inputInfo.getValue(inputName).info as TensorInfo
+            val outputInfo = session.outputInfo.getValue(outputName).info as TensorInfo
+            require(inputInfo.type == OnnxJavaType.FLOAT && outputInfo.type == OnnxJavaType.FLOAT) {
+                "Solo modelos float32: entrada ${inputInfo.type}, salida ${outputInfo.type}"
+            }
+
+            modelInputShape = inputInfo.shape
+            modelOutputShape = outputInfo.shape
+            require(modelInputShape.size == 4 && modelOutputShape.size == 3) {
+                "Formas no soportadas: ${modelInputShape.contentToString()} -> ${modelOutputShape.contentToString()}"
+            }
+            channelsFirst = modelInputShape[1] == CHANNELS.toLong()
+            require(channelsFirst || modelInputShape[3] == CHANNELS.toLong()) {
+                "Entrada sin 3 canales: ${modelInputShape.contentToString()}"
+            }
+            require(modelInputShape.drop(1).all { it > 0 } && modelOutputShape.drop(1).all { it > 0 }) {
+                "Exportar con tamaño fijo (dynamic=False): ${modelInputShape.contentToString()}"
+            }
+
+            input = inputSpec(1)
+            output = outputSpec(1)
+            inputFloats = allocateFloats(input.numElements)
+            inputTensor = OnnxTensor.createTensor(environment, inputFloats, sessionInputShape(1))
+            runInputs = mapOf(inputName to inputTensor)
+        } catch (e: Exception) {
+            session.close()
+            throw e
+        }
+    }
+
+    override fun resizeBatch(batchSize: Int) {
+        require(batchSize >= 1) { "batchSize debe ser >= 1" }
+        require(batchSize == 1 || modelInputShape[0] < 0) {
+            "El modelo tiene batch fijo ${modelInputShape[0]}; exportar con dynamic=True"
+        }
+        if (batchSize == input.shape[0]) return
+
+        input = inputSpec(batchSize)
+        output = outputSpec(batchSize)
+        inputTensor.close()
+        inputFloats = allocateFloats(input.numElements)
+        inputTensor = OnnxTensor.createTensor(environment, inputFloats, sessionInputShape(batchSize))
+        runInputs = mapOf(inputName to inputTensor)
+        releasePinnedOutput()
+    }
+
+    override fun run(input: ByteBuffer, output: ByteBuffer) {
+        if (channelsFirst) transposeToChannelsFirst(input) else copyInput(input)
+        pinOutput(output)
+        session.run(runInputs, runOutputs).close()
+    }
+
+    override fun close() {
+        releasePinnedOutput()
+        inputTensor.close()
+        session.close()
+    }
+
+    /**
+     * NHWC (orden del letterbox) -> NCHW (orden de la exportación ONNX)
+     */
+    private fun transposeToChannelsFirst(source: ByteBuffer) {
+        val shape = input.shape
+        val plane = shape[1] * shape[2]
+        val imageFloats = plane * CHANNELS
+        val target = inputFloats
+        for (image in 0 until shape[0]) {
+            val base = image * imageFloats
+            for (pixel in 0 until plane) {
+                val sourceIndex = (base + pixel * CHANNELS) * BYTES_PER_FLOAT
+                target.put(base + pixel, source.getFloat(sourceIndex))
+                target.put(base + plane + pixel, source.getFloat(sourceIndex + BYTES_PER_FLOAT))
+                target.put(base + 2 * plane + pixel, source.getFloat(sourceIndex + 2 * BYTES_PER_FLOAT))
+            }
+        }
+    }
+
+    private fun copyInput(source: ByteBuffer) {
+        val target = inputFloats
+        for (i in 0 until input.numElements) target.put(i, source.getFloat(i * BYTES_PER_FLOAT))
+    }
+
+    /**
+     * Tensor de salida que escribe directamente en [buffer]; se recrea solo si el
+     * llamador cambia de buffer (la arena de salida es la misma en cada inferencia)
+     */
+    private fun pinOutput(buffer: ByteBuffer) {
+        if (pinnedOutput != null && pinnedBuffer === buffer) return
+        releasePinnedOutput()
+        require(buffer.isDirect && buffer.order() == ByteOrder.nativeOrder() && buffer.capacity() >= output.numBytes) {
+            "El buffer de salida debe ser directo, en orden nativo y de ${output.numBytes} bytes"
+        }
+        val view = buffer.duplicate().order(ByteOrder.nativeOrder())
+        view.rewind()
+        view.limit(output.numBytes)
+        val floats = view.slice().order(ByteOrder.nativeOrder()).asFloatBuffer()
+        val tensor = OnnxTensor.createTensor(environment, floats, output.shape.toLongs())
+        pinnedBuffer = buffer
+        pinnedOutput = tensor
+        runOutputs = mapOf(outputName to tensor)
+    }
+
+    private fun releasePinnedOutput() {
+        pinnedOutput?.close()
+        pinnedOutput = null
+        pinnedBuffer = null
+        runOutputs = emptyMap()
+    }
+
+    private fun inputSpec(batchSize: Int): InferenceBackend.TensorSpec {
+        val shape = modelInputShape
+        val nhwc = if (channelsFirst) {
+            intArrayOf(batchSize, shape[2].toInt(), shape[3].toInt(), CHANNELS)
+        } else {
+            intArrayOf(batchSize, shape[1].toInt(), shape[2].toInt(), CHANNELS)
+        }
+        return InferenceBackend.TensorSpec(nhwc, TensorQuantization.FLOAT32)
+    }
+
+    private fun outputSpec(batchSize: Int) = InferenceBackend.TensorSpec(
+        intArrayOf(batchSize, modelOutputShape[1].toInt(), modelOutputShape[2].toInt()),
+        TensorQuantization.FLOAT32
+    )
+
+    private fun sessionInputShape(batchSize: Int): LongArray =
+        modelInputShape.copyOf().also { it[0] = batchSize.toLong() }
+
+    private fun allocateFloats(count: Int): FloatBuffer =
+        ByteBuffer.allocateDirect(count * BYTES_PER_FLOAT).order(ByteOrder.nativeOrder()).asFloatBuffer()
+
+    private fun IntArray.toLongs(): LongArray = LongArray(size) { this[it].toLong() }
+
+    private companion object {
+        const val CHANNELS = 3
+        const val BYTES_PER_FLOAT = 4
+    }
+}
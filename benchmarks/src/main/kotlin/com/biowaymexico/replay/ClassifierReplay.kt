@@ -0,0 +1,137 @@
+package com.biowaymexico.replay
+
+import com.biowaymexico.utils.vision.NormalizedRect
+import com.biowaymexico.utils.vision.TensorRecording
+import com.biowaymexico.utils.vision.TtaPostprocessor
+import com.biowaymexico.utils.vision.bote.DetectionPhase
+import com.biowaymexico.utils.vision.bote.ZoomConfirmationVoting
+import com.ultralytics.yolo.DetectionBuffer
+
+/**
+ * Repite el post-procesado de WasteClassifierYOLO sobre un frame grabado: cada pasada de
+ * TTA se decodifica y se lleva al espacio original, los mosaicos al frame, y las etapas
+ * de la cascada se fusionan (NMS global o WBF) con el mismo criterio de salida temprana.
+ *
+ * Los mosaicos que no cambiaron no se infieren en el dispositivo (ni se graban): se usan
+ * las detecciones del último frame en que se grabaron, igual que la caché del clasificador.
+ */
+internal class ClassifierReplay(header: TensorRecording.Header) : FrameReplay {
+
+    private val labels = header.labels
+    private val numLabels = labels.size
+    private val weighted = header.required("wbf") != 0f
+    private val cascade = header.required("cascade") != 0f
+    private val cascadeConfidence = header.required("cascadeConfidence")
+    private val cascadeMargin = header.required("cascadeMargin")
+    private val agreementPasses = if (weighted) header.required("cascadeAgreementPasses").toInt() else 0
+    private val agreementConfidence = header.required("cascadeAgreementConfidence")
+
+    private val decoders = TensorDecoders()
+    private val postprocessor = TtaPostprocessor()
+    private var passBuffers = emptyArray<DetectionBuffer>()
+    private val tileCache = HashMap<Int, DetectionBuffer>()
+
+    /** Si la cascada del último frame repetido se cortó antes de la última etapa */
+    var earlyExit = false
+        private set
+
+    override fun replay(frame: TensorRecording.Frame, out: DetectionBuffer): Boolean {
+        out.clear()
+        earlyExit = false
+        val stages = frame.stages
+        if (stages.isEmpty()) return true
+
+        val bufferCount = stages.last()
+        if (passBuffers.size < bufferCount) {
+            val existing = passBuffers
+            passBuffers = Array(bufferCount) { existing.getOrNull(it) ?: DetectionBuffer(PASS_CAPACITY) }
+        }
+        for (i in 0 until bufferCount) passBuffers[i].clear()
+
+        for (pass in frame.passes) {
+            val decoder = decoders.decode(pass.tensor, pass.threshold)
+            val geometry = pass.geometry ?: return false
+            if (pass.tileIndex >= 0) {
+                val cached = tileCache.getOrPut(pass.tileIndex) { DetectionBuffer(PASS_CAPACITY) }
+                cached.clear()
+                postprocessor.parse(decoder, decoder.count, geometry, numLabels, cached)
+                val region = pass.tileRegion ?: return false
+                cached.mapToRegion(0, region.left, region.top, region.width, region.height)
+            } else {
+                val buffer = passBuffers[pass.index]
+                postprocessor.parse(decoder, decoder.count, geometry, numLabels, buffer)
+                postprocessor.toOriginal(buffer, pass.rotation, pass.scale)
+            }
+        }
+
+        // Etapa de mosaicos: la última, y solo si la cascada no se cortó antes
+        val tiled = frame.tileCount > 0 && !frame.earlyExit
+        if (tiled) {
+            val tiles = passBuffers[bufferCount - 1]
+            for (tile in 0 until frame.tileCount) {
+                val cached = tileCache[tile] ?: return false  // Mosaico inferido antes de grabar
+                tiles.addAll(cached, 0)
+            }
+        }
+
+        for ((stage, passCount) in stages.withIndex()) {
+            postprocessor.merge(passBuffers, passCount, weighted, out)
+            val tileStage = tiled && stage == stages.lastIndex
+            if (cascade && !tileStage &&
+                postprocessor.isConfidentEnough(out, cascadeConfidence, cascadeMargin, agreementPasses, agreementConfidence)
+            ) {
+                earlyExit = true
+                break
+            }
+        }
+
+        frame.region?.let { out.mapToRegion(0, it.left, it.top, it.width, it.height) }
+        return true
+    }
+
+    override val decisionName = "votación con zoom"
+
+    /**
+     * Materiales que ZoomConfirmationVoting confirma con la mejor detección de cada frame
+     * y la hora grabada; null en los frames sin confirmación.
+     *
+     * Como en ClasificadorBoteScreen, la máquina se vuelve a evaluar con el mismo resultado
+     * cuando cambia de fase, y la confirmación pasa directo a COOLDOWN (caso sin ESP32).
+     * La app no analiza frames durante CONFIRMED ni COOLDOWN, así que una grabación
+     * continua no tiene frames de esas fases.
+     */
+    override fun decisions(frames: List<TensorRecording.Frame>, results: List<DetectionBuffer>): List<String?> {
+        val voting = ZoomConfirmationVoting()
+        return frames.indices.map { i ->
+            val now = frames[i].timestampMillis
+            val candidate = topCandidate(results[i])
+            var confirmed: String? = null
+            do {
+                val phase = voting.phase
+                if (voting.update(candidate, now) == ZoomConfirmationVoting.Transition.CONFIRMED) {
+                    confirmed = voting.confirmedMaterial
+                    voting.startCooldown(now)
+                }
+            } while (voting.phase != phase && voting.phase != DetectionPhase.COOLDOWN)
+            confirmed
+        }
+    }
+
+    private fun topCandidate(buffer: DetectionBuffer): ZoomConfirmationVoting.Candidate? {
+        val best = buffer.bestIndex()
+        if (best < 0) return null
+        val classIndex = buffer.getClassIndex(best)
+        return ZoomConfirmationVoting.Candidate(
+            className = if (classIndex < labels.size) labels[classIndex] else "unknown",
+            confidence = buffer.getScore(best),
+            box = NormalizedRect(buffer.getLeft(best), buffer.getTop(best), buffer.getRight(best), buffer.getBottom(best))
+        )
+    }
+
+    override fun describe(): String =
+        "clasificador (${if (weighted) "WBF" else "NMS"}, cascada ${if (cascade) "sí" else "no"})"
+
+    private companion object {
+        const val PASS_CAPACITY = 256
+    }
+}
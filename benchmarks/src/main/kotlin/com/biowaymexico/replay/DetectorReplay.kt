@@ -0,0 +1,89 @@
+package com.biowaymexico.replay
+
+import com.biowaymexico.utils.vision.TensorRecording
+import com.biowaymexico.utils.vision.bote.BackgroundPlateFilter
+import com.biowaymexico.utils.vision.bote.DetectionStabilityTracker
+import com.ultralytics.yolo.DetectionBuffer
+import com.ultralytics.yolo.NmsEngine
+import com.ultralytics.yolo.YoloOutputDecoder
+
+/**
+ * Repite el post-procesado de ClasificadorBoteYOLOScreen sobre un frame grabado por
+ * WasteDetector: decodificación -> cajas 0-1 -> NMS por clase -> filtro del plato ->
+ * coordenadas del frame completo. Mismo código y mismo orden que en el dispositivo.
+ */
+internal class DetectorReplay(header: TensorRecording.Header) : FrameReplay {
+
+    private val labels = header.labels
+    private val confidenceThreshold = header.required("confidenceThreshold")
+    private val iouThreshold = header.required("iouThreshold")
+    private val numItemsThreshold = header.required("numItemsThreshold").toInt()
+
+    private val decoders = TensorDecoders()
+    private var nms: NmsEngine? = null
+
+    override fun replay(frame: TensorRecording.Frame, out: DetectionBuffer): Boolean {
+        val pass = frame.passes.singleOrNull() ?: return false
+        val decoder = decoders.decode(pass.tensor, pass.threshold)
+        val engine = nms ?: NmsEngine(decoder.numAnchors).also { nms = it }
+
+        out.clear()
+        out.addDecoded(decoder, decoder.count)
+        out.suppress(engine, iouThreshold, true, 0f, numItemsThreshold)
+
+        BackgroundPlateFilter.filterDetections(out, labels, frame.imageWidth, frame.imageHeight)
+        frame.region?.let { out.mapToRegion(0, it.left, it.top, it.width, it.height) }
+        return true
+    }
+
+    override fun describe(): String =
+        "detector (conf $confidenceThreshold, IoU $iouThreshold, máx. $numItemsThreshold)"
+
+    override val decisionName = "estabilidad"
+
+    /**
+     * Categorías que DetectionStabilityTracker confirma con la mejor detección de cada
+     * frame y la hora grabada; null en los frames sin confirmación.
+     *
+     * En la app el tracker corre en la UI con cada resultado que llega a recomponer, así
+     * que este es el caso sin frames descartados por la UI.
+     */
+    override fun decisions(frames: List<TensorRecording.Frame>, results: List<DetectionBuffer>): List<String?> {
+        DetectionStabilityTracker.reset()
+        val decisions = frames.indices.map { i ->
+            val best = results[i].bestIndex()
+            val className = if (best < 0) null else labelOf(results[i].getClassIndex(best))
+            DetectionStabilityTracker.update(className, frames[i].timestampMillis)?.name
+        }
+        DetectionStabilityTracker.reset()
+        return decisions
+    }
+
+    private fun labelOf(classIndex: Int): String =
+        if (classIndex < labels.size) labels[classIndex] else "unknown"
+}
+
+/**
+ * Decodificadores por forma de tensor, reutilizados entre frames
+ */
+internal class TensorDecoders {
+
+    private val decoders = HashMap<List<Int>, YoloOutputDecoder>()
+
+    /**
+     * Decodifica [tensor] con el mismo camino (float o cuantizado) que usó el dispositivo
+     */
+    fun decode(tensor: TensorRecording.Tensor, threshold: Float): YoloOutputDecoder {
+        val decoder = decoders.getOrPut(tensor.shape.toList()) { YoloOutputDecoder(tensor.shape) }
+        val buffer = tensor.buffer()
+        if (tensor.isQuantized) {
+            decoder.decodeQuantized(
+                buffer, 0, tensor.scale, tensor.zeroPoint,
+                tensor.type == TensorRecording.ElementType.INT8, threshold
+            )
+        } else {
+            decoder.decode(buffer.asFloatBuffer(), 0, threshold)
+        }
+        return decoder
+    }
+}
@@ -0,0 +1,224 @@
+package com.biowaymexico.replay
+
+import com.biowaymexico.utils.vision.TensorRecording
+import com.ultralytics.yolo.DetectionBuffer
+import java.io.File
+import java.util.zip.CRC32
+import kotlin.system.exitProcess
+
+/**
+ * Replay de grabaciones `.bwr` (ver TensorRecording) en la JVM, sin dispositivo ni modelo.
+ *
+ * Para cada frame repite el post-procesado con el código actual de la app y compara bit a
+ * bit contra las detecciones que vio la app al grabar: cajas, confianzas, clases y
+ * pasadas coincidentes, más las decisiones que dependen de ellas (salida temprana de la
+ * cascada, categoría confirmada por DetectionStabilityTracker, material confirmado por
+ * la votación con zoom).
+ *
+ *   ./gradlew :benchmarks:replay --args="grabaciones/"
+ *   ./gradlew :benchmarks:replay --args="detector-20251117-101500.bwr --repeat 500"
+ *
+ * Opciones:
+ *   --repeat N   Repite N veces todos los frames y reporta µs por frame (para perfilar
+ *                con JFR o async-profiler sobre datos reales)
+ *   --verbose    Lista todos los frames distintos (por defecto, los primeros 10)
+ *
+ * Sale con código 1 si algún frame no coincide, así que sirve como prueba de regresión
+ * de un cambio en decodificación, transformaciones, NMS/WBF o filtros.
+ */
+fun main(args: Array<String>) {
+    val options = try {
+        ReplayOptions.parse(args)
+    } catch (e: IllegalArgumentException) {
+        System.err.println(e.message)
+        System.err.println("Uso: replay <archivo.bwr | directorio>... [--repeat N] [--verbose]")
+        exitProcess(2)
+    }
+
+    var failed = false
+    for (file in options.files) {
+        val report = replayFile(file, options)
+        failed = failed || !report
+    }
+    exitProcess(if (failed) 1 else 0)
+}
+
+/**
+ * Post-procesado de un tipo de grabación
+ */
+internal interface FrameReplay {
+
+    /**
+     * Deja en [out] las detecciones finales del frame repetido
+     *
+     * @return false si el frame no se puede reproducir con lo grabado
+     */
+    fun replay(frame: TensorRecording.Frame, out: DetectionBuffer): Boolean
+
+    /**
+     * Decisión que toma la app con las detecciones de cada frame (null = ninguna),
+     * repitiendo la lógica de :vision-core con la hora grabada
+     */
+    fun decisions(frames: List<TensorRecording.Frame>, results: List<DetectionBuffer>): List<String?>
+
+    /** Nombre de las decisiones de [decisions] para el reporte */
+    val decisionName: String
+
+    fun describe(): String
+}
+
+internal fun TensorRecording.Header.required(key: String): Float =
+    requireNotNull(params[key]) { "La grabación no tiene el parámetro '$key'" }
+
+private class ReplayOptions(
+    val files: List<File>,
+    val repeat: Int,
+    val verbose: Boolean
+) {
+    companion object {
+        fun parse(args: Array<String>): ReplayOptions {
+            val paths = mutableListOf<File>()
+            var repeat = 0
+            var verbose = false
+            var i = 0
+            while (i < args.size) {
+                when (val arg = args[i]) {
+                    "--repeat" -> repeat = args.getOrNull(++i)?.toIntOrNull()
+                        ?: throw IllegalArgumentException("--repeat necesita un número")
+                    "--verbose" -> verbose = true
+                    else -> paths += File(arg)
+                }
+                i++
+            }
+            val files = paths.flatMap { path ->
+                when {
+                    path.isDirectory -> path.listFiles { f -> f.name.endsWith(".bwr") }.orEmpty().sortedBy { it.name }
+                    path.isFile -> listOf(path)
+                    else -> throw IllegalArgumentException("No existe: $path")
+                }
+            }
+            require(files.isNotEmpty()) { "Sin grabaciones .bwr" }
+            return ReplayOptions(files, repeat, verbose)
+        }
+    }
+}
+
+/**
+ * Repite y compara una grabación; true si todos los frames reproducibles coinciden
+ */
+private fun replayFile(file: File, options: ReplayOptions): Boolean {
+    val (header, frames) = TensorRecording.readAll(file)
+    val replay: FrameReplay = when (header.source) {
+        TensorRecording.Source.DETECTOR -> DetectorReplay(header)
+        TensorRecording.Source.CLASSIFIER -> ClassifierReplay(header)
+    }
+    println("== ${file.name}: ${frames.size} frames de ${header.device}, ${replay.describe()}")
+
+    val results = ArrayList<DetectionBuffer?>(frames.size)
+    val digest = CRC32()
+    var skipped = 0
+    var mismatches = 0
+    var exitMismatches = 0
+
+    for (frame in frames) {
+        val out = DetectionBuffer(maxOf(frame.result.size(), 16))
+        if (!replay.replay(frame, out)) {
+            skipped++
+            results += null
+            continue
+        }
+        results += out
+        update(digest, out)
+
+        val difference = firstDifference(frame.result, out)
+        if (difference != null) {
+            mismatches++
+            if (options.verbose || mismatches <= MAX_LISTED) println("   frame ${frame.id}: $difference")
+        }
+        if (replay is ClassifierReplay && replay.earlyExit != frame.earlyExit) {
+            exitMismatches++
+            if (options.verbose || exitMismatches <= MAX_LISTED) {
+                println("   frame ${frame.id}: salida temprana grabada ${frame.earlyExit}, repetida ${replay.earlyExit}")
+            }
+        }
+    }
+
+    val recorded = replay.decisions(frames, frames.map { it.result })
+    val replayed = replay.decisions(frames, results.mapIndexed { i, r -> r ?: frames[i].result })
+    val decisionMismatches = recorded.indices.count { recorded[it] != replayed[it] }
+    println("   decisiones de ${replay.decisionName}: ${recorded.count { it != null }} grabadas, " +
+        "${replayed.count { it != null }} repetidas, $decisionMismatches distintas")
+
+    val compared = frames.size - skipped
+    println("   $compared frames comparados, $mismatches distintos, $skipped sin reproducir" +
+        (if (replay is ClassifierReplay) ", $exitMismatches salidas tempranas distintas" else "") +
+        ", digest ${"%08x".format(digest.value)}")
+
+    if (options.repeat > 0) profile(replay, frames, options.repeat)
+    return mismatches == 0 && exitMismatches == 0 && decisionMismatches == 0
+}
+
+/**
+ * Repite todos los frames [repeat] veces y reporta el tiempo medio por frame
+ */
+private fun profile(replay: FrameReplay, frames: List<TensorRecording.Frame>, repeat: Int) {
+    val out = DetectionBuffer(64)
+    // Calentamiento para que el JIT compile antes de medir
+    repeat(minOf(repeat, WARMUP_ROUNDS)) { frames.forEach { replay.replay(it, out) } }
+
+    val start = System.nanoTime()
+    repeat(repeat) { frames.forEach { replay.replay(it, out) } }
+    val elapsed = System.nanoTime() - start
+    val perFrame = elapsed / 1000.0 / (repeat.toLong() * frames.size).coerceAtLeast(1)
+    println("   post-procesado: ${"%.1f".format(perFrame)} µs/frame ($repeat repeticiones)")
+}
+
+/**
+ * Primera diferencia entre las detecciones grabadas y las repetidas (bits exactos), o null
+ */
+private fun firstDifference(expected: DetectionBuffer, actual: DetectionBuffer): String? {
+    if (expected.size() != actual.size()) {
+        return "${expected.size()} detecciones grabadas, ${actual.size()} repetidas"
+    }
+    for (i in 0 until expected.size()) {
+        val same = sameBits(expected.getLeft(i), actual.getLeft(i)) &&
+            sameBits(expected.getTop(i), actual.getTop(i)) &&
+            sameBits(expected.getRight(i), actual.getRight(i)) &&
+            sameBits(expected.getBottom(i), actual.getBottom(i)) &&
+            sameBits(expected.getScore(i), actual.getScore(i)) &&
+            expected.getClassIndex(i) == actual.getClassIndex(i) &&
+            expected.getAgreement(i) == actual.getAgreement(i)
+        if (!same) return "detección $i: grabada ${describe(expected, i)}, repetida ${describe(actual, i)}"
+    }
+    return null
+}
+
+private fun sameBits(a: Float, b: Float): Boolean =
+    java.lang.Float.floatToRawIntBits(a) == java.lang.Float.floatToRawIntBits(b)
+
+private fun describe(buffer: DetectionBuffer, i: Int): String =
+    "clase ${buffer.getClassIndex(i)} ${buffer.getScore(i)} " +
+        "[${buffer.getLeft(i)}, ${buffer.getTop(i)}, ${buffer.getRight(i)}, ${buffer.getBottom(i)}] " +
+        "x${buffer.getAgreement(i)}"
+
+private fun update(digest: CRC32, buffer: DetectionBuffer) {
+    fun putInt(value: Int) {
+        digest.update(value ushr 24)
+        digest.update(value ushr 16)
+        digest.update(value ushr 8)
+        digest.update(value)
+    }
+    putInt(buffer.size())
+    for (i in 0 until buffer.size()) {
+        putInt(java.lang.Float.floatToRawIntBits(buffer.getLeft(i)))
+        putInt(java.lang.Float.floatToRawIntBits(buffer.getTop(i)))
+        putInt(java.lang.Float.floatToRawIntBits(buffer.getRight(i)))
+        putInt(java.lang.Float.floatToRawIntBits(buffer.getBottom(i)))
+        putInt(java.lang.Float.floatToRawIntBits(buffer.getScore(i)))
+        putInt(buffer.getClassIndex(i))
+        putInt(buffer.getAgreement(i))
+    }
+}
+
+private const val MAX_LISTED = 10
+private const val WARMUP_ROUNDS = 20
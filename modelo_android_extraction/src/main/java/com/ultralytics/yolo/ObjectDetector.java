@@ -30,8 +30,6 @@ import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -79,6 +77,12 @@ public class ObjectDetector {
     private ByteBuffer inputBuffer;
     private float[][][] rawOutput;
 
+    // Shared bulk output decoder (layout read from the output tensor)
+    private YoloOutputDecoder outputDecoder;
+
+    // Primitive NMS over the decoded candidates (buffers reused between frames)
+    private NmsEngine nms;
+
     /**
      * Create an ObjectDetector instance.
      *
@@ -88,13 +92,26 @@ public class ObjectDetector {
      * @param useGpu Whether to use GPU acceleration
      */
     public ObjectDetector(Context context, String modelPath, List<String> labels, boolean useGpu) throws Exception {
+        this(context, modelPath, labels, useGpu, Runtime.getRuntime().availableProcessors(), true);
+    }
+
+    /**
+     * Create an ObjectDetector instance with an explicit CPU configuration, e.g. the
+     * thread count and XNNPACK setting measured on the device by an autotuner.
+     *
+     * @param numThreads Interpreter threads
+     * @param useXnnpack Whether to use the XNNPACK CPU delegate
+     */
+    public ObjectDetector(Context context, String modelPath, List<String> labels, boolean useGpu,
+                          int numThreads, boolean useXnnpack) throws Exception {
         this.context = context;
         this.labels = labels;
         this.numClasses = labels.size();
 
         // Configure interpreter options
         Interpreter.Options options = new Interpreter.Options();
-        options.setNumThreads(Runtime.getRuntime().availableProcessors());
+        options.setNumThreads(Math.max(1, numThreads));
+        options.setUseXNNPACK(useXnnpack);
 
         if (useGpu) {
             try {
@@ -195,6 +212,8 @@ public class ObjectDetector {
         inputBuffer.order(ByteOrder.nativeOrder());
 
         rawOutput = new float[1][out1][out2];
+        outputDecoder = new YoloOutputDecoder(interpreter.getOutputTensor(0).shape());
+        nms = new NmsEngine(outputDecoder.getNumAnchors());
     }
 
     /**
@@ -286,168 +305,70 @@ public class ObjectDetector {
      * This is equivalent to the native C++ postprocess function.
      */
     private List<Box> postprocess(float[][] output, int origWidth, int origHeight) {
-        List<Detection> detections = new ArrayList<>();
-
-        // Output format: [out1][out2] where out2 = 4 (bbox) + numClasses
-        // Each row: [x_center, y_center, width, height, class1_conf, class2_conf, ...]
+        nms.clear();
 
-        // The output is transposed: [features][predictions]
-        // So we iterate through predictions
-        int numPredictions = out2;
-        int numFeatures = out1;
+        // Output format: [out1][out2] where out1 = 4 (bbox) + numClasses
+        // Bulk decode with class-major running max; anchors below threshold are rejected early
+        int count = outputDecoder.decode(output, confidenceThreshold);
 
-        for (int i = 0; i < numPredictions; i++) {
+        for (int i = 0; i < count; i++) {
             // Get bbox coordinates (normalized 0-1)
-            float xCenter = output[0][i];
-            float yCenter = output[1][i];
-            float width = output[2][i];
-            float height = output[3][i];
-
-            // Find best class
-            int bestClassIdx = -1;
-            float bestClassConf = 0;
-
-            for (int c = 0; c < numClasses; c++) {
-                float classConf = output[4 + c][i];
-                if (classConf > bestClassConf) {
-                    bestClassConf = classConf;
-                    bestClassIdx = c;
-                }
-            }
-
-            // Apply confidence threshold
-            if (bestClassConf >= confidenceThreshold) {
-                // Convert from center format to corner format
-                float x1 = xCenter - width / 2;
-                float y1 = yCenter - height / 2;
-                float x2 = xCenter + width / 2;
-                float y2 = yCenter + height / 2;
-
-                // Clamp to valid range
-                x1 = Math.max(0, Math.min(1, x1));
-                y1 = Math.max(0, Math.min(1, y1));
-                x2 = Math.max(0, Math.min(1, x2));
-                y2 = Math.max(0, Math.min(1, y2));
-
-                if (x2 > x1 && y2 > y1) {
-                    Detection det = new Detection();
-                    det.x1 = x1;
-                    det.y1 = y1;
-                    det.x2 = x2;
-                    det.y2 = y2;
-                    det.confidence = bestClassConf;
-                    det.classIndex = bestClassIdx;
-                    detections.add(det);
-                }
+            float xCenter = outputDecoder.getCenterX(i);
+            float yCenter = outputDecoder.getCenterY(i);
+            float width = outputDecoder.getWidth(i);
+            float height = outputDecoder.getHeight(i);
+
+            // Convert from center format to corner format
+            float x1 = xCenter - width / 2;
+            float y1 = yCenter - height / 2;
+            float x2 = xCenter + width / 2;
+            float y2 = yCenter + height / 2;
+
+            // Clamp to valid range
+            x1 = Math.max(0, Math.min(1, x1));
+            y1 = Math.max(0, Math.min(1, y1));
+            x2 = Math.max(0, Math.min(1, x2));
+            y2 = Math.max(0, Math.min(1, y2));
+
+            if (x2 > x1 && y2 > y1) {
+                nms.add(x1, y1, x2, y2, outputDecoder.getScore(i), outputDecoder.getClassIndex(i));
             }
         }
 
-        // Apply NMS
-        List<Detection> nmsDetections = applyNMS(detections);
-
-        // Limit number of detections
-        if (nmsDetections.size() > numItemsThreshold) {
-            nmsDetections = nmsDetections.subList(0, numItemsThreshold);
-        }
+        // Apply NMS (same class, IoU > iouThreshold), capped at numItemsThreshold
+        int kept = nms.run(iouThreshold, numItemsThreshold);
 
         // Convert to Box objects
-        List<Box> boxes = new ArrayList<>();
-        for (Detection det : nmsDetections) {
+        List<Box> boxes = new ArrayList<>(kept);
+        for (int k = 0; k < kept; k++) {
+            int det = nms.getKept(k);
+            float x1 = nms.getLeft(det);
+            float y1 = nms.getTop(det);
+            float x2 = nms.getRight(det);
+            float y2 = nms.getBottom(det);
+            int classIndex = nms.getClassIndex(det);
+
             // Pixel coordinates
             RectF xywh = new RectF(
-                det.x1 * origWidth,
-                det.y1 * origHeight,
-                det.x2 * origWidth,
-                det.y2 * origHeight
+                x1 * origWidth,
+                y1 * origHeight,
+                x2 * origWidth,
+                y2 * origHeight
             );
 
             // Normalized coordinates
-            RectF xywhn = new RectF(det.x1, det.y1, det.x2, det.y2);
+            RectF xywhn = new RectF(x1, y1, x2, y2);
 
-            String className = (det.classIndex >= 0 && det.classIndex < labels.size())
-                ? labels.get(det.classIndex)
+            String className = (classIndex >= 0 && classIndex < labels.size())
+                ? labels.get(classIndex)
                 : "Unknown";
 
-            boxes.add(new Box(det.classIndex, className, det.confidence, xywh, xywhn));
+            boxes.add(new Box(classIndex, className, nms.getScore(det), xywh, xywhn));
         }
 
         return boxes;
     }
 
-    /**
-     * Apply Non-Maximum Suppression to filter overlapping detections.
-     */
-    private List<Detection> applyNMS(List<Detection> detections) {
-        if (detections.isEmpty()) {
-            return detections;
-        }
-
-        // Sort by confidence (descending)
-        Collections.sort(detections, new Comparator<Detection>() {
-            @Override
-            public int compare(Detection d1, Detection d2) {
-                return Float.compare(d2.confidence, d1.confidence);
-            }
-        });
-
-        List<Detection> result = new ArrayList<>();
-        boolean[] suppressed = new boolean[detections.size()];
-
-        for (int i = 0; i < detections.size(); i++) {
-            if (suppressed[i]) continue;
-
-            Detection current = detections.get(i);
-            result.add(current);
-
-            for (int j = i + 1; j < detections.size(); j++) {
-                if (suppressed[j]) continue;
-
-                Detection other = detections.get(j);
-
-                // Only suppress if same class
-                if (current.classIndex == other.classIndex) {
-                    float iou = calculateIoU(current, other);
-                    if (iou > iouThreshold) {
-                        suppressed[j] = true;
-                    }
-                }
-            }
-        }
-
-        return result;
-    }
-
-    /**
-     * Calculate Intersection over Union (IoU) between two detections.
-     */
-    private float calculateIoU(Detection a, Detection b) {
-        float intersectionX1 = Math.max(a.x1, b.x1);
-        float intersectionY1 = Math.max(a.y1, b.y1);
-        float intersectionX2 = Math.min(a.x2, b.x2);
-        float intersectionY2 = Math.min(a.y2, b.y2);
-
-        float intersectionArea = Math.max(0, intersectionX2 - intersectionX1) *
-                                  Math.max(0, intersectionY2 - intersectionY1);
-
-        float areaA = (a.x2 - a.x1) * (a.y2 - a.y1);
-        float areaB = (b.x2 - b.x1) * (b.y2 - b.y1);
-
-        float unionArea = areaA + areaB - intersectionArea;
-
-        if (unionArea <= 0) return 0;
-
-        return intersectionArea / unionArea;
-    }
-
-    /**
-     * Internal class for detection during postprocessing.
-     */
-    private static class Detection {
-        float x1, y1, x2, y2;
-        float confidence;
-        int classIndex;
-    }
-
     // ===== GETTERS AND SETTERS =====
 
     public float getConfidenceThreshold() {
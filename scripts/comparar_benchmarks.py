@@ -0,0 +1,78 @@
+#!/usr/bin/env python3
+"""
+Compara dos resultados JMH (JSON) de :benchmarks - BioWay
+
+Uso:
+  ./gradlew :benchmarks:jmh
+  cp benchmarks/build/results/jmh/results.json /tmp/base.json
+  (cambiar de commit y volver a correr)
+  python3 scripts/comparar_benchmarks.py /tmp/base.json benchmarks/build/results/jmh/results.json
+
+Imprime por benchmark el tiempo promedio de ambos, la diferencia porcentual y los bytes
+asignados por operación (perfilador gc). Sale con código 1 si algún benchmark es más
+lento que el umbral (--umbral, 10% por defecto) o empieza a asignar memoria.
+"""
+
+import argparse
+import json
+import sys
+
+ALLOC_METRIC = "gc.alloc.rate.norm"
+
+
+def cargar(ruta):
+    with open(ruta) as f:
+        resultados = {}
+        for r in json.load(f):
+            nombre = r["benchmark"].rsplit(".", 2)
+            nombre = ".".join(nombre[-2:])
+            params = r.get("params")
+            if params:
+                nombre += " " + ",".join(f"{k}={v}" for k, v in sorted(params.items()))
+            primaria = r["primaryMetric"]
+            alloc = r.get("secondaryMetrics", {}).get(ALLOC_METRIC, {}).get("score")
+            resultados[nombre] = (primaria["score"], primaria["scoreError"], primaria["scoreUnit"], alloc)
+        return resultados
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Compara dos resultados JMH")
+    parser.add_argument("base")
+    parser.add_argument("nuevo")
+    parser.add_argument("--umbral", type=float, default=10.0, help="Regresión máxima en %% (default 10)")
+    args = parser.parse_args()
+
+    base = cargar(args.base)
+    nuevo = cargar(args.nuevo)
+
+    regresiones = []
+    print(f"{'benchmark':<50} {'base':>14} {'nuevo':>14} {'Δ%':>8} {'B/op base':>10} {'B/op nuevo':>10}")
+    print("=" * 110)
+    for nombre in sorted(set(base) | set(nuevo)):
+        if nombre not in base or nombre not in nuevo:
+            estado = "solo en base" if nombre in base else "nuevo"
+            print(f"{nombre:<50} ({estado})")
+            continue
+        b, b_err, unidad, b_alloc = base[nombre]
+        n, n_err, _, n_alloc = nuevo[nombre]
+        delta = (n - b) / b * 100 if b else 0.0
+        alloc_b = "-" if b_alloc is None else f"{b_alloc:.0f}"
+        alloc_n = "-" if n_alloc is None else f"{n_alloc:.0f}"
+        print(f"{nombre:<50} {b:>9.3f} {unidad:<4} {n:>9.3f} {unidad:<4} {delta:>+7.1f}% {alloc_b:>10} {alloc_n:>10}")
+
+        # Solo cuenta como regresión si la diferencia supera también el error de medición
+        if delta > args.umbral and n - b > b_err + n_err:
+            regresiones.append(f"{nombre}: {delta:+.1f}%")
+        if b_alloc is not None and n_alloc is not None and b_alloc < 1 and n_alloc >= 1:
+            regresiones.append(f"{nombre}: ahora asigna {n_alloc:.0f} B/op")
+
+    if regresiones:
+        print("\n⚠️  Regresiones:")
+        for r in regresiones:
+            print(f"  - {r}")
+        sys.exit(1)
+    print("\n✅ Sin regresiones")
+
+
+if __name__ == "__main__":
+    main()
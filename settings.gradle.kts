@@ -21,3 +21,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "biowaymexico"
 include(":app")
+include(":vision-core")
+include(":benchmarks")
@@ -0,0 +1,24 @@
+import org.jetbrains.kotlin.gradle.dsl.JvmTarget
+
+// Núcleo de visión sin Android: letterbox, geometría, decodificación YOLO, NMS/WBF, el
+// contrato InferenceBackend y lógica de decisión del bote. Lo usan :app (con TFLite y
+// adaptadores a RectF/Log) y :benchmarks (con ONNX Runtime), y sus pruebas corren en la
+// JVM sin emulador.
+plugins {
+    alias(libs.plugins.kotlin.jvm)
+}
+
+kotlin {
+    compilerOptions {
+        jvmTarget.set(JvmTarget.JVM_11)
+    }
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
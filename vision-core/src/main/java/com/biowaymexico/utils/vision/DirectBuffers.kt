@@ -0,0 +1,26 @@
+package com.biowaymexico.utils.vision
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Reserva de buffers directos (orden nativo) del núcleo de visión.
+ *
+ * La app instala un [Listener] que los cuenta en InferenceAllocationTracker (ver
+ * AndroidVision.install); en la JVM no se cuenta nada.
+ */
+object DirectBuffers {
+
+    fun interface Listener {
+        fun onAllocate(bytes: Int)
+    }
+
+    @Volatile
+    var listener: Listener = Listener { }
+
+    fun allocate(bytes: Int): ByteBuffer {
+        val buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder())
+        listener.onAllocate(bytes)
+        return buffer
+    }
+}
@@ -0,0 +1,279 @@
+package com.biowaymexico.utils.vision
+
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Pipeline de dos etapas para frames de la cámara: la etapa 1 (quien llama a [offer],
+ * el analizador de CameraX fuera del hilo principal) convierte el frame y prepara la
+ * entrada del modelo mientras la etapa 2, en un hilo de inferencia propio, procesa el
+ * frame anterior.
+ *
+ * Entre etapas hay un solo lugar de espera y el último frame gana de forma estricta: al
+ * ofrecer un frame, el pendiente que la etapa 2 aún no tomó se descarta con [recycle]
+ * ANTES de preparar el nuevo. Así nunca hay más de dos frames vivos (uno en inferencia y
+ * otro preparándose o esperando), dos buffers alternados bastan para las entradas y la
+ * latencia no crece detrás de una inferencia lenta. Un frame listo con la etapa 2 libre
+ * se le entrega directamente (ya no se puede descartar), para que una etapa 1 que nunca
+ * descansa no le quite cada frame antes de que despierte. La etapa 2 pasa cada frame a
+ * [process] y lo devuelve con [recycle] al terminar, aunque [process] falle: tras una
+ * excepción sigue con el frame siguiente; un Error detiene la pipeline (queda cerrada)
+ * y se relanza en el hilo de inferencia.
+ *
+ * Todo [process] corre en el mismo hilo, así que puede usar intérpretes que no son
+ * thread-safe sin sincronizar. [minIntervalMs] limita la frecuencia de frames aceptados
+ * (los que llegan antes se rechazan sin prepararse).
+ */
+class FramePipeline<T : Any>(
+    val name: String,
+    private val minIntervalMs: Long = 0L,
+    private val recycle: (T) -> Unit = {},
+    private val process: (T) -> Unit
+) : AutoCloseable {
+
+    /**
+     * Contadores desde la creación; [queueDepth] son los frames retenidos en este momento
+     * (el pendiente más el que está en inferencia, 0 a 2). Tiempos medios en ms: [prepareMs]
+     * la etapa 1, [processMs] la etapa 2 y [latencyMs] desde que se ofreció el frame hasta
+     * que terminó de procesarse
+     */
+    data class Stats(
+        val submitted: Long,
+        val processed: Long,
+        val failed: Long,
+        val dropped: Long,
+        val throttled: Long,
+        val queueDepth: Int,
+        val prepareMs: Double,
+        val processMs: Double,
+        val latencyMs: Double
+    ) {
+        override fun toString(): String =
+            "recibidos $submitted, procesados $processed, fallidos $failed, " +
+                "descartados $dropped, limitados $throttled, en cola $queueDepth, " +
+                "preparar %.1f ms, procesar %.1f ms, latencia %.1f ms".format(prepareMs, processMs, latencyMs)
+    }
+
+    private companion object {
+        const val TAG = "FramePipeline"
+    }
+
+    private val lock = ReentrantLock()
+    private val frameReady = lock.newCondition()
+    // Esperando a la etapa 2 (descartable) y entregado a la etapa 2 (aún sin tomar)
+    private var pending: T? = null
+    private var pendingOfferedNanos = 0L
+    private var next: T? = null
+    private var nextOfferedNanos = 0L
+    private var inFlight = false
+    private var closed = false
+    // El hilo de inferencia ya salió; lo que falta correr al salir
+    private var stopped = false
+    private val stopCallbacks = mutableListOf<() -> Unit>()
+    private var lastAcceptedNanos = 0L
+    private var hasAccepted = false
+
+    private var submitted = 0L
+    private var processed = 0L
+    private var failed = 0L
+    private var dropped = 0L
+    private var throttled = 0L
+    private var prepareNanos = 0L
+    private var processNanos = 0L
+    private var latencyNanos = 0L
+
+    private val worker = Thread(::runLoop, name).apply {
+        isDaemon = true
+        start()
+    }
+
+    /**
+     * Ofrece un frame: si pasa el límite de frecuencia, el pendiente se descarta y
+     * [prepare] convierte el nuevo en el hilo que llama (null = no procesar este frame),
+     * que queda como el pendiente
+     *
+     * @return true si el frame quedó pendiente
+     */
+    fun offer(prepare: () -> T?): Boolean {
+        val offered = System.nanoTime()
+        val replaced: T?
+        lock.withLock {
+            if (closed) return false
+            if (hasAccepted && minIntervalMs > 0 && offered - lastAcceptedNanos < minIntervalMs * 1_000_000L) {
+                throttled++
+                return false
+            }
+            // El frame nuevo reemplaza al pendiente: su buffer queda libre para prepararlo
+            replaced = pending
+            pending = null
+            if (replaced != null) dropped++
+        }
+        replaced?.let(recycle)
+
+        val item = prepare() ?: return false
+        val prepared = System.nanoTime()
+        val rejected: T?
+        lock.withLock {
+            if (closed) {
+                rejected = item
+            } else {
+                // Con una sola etapa 1 el lugar sigue libre; si no, también gana el más nuevo
+                rejected = pending
+                if (rejected != null) dropped++
+                if (inFlight) {
+                    pending = item
+                    pendingOfferedNanos = offered
+                } else {
+                    handOff(item, offered)
+                }
+                submitted++
+                prepareNanos += prepared - offered
+                lastAcceptedNanos = offered
+                hasAccepted = true
+            }
+        }
+        rejected?.let(recycle)
+        return rejected !== item
+    }
+
+    fun stats(): Stats = lock.withLock {
+        val done = processed + failed
+        Stats(
+            submitted = submitted,
+            processed = processed,
+            failed = failed,
+            dropped = dropped,
+            throttled = throttled,
+            queueDepth = (if (pending != null) 1 else 0) + (if (inFlight) 1 else 0),
+            prepareMs = meanMs(prepareNanos, submitted),
+            processMs = meanMs(processNanos, done),
+            latencyMs = meanMs(latencyNanos, done)
+        )
+    }
+
+    // Con el lock tomado y la etapa 2 libre
+    private fun handOff(item: T, offered: Long) {
+        next = item
+        nextOfferedNanos = offered
+        inFlight = true
+        frameReady.signalAll()
+    }
+
+    private fun meanMs(totalNanos: Long, count: Long): Double =
+        if (count == 0L) 0.0 else totalNanos / 1_000_000.0 / count
+
+    /**
+     * Detiene la pipeline sin esperar: el pendiente se descarta, las ofertas posteriores se
+     * rechazan y el frame en curso termina en el hilo de inferencia. [onStopped] corre en
+     * ese hilo después del último frame (o aquí mismo si ya terminó), así que ahí se puede
+     * liberar lo que usa [process] sin bloquear a quien cierra
+     */
+    fun close(onStopped: () -> Unit) {
+        val discarded: T?
+        val first: Boolean
+        val runNow: Boolean
+        lock.withLock {
+            first = !closed
+            runNow = stopped
+            if (!stopped) stopCallbacks += onStopped
+            if (first) {
+                closed = true
+                discarded = pending
+                pending = null
+                frameReady.signalAll()
+            } else {
+                discarded = null
+            }
+        }
+        discarded?.let(recycle)
+        // Un frame entregado que la etapa 2 no llegó a tomar lo devuelve ella al salir
+        if (first) VisionLog.d(TAG, "$name cerrada: ${stats()}")
+        if (runNow) onStopped()
+    }
+
+    override fun close() = close {}
+
+    // En el hilo de inferencia, al salir del bucle
+    private fun stop() {
+        val callbacks = lock.withLock {
+            stopped = true
+            stopCallbacks.toList().also { stopCallbacks.clear() }
+        }
+        for (callback in callbacks) {
+            try {
+                callback()
+            } catch (e: Exception) {
+                VisionLog.e(TAG, "$name: error al cerrar", e)
+            }
+        }
+    }
+
+    private fun runLoop() {
+        while (true) {
+            val offered: Long
+            val item: T?
+            val stop: Boolean
+            lock.withLock {
+                while (next == null && !closed) frameReady.await()
+                item = next
+                next = null
+                offered = nextOfferedNanos
+                stop = closed
+                if (stop) inFlight = false
+            }
+            if (stop || item == null) {
+                item?.let(recycle)
+                stop()
+                return
+            }
+
+            val start = System.nanoTime()
+            var ok = false
+            var fatal: Error? = null
+            try {
+                process(item)
+                ok = true
+            } catch (e: Exception) {
+                VisionLog.e(TAG, "$name: error procesando frame", e)
+            } catch (e: Error) {
+                fatal = e
+            }
+            val end = System.nanoTime()
+            try {
+                recycle(item)
+            } catch (e: Exception) {
+                VisionLog.e(TAG, "$name: error devolviendo frame", e)
+            } catch (e: Error) {
+                if (fatal == null) fatal = e
+            }
+
+            val discarded: T?
+            lock.withLock {
+                inFlight = false
+                if (ok) processed++ else failed++
+                processNanos += end - start
+                latencyNanos += end - offered
+                if (fatal == null) {
+                    // El pendiente pasa directo a la siguiente vuelta
+                    discarded = null
+                    pending?.let { waiting ->
+                        pending = null
+                        handOff(waiting, pendingOfferedNanos)
+                    }
+                } else {
+                    // Un Error (p. ej. OutOfMemoryError) detiene la pipeline: queda cerrada
+                    // (sin inFlight colgado) y el Error sale del hilo de inferencia
+                    closed = true
+                    discarded = pending
+                    pending = null
+                }
+            }
+            fatal?.let { error ->
+                VisionLog.e(TAG, "$name: error fatal en el hilo de inferencia, pipeline detenida", error)
+                discarded?.let(recycle)
+                stop()
+                throw error
+            }
+        }
+    }
+}
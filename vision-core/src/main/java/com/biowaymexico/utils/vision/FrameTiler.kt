@@ -0,0 +1,151 @@
+package com.biowaymexico.utils.vision
+
+import kotlin.math.abs
+import kotlin.math.ceil
+import kotlin.math.roundToInt
+
+/**
+ * Divide un frame (o una región de interés) en mosaicos superpuestos de [tileSize] píxeles
+ * para inferencia a resolución nativa, y recuerda qué mosaicos no cambiaron entre frames.
+ *
+ * Cada mosaico guarda una firma de luminancia submuestreada ([SIGNATURE_GRID]² celdas)
+ * del contenido con el que se infirió por última vez. Si la firma del frame actual no se
+ * aleja más de [changeThreshold] (diferencia media, escala 0-255) de la guardada, el
+ * mosaico se considera sin cambios y el llamador reutiliza sus detecciones (las guarda
+ * él mismo por [Tile.index], p. ej. en un DetectionBuffer por mosaico).
+ *
+ * NO es thread-safe: [layout], [hasChanged] y [markInferred] se llaman desde un solo
+ * hilo; la inferencia de los mosaicos sí puede ejecutarse en paralelo.
+ */
+class FrameTiler(
+    val tileSize: Int,
+    private val overlap: Float = DEFAULT_OVERLAP,
+    var changeThreshold: Float = DEFAULT_CHANGE_THRESHOLD
+) {
+
+    companion object {
+        const val DEFAULT_OVERLAP = 0.2f  // 20% de superposición entre mosaicos vecinos
+        const val DEFAULT_CHANGE_THRESHOLD = 3.0f  // Diferencia media de luminancia (0-255)
+
+        private const val SIGNATURE_GRID = 8  // Celdas por lado de la firma
+        private const val SAMPLES_PER_CELL = 4  // Muestras por lado dentro de cada celda
+    }
+
+    /**
+     * Mosaico en coordenadas de píxel del frame
+     */
+    data class Tile(
+        val index: Int,
+        val left: Int,
+        val top: Int,
+        val width: Int,
+        val height: Int
+    )
+
+    private var tiles: List<Tile> = emptyList()
+    private var layoutWidth = -1
+    private var layoutHeight = -1
+    private var layoutRegion: NormalizedRect? = null
+
+    // Firma de la última inferencia de cada mosaico
+    private var signatures: Array<FloatArray?> = emptyArray()
+
+    // Firma del frame actual, pendiente de confirmarse con store()
+    private var pending: Array<FloatArray> = emptyArray()
+
+    /**
+     * Rejilla de mosaicos para un frame de [frameWidth]x[frameHeight] y una región
+     * normalizada opcional. Se recalcula (y se vacía la caché) solo si cambian.
+     */
+    fun layout(frameWidth: Int, frameHeight: Int, region: NormalizedRect? = null): List<Tile> {
+        if (frameWidth == layoutWidth && frameHeight == layoutHeight && region == layoutRegion) {
+            return tiles
+        }
+
+        val left = ((region?.left ?: 0f) * frameWidth).toInt().coerceIn(0, frameWidth - 1)
+        val top = ((region?.top ?: 0f) * frameHeight).toInt().coerceIn(0, frameHeight - 1)
+        val right = ((region?.right ?: 1f) * frameWidth).roundToInt().coerceIn(left + 1, frameWidth)
+        val bottom = ((region?.bottom ?: 1f) * frameHeight).roundToInt().coerceIn(top + 1, frameHeight)
+
+        val xs = axisPositions(left, right - left)
+        val ys = axisPositions(top, bottom - top)
+        val tileWidth = minOf(tileSize, right - left)
+        val tileHeight = minOf(tileSize, bottom - top)
+
+        tiles = ys.flatMap { y -> xs.map { x -> Pair(x, y) } }
+            .mapIndexed { index, (x, y) -> Tile(index, x, y, tileWidth, tileHeight) }
+        layoutWidth = frameWidth
+        layoutHeight = frameHeight
+        layoutRegion = region
+        signatures = arrayOfNulls(tiles.size)
+        pending = Array(tiles.size) { FloatArray(SIGNATURE_GRID * SIGNATURE_GRID) }
+        return tiles
+    }
+
+    /**
+     * Posiciones de inicio repartidas uniformemente, con al menos [overlap] de superposición
+     */
+    private fun axisPositions(start: Int, length: Int): List<Int> {
+        if (length <= tileSize) return listOf(start)
+        val step = tileSize * (1f - overlap)
+        val count = ceil((length - tileSize) / step).toInt() + 1
+        val span = length - tileSize
+        return (0 until count).map { i -> start + (span.toFloat() * i / (count - 1)).roundToInt() }
+    }
+
+    /**
+     * Calcula la firma del mosaico sobre [pixels] (ARGB, fila de [stride]) y la compara con
+     * la de su última inferencia. La firma queda pendiente hasta llamar a [markInferred].
+     */
+    fun hasChanged(tile: Tile, pixels: IntArray, stride: Int): Boolean {
+        val signature = pending[tile.index]
+        computeSignature(tile, pixels, stride, signature)
+
+        val previous = signatures[tile.index] ?: return true
+        var diff = 0f
+        for (i in signature.indices) {
+            diff += abs(signature[i] - previous[i])
+        }
+        return diff / signature.size > changeThreshold
+    }
+
+    /**
+     * Confirma la firma pendiente de un mosaico recién inferido: sus detecciones valen
+     * hasta que el contenido cambie
+     */
+    fun markInferred(tile: Tile) {
+        val signature = signatures[tile.index] ?: FloatArray(SIGNATURE_GRID * SIGNATURE_GRID)
+        pending[tile.index].copyInto(signature)
+        signatures[tile.index] = signature
+    }
+
+    /**
+     * Olvida todas las firmas: el siguiente frame infiere todos los mosaicos
+     */
+    fun invalidate() {
+        signatures.fill(null)
+    }
+
+    private fun computeSignature(tile: Tile, pixels: IntArray, stride: Int, out: FloatArray) {
+        val cellWidth = tile.width.toFloat() / SIGNATURE_GRID
+        val cellHeight = tile.height.toFloat() / SIGNATURE_GRID
+        val samples = SAMPLES_PER_CELL * SAMPLES_PER_CELL
+
+        for (cy in 0 until SIGNATURE_GRID) {
+            for (cx in 0 until SIGNATURE_GRID) {
+                var sum = 0
+                for (sy in 0 until SAMPLES_PER_CELL) {
+                    val y = tile.top + ((cy + (sy + 0.5f) / SAMPLES_PER_CELL) * cellHeight).toInt()
+                    val rowStart = y * stride
+                    for (sx in 0 until SAMPLES_PER_CELL) {
+                        val x = tile.left + ((cx + (sx + 0.5f) / SAMPLES_PER_CELL) * cellWidth).toInt()
+                        val pixel = pixels[rowStart + x]
+                        // Luminancia aproximada (R + 2G + B) / 4
+                        sum += (((pixel shr 16) and 0xFF) + 2 * ((pixel shr 8) and 0xFF) + (pixel and 0xFF)) shr 2
+                    }
+                }
+                out[cy * SIGNATURE_GRID + cx] = sum.toFloat() / samples
+            }
+        }
+    }
+}
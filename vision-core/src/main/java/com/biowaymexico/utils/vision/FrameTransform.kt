@@ -0,0 +1,267 @@
+package com.biowaymexico.utils.vision
+
+import com.ultralytics.yolo.DetectionBuffer
+
+/**
+ * Transformación compuesta del buffer de cámara a la imagen que ve el modelo ("imagen
+ * lógica"): rotación del sensor -> recorte (zoom o ROI) -> rotación del recorte ->
+ * recorte central / redimensionado opcionales.
+ *
+ * Sustituye la cadena de bitmaps intermedios (rotar el frame, recortar, rotar el
+ * recorte, ampliar el centro): [LetterboxInputEngine] muestrea el frame ARGB crudo a
+ * través de esta transformación y escribe el tensor en una sola pasada bilineal.
+ *
+ * La transformación directa es afín en coordenadas de índice de píxel (el centro del
+ * píxel i está en i): imagen lógica -> frame del sensor ([frameX], [frameY]). La inversa
+ * para las cajas del modelo es [mapToFrame]. El recorte se ajusta a píxeles enteros igual
+ * que Bitmap.createBitmap, así que el resultado coincide con la ruta de bitmaps.
+ *
+ * Inmutable: puede compartirse entre hilos.
+ */
+class FrameTransform private constructor(
+    /** Tamaño del buffer de cámara, sin rotar */
+    val frameWidth: Int,
+    val frameHeight: Int,
+    /** Tamaño de la imagen lógica */
+    val width: Int,
+    val height: Int,
+    /** Rotación horaria que endereza el frame (rotationDegrees de ImageProxy) */
+    val sensorRotation: Int,
+    /** Región recortada, normalizada al frame enderezado (ajustada a píxeles) */
+    val region: NormalizedRect,
+    /** Rotación horaria aplicada al recorte */
+    val cropRotation: Int,
+    // Factor del recorte central (1 = sin recorte; ver DetectionBuffer.mapFromCenterCrop)
+    private val zoom: Float,
+    // Imagen lógica -> frame: x' = xx * x + xy * y + tx, y' = yx * x + yy * y + ty
+    private val xx: Float,
+    private val xy: Float,
+    private val tx: Float,
+    private val yx: Float,
+    private val yy: Float,
+    private val ty: Float,
+    // Píxeles del frame que cubre el recorte: el muestreo no lee fuera de ellos
+    val minX: Int,
+    val maxX: Int,
+    val minY: Int,
+    val maxY: Int
+) {
+
+    /** Tamaño del frame enderezado (el espacio de [region] y de [mapToFrame]) */
+    val uprightWidth: Int get() = if (sensorRotation == 90 || sensorRotation == 270) frameHeight else frameWidth
+    val uprightHeight: Int get() = if (sensorRotation == 90 || sensorRotation == 270) frameWidth else frameHeight
+
+    companion object {
+        /**
+         * Transformación de un frame de [frameWidth]x[frameHeight] enderezado con
+         * [sensorRotation], recortado a [region] (normalizada al frame enderezado; null =
+         * completo) y rotado [cropRotation]. Rotaciones en grados horarios: 0, 90, 180 o 270.
+         */
+        fun of(
+            frameWidth: Int,
+            frameHeight: Int,
+            sensorRotation: Int = 0,
+            region: NormalizedRect? = null,
+            cropRotation: Int = 0
+        ): FrameTransform {
+            require(frameWidth > 0 && frameHeight > 0) { "Frame vacío: ${frameWidth}x$frameHeight" }
+            val sensor = normalizeRotation(sensorRotation)
+            val crop = normalizeRotation(cropRotation)
+            val swapped = sensor == 90 || sensor == 270
+            val uprightWidth = if (swapped) frameHeight else frameWidth
+            val uprightHeight = if (swapped) frameWidth else frameHeight
+
+            // Recorte en píxeles enteros del frame enderezado, como Bitmap.createBitmap
+            val bounds = region ?: NormalizedRect(0f, 0f, 1f, 1f)
+            val cropX = (bounds.left * uprightWidth).toInt().coerceIn(0, uprightWidth - 1)
+            val cropY = (bounds.top * uprightHeight).toInt().coerceIn(0, uprightHeight - 1)
+            val cropWidth = (bounds.width * uprightWidth).toInt().coerceIn(1, uprightWidth - cropX)
+            val cropHeight = (bounds.height * uprightHeight).toInt().coerceIn(1, uprightHeight - cropY)
+            val cropSwapped = crop == 90 || crop == 270
+
+            // Lógica -> recorte -> frame enderezado -> frame del sensor
+            val toUpright = Affine.unrotate(sensor, frameWidth, frameHeight)
+            val toFrame = toUpright
+                .after(Affine(1f, 0f, cropX.toFloat(), 0f, 1f, cropY.toFloat()))
+                .after(Affine.unrotate(crop, cropWidth, cropHeight))
+
+            // Esquinas opuestas del recorte en el frame: límites del muestreo
+            val right = (cropX + cropWidth - 1).toFloat()
+            val bottom = (cropY + cropHeight - 1).toFloat()
+            val x0 = toUpright.x(cropX.toFloat(), cropY.toFloat()).toInt()
+            val y0 = toUpright.y(cropX.toFloat(), cropY.toFloat()).toInt()
+            val x1 = toUpright.x(right, bottom).toInt()
+            val y1 = toUpright.y(right, bottom).toInt()
+
+            return FrameTransform(
+                frameWidth, frameHeight,
+                if (cropSwapped) cropHeight else cropWidth,
+                if (cropSwapped) cropWidth else cropHeight,
+                sensor,
+                NormalizedRect(
+                    cropX.toFloat() / uprightWidth,
+                    cropY.toFloat() / uprightHeight,
+                    (cropX + cropWidth).toFloat() / uprightWidth,
+                    (cropY + cropHeight).toFloat() / uprightHeight
+                ),
+                crop,
+                1f,
+                toFrame.xx, toFrame.xy, toFrame.tx, toFrame.yx, toFrame.yy, toFrame.ty,
+                minOf(x0, x1), maxOf(x0, x1), minOf(y0, y1), maxOf(y0, y1)
+            )
+        }
+
+        private fun normalizeRotation(degrees: Int): Int {
+            val normalized = ((degrees % 360) + 360) % 360
+            require(normalized % 90 == 0) { "Rotación no soportada: $degrees°" }
+            return normalized
+        }
+    }
+
+    /**
+     * x del frame (índice de píxel, continuo) para el punto ([x], [y]) de la imagen lógica
+     */
+    fun frameX(x: Float, y: Float): Float = xx * x + xy * y + tx
+
+    /**
+     * y del frame (índice de píxel, continuo) para el punto ([x], [y]) de la imagen lógica
+     */
+    fun frameY(x: Float, y: Float): Float = yx * x + yy * y + ty
+
+    /**
+     * Recorte central 1/[scale] ampliado de vuelta al mismo tamaño (multi-escala), como
+     * recortar el centro del bitmap y reescalarlo; las cajas se deshacen en [mapToFrame]
+     */
+    fun centerCrop(scale: Float): FrameTransform {
+        if (scale == 1f) return this
+        require(scale > 1f) { "Escala inválida: $scale" }
+        val cropWidth = (width / scale).toInt().coerceIn(1, width)
+        val cropHeight = (height / scale).toInt().coerceIn(1, height)
+        val cropX = (width - cropWidth) / 2
+        val cropY = (height - cropHeight) / 2
+        return resample(width, height, cropX, cropY, cropWidth, cropHeight, zoom * scale)
+    }
+
+    /**
+     * La imagen lógica estirada a [targetWidth]x[targetHeight] (sin conservar el aspecto),
+     * como Bitmap.createScaledBitmap; las cajas normalizadas no cambian
+     */
+    fun resized(targetWidth: Int, targetHeight: Int): FrameTransform {
+        require(targetWidth > 0 && targetHeight > 0) { "Tamaño inválido: ${targetWidth}x$targetHeight" }
+        if (targetWidth == width && targetHeight == height) return this
+        return resample(targetWidth, targetHeight, 0, 0, width, height, zoom)
+    }
+
+    /**
+     * Imagen nueva de [newWidth]x[newHeight] que cubre el rectángulo dado de la actual,
+     * con centros de píxel alineados como en el reescalado bilineal de Bitmap
+     */
+    private fun resample(
+        newWidth: Int,
+        newHeight: Int,
+        left: Int,
+        top: Int,
+        areaWidth: Int,
+        areaHeight: Int,
+        newZoom: Float
+    ): FrameTransform {
+        val scaleX = areaWidth.toFloat() / newWidth
+        val scaleY = areaHeight.toFloat() / newHeight
+        val inner = Affine(scaleX, 0f, left + 0.5f * scaleX - 0.5f, 0f, scaleY, top + 0.5f * scaleY - 0.5f)
+        val composed = Affine(xx, xy, tx, yx, yy, ty).after(inner)
+        return FrameTransform(
+            frameWidth, frameHeight, newWidth, newHeight, sensorRotation, region, cropRotation, newZoom,
+            composed.xx, composed.xy, composed.tx, composed.yx, composed.yy, composed.ty,
+            minX, maxX, minY, maxY
+        )
+    }
+
+    /**
+     * Inversa para las cajas del modelo: lleva las cajas normalizadas (0-1) a la imagen
+     * lógica, desde [from], a coordenadas normalizadas del frame enderezado (deshace el
+     * recorte central, la rotación del recorte y el recorte)
+     */
+    fun mapToFrame(buffer: DetectionBuffer, from: Int) {
+        if (zoom != 1f) buffer.mapFromCenterCrop(from, zoom)
+        if (cropRotation != 0) buffer.rotateBack(from, cropRotation)
+        buffer.mapToRegion(from, region.left, region.top, region.width, region.height)
+    }
+
+    /**
+     * Copia la imagen lógica en [out] (ARGB, [width] enteros por fila) leyendo del frame
+     * [frame] con [frameStride] enteros por fila, con el píxel más cercano. Sin recorte
+     * central ni redimensionado es una permutación exacta de píxeles (p. ej. para
+     * FrameTiler, que necesita la imagen a resolución nativa).
+     *
+     * @return [out]
+     */
+    fun copyTo(frame: IntArray, frameStride: Int, out: IntArray): IntArray {
+        requireFrame(frame, frameStride)
+        require(out.size >= width * height) { "Arreglo de salida demasiado pequeño para ${width}x$height" }
+        var index = 0
+        for (y in 0 until height) {
+            // A lo largo de una fila lógica el punto del frame avanza (xx, yx) por píxel
+            var sourceX = frameX(0f, y.toFloat())
+            var sourceY = frameY(0f, y.toFloat())
+            for (x in 0 until width) {
+                val px = (sourceX + 0.5f).toInt().coerceIn(minX, maxX)
+                val py = (sourceY + 0.5f).toInt().coerceIn(minY, maxY)
+                out[index++] = frame[py * frameStride + px]
+                sourceX += xx
+                sourceY += yx
+            }
+        }
+        return out
+    }
+
+    /**
+     * Verifica que [frame] contenga un frame de [frameWidth]x[frameHeight] con [frameStride]
+     */
+    fun requireFrame(frame: IntArray, frameStride: Int) {
+        require(frameStride >= frameWidth && (frameHeight - 1) * frameStride + frameWidth <= frame.size) {
+            "Frame de ${frame.size} píxeles, se esperaba ${frameWidth}x$frameHeight con stride $frameStride"
+        }
+    }
+
+    override fun toString(): String =
+        "FrameTransform(${frameWidth}x$frameHeight -> ${width}x$height, sensor $sensorRotation°, " +
+            "región $region, recorte $cropRotation°, zoom $zoom)"
+
+    /**
+     * Mapa afín x' = xx * x + xy * y + tx, y' = yx * x + yy * y + ty
+     */
+    private class Affine(
+        val xx: Float,
+        val xy: Float,
+        val tx: Float,
+        val yx: Float,
+        val yy: Float,
+        val ty: Float
+    ) {
+        fun x(x: Float, y: Float) = xx * x + xy * y + tx
+        fun y(x: Float, y: Float) = yx * x + yy * y + ty
+
+        /** Este mapa aplicado después de [inner] */
+        fun after(inner: Affine) = Affine(
+            xx * inner.xx + xy * inner.yx,
+            xx * inner.xy + xy * inner.yy,
+            xx * inner.tx + xy * inner.ty + tx,
+            yx * inner.xx + yy * inner.yx,
+            yx * inner.xy + yy * inner.yy,
+            yx * inner.tx + yy * inner.ty + ty
+        )
+
+        companion object {
+            /**
+             * Índices de una imagen de [width]x[height] rotada [degrees] en sentido horario
+             * -> índices de la imagen sin rotar
+             */
+            fun unrotate(degrees: Int, width: Int, height: Int): Affine = when (degrees) {
+                90 -> Affine(0f, 1f, 0f, -1f, 0f, height - 1f)
+                180 -> Affine(-1f, 0f, width - 1f, 0f, -1f, height - 1f)
+                270 -> Affine(0f, -1f, width - 1f, 1f, 0f, 0f)
+                else -> Affine(1f, 0f, 0f, 0f, 1f, 0f)
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.biowaymexico.utils.vision
+
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Modelo intercambiable en caliente mientras la cámara sigue analizando.
+ *
+ * - Cada inferencia toma el modelo activo con [use]; [swap] cambia el activo de forma
+ *   atómica, así que el frame siguiente ya usa la versión nueva.
+ * - El modelo saliente no se cierra mientras tenga inferencias en curso: su lease se
+ *   devuelve (a ModelRegistry, en la app) cuando termina la última.
+ * - Tras un swap, la versión nueva queda a prueba durante [trialFrames] frames. Si su
+ *   latencia mediana supera a la del modelo anterior en más de [latencyTolerance], o su
+ *   tasa de errores en más de [errorRateTolerance], se revierte sola al anterior (que se
+ *   mantiene caliente durante la prueba) y se notifica con [onVerdict].
+ * - La latencia solo se compara entre frames de la misma cubeta: quien usa el modelo
+ *   puede clasificar cada frame por el trabajo que hizo (p. ej. resolución y número de
+ *   inferencias), así un frame que salió en la primera pasada no se compara con uno de
+ *   nueve pasadas y mosaicos.
+ */
+class HotSwapModel<T : AutoCloseable>(
+    initial: ModelLease<T>,
+    initialVersion: Int,
+    private val trialFrames: Int = DEFAULT_TRIAL_FRAMES,
+    private val latencyTolerance: Float = DEFAULT_LATENCY_TOLERANCE,
+    private val errorRateTolerance: Float = DEFAULT_ERROR_RATE_TOLERANCE
+) : AutoCloseable {
+
+    companion object {
+        private const val TAG = "HotSwapModel"
+        const val DEFAULT_TRIAL_FRAMES = 30
+        const val DEFAULT_LATENCY_TOLERANCE = 0.25f  // +25% de latencia mediana
+        const val DEFAULT_ERROR_RATE_TOLERANCE = 0.05f  // +5 puntos de tasa de error
+        @PublishedApi
+        internal const val ERROR_BUCKET = Int.MIN_VALUE  // El bloque falló: sin resultado
+        private const val STATS_WINDOW = 60
+        // Frames por cubeta, en cada versión, para comparar su latencia
+        private const val MIN_BUCKET_FRAMES = 5
+    }
+
+    /**
+     * Resultado de la prueba de una versión: aceptada (queda activa) o revertida
+     */
+    var onVerdict: ((version: Int, accepted: Boolean) -> Unit)? = null
+
+    // Una versión cargada con sus inferencias en curso y sus estadísticas recientes
+    @PublishedApi
+    internal class Active<T : AutoCloseable>(val lease: ModelLease<T>, val version: Int) {
+        val inFlight = AtomicInteger()
+        val stats = RollingStats(STATS_WINDOW)
+        private val closed = AtomicBoolean(false)
+
+        @Volatile
+        var retired = false
+
+        fun retire() {
+            retired = true
+            if (inFlight.get() == 0) release()
+        }
+
+        fun exit() {
+            if (inFlight.decrementAndGet() == 0 && retired) release()
+        }
+
+        private fun release() {
+            if (closed.compareAndSet(false, true)) {
+                lease.close()
+                VisionLog.d(TAG, "Versión $version drenada y liberada")
+            }
+        }
+    }
+
+    // Latencias (con su cubeta) y errores de los últimos frames de una versión
+    @PublishedApi
+    internal class RollingStats(private val capacity: Int) {
+        private val latencies = FloatArray(capacity)
+        private val buckets = IntArray(capacity)
+        private val errors = BooleanArray(capacity)
+        private var next = 0
+        var count = 0
+            private set
+
+        @Synchronized
+        fun record(latencyMs: Float, bucket: Int, error: Boolean) {
+            latencies[next] = latencyMs
+            buckets[next] = bucket
+            errors[next] = error
+            next = (next + 1) % capacity
+            if (count < capacity) count++
+        }
+
+        /** Frames sin error de cada cubeta */
+        @Synchronized
+        fun bucketCounts(): Map<Int, Int> {
+            val counts = HashMap<Int, Int>()
+            for (i in 0 until count) if (!errors[i]) counts.merge(buckets[i], 1, Int::plus)
+            return counts
+        }
+
+        /** Latencia mediana de los frames sin error de [bucket] */
+        @Synchronized
+        fun medianLatency(bucket: Int): Float {
+            val sorted = (0 until count).filter { !errors[it] && buckets[it] == bucket }
+                .map { latencies[it] }
+                .sorted()
+            return if (sorted.isEmpty()) 0f else sorted[sorted.size / 2]
+        }
+
+        @Synchronized
+        fun errorCount(): Int = (0 until count).count { errors[it] }
+
+        @Synchronized
+        fun errorRate(): Float = if (count == 0) 0f else errorCount().toFloat() / count
+    }
+
+    private val lock = Any()
+
+    @Volatile
+    @PublishedApi
+    internal var active = Active(initial, initialVersion)
+
+    // Versión anterior, caliente mientras la nueva está a prueba
+    private var standby: Active<T>? = null
+
+    /** Versión activa (0 = modelo de assets) */
+    val version: Int get() = active.version
+
+    /** Modelo activo, para leer metadatos. Para inferir usar [use] */
+    val current: T get() = active.lease.value
+
+    /** Hay una versión nueva a prueba (con la anterior lista para revertir) */
+    val inTrial: Boolean get() = synchronized(lock) { standby != null }
+
+    /**
+     * Ejecuta [block] con el modelo activo; el modelo no se libera hasta que termine.
+     * La latencia y los errores del bloque cuentan para la prueba de la versión; la
+     * latencia, en la cubeta que [bucketOf] asigna al resultado.
+     */
+    inline fun <R> use(crossinline bucketOf: (R) -> Int = { 0 }, crossinline block: (T) -> R): R =
+        measure(enter(), bucketOf, block)
+
+    /**
+     * Como [use], pero solo si el modelo activo es [expected] (p. ej. el que preparó la
+     * entrada del frame). Si un swap o una reversión lo cambiaron, no ejecuta [block],
+     * devuelve null y el frame no cuenta ni como frame ni como error de la prueba.
+     */
+    inline fun <R : Any> useIfCurrent(expected: T, crossinline block: (T) -> R): R? {
+        val entry = enter()
+        if (entry.lease.value !== expected) {
+            entry.exit()
+            return null
+        }
+        return measure(entry, { 0 }, block)
+    }
+
+    @PublishedApi
+    internal inline fun <R> measure(entry: Active<T>, crossinline bucketOf: (R) -> Int, crossinline block: (T) -> R): R {
+        val start = System.nanoTime()
+        var bucket = ERROR_BUCKET
+        try {
+            return block(entry.lease.value).also { bucket = bucketOf(it) }
+        } finally {
+            entry.exit()
+            record(entry, (System.nanoTime() - start) / 1_000_000f, bucket)
+        }
+    }
+
+    @PublishedApi
+    internal fun enter(): Active<T> {
+        while (true) {
+            val entry = active
+            entry.inFlight.incrementAndGet()
+            if (!entry.retired) return entry
+            // Se retiró entre la lectura y el incremento: tomar la nueva activa
+            entry.exit()
+        }
+    }
+
+    /**
+     * Activa [lease] como versión [version]. El frame en curso termina con el modelo
+     * anterior; el siguiente ya usa el nuevo. La versión anterior queda en espera hasta
+     * que la nueva pase la prueba.
+     */
+    fun swap(lease: ModelLease<T>, version: Int) {
+        synchronized(lock) {
+            val previous = active
+            if (standby == null) {
+                standby = previous
+            } else {
+                // Ya había una versión a prueba: se descarta y se compara contra la estable
+                previous.retire()
+            }
+            active = Active(lease, version)
+        }
+        VisionLog.d(TAG, "Versión $version activa (a prueba $trialFrames frames)")
+    }
+
+    @PublishedApi
+    internal fun record(entry: Active<T>, latencyMs: Float, bucket: Int) {
+        entry.stats.record(latencyMs, bucket, bucket == ERROR_BUCKET)
+
+        val verdict = synchronized(lock) {
+            val baseline = standby ?: return
+            if (entry !== active) return
+            evaluate(entry, baseline)?.also { accepted ->
+                standby = null
+                if (accepted) {
+                    baseline.retire()
+                } else {
+                    active = baseline
+                    entry.retire()
+                }
+            }
+        } ?: return
+
+        onVerdict?.invoke(entry.version, verdict)
+    }
+
+    /**
+     * true = aceptar, false = revertir, null = seguir a prueba
+     */
+    private fun evaluate(candidate: Active<T>, baseline: Active<T>): Boolean? {
+        val stats = candidate.stats
+        val maxErrorRate = (if (baseline.stats.count > 0) baseline.stats.errorRate() else 0f) + errorRateTolerance
+        val maxErrors = (maxErrorRate * trialFrames).toInt()
+
+        // Demasiados errores: revertir sin esperar al final de la prueba
+        val errors = stats.errorCount()
+        if (errors > maxErrors) {
+            VisionLog.d(TAG, "Versión ${candidate.version} revertida: $errors errores en ${stats.count} frames")
+            return false
+        }
+        if (stats.count < trialFrames) return null
+
+        // Razón de latencias medianas en las cubetas con frames de ambas versiones,
+        // ponderada por los frames de la nueva
+        val baselineCounts = baseline.stats.bucketCounts()
+        var comparable = 0
+        var weightedRatio = 0f
+        for ((bucket, frames) in stats.bucketCounts()) {
+            if (frames < MIN_BUCKET_FRAMES || (baselineCounts[bucket] ?: 0) < MIN_BUCKET_FRAMES) continue
+            val baselineLatency = baseline.stats.medianLatency(bucket)
+            if (baselineLatency <= 0f) continue
+            weightedRatio += stats.medianLatency(bucket) / baselineLatency * frames
+            comparable += frames
+        }
+        if (comparable == 0) {
+            // La anterior no corrió el mismo trabajo: se espera a llenar la ventana y, si
+            // sigue sin haber con qué comparar, se decide solo por errores
+            if (baselineCounts.isNotEmpty() && stats.count < STATS_WINDOW) return null
+            VisionLog.d(TAG, "Versión ${candidate.version} aceptada sin frames comparables, errores %.1f%%"
+                .format(stats.errorRate() * 100))
+            return true
+        }
+
+        val ratio = weightedRatio / comparable
+        if (ratio > 1f + latencyTolerance) {
+            VisionLog.d(TAG, "Versión ${candidate.version} revertida: latencia x%.2f de la anterior en $comparable frames comparables"
+                .format(ratio))
+            return false
+        }
+
+        VisionLog.d(TAG, "Versión ${candidate.version} aceptada: latencia x%.2f de la anterior en $comparable frames comparables, errores %.1f%%"
+            .format(ratio, stats.errorRate() * 100))
+        return true
+    }
+
+    override fun close() {
+        synchronized(lock) {
+            standby?.retire()
+            standby = null
+            active.retire()
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.biowaymexico.utils.vision
+
+import java.nio.ByteBuffer
+
+/**
+ * Runtime que ejecuta un modelo YOLOv8 de una entrada y una salida.
+ *
+ * El pipeline (LetterboxInputEngine, OutputTensorArena, YoloOutputDecoder) solo ve este
+ * contrato, así que el mismo código corre con TFLite en el bote (TfliteBackend, en la
+ * app) o con ONNX Runtime en una estación de trabajo (OnnxBackend, en :benchmarks):
+ *
+ * - Entrada NHWC [batch, alto, ancho, 3] como la escribe LetterboxInputEngine; un
+ *   backend con otro layout (el NCHW de la exportación ONNX) lo convierte por dentro.
+ * - Salida [batch, 4 + clases, anchors] en el tipo de [output], en orden nativo.
+ *
+ * Una instancia no es thread-safe: cada hilo (o slot de InterpreterPool) usa la suya.
+ */
+interface InferenceBackend : AutoCloseable {
+
+    /**
+     * Forma y tipo de un tensor del modelo
+     */
+    class TensorSpec(val shape: IntArray, val quantization: TensorQuantization) {
+
+        val numElements: Int
+            get() = shape.fold(1) { acc, dim -> acc * dim }
+
+        val numBytes: Int
+            get() = numElements * quantization.bytesPerElement
+
+        override fun toString(): String = "${shape.contentToString()} $quantization"
+    }
+
+    /** Nombre para logs y reportes (p. ej. "TFLite", "ONNX Runtime CPU") */
+    val name: String
+
+    val input: TensorSpec
+
+    val output: TensorSpec
+
+    /**
+     * Cambia la dimensión de batch de la entrada; [input] y [output] reflejan la forma nueva.
+     *
+     * @throws IllegalArgumentException si el modelo no admite ese batch
+     */
+    fun resizeBatch(batchSize: Int)
+
+    /**
+     * Ejecuta una inferencia: lee [input] desde el inicio (al menos [TensorSpec.numBytes]
+     * de la entrada) y escribe la salida en [output] desde el inicio. Ambos buffers son
+     * directos y en orden nativo.
+     */
+    fun run(input: ByteBuffer, output: ByteBuffer)
+}
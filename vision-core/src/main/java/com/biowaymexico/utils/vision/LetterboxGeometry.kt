@@ -0,0 +1,74 @@
+package com.biowaymexico.utils.vision
+
+import com.ultralytics.yolo.DetectionBuffer
+
+/**
+ * Geometría de un letterbox: cómo se colocó una imagen de [srcWidth]x[srcHeight]
+ * dentro del tensor cuadrado de [inputSize].
+ *
+ * [rotated] describe el letterbox de la imagen rotada sin volver a muestrearla:
+ * rotar 90/180/270° el tensor ya letterboxeado equivale a letterboxear la imagen rotada.
+ */
+data class LetterboxGeometry(
+    val inputSize: Int,
+    val srcWidth: Int,
+    val srcHeight: Int,
+    val scaleFactor: Float,
+    val xOffset: Float,
+    val yOffset: Float,
+    val scaledWidth: Int,
+    val scaledHeight: Int
+) {
+
+    /**
+     * Agrega a [out] una caja del modelo (centro y tamaño normalizados al tensor) en
+     * coordenadas 0-1 de la imagen original: deshace el letterbox y recorta a la imagen
+     */
+    fun addUnprojected(
+        out: DetectionBuffer,
+        xCenter: Float,
+        yCenter: Float,
+        width: Float,
+        height: Float,
+        score: Float,
+        classIndex: Int
+    ) {
+        val originalWidth = srcWidth.toFloat()
+        val originalHeight = srcHeight.toFloat()
+
+        // Deshacer la normalización del modelo (0-1 a pixeles) y el letterboxing
+        val x1 = (((xCenter - width / 2) * inputSize - xOffset) / scaleFactor).coerceIn(0f, originalWidth)
+        val y1 = (((yCenter - height / 2) * inputSize - yOffset) / scaleFactor).coerceIn(0f, originalHeight)
+        val x2 = (((xCenter + width / 2) * inputSize - xOffset) / scaleFactor).coerceIn(0f, originalWidth)
+        val y2 = (((yCenter + height / 2) * inputSize - yOffset) / scaleFactor).coerceIn(0f, originalHeight)
+
+        out.add(x1 / originalWidth, y1 / originalHeight, x2 / originalWidth, y2 / originalHeight, score, classIndex)
+    }
+
+    /**
+     * Geometría equivalente tras rotar el tensor [degrees] en sentido horario
+     */
+    fun rotated(degrees: Int): LetterboxGeometry = when (degrees) {
+        90 -> copy(
+            srcWidth = srcHeight,
+            srcHeight = srcWidth,
+            xOffset = inputSize - yOffset - scaledHeight,
+            yOffset = xOffset,
+            scaledWidth = scaledHeight,
+            scaledHeight = scaledWidth
+        )
+        180 -> copy(
+            xOffset = inputSize - xOffset - scaledWidth,
+            yOffset = inputSize - yOffset - scaledHeight
+        )
+        270 -> copy(
+            srcWidth = srcHeight,
+            srcHeight = srcWidth,
+            xOffset = yOffset,
+            yOffset = inputSize - xOffset - scaledWidth,
+            scaledWidth = scaledHeight,
+            scaledHeight = scaledWidth
+        )
+        else -> this
+    }
+}
@@ -0,0 +1,390 @@
+package com.biowaymexico.utils.vision
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+
+/**
+ * Motor de entrada para YOLOv8: letterbox + normalización sin bitmaps intermedios.
+ *
+ * Escribe RGB normalizado [0, 1] directamente en un buffer directo reutilizable,
+ * muestreando los píxeles de origen con interpolación bilineal. Todos los buffers
+ * (filas de origen, tablas de muestreo) se reutilizan entre llamadas, por lo que
+ * en estado estable no se reserva memoria por inferencia.
+ *
+ * Con una entrada cuantizada (UINT8/INT8) cada canal se escribe como un byte ya
+ * cuantizado, tomado de una tabla de 256 entradas: sin conversión a float por píxel.
+ *
+ * Los píxeles llegan como ARGB empaquetado en `Int` (Bitmap.getPixels en la app,
+ * BufferedImage.getRGB en la JVM), en un arreglo o fila por fila desde un [RowSource],
+ * o como frame de cámara crudo más una [FrameTransform] (rotaciones y recorte fusionados
+ * en el muestreo).
+ *
+ * NO es thread-safe: se debe usar una instancia por intérprete.
+ */
+class LetterboxInputEngine(
+    val inputSize: Int,
+    target: ByteBuffer? = null,
+    val quantization: TensorQuantization = TensorQuantization.FLOAT32
+) {
+
+    companion object {
+        // Fondo gris (114, 114, 114) como en YOLOv8 original
+        const val PAD_VALUE = 114
+
+        private const val CHANNELS = 3
+        private const val BYTES_PER_FLOAT = 4
+
+        /**
+         * Bytes de una imagen de entrada [inputSize, inputSize, 3] (float32 por defecto)
+         */
+        fun bytesPerImage(inputSize: Int, bytesPerChannel: Int = BYTES_PER_FLOAT): Int =
+            inputSize * inputSize * CHANNELS * bytesPerChannel
+    }
+
+    /**
+     * Filas de una imagen de origen, leídas bajo demanda (p. ej. de un Bitmap)
+     */
+    fun interface RowSource {
+        /** Copia la fila [y] completa en [row] como ARGB empaquetado */
+        fun readRow(y: Int, row: IntArray)
+    }
+
+    /**
+     * Buffer de entrada [1, inputSize, inputSize, 3] (NHWC) listo para [InferenceBackend.run].
+     * Puede ser una porción de un buffer mayor (p. ej. una imagen de un batch).
+     */
+    val buffer: ByteBuffer = target?.order(ByteOrder.nativeOrder())
+        ?: DirectBuffers.allocate(bytesPerImage(inputSize, quantization.bytesPerElement))
+
+    /** Vista float de [buffer] (solo entradas float32); permite escribir tensores ya preparados */
+    val floatView: FloatBuffer = buffer.asFloatBuffer()
+
+    private val quantized = quantization.isQuantized
+
+    init {
+        require(buffer.capacity() >= bytesPerImage(inputSize, quantization.bytesPerElement)) {
+            "Buffer de entrada demasiado pequeño"
+        }
+    }
+
+    // Tabla de normalización: evita una división por canal y píxel
+    private val normalizeTable = FloatArray(256) { it / 255f }
+    private val padNormalized = normalizeTable[PAD_VALUE]
+
+    // Tabla de cuantización (solo entradas UINT8/INT8): valor de canal -> byte cuantizado
+    private val quantizeTable = ByteArray(256) { if (quantized) quantization.quantize(normalizeTable[it]) else 0 }
+    private val padQuantized = quantizeTable[PAD_VALUE]
+
+    // Tablas de muestreo horizontal (índices de origen y peso fraccional por columna destino)
+    private val xIndex0 = IntArray(inputSize)
+    private val xIndex1 = IntArray(inputSize)
+    private val xWeight = FloatArray(inputSize)
+    private var tableSrcWidth = -1
+    private var tableDstWidth = -1
+
+    // Desplazamiento en el frame por columna destino (solo la ruta desde FrameTransform)
+    private val sampleX = FloatArray(inputSize)
+    private val sampleY = FloatArray(inputSize)
+
+    // Fila destino completa [inputSize, 3], escrita en memoria de la JVM y copiada al
+    // buffer en bloque (una escritura por fila en lugar de una por canal)
+    private val rowFloats = FloatArray(if (quantized) 0 else inputSize * CHANNELS)
+    private val rowBytes = ByteArray(if (quantized) inputSize * CHANNELS else 0)
+
+    // Filas de origen reutilizables para la ruta desde RowSource
+    private var rowTop = IntArray(0)
+    private var rowBottom = IntArray(0)
+    private var rowTopIndex = -1
+    private var rowBottomIndex = -1
+
+    // Información del último letterbox, necesaria para deshacer la transformación
+    var scaleFactor = 1f
+        private set
+    var xOffset = 0f
+        private set
+    var yOffset = 0f
+        private set
+    var scaledWidth = 0
+        private set
+    var scaledHeight = 0
+        private set
+    private var lastSrcWidth = 0
+    private var lastSrcHeight = 0
+
+    /**
+     * Geometría del último letterbox procesado
+     */
+    fun geometry(): LetterboxGeometry = LetterboxGeometry(
+        inputSize = inputSize,
+        srcWidth = lastSrcWidth,
+        srcHeight = lastSrcHeight,
+        scaleFactor = scaleFactor,
+        xOffset = xOffset,
+        yOffset = yOffset,
+        scaledWidth = scaledWidth,
+        scaledHeight = scaledHeight
+    )
+
+    /**
+     * Aplica letterbox + normalización a una imagen de [srcWidth]x[srcHeight] leída fila
+     * por fila de [rows] y escribe el resultado en [buffer]. Cada fila se lee una sola vez.
+     */
+    fun process(srcWidth: Int, srcHeight: Int, rows: RowSource): ByteBuffer {
+        if (rowTop.size < srcWidth) {
+            rowTop = IntArray(srcWidth)
+            rowBottom = IntArray(srcWidth)
+        }
+        rowTopIndex = -1
+        rowBottomIndex = -1
+
+        prepareLayout(srcWidth, srcHeight)
+        rewindOutput()
+        writePadRows(yOffset.toInt())
+        fillRowPadding()
+
+        val yRatio = srcHeight.toFloat() / scaledHeight
+        for (dy in 0 until scaledHeight) {
+            val sy = ((dy + 0.5f) * yRatio - 0.5f).coerceIn(0f, (srcHeight - 1).toFloat())
+            val y0 = sy.toInt()
+            val y1 = minOf(y0 + 1, srcHeight - 1)
+            loadRows(rows, y0, y1)
+            writeRow(rowTop, 0, rowBottom, 0, sy - y0)
+        }
+
+        writePadRows(inputSize - scaledHeight - yOffset.toInt())
+        buffer.rewind()
+        return buffer
+    }
+
+    /**
+     * Aplica letterbox + normalización a píxeles ARGB empaquetados en un `IntArray`.
+     * Útil cuando el frame ya fue convertido a un buffer reutilizable (sin Bitmap).
+     */
+    fun process(pixels: IntArray, offset: Int, stride: Int, srcWidth: Int, srcHeight: Int): ByteBuffer {
+        prepareLayout(srcWidth, srcHeight)
+        rewindOutput()
+        writePadRows(yOffset.toInt())
+        fillRowPadding()
+
+        val yRatio = srcHeight.toFloat() / scaledHeight
+        for (dy in 0 until scaledHeight) {
+            val sy = ((dy + 0.5f) * yRatio - 0.5f).coerceIn(0f, (srcHeight - 1).toFloat())
+            val y0 = sy.toInt()
+            val y1 = minOf(y0 + 1, srcHeight - 1)
+            writeRow(pixels, offset + y0 * stride, pixels, offset + y1 * stride, sy - y0)
+        }
+
+        writePadRows(inputSize - scaledHeight - yOffset.toInt())
+        buffer.rewind()
+        return buffer
+    }
+
+    /**
+     * Aplica letterbox + normalización a la imagen lógica de [transform] muestreando
+     * directamente el frame ARGB de cámara [frame] ([frameStride] enteros por fila): la
+     * rotación del sensor, el recorte, la rotación del recorte y el escalado se resuelven
+     * en una sola pasada bilineal, sin bitmaps intermedios.
+     *
+     * La geometría resultante ([geometry]) es la de la imagen lógica; las cajas se llevan
+     * al frame con [FrameTransform.mapToFrame].
+     */
+    fun process(frame: IntArray, frameStride: Int, transform: FrameTransform): ByteBuffer {
+        transform.requireFrame(frame, frameStride)
+        val srcWidth = transform.width
+        val srcHeight = transform.height
+        prepareLayout(srcWidth, srcHeight)
+        rewindOutput()
+        writePadRows(yOffset.toInt())
+
+        // Límites del recorte en el frame: los vecinos del borde no salen de él
+        val minX = transform.minX.toFloat()
+        val maxX = transform.maxX.toFloat()
+        val minY = transform.minY.toFloat()
+        val maxY = transform.maxY.toFloat()
+        val lastX = transform.maxX
+        val lastY = transform.maxY
+
+        // x de la imagen lógica por columna destino, y su aporte a x/y del frame
+        val xRatio = srcWidth.toFloat() / scaledWidth
+        val yRatio = srcHeight.toFloat() / scaledHeight
+        for (dx in 0 until scaledWidth) {
+            val lx = ((dx + 0.5f) * xRatio - 0.5f).coerceIn(0f, (srcWidth - 1).toFloat())
+            sampleX[dx] = transform.frameX(lx, 0f) - transform.frameX(0f, 0f)
+            sampleY[dx] = transform.frameY(lx, 0f) - transform.frameY(0f, 0f)
+        }
+
+        val padLeft = xOffset.toInt()
+        fillRowPadding()
+        for (dy in 0 until scaledHeight) {
+            val ly = ((dy + 0.5f) * yRatio - 0.5f).coerceIn(0f, (srcHeight - 1).toFloat())
+            // Origen de la fila en el frame; cada columna suma su aporte de las tablas
+            val rowX = transform.frameX(0f, ly)
+            val rowY = transform.frameY(0f, ly)
+            var index = padLeft * CHANNELS
+            for (dx in 0 until scaledWidth) {
+                val fx = (rowX + sampleX[dx]).coerceIn(minX, maxX)
+                val fy = (rowY + sampleY[dx]).coerceIn(minY, maxY)
+                val x0 = fx.toInt()
+                val y0 = fy.toInt()
+                val x1 = minOf(x0 + 1, lastX)
+                val top = y0 * frameStride
+                val bottom = minOf(y0 + 1, lastY) * frameStride
+                setPixel(index, frame[top + x0], frame[top + x1], frame[bottom + x0], frame[bottom + x1], fx - x0, fy - y0)
+                index += CHANNELS
+            }
+            flushRow()
+        }
+
+        writePadRows(inputSize - scaledHeight - yOffset.toInt())
+        buffer.rewind()
+        return buffer
+    }
+
+    /**
+     * Calcula escala, padding y tablas de muestreo horizontal para el tamaño de origen.
+     */
+    private fun prepareLayout(srcWidth: Int, srcHeight: Int) {
+        require(srcWidth > 0 && srcHeight > 0) { "Imagen vacía: ${srcWidth}x$srcHeight" }
+
+        // Calcular escala manteniendo aspect ratio
+        val scale = minOf(
+            inputSize.toFloat() / srcWidth,
+            inputSize.toFloat() / srcHeight
+        )
+        val newWidth = (srcWidth * scale).toInt().coerceIn(1, inputSize)
+        val newHeight = (srcHeight * scale).toInt().coerceIn(1, inputSize)
+
+        // Padding entero: el contenido se coloca exactamente donde lo reporta el offset
+        val padLeft = (inputSize - newWidth) / 2
+        val padTop = (inputSize - newHeight) / 2
+
+        // Las tablas solo se recalculan cuando cambia la resolución de origen
+        if (srcWidth != tableSrcWidth || newWidth != tableDstWidth) {
+            val xRatio = srcWidth.toFloat() / newWidth
+            for (dx in 0 until newWidth) {
+                val sx = ((dx + 0.5f) * xRatio - 0.5f).coerceIn(0f, (srcWidth - 1).toFloat())
+                val x0 = sx.toInt()
+                xIndex0[dx] = x0
+                xIndex1[dx] = minOf(x0 + 1, srcWidth - 1)
+                xWeight[dx] = sx - x0
+            }
+            tableSrcWidth = srcWidth
+            tableDstWidth = newWidth
+        }
+
+        lastSrcWidth = srcWidth
+        lastSrcHeight = srcHeight
+        scaleFactor = scale
+        scaledWidth = newWidth
+        scaledHeight = newHeight
+        xOffset = padLeft.toFloat()
+        yOffset = padTop.toFloat()
+    }
+
+    /**
+     * Carga (o reutiliza) las dos filas de origen necesarias para la interpolación vertical.
+     */
+    private fun loadRows(rows: RowSource, y0: Int, y1: Int) {
+        if (y0 != rowTopIndex) {
+            if (y0 == rowBottomIndex) {
+                // Avanzamos una fila: la fila inferior anterior pasa a ser la superior
+                val tmp = rowTop
+                rowTop = rowBottom
+                rowBottom = tmp
+                rowTopIndex = y0
+                rowBottomIndex = -1
+            } else {
+                rows.readRow(y0, rowTop)
+                rowTopIndex = y0
+            }
+        }
+        if (y1 != rowBottomIndex) {
+            rows.readRow(y1, rowBottom)
+            rowBottomIndex = y1
+        }
+    }
+
+    /**
+     * Escribe una fila destino completa (padding izquierdo, contenido, padding derecho);
+     * los márgenes ya están en la fila desde [fillRowPadding].
+     */
+    private fun writeRow(top: IntArray, topOffset: Int, bottom: IntArray, bottomOffset: Int, fy: Float) {
+        var index = xOffset.toInt() * CHANNELS
+        for (dx in 0 until scaledWidth) {
+            setPixel(
+                index,
+                top[topOffset + xIndex0[dx]],
+                top[topOffset + xIndex1[dx]],
+                bottom[bottomOffset + xIndex0[dx]],
+                bottom[bottomOffset + xIndex1[dx]],
+                xWeight[dx],
+                fy
+            )
+            index += CHANNELS
+        }
+        flushRow()
+    }
+
+    /**
+     * Rellena la fila destino con el color de padding; las columnas de contenido se
+     * sobrescriben en cada fila y las de los márgenes quedan como padding
+     */
+    private fun fillRowPadding() {
+        if (quantized) rowBytes.fill(padQuantized) else rowFloats.fill(padNormalized)
+    }
+
+    /**
+     * Interpola un píxel entre cuatro vecinos ARGB en la fila destino, desde [index]
+     */
+    private fun setPixel(index: Int, p00: Int, p01: Int, p10: Int, p11: Int, fx: Float, fy: Float) {
+        val r = lerp2((p00 shr 16) and 0xFF, (p01 shr 16) and 0xFF, (p10 shr 16) and 0xFF, (p11 shr 16) and 0xFF, fx, fy)
+        val g = lerp2((p00 shr 8) and 0xFF, (p01 shr 8) and 0xFF, (p10 shr 8) and 0xFF, (p11 shr 8) and 0xFF, fx, fy)
+        val b = lerp2(p00 and 0xFF, p01 and 0xFF, p10 and 0xFF, p11 and 0xFF, fx, fy)
+
+        if (quantized) {
+            rowBytes[index] = quantizeTable[r]
+            rowBytes[index + 1] = quantizeTable[g]
+            rowBytes[index + 2] = quantizeTable[b]
+        } else {
+            rowFloats[index] = normalizeTable[r]
+            rowFloats[index + 1] = normalizeTable[g]
+            rowFloats[index + 2] = normalizeTable[b]
+        }
+    }
+
+    /**
+     * Copia la fila destino al buffer en bloque
+     */
+    private fun flushRow() {
+        if (quantized) buffer.put(rowBytes) else floatView.put(rowFloats)
+    }
+
+    private fun lerp2(c00: Int, c01: Int, c10: Int, c11: Int, fx: Float, fy: Float): Int {
+        val top = c00 + (c01 - c00) * fx
+        val bottom = c10 + (c11 - c10) * fx
+        return (top + (bottom - top) * fy + 0.5f).toInt().coerceIn(0, 255)
+    }
+
+    private fun writePadRows(rows: Int) {
+        if (rows > 0) writePadPixels(rows * inputSize)
+    }
+
+    private fun writePadPixels(count: Int) {
+        if (quantized) {
+            val pad = padQuantized
+            for (i in 0 until count * CHANNELS) {
+                buffer.put(pad)
+            }
+        } else {
+            val pad = padNormalized
+            for (i in 0 until count * CHANNELS) {
+                floatView.put(pad)
+            }
+        }
+    }
+
+    private fun rewindOutput() {
+        if (quantized) buffer.rewind() else floatView.rewind()
+    }
+}
@@ -0,0 +1,10 @@
+package com.biowaymexico.utils.vision
+
+/**
+ * Referencia a un modelo cargado. [close] devuelve la referencia a quien la prestó (en la
+ * app, ModelRegistry.Lease, que mantiene el modelo caliente un tiempo); el modelo en sí
+ * no se cierra aquí.
+ */
+interface ModelLease<T : AutoCloseable> : AutoCloseable {
+    val value: T
+}
@@ -0,0 +1,62 @@
+package com.biowaymexico.utils.vision
+
+/**
+ * Rectángulo inmutable en coordenadas normalizadas (0-1), sustituto de
+ * android.graphics.RectF en el núcleo de visión. La app lo convierte en el borde con la
+ * cámara y la UI (toRectF / toNormalizedRect en AndroidVision).
+ */
+data class NormalizedRect(
+    val left: Float,
+    val top: Float,
+    val right: Float,
+    val bottom: Float
+) {
+
+    val width: Float get() = right - left
+    val height: Float get() = bottom - top
+
+    /**
+     * Caja agrandada [padding] veces su ancho/alto por cada lado, recortada a 0-1
+     */
+    fun padded(padding: Float): NormalizedRect {
+        val paddingX = width * padding
+        val paddingY = height * padding
+        return NormalizedRect(
+            (left - paddingX).coerceIn(0f, 1f),
+            (top - paddingY).coerceIn(0f, 1f),
+            (right + paddingX).coerceIn(0f, 1f),
+            (bottom + paddingY).coerceIn(0f, 1f)
+        )
+    }
+
+    /**
+     * Promedio móvil hacia [target]: alpha = 0 conserva esta caja, 1 toma [target]
+     */
+    fun smoothedTowards(target: NormalizedRect, alpha: Float): NormalizedRect = NormalizedRect(
+        left + alpha * (target.left - left),
+        top + alpha * (target.top - top),
+        right + alpha * (target.right - right),
+        bottom + alpha * (target.bottom - bottom)
+    )
+
+    /**
+     * Esta caja, relativa a [outer], en las coordenadas absolutas de [outer]
+     * (p. ej. el zoom adaptativo dentro del zoom base)
+     */
+    fun within(outer: NormalizedRect): NormalizedRect = NormalizedRect(
+        outer.left + left * outer.width,
+        outer.top + top * outer.height,
+        outer.left + right * outer.width,
+        outer.top + bottom * outer.height
+    )
+
+    companion object {
+        /**
+         * Región cuadrada centrada de lado [size] (zoom digital 1/size)
+         */
+        fun centered(size: Float): NormalizedRect {
+            val offset = (1.0f - size) / 2.0f
+            return NormalizedRect(offset, offset, offset + size, offset + size)
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.biowaymexico.utils.vision
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Copia el plano de un frame RGBA_8888 de cámara (ImageAnalysis con
+ * OUTPUT_IMAGE_FORMAT_RGBA_8888) a memoria contigua reutilizable, respetando
+ * rowStride y pixelStride:
+ * - [pack]: bytes RGBA sin relleno, lo que espera Bitmap.copyPixelsFromBuffer
+ * - [toArgb]: ARGB empaquetado en `Int`, lo que leen LetterboxInputEngine y FrameTiler
+ *
+ * El plano empieza en la posición actual del buffer, que no se modifica. El relleno al
+ * final de cada fila se salta, y la última fila puede venir sin él (el buffer del plano
+ * termina en el último píxel).
+ *
+ * NO es thread-safe: el buffer de [pack] se reutiliza entre frames.
+ */
+class RgbaPlaneConverter {
+
+    companion object {
+        const val BYTES_PER_PIXEL = 4
+
+        /** true si el plano ya es RGBA contiguo (sin relleno) y se puede copiar tal cual */
+        fun isPacked(width: Int, rowStride: Int, pixelStride: Int): Boolean =
+            pixelStride == BYTES_PER_PIXEL && rowStride == width * BYTES_PER_PIXEL
+
+        /** Bytes que debe tener el plano desde su posición: sin relleno tras la última fila */
+        fun requiredBytes(width: Int, height: Int, rowStride: Int, pixelStride: Int): Int =
+            (height - 1) * rowStride + (width - 1) * pixelStride + BYTES_PER_PIXEL
+    }
+
+    private var packed: ByteBuffer = ByteBuffer.allocateDirect(0)
+
+    /**
+     * RGBA contiguo [height, width, 4] en un buffer directo reutilizado (posición 0,
+     * límite en el último byte); válido hasta la siguiente llamada
+     */
+    fun pack(plane: ByteBuffer, width: Int, height: Int, rowStride: Int, pixelStride: Int): ByteBuffer {
+        checkPlane(plane, width, height, rowStride, pixelStride)
+        val rowBytes = width * BYTES_PER_PIXEL
+        val bytes = rowBytes * height
+        if (packed.capacity() < bytes) packed = DirectBuffers.allocate(bytes)
+        val target = packed
+        target.clear()
+
+        val base = plane.position()
+        if (pixelStride == BYTES_PER_PIXEL) {
+            // Filas contiguas: una copia en bloque por fila (o una sola si no hay relleno)
+            val source = plane.duplicate()
+            if (rowStride == rowBytes) {
+                source.limit(base + bytes)
+                target.put(source)
+            } else {
+                for (y in 0 until height) {
+                    val start = base + y * rowStride
+                    source.limit(start + rowBytes).position(start)
+                    target.put(source)
+                }
+            }
+        } else {
+            // Píxeles intercalados: se copian de a uno (mismo orden de bytes en ambos lados)
+            target.order(plane.order())
+            for (y in 0 until height) {
+                var index = base + y * rowStride
+                for (x in 0 until width) {
+                    target.putInt(plane.getInt(index))
+                    index += pixelStride
+                }
+            }
+        }
+        target.flip()
+        return target
+    }
+
+    /**
+     * ARGB empaquetado en [out] desde [offset], con [outStride] enteros por fila
+     *
+     * @return [out]
+     */
+    fun toArgb(
+        plane: ByteBuffer,
+        width: Int,
+        height: Int,
+        rowStride: Int,
+        pixelStride: Int,
+        out: IntArray,
+        offset: Int = 0,
+        outStride: Int = width
+    ): IntArray {
+        checkPlane(plane, width, height, rowStride, pixelStride)
+        require(outStride >= width && offset >= 0 && offset + (height - 1) * outStride + width <= out.size) {
+            "Arreglo de salida demasiado pequeño para ${width}x$height"
+        }
+
+        // Con orden big endian cada píxel se lee como R, G, B, A de mayor a menor byte
+        val base = plane.position()
+        if (pixelStride == BYTES_PER_PIXEL && rowStride % BYTES_PER_PIXEL == 0) {
+            // Filas contiguas: lectura en bloque por fila y rotación RGBA -> ARGB en sitio
+            val pixels = plane.duplicate().apply { position(base) }.slice().order(ByteOrder.BIG_ENDIAN).asIntBuffer()
+            val intsPerRow = rowStride / BYTES_PER_PIXEL
+            for (y in 0 until height) {
+                val start = offset + y * outStride
+                pixels.position(y * intsPerRow)
+                pixels.get(out, start, width)
+                for (i in start until start + width) {
+                    val rgba = out[i]
+                    out[i] = (rgba ushr 8) or (rgba shl 24)
+                }
+            }
+            return out
+        }
+
+        val source = if (plane.order() == ByteOrder.BIG_ENDIAN) plane else plane.duplicate().order(ByteOrder.BIG_ENDIAN)
+        for (y in 0 until height) {
+            var index = base + y * rowStride
+            var target = offset + y * outStride
+            for (x in 0 until width) {
+                val rgba = source.getInt(index)
+                out[target++] = (rgba ushr 8) or (rgba shl 24)
+                index += pixelStride
+            }
+        }
+        return out
+    }
+
+    private fun checkPlane(plane: ByteBuffer, width: Int, height: Int, rowStride: Int, pixelStride: Int) {
+        require(width > 0 && height > 0) { "Tamaño inválido: ${width}x$height" }
+        require(pixelStride >= BYTES_PER_PIXEL && rowStride >= (width - 1) * pixelStride + BYTES_PER_PIXEL) {
+            "Strides inválidos para RGBA_8888: rowStride $rowStride, pixelStride $pixelStride"
+        }
+        val required = requiredBytes(width, height, rowStride, pixelStride)
+        require(plane.remaining() >= required) {
+            "Plano de ${plane.remaining()} bytes, se esperaban al menos $required"
+        }
+    }
+}
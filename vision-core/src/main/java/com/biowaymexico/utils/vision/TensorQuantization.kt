@@ -0,0 +1,44 @@
+package com.biowaymexico.utils.vision
+
+import com.biowaymexico.utils.vision.TensorRecording.ElementType
+import kotlin.math.roundToInt
+
+/**
+ * Tipo de dato y parámetros de cuantización de un tensor de entrada o salida.
+ *
+ * Los modelos YOLO cuantizados por completo (INT8/UINT8) reciben píxeles cuantizados y
+ * producen salidas cuantizadas: valor real = (q - zeroPoint) * scale.
+ *
+ * No depende del runtime: cada [InferenceBackend] traduce sus tipos (p. ej. TfliteBackend
+ * con `TensorQuantization.of(tensor)`).
+ */
+data class TensorQuantization(
+    val dataType: ElementType,
+    val scale: Float,
+    val zeroPoint: Int
+) {
+
+    companion object {
+        val FLOAT32 = TensorQuantization(ElementType.FLOAT32, 1f, 0)
+    }
+
+    val isQuantized: Boolean
+        get() = dataType != ElementType.FLOAT32
+
+    val isSigned: Boolean
+        get() = dataType == ElementType.INT8
+
+    val bytesPerElement: Int
+        get() = dataType.bytesPerElement
+
+    /**
+     * Cuantiza un valor real al rango del tipo (saturando)
+     */
+    fun quantize(value: Float): Byte {
+        val q = (value / scale).roundToInt() + zeroPoint
+        return if (isSigned) q.coerceIn(-128, 127).toByte() else q.coerceIn(0, 255).toByte()
+    }
+
+    override fun toString(): String =
+        if (isQuantized) "$dataType(scale=$scale, zeroPoint=$zeroPoint)" else dataType.toString()
+}
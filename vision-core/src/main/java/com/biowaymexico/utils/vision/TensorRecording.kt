@@ -0,0 +1,353 @@
+package com.biowaymexico.utils.vision
+
+import com.ultralytics.yolo.DetectionBuffer
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.zip.GZIPInputStream
+
+/**
+ * Grabación de tensores de salida crudos (archivos `.bwr`), escrita por [TensorRecorder]
+ * en builds debug y leída por la herramienta de replay de :benchmarks.
+ *
+ * Cada frame guarda las salidas del modelo tal como las produjo el intérprete (float32 o
+ * UINT8/INT8 con su cuantización), la geometría de preprocesado de cada pasada (escala,
+ * offsets de letterbox, rotación, escala de zoom, mosaico), la región del frame (ROI o
+ * zoom), las etapas de la cascada y las detecciones finales que vio la app. Con eso el
+ * post-procesado se puede repetir sin el modelo y comparar bit a bit.
+ *
+ * Formato (gzip; enteros y flotantes en big-endian de DataOutputStream, los datos de los
+ * tensores en little-endian, igual que en el dispositivo):
+ *
+ *   cabecera: int magic "BWR1", int versión, byte fuente, long creado (ms), UTF dispositivo,
+ *             int n + n x UTF etiquetas, int n + n x (UTF clave, float valor) parámetros
+ *   frame:    byte 1, int id, long timestamp (ms), int ancho, alto de la imagen, int ancho,
+ *             alto del frame completo, int rotación, región?, float ms de inferencia,
+ *             int n + n x int etapas (pasadas acumuladas), byte salida temprana,
+ *             int mosaicos, int n + n x pasada, int n + n x detección final
+ *   pasada:   int índice, int rotación, float escala, float umbral, geometría?,
+ *             int mosaico (-1 = ninguno), región?, tensor
+ *   tensor:   byte tipo, float escala, int zeroPoint, int rango + dims, int bytes + datos
+ *   región?:  byte presente + 4 float (left, top, width, height normalizados)
+ *
+ * Un archivo cortado (la app se cerró a mitad de frame) se lee hasta el último frame completo.
+ */
+object TensorRecording {
+
+    const val MAGIC = 0x42575231  // "BWR1"
+    const val VERSION = 1
+    internal const val FRAME_MARKER: Int = 1
+
+    /** Quién grabó: WasteDetector (una salida por frame) o WasteClassifierYOLO (TTA) */
+    enum class Source { DETECTOR, CLASSIFIER }
+
+    enum class ElementType(val bytesPerElement: Int) { FLOAT32(4), UINT8(1), INT8(1) }
+
+    /** Región normalizada (0-1) */
+    data class Region(val left: Float, val top: Float, val width: Float, val height: Float)
+
+    class Header(
+        val source: Source,
+        val createdAtMillis: Long,
+        val device: String,
+        val labels: List<String>,
+        val params: Map<String, Float>
+    ) {
+        fun param(key: String, default: Float): Float = params[key] ?: default
+    }
+
+    /**
+     * Tensor de salida crudo de una imagen, en el layout del modelo ([1, F, A])
+     */
+    class Tensor(
+        val type: ElementType,
+        val scale: Float,
+        val zeroPoint: Int,
+        val shape: IntArray,
+        val data: ByteArray
+    ) {
+        val isQuantized: Boolean get() = type != ElementType.FLOAT32
+
+        /** Datos como buffer para YoloOutputDecoder (decode o decodeQuantized) */
+        fun buffer(): ByteBuffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN)
+
+        companion object {
+            /**
+             * Copia la imagen [imageIndex] de una salida del intérprete (buffer en orden nativo)
+             */
+            fun copyOf(
+                output: ByteBuffer,
+                imageIndex: Int,
+                shape: IntArray,
+                type: ElementType,
+                scale: Float,
+                zeroPoint: Int
+            ): Tensor {
+                val elements = shape.drop(1).fold(1) { acc, dim -> acc * dim }
+                val bytes = ByteArray(elements * type.bytesPerElement)
+                val view = output.duplicate().order(output.order())
+                view.position(imageIndex * bytes.size)
+                if (type == ElementType.FLOAT32 && view.order() != ByteOrder.LITTLE_ENDIAN) {
+                    // Solo en plataformas big-endian: el archivo siempre guarda little-endian
+                    val source = view.asFloatBuffer()
+                    val target = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer()
+                    repeat(elements) { target.put(source.get()) }
+                } else {
+                    view.get(bytes)
+                }
+                return Tensor(type, scale, zeroPoint, intArrayOf(1) + shape.drop(1), bytes)
+            }
+
+            /**
+             * Copia una salida float [features][anchors] (Interpreter.run con float[1][F][A])
+             */
+            fun copyOf(rows: Array<FloatArray>): Tensor {
+                val cols = rows[0].size
+                val bytes = ByteArray(rows.size * cols * 4)
+                val floats = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer()
+                for (row in rows) floats.put(row)
+                return Tensor(ElementType.FLOAT32, 1f, 0, intArrayOf(1, rows.size, cols), bytes)
+            }
+        }
+    }
+
+    /**
+     * Una inferencia del frame: vista de TTA, mosaico o la única salida del detector
+     *
+     * @param index     Posición de la pasada en el frame (identifica la pasada para WBF)
+     * @param threshold Umbral tal como se pasó al decodificador
+     * @param geometry  Letterbox de la vista (ya rotada); null si la entrada se estiró sin letterbox
+     * @param tileIndex Índice del mosaico en la rejilla, -1 si no es un mosaico
+     */
+    class Pass(
+        val index: Int,
+        val rotation: Int,
+        val scale: Float,
+        val threshold: Float,
+        val geometry: LetterboxGeometry?,
+        val tileIndex: Int,
+        val tileRegion: Region?,
+        val tensor: Tensor
+    )
+
+    class Frame(
+        val id: Int,
+        val timestampMillis: Long,
+        val imageWidth: Int,
+        val imageHeight: Int,
+        val frameWidth: Int,
+        val frameHeight: Int,
+        val rotation: Int,
+        val region: Region?,
+        val inferenceMs: Float,
+        val stages: IntArray,
+        val earlyExit: Boolean,
+        val tileCount: Int,
+        val passes: List<Pass>,
+        val result: DetectionBuffer
+    )
+
+    /**
+     * Lector secuencial de un archivo `.bwr`
+     */
+    class Reader(file: File) : Closeable {
+
+        private val input = DataInputStream(GZIPInputStream(file.inputStream().buffered()))
+
+        val header: Header = readHeader(input)
+
+        /**
+         * Siguiente frame completo, o null al final del archivo (o de la parte escrita)
+         */
+        fun next(): Frame? = try {
+            if (input.read() != FRAME_MARKER) null else readFrame(input)
+        } catch (e: EOFException) {
+            null
+        }
+
+        override fun close() = input.close()
+    }
+
+    fun readAll(file: File): Pair<Header, List<Frame>> = Reader(file).use { reader ->
+        reader.header to generateSequence { reader.next() }.toList()
+    }
+
+    // ========================================================================
+    // Escritura y lectura de los bloques
+    // ========================================================================
+
+    internal fun writeHeader(out: DataOutputStream, header: Header) {
+        out.writeInt(MAGIC)
+        out.writeInt(VERSION)
+        out.writeByte(header.source.ordinal)
+        out.writeLong(header.createdAtMillis)
+        out.writeUTF(header.device)
+        out.writeInt(header.labels.size)
+        header.labels.forEach { out.writeUTF(it) }
+        out.writeInt(header.params.size)
+        header.params.forEach { (key, value) ->
+            out.writeUTF(key)
+            out.writeFloat(value)
+        }
+    }
+
+    private fun readHeader(input: DataInputStream): Header {
+        require(input.readInt() == MAGIC) { "No es una grabación BWR1" }
+        val version = input.readInt()
+        require(version == VERSION) { "Versión de grabación no soportada: $version" }
+        val source = Source.values()[input.readByte().toInt()]
+        val createdAt = input.readLong()
+        val device = input.readUTF()
+        val labels = List(input.readInt()) { input.readUTF() }
+        val params = (0 until input.readInt()).associate { input.readUTF() to input.readFloat() }
+        return Header(source, createdAt, device, labels, params)
+    }
+
+    internal fun writeFrame(out: DataOutputStream, frame: Frame) {
+        out.writeByte(FRAME_MARKER)
+        out.writeInt(frame.id)
+        out.writeLong(frame.timestampMillis)
+        out.writeInt(frame.imageWidth)
+        out.writeInt(frame.imageHeight)
+        out.writeInt(frame.frameWidth)
+        out.writeInt(frame.frameHeight)
+        out.writeInt(frame.rotation)
+        writeRegion(out, frame.region)
+        out.writeFloat(frame.inferenceMs)
+        out.writeInt(frame.stages.size)
+        frame.stages.forEach { out.writeInt(it) }
+        out.writeBoolean(frame.earlyExit)
+        out.writeInt(frame.tileCount)
+
+        out.writeInt(frame.passes.size)
+        for (pass in frame.passes) {
+            out.writeInt(pass.index)
+            out.writeInt(pass.rotation)
+            out.writeFloat(pass.scale)
+            out.writeFloat(pass.threshold)
+            writeGeometry(out, pass.geometry)
+            out.writeInt(pass.tileIndex)
+            writeRegion(out, pass.tileRegion)
+            writeTensor(out, pass.tensor)
+        }
+
+        val result = frame.result
+        out.writeInt(result.size())
+        for (i in 0 until result.size()) {
+            out.writeFloat(result.getLeft(i))
+            out.writeFloat(result.getTop(i))
+            out.writeFloat(result.getRight(i))
+            out.writeFloat(result.getBottom(i))
+            out.writeFloat(result.getScore(i))
+            out.writeInt(result.getClassIndex(i))
+            out.writeInt(result.getAgreement(i))
+        }
+    }
+
+    private fun readFrame(input: DataInputStream): Frame {
+        val id = input.readInt()
+        val timestamp = input.readLong()
+        val imageWidth = input.readInt()
+        val imageHeight = input.readInt()
+        val frameWidth = input.readInt()
+        val frameHeight = input.readInt()
+        val rotation = input.readInt()
+        val region = readRegion(input)
+        val inferenceMs = input.readFloat()
+        val stages = IntArray(input.readInt()) { input.readInt() }
+        val earlyExit = input.readBoolean()
+        val tileCount = input.readInt()
+
+        val passes = List(input.readInt()) {
+            Pass(
+                index = input.readInt(),
+                rotation = input.readInt(),
+                scale = input.readFloat(),
+                threshold = input.readFloat(),
+                geometry = readGeometry(input),
+                tileIndex = input.readInt(),
+                tileRegion = readRegion(input),
+                tensor = readTensor(input)
+            )
+        }
+
+        val count = input.readInt()
+        val result = DetectionBuffer(count)
+        repeat(count) {
+            val left = input.readFloat()
+            val top = input.readFloat()
+            val right = input.readFloat()
+            val bottom = input.readFloat()
+            val score = input.readFloat()
+            val classIndex = input.readInt()
+            val agreement = input.readInt()
+            result.add(left, top, right, bottom, score, classIndex, 0, agreement)
+        }
+
+        return Frame(id, timestamp, imageWidth, imageHeight, frameWidth, frameHeight, rotation, region,
+            inferenceMs, stages, earlyExit, tileCount, passes, result)
+    }
+
+    private fun writeRegion(out: DataOutputStream, region: Region?) {
+        out.writeBoolean(region != null)
+        if (region == null) return
+        out.writeFloat(region.left)
+        out.writeFloat(region.top)
+        out.writeFloat(region.width)
+        out.writeFloat(region.height)
+    }
+
+    private fun readRegion(input: DataInputStream): Region? =
+        if (!input.readBoolean()) null
+        else Region(input.readFloat(), input.readFloat(), input.readFloat(), input.readFloat())
+
+    private fun writeGeometry(out: DataOutputStream, geometry: LetterboxGeometry?) {
+        out.writeBoolean(geometry != null)
+        if (geometry == null) return
+        out.writeInt(geometry.inputSize)
+        out.writeInt(geometry.srcWidth)
+        out.writeInt(geometry.srcHeight)
+        out.writeFloat(geometry.scaleFactor)
+        out.writeFloat(geometry.xOffset)
+        out.writeFloat(geometry.yOffset)
+        out.writeInt(geometry.scaledWidth)
+        out.writeInt(geometry.scaledHeight)
+    }
+
+    private fun readGeometry(input: DataInputStream): LetterboxGeometry? =
+        if (!input.readBoolean()) null
+        else LetterboxGeometry(
+            inputSize = input.readInt(),
+            srcWidth = input.readInt(),
+            srcHeight = input.readInt(),
+            scaleFactor = input.readFloat(),
+            xOffset = input.readFloat(),
+            yOffset = input.readFloat(),
+            scaledWidth = input.readInt(),
+            scaledHeight = input.readInt()
+        )
+
+    private fun writeTensor(out: DataOutputStream, tensor: Tensor) {
+        out.writeByte(tensor.type.ordinal)
+        out.writeFloat(tensor.scale)
+        out.writeInt(tensor.zeroPoint)
+        out.writeInt(tensor.shape.size)
+        tensor.shape.forEach { out.writeInt(it) }
+        out.writeInt(tensor.data.size)
+        out.write(tensor.data)
+    }
+
+    private fun readTensor(input: DataInputStream): Tensor {
+        val type = ElementType.values()[input.readByte().toInt()]
+        val scale = input.readFloat()
+        val zeroPoint = input.readInt()
+        val shape = IntArray(input.readInt()) { input.readInt() }
+        val data = ByteArray(input.readInt())
+        input.readFully(data)
+        return Tensor(type, scale, zeroPoint, shape, data)
+    }
+}
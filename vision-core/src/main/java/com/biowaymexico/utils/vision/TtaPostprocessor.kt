@@ -0,0 +1,122 @@
+package com.biowaymexico.utils.vision
+
+import com.ultralytics.yolo.BoxFusion
+import com.ultralytics.yolo.DetectionBuffer
+import com.ultralytics.yolo.NmsEngine
+import com.ultralytics.yolo.YoloOutputDecoder
+
+/**
+ * Post-procesado del TTA de WasteClassifierYOLO sin dependencias de Android ni del
+ * intérprete: candidatos decodificados -> espacio de la imagen original -> fusión de
+ * pasadas (NMS global o WBF) -> criterio de salida de la cascada.
+ *
+ * Lo usan el clasificador en el dispositivo y el replay de grabaciones en la JVM, así
+ * que un frame grabado se reprocesa con exactamente el mismo código.
+ * No es thread-safe: [merge] y [isConfidentEnough] se llaman bajo el frameMutex del
+ * clasificador; [parse] y [toOriginal] solo tocan el buffer de su pasada.
+ */
+class TtaPostprocessor(initialCapacity: Int = NMS_INITIAL_CAPACITY) {
+
+    companion object {
+        // NMS global de TTA: IoU más bajo para fusionar rotaciones y escalas, y fusión por
+        // cercanía de centros aunque la clase difiera
+        const val TTA_IOU_THRESHOLD = 0.3f
+        const val TTA_CENTER_DISTANCE = 0.1f
+        const val MAX_DETECTIONS = 100
+        private const val NMS_INITIAL_CAPACITY = 2048
+    }
+
+    // NMS y WBF sobre arreglos primitivos
+    private val nms = NmsEngine(initialCapacity)
+    private val fusion = BoxFusion(initialCapacity)
+
+    /**
+     * Agrega a [out] los [count] candidatos del decodificador, normalizados 0-1 a la imagen
+     * de entrada de la vista ([geometry] ya rotada). Se descartan clases sin etiqueta.
+     */
+    fun parse(decoder: YoloOutputDecoder, count: Int, geometry: LetterboxGeometry, numLabels: Int, out: DetectionBuffer) {
+        for (i in 0 until count) {
+            val maxClass = decoder.getClassIndex(i)
+            if (maxClass >= numLabels) continue
+
+            // Convertir de coordenadas del modelo a coordenadas originales normalizadas (0-1)
+            geometry.addUnprojected(
+                out,
+                decoder.getCenterX(i), decoder.getCenterY(i), decoder.getWidth(i), decoder.getHeight(i),
+                decoder.getScore(i), maxClass
+            )
+        }
+    }
+
+    /**
+     * Transforma en el buffer las detecciones de una vista aumentada de vuelta al espacio original
+     */
+    fun toOriginal(detections: DetectionBuffer, rotation: Int, scale: Float) {
+        detections.rotateBack(0, rotation)
+        // Si usamos escala, transformar coordenadas al espacio original
+        if (scale != 1.0f) {
+            detections.mapFromCenterCrop(0, scale)
+        }
+    }
+
+    /**
+     * Combina en [frame] las detecciones de las primeras [passCount] pasadas de [passes]:
+     * - NMS: se queda la caja más confiable de cada grupo de duplicados (el resto se descarta)
+     * - WBF ([weighted]): promedia coordenadas y confianza de las cajas que coinciden,
+     *   ponderadas por confianza, y descuenta las que pocas pasadas vieron (ver BoxFusion)
+     */
+    fun merge(passes: Array<DetectionBuffer>, passCount: Int, weighted: Boolean, frame: DetectionBuffer) {
+        frame.clear()
+        for (pass in 0 until passCount) frame.addAll(passes[pass], pass)
+
+        if (weighted) weightedBoxFusion(frame, passCount) else nonMaxSuppressionGlobal(frame)
+    }
+
+    /**
+     * Criterio de salida de la cascada: la mejor detección es confiable (o, con WBF,
+     * [agreementPasses] pasadas coinciden en ella con confianza >= [agreementConfidence])
+     * y supera por [margin] a la mejor detección de otra clase
+     *
+     * @param agreementPasses 0 = sin regla de coincidencia (NMS)
+     */
+    fun isConfidentEnough(
+        detections: DetectionBuffer,
+        confidenceThreshold: Float,
+        margin: Float,
+        agreementPasses: Int,
+        agreementConfidence: Float
+    ): Boolean {
+        val top = detections.bestIndex()
+        if (top < 0) return false
+        val confidence = detections.getScore(top)
+        val agreed = agreementPasses > 0 &&
+            detections.getAgreement(top) >= agreementPasses &&
+            confidence >= agreementConfidence
+        if (confidence < confidenceThreshold && !agreed) return false
+        val runnerUp = detections.bestScoreExcludingClass(detections.getClassIndex(top))
+        return confidence - runnerUp >= margin
+    }
+
+    /**
+     * NMS global que considera detecciones de todas las rotaciones
+     * Más agresivo para fusionar detecciones similares: misma clase con IoU > 0.3, o
+     * centros a menos de 0.1 (cualquier clase) frente a una detección más confiable
+     */
+    private fun nonMaxSuppressionGlobal(detections: DetectionBuffer) {
+        detections.suppress(nms, TTA_IOU_THRESHOLD, true, TTA_CENTER_DISTANCE, MAX_DETECTIONS)
+    }
+
+    /**
+     * Weighted Box Fusion entre pasadas: las cajas de la misma clase con IoU > 0.3 se
+     * promedian ponderadas por confianza, y la confianza fusionada se escala por la
+     * fracción de pasadas que coinciden. Después se aplica la misma regla de centros
+     * que el NMS global para unir el mismo objeto visto con distintas clases.
+     * Las escalas ampliadas solo ven el centro del frame, así que un objeto en la
+     * periferia cuenta con menos pasadas a favor.
+     */
+    private fun weightedBoxFusion(detections: DetectionBuffer, passCount: Int) {
+        detections.fuse(fusion, TTA_IOU_THRESHOLD, passCount, MAX_DETECTIONS)
+        // Solo la regla de centros: la misma clase ya quedó fusionada por IoU
+        detections.suppress(nms, 1f, true, TTA_CENTER_DISTANCE, MAX_DETECTIONS)
+    }
+}
@@ -0,0 +1,30 @@
+package com.biowaymexico.utils.vision
+
+/**
+ * Log del núcleo de visión sin depender de android.util.Log.
+ *
+ * Por defecto descarta los mensajes (JVM, benchmarks, pruebas); la app instala un
+ * [Sink] que escribe en logcat al arrancar (ver AndroidVision.install). Los mensajes los
+ * arma quien llama, igual que con Log.d / Log.e.
+ */
+object VisionLog {
+
+    fun interface Sink {
+        fun debug(tag: String, message: String)
+
+        /** Error con su excepción; por defecto, como debug con la traza */
+        fun error(tag: String, message: String, throwable: Throwable?) =
+            debug(tag, if (throwable == null) message else "$message\n${throwable.stackTraceToString()}")
+    }
+
+    @Volatile
+    var sink: Sink = Sink { _, _ -> }
+
+    fun d(tag: String, message: String) {
+        sink.debug(tag, message)
+    }
+
+    fun e(tag: String, message: String, throwable: Throwable? = null) {
+        sink.error(tag, message, throwable)
+    }
+}
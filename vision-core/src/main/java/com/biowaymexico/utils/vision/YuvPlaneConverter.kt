@@ -0,0 +1,134 @@
+package com.biowaymexico.utils.vision
+
+import java.nio.ByteBuffer
+import kotlin.math.roundToInt
+
+/**
+ * Conversión YUV_420_888 -> ARGB empaquetado en `Int` para los analizadores de cámara que
+ * reciben el formato por defecto de ImageAnalysis, sin pasar por NV21 + JPEG.
+ *
+ * Respeta rowStride y pixelStride de cada plano, así que sirve igual para buffers I420
+ * (crominancia planar, pixelStride 1) y NV12/NV21 (crominancia intercalada, pixelStride 2),
+ * con relleno por fila y con la última fila sin relleno. Usa BT.601 de rango completo
+ * (JFIF), la misma matriz que aplicaba YuvImage.compressToJpeg, con tablas enteras por
+ * canal en lugar de aritmética float por píxel.
+ *
+ * Las filas de los planos se copian a arreglos reutilizados; en estado estable no se
+ * reserva memoria por frame (salvo las vistas de los buffers). NO es thread-safe.
+ */
+class YuvPlaneConverter {
+
+    /**
+     * Un plano del frame: su buffer (desde la posición actual, que no se modifica) y strides
+     */
+    class Plane(val buffer: ByteBuffer, val rowStride: Int, val pixelStride: Int)
+
+    private companion object {
+        // Contribución de cada valor de crominancia (0-255), redondeada
+        val RED_FROM_V = IntArray(256) { (1.402f * (it - 128)).roundToInt() }
+        val GREEN_FROM_U = IntArray(256) { (-0.344136f * (it - 128)).roundToInt() }
+        val GREEN_FROM_V = IntArray(256) { (-0.714136f * (it - 128)).roundToInt() }
+        val BLUE_FROM_U = IntArray(256) { (1.772f * (it - 128)).roundToInt() }
+
+        // Saturación a 0-255 por tabla: índice = valor + CLAMP_OFFSET
+        const val CLAMP_OFFSET = 512
+        val CLAMP = IntArray(CLAMP_OFFSET * 2 + 256) { (it - CLAMP_OFFSET).coerceIn(0, 255) }
+
+        const val OPAQUE = 0xFF shl 24
+    }
+
+    private var yRow = ByteArray(0)
+    private var uRow = ByteArray(0)
+    private var vRow = ByteArray(0)
+
+    /**
+     * Convierte el frame [width]x[height] a ARGB opaco en [out] desde [offset], con
+     * [outStride] enteros por fila
+     *
+     * @return [out]
+     */
+    fun toArgb(
+        y: Plane,
+        u: Plane,
+        v: Plane,
+        width: Int,
+        height: Int,
+        out: IntArray,
+        offset: Int = 0,
+        outStride: Int = width
+    ): IntArray {
+        require(width > 0 && height > 0) { "Tamaño inválido: ${width}x$height" }
+        require(outStride >= width && offset >= 0 && offset + (height - 1) * outStride + width <= out.size) {
+            "Arreglo de salida demasiado pequeño para ${width}x$height"
+        }
+        val chromaWidth = (width + 1) / 2
+        val chromaHeight = (height + 1) / 2
+        val yBytes = rowBytes(y, width, height, "Y")
+        val uBytes = rowBytes(u, chromaWidth, chromaHeight, "U")
+        val vBytes = rowBytes(v, chromaWidth, chromaHeight, "V")
+        if (yRow.size < yBytes) yRow = ByteArray(yBytes)
+        if (uRow.size < uBytes) uRow = ByteArray(uBytes)
+        if (vRow.size < vBytes) vRow = ByteArray(vBytes)
+
+        val ySource = y.buffer.duplicate()
+        val uSource = u.buffer.duplicate()
+        val vSource = v.buffer.duplicate()
+        val yBase = y.buffer.position()
+        val uBase = u.buffer.position()
+        val vBase = v.buffer.position()
+        val yStep = y.pixelStride
+        val uStep = u.pixelStride
+        val vStep = v.pixelStride
+
+        for (row in 0 until height) {
+            ySource.position(yBase + row * y.rowStride)
+            ySource.get(yRow, 0, yBytes)
+            // Cada fila de crominancia cubre dos filas de luminancia
+            if (row and 1 == 0) {
+                val chromaRow = row shr 1
+                uSource.position(uBase + chromaRow * u.rowStride)
+                uSource.get(uRow, 0, uBytes)
+                vSource.position(vBase + chromaRow * v.rowStride)
+                vSource.get(vRow, 0, vBytes)
+            }
+
+            // Cada muestra de crominancia cubre dos píxeles: sus contribuciones se calculan una vez
+            val rowStart = offset + row * outStride
+            for (chroma in 0 until chromaWidth) {
+                val cb = uRow[chroma * uStep].toInt() and 0xFF
+                val cr = vRow[chroma * vStep].toInt() and 0xFF
+                val redOffset = RED_FROM_V[cr] + CLAMP_OFFSET
+                val greenOffset = GREEN_FROM_U[cb] + GREEN_FROM_V[cr] + CLAMP_OFFSET
+                val blueOffset = BLUE_FROM_U[cb] + CLAMP_OFFSET
+                val x = chroma shl 1
+                out[rowStart + x] = argb(yRow[x * yStep], redOffset, greenOffset, blueOffset)
+                if (x + 1 < width) {
+                    out[rowStart + x + 1] = argb(yRow[(x + 1) * yStep], redOffset, greenOffset, blueOffset)
+                }
+            }
+        }
+        return out
+    }
+
+    @Suppress("NOTHING_TO_INLINE")
+    private inline fun argb(luma: Byte, redOffset: Int, greenOffset: Int, blueOffset: Int): Int {
+        val value = luma.toInt() and 0xFF
+        return OPAQUE or (CLAMP[value + redOffset] shl 16) or (CLAMP[value + greenOffset] shl 8) or CLAMP[value + blueOffset]
+    }
+
+    /**
+     * Bytes útiles de una fila del plano; verifica strides y que el buffer alcance para
+     * [rows] filas (la última puede venir sin relleno)
+     */
+    private fun rowBytes(plane: Plane, pixels: Int, rows: Int, name: String): Int {
+        val bytes = (pixels - 1) * plane.pixelStride + 1
+        require(plane.pixelStride >= 1 && plane.rowStride >= bytes) {
+            "Strides inválidos en el plano $name: rowStride ${plane.rowStride}, pixelStride ${plane.pixelStride}"
+        }
+        val required = (rows - 1) * plane.rowStride + bytes
+        require(plane.buffer.remaining() >= required) {
+            "Plano $name de ${plane.buffer.remaining()} bytes, se esperaban al menos $required"
+        }
+        return bytes
+    }
+}
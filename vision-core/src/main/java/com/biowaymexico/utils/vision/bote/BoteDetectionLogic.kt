@@ -0,0 +1,477 @@
+package com.biowaymexico.utils.vision.bote
+
+import com.biowaymexico.utils.vision.VisionLog
+import com.ultralytics.yolo.DetectionBuffer
+
+private const val TAG_FILTER = "PlateFilter"
+
+/**
+ * Filtro inteligente para ignorar el plato blanco del bote
+ *
+ * Estrategia principal basada en CONFIANZA + FORMA + POSICIÓN:
+ * - El plato tiene confianza BAJA (26-50%) porque es un falso positivo
+ * - Los objetos reales tienen confianza ALTA (65%+)
+ * - El plato es CIRCULAR (aspect ratio cercano a 1)
+ * - El plato está CENTRADO en el ROI
+ * - Cuando hay 2+ plásticos, descartar el de mayor área (el plato)
+ * - Cuando hay 1 plástico con baja confianza, probablemente es el plato
+ */
+object BackgroundPlateFilter {
+
+    // Umbral de confianza - MÁS ESTRICTO para evitar falsos positivos
+    var minConfidenceThreshold = 0.60f  // Objetos reales tienen >60% confianza (antes 50%)
+
+    // Umbral de área - solo aplica junto con baja confianza
+    var suspiciousAreaThreshold = 0.25f  // Si área >25% Y confianza baja = plato (antes 35%)
+
+    // Umbral de aspect ratio para detectar objetos circulares (plato)
+    private const val CIRCULAR_ASPECT_MIN = 0.7f  // El plato tiene aspect ratio 0.7-1.3
+    private const val CIRCULAR_ASPECT_MAX = 1.3f
+
+    // Umbral de centrado - el plato está típicamente centrado
+    private const val CENTER_THRESHOLD = 0.35f  // Distancia máxima del centro (normalizada)
+
+    // Logs detallados por detección: cada línea arma strings en cada frame, solo en debug
+    // (la app lo activa con BuildConfig.DEBUG al instalar los adaptadores de Android)
+    var verboseLogging = false
+
+    // Clases de plástico por índice, calculadas una vez por lista de etiquetas
+    private var plasticLabels: List<String>? = null
+    private var plasticClasses = BooleanArray(0)
+
+    // Índices de trabajo reutilizados entre frames (el analizador llama desde un solo hilo)
+    private var plasticIndices = IntArray(16)
+    private var keptIndices = IntArray(16)
+
+    /**
+     * Filtra en el buffer las detecciones que parecen ser el plato de fondo.
+     * [detections] tiene cajas normalizadas al ROI; quedan primero los plásticos aceptados
+     * (de mayor a menor área) y después los demás materiales, en su orden original.
+     */
+    fun filterDetections(
+        detections: DetectionBuffer,
+        labels: List<String>,
+        roiWidth: Int,
+        roiHeight: Int
+    ) {
+        val roiArea = roiWidth.toFloat() * roiHeight.toFloat()
+        val count = detections.size()
+
+        VisionLog.d(TAG_FILTER, "═══════════════════════════════════════")
+        VisionLog.d(TAG_FILTER, "📊 Analizando $count detecciones")
+        VisionLog.d(TAG_FILTER, "   ROI: ${roiWidth}x${roiHeight} = ${roiArea.toInt()} px²")
+
+        if (count == 0) {
+            VisionLog.d(TAG_FILTER, "   (sin detecciones)")
+            VisionLog.d(TAG_FILTER, "═══════════════════════════════════════")
+            return
+        }
+
+        if (plasticIndices.size < count) {
+            plasticIndices = IntArray(count)
+            keptIndices = IntArray(count)
+        }
+
+        // Separar por tipo de material
+        var plastics = 0
+        for (i in 0 until count) {
+            if (isPlastic(detections.getClassIndex(i), labels)) plasticIndices[plastics++] = i
+        }
+
+        VisionLog.d(TAG_FILTER, "   🔹 Plásticos: $plastics")
+        VisionLog.d(TAG_FILTER, "   🔹 Otros materiales: ${count - plastics}")
+
+        // Procesar plásticos con la lógica especial
+        var kept = filterPlasticDetections(detections, labels, plastics, roiArea, roiWidth, roiHeight)
+
+        // Otros materiales pasan sin filtro (no son el plato)
+        for (i in 0 until count) {
+            if (isPlastic(detections.getClassIndex(i), labels)) continue
+            if (verboseLogging) {
+                val areaRatio = area(detections, i, roiWidth, roiHeight) / roiArea
+                VisionLog.d(TAG_FILTER, "─────────────────────────────────────")
+                VisionLog.d(TAG_FILTER, "🔍 ${labelOf(detections, i, labels)} (${(detections.getScore(i) * 100).toInt()}%)")
+                VisionLog.d(TAG_FILTER, "   📊 Área: ${(areaRatio * 100).toInt()}% del ROI")
+                VisionLog.d(TAG_FILTER, "   ✅ ACEPTADO: No es plástico")
+            }
+            keptIndices[kept++] = i
+        }
+
+        detections.select(keptIndices, kept)
+
+        VisionLog.d(TAG_FILTER, "═══════════════════════════════════════")
+        VisionLog.d(TAG_FILTER, "✅ Resultado: $kept/$count detecciones válidas")
+        VisionLog.d(TAG_FILTER, "═══════════════════════════════════════")
+    }
+
+    private fun isPlastic(classIndex: Int, labels: List<String>): Boolean {
+        if (labels !== plasticLabels) {
+            plasticClasses = BooleanArray(labels.size) { i ->
+                val name = labels[i].lowercase()
+                name.contains("plastic") || name.contains("plastico")
+            }
+            plasticLabels = labels
+        }
+        return classIndex < plasticClasses.size && plasticClasses[classIndex]
+    }
+
+    private fun labelOf(detections: DetectionBuffer, index: Int, labels: List<String>): String =
+        labels.getOrElse(detections.getClassIndex(index)) { "unknown" }
+
+    // Métricas en píxeles del ROI
+    private fun area(detections: DetectionBuffer, index: Int, roiWidth: Int, roiHeight: Int): Float =
+        detections.getWidth(index) * roiWidth * (detections.getHeight(index) * roiHeight)
+
+    // Aspect ratio (1.0 = cuadrado/circular)
+    private fun aspectRatio(detections: DetectionBuffer, index: Int, roiWidth: Int, roiHeight: Int): Float {
+        val width = detections.getWidth(index) * roiWidth
+        val height = detections.getHeight(index) * roiHeight
+        return if (height > 0) width / height else 1f
+    }
+
+    // Verificar si está centrado en el ROI
+    private fun isCentered(detections: DetectionBuffer, index: Int): Boolean {
+        val boxCenterX = (detections.getLeft(index) + detections.getRight(index)) / 2f
+        val boxCenterY = (detections.getTop(index) + detections.getBottom(index)) / 2f
+        val distFromCenter = kotlin.math.sqrt(
+            (boxCenterX - 0.5f) * (boxCenterX - 0.5f) +
+            (boxCenterY - 0.5f) * (boxCenterY - 0.5f)
+        )
+        return distFromCenter < CENTER_THRESHOLD
+    }
+
+    /**
+     * Decide qué plásticos (plasticIndices[0 until plastics]) se aceptan; los escribe en
+     * keptIndices y retorna cuántos son
+     */
+    private fun filterPlasticDetections(
+        detections: DetectionBuffer,
+        labels: List<String>,
+        plastics: Int,
+        roiArea: Float,
+        roiWidth: Int,
+        roiHeight: Int
+    ): Int {
+        if (plastics == 0) return 0
+        val indices = plasticIndices
+
+        // Ordenar por área (mayor primero); inserción estable, son pocas detecciones
+        for (k in 1 until plastics) {
+            val index = indices[k]
+            val area = area(detections, index, roiWidth, roiHeight)
+            var m = k - 1
+            while (m >= 0 && area(detections, indices[m], roiWidth, roiHeight) < area) {
+                indices[m + 1] = indices[m]
+                m--
+            }
+            indices[m + 1] = index
+        }
+
+        // Log de todas las detecciones de plástico
+        if (verboseLogging) {
+            for (k in 0 until plastics) {
+                val i = indices[k]
+                val aspectRatio = aspectRatio(detections, i, roiWidth, roiHeight)
+                VisionLog.d(TAG_FILTER, "─────────────────────────────────────")
+                VisionLog.d(TAG_FILTER, "🔍 ${labelOf(detections, i, labels)}")
+                VisionLog.d(TAG_FILTER, "   🎯 Confianza: ${(detections.getScore(i) * 100).toInt()}%")
+                VisionLog.d(TAG_FILTER, "   📐 Tamaño: ${(detections.getWidth(i) * roiWidth).toInt()}x${(detections.getHeight(i) * roiHeight).toInt()} px")
+                VisionLog.d(TAG_FILTER, "   📊 Área: ${(area(detections, i, roiWidth, roiHeight) / roiArea * 100).toInt()}% del ROI")
+                VisionLog.d(TAG_FILTER, "   ⭕ Aspect ratio: ${String.format("%.2f", aspectRatio)} (circular=${aspectRatio in CIRCULAR_ASPECT_MIN..CIRCULAR_ASPECT_MAX})")
+                VisionLog.d(TAG_FILTER, "   📍 Centrado: ${isCentered(detections, i)}")
+            }
+        }
+
+        return when {
+            // CASO 1: Solo hay 1 plástico detectado
+            plastics == 1 -> {
+                val single = indices[0]
+                val confidence = detections.getScore(single)
+                val areaRatio = area(detections, single, roiWidth, roiHeight) / roiArea
+                val isCircular = aspectRatio(detections, single, roiWidth, roiHeight) in CIRCULAR_ASPECT_MIN..CIRCULAR_ASPECT_MAX
+                val isCentered = isCentered(detections, single)
+
+                // CRITERIOS PARA FILTRAR COMO PLATO:
+                // 1. Confianza baja (<60%)
+                // 2. Área grande (>25% del ROI)
+                // 3. Forma circular (aspect ratio 0.7-1.3)
+                // 4. Centrado en ROI
+
+                val isLowConfidence = confidence < minConfidenceThreshold
+                val isLargeArea = areaRatio > suspiciousAreaThreshold
+
+                // Más estricto: si tiene CUALQUIERA de estas combinaciones, filtrar
+                val isProbablyPlate = when {
+                    // Caso clásico: baja confianza + área grande
+                    isLowConfidence && isLargeArea -> true
+
+                    // Caso adicional: área MUY grande (>40%) sin importar confianza + circular + centrado
+                    areaRatio > 0.40f && isCircular && isCentered -> true
+
+                    // Caso adicional: confianza muy baja (<45%) + circular + centrado
+                    confidence < 0.45f && isCircular && isCentered -> true
+
+                    else -> false
+                }
+
+                if (isProbablyPlate) {
+                    VisionLog.d(TAG_FILTER, "   🚫 FILTRADO COMO PLATO:")
+                    VisionLog.d(TAG_FILTER, "      - Confianza: ${(confidence * 100).toInt()}% (umbral: ${(minConfidenceThreshold * 100).toInt()}%)")
+                    VisionLog.d(TAG_FILTER, "      - Área: ${(areaRatio * 100).toInt()}% (umbral: ${(suspiciousAreaThreshold * 100).toInt()}%)")
+                    VisionLog.d(TAG_FILTER, "      - Circular: $isCircular, Centrado: $isCentered")
+                    VisionLog.d(TAG_FILTER, "   💡 Probablemente es el plato (falso positivo)")
+                    0
+                } else {
+                    VisionLog.d(TAG_FILTER, "   ✅ ACEPTADO: Confianza ${(confidence * 100).toInt()}% >= umbral ${(minConfidenceThreshold * 100).toInt()}%")
+                    keptIndices[0] = single
+                    1
+                }
+            }
+
+            // CASO 2: Hay 2+ plásticos - descartar el más grande (el plato)
+            else -> {
+                val largest = indices[0]
+
+                VisionLog.d(TAG_FILTER, "   🚫 FILTRADO: '${labelOf(detections, largest, labels)}' - Mayor área (${(area(detections, largest, roiWidth, roiHeight) / roiArea * 100).toInt()}%)")
+                VisionLog.d(TAG_FILTER, "   💡 El plástico más grande es probablemente el plato")
+
+                // Filtrar también los otros plásticos con baja confianza
+                var kept = 0
+                for (k in 1 until plastics) {
+                    val i = indices[k]
+                    val confidence = detections.getScore(i)
+                    if (confidence >= minConfidenceThreshold) {
+                        if (verboseLogging) {
+                            VisionLog.d(TAG_FILTER, "   ✅ ACEPTADO: '${labelOf(detections, i, labels)}' - Confianza ${(confidence * 100).toInt()}%, Área ${(area(detections, i, roiWidth, roiHeight) / roiArea * 100).toInt()}%")
+                        }
+                        keptIndices[kept++] = i
+                    } else if (verboseLogging) {
+                        VisionLog.d(TAG_FILTER, "   🚫 FILTRADO: '${labelOf(detections, i, labels)}' - Confianza baja ${(confidence * 100).toInt()}%")
+                    }
+                }
+                kept
+            }
+        }
+    }
+
+    /**
+     * Resetear el filtro (por compatibilidad)
+     */
+    fun reset() {
+        VisionLog.d(TAG_FILTER, "🔄 Filtro reseteado")
+    }
+
+    /**
+     * Log del estado actual de la configuración
+     */
+    fun logConfiguration() {
+        VisionLog.d(TAG_FILTER, "═══════════════════════════════════════")
+        VisionLog.d(TAG_FILTER, "⚙️ CONFIGURACIÓN DEL FILTRO (v2)")
+        VisionLog.d(TAG_FILTER, "   Estrategia: CONFIANZA + ÁREA + FORMA + POSICIÓN")
+        VisionLog.d(TAG_FILTER, "   Umbral confianza: ${(minConfidenceThreshold*100).toInt()}%")
+        VisionLog.d(TAG_FILTER, "   Umbral área sospechosa: ${(suspiciousAreaThreshold*100).toInt()}%")
+        VisionLog.d(TAG_FILTER, "   Aspect ratio circular: $CIRCULAR_ASPECT_MIN - $CIRCULAR_ASPECT_MAX")
+        VisionLog.d(TAG_FILTER, "   Umbral centrado: $CENTER_THRESHOLD")
+        VisionLog.d(TAG_FILTER, "   Filtros:")
+        VisionLog.d(TAG_FILTER, "      1. Confianza <${(minConfidenceThreshold*100).toInt()}% + área >${(suspiciousAreaThreshold*100).toInt()}%")
+        VisionLog.d(TAG_FILTER, "      2. Área >40% + circular + centrado")
+        VisionLog.d(TAG_FILTER, "      3. Confianza <45% + circular + centrado")
+        VisionLog.d(TAG_FILTER, "═══════════════════════════════════════")
+    }
+}
+
+/**
+ * Categorías de materiales para el bote BioWay
+ * Mapea las 12 clases YOLO a 4 categorías físicas del bote
+ */
+enum class MaterialCategory(
+    val displayName: String,
+    val emoji: String,
+    val giro: Int,
+    val inclinacion: Int,
+    val color: Long  // Color en formato Long para usar con Color()
+) {
+    PLASTICO(
+        displayName = "Plástico",
+        emoji = "♻️",
+        giro = -30,
+        inclinacion = -45,
+        color = 0xFF2196F3  // Azul
+    ),
+    PAPEL_CARTON(
+        displayName = "Papel/Cartón",
+        emoji = "📄",
+        giro = -30,
+        inclinacion = 45,
+        color = 0xFF4CAF50  // Verde
+    ),
+    ALUMINIO_METAL(
+        displayName = "Aluminio/Metal",
+        emoji = "🥫",
+        giro = 59,
+        inclinacion = -45,
+        color = 0xFF9C27B0  // Morado
+    ),
+    GENERAL(
+        displayName = "General",
+        emoji = "🗑️",
+        giro = 59,
+        inclinacion = 45,
+        color = 0xFFFF9800  // Naranja
+    );
+
+    companion object {
+        private const val TAG_CAT = "MaterialCategory"
+
+        /**
+         * Clasifica una detección YOLO en una de las 4 categorías
+         */
+        fun fromYoloClass(className: String): MaterialCategory {
+            val lowerName = className.lowercase()
+
+            return when {
+                // PLÁSTICO: todos los tipos de plástico
+                lowerName.contains("plastic") -> {
+                    VisionLog.d(TAG_CAT, "🔵 '$className' → PLÁSTICO")
+                    PLASTICO
+                }
+
+                // PAPEL/CARTÓN
+                lowerName == "paper" || lowerName == "cardboard" ||
+                lowerName.contains("papel") || lowerName.contains("carton") -> {
+                    VisionLog.d(TAG_CAT, "🟢 '$className' → PAPEL/CARTÓN")
+                    PAPEL_CARTON
+                }
+
+                // ALUMINIO/METAL (incluye vidrio para reciclables)
+                lowerName == "metal" || lowerName == "glass" ||
+                lowerName.contains("aluminio") || lowerName.contains("vidrio") -> {
+                    VisionLog.d(TAG_CAT, "🟣 '$className' → ALUMINIO/METAL")
+                    ALUMINIO_METAL
+                }
+
+                // GENERAL: biological, trash, y todo lo demás
+                else -> {
+                    VisionLog.d(TAG_CAT, "🟠 '$className' → GENERAL")
+                    GENERAL
+                }
+            }
+        }
+    }
+}
+
+/**
+ * Tracker de estabilidad de detección
+ * Verifica que el mismo material se detecte consistentemente durante N segundos
+ * Y que aparezca en al menos M frames consecutivos
+ */
+object DetectionStabilityTracker {
+    private const val TAG_STAB = "StabilityTracker"
+    private const val STABILITY_DURATION_MS = 3000L  // 3 segundos
+    private const val MIN_CONSECUTIVE_FRAMES = 5     // Mínimo 5 frames consecutivos
+
+    private var currentCategory: MaterialCategory? = null
+    private var categoryStartTime: Long = 0L
+    private var isStable = false
+    private var consecutiveFrames = 0               // Contador de frames consecutivos
+    private var lastDetectionTime: Long = 0L        // Para detectar gaps
+
+    /**
+     * Actualiza el tracker con la clase de la detección principal del frame
+     * @param className Clase YOLO de la mejor detección, o null si no hubo detección
+     * @param now Hora del frame en ms (el replay de grabaciones pasa la hora grabada)
+     * @return MaterialCategory si está estable por 2 segundos Y al menos 5 frames consecutivos
+     */
+    fun update(className: String?, now: Long = System.currentTimeMillis()): MaterialCategory? {
+
+        if (className == null) {
+            // Sin detección - resetear
+            if (currentCategory != null) {
+                VisionLog.d(TAG_STAB, "❌ Detección perdida, reseteando...")
+            }
+            reset()
+            return null
+        }
+
+        val newCategory = MaterialCategory.fromYoloClass(className)
+
+        // Verificar si hay un gap en detecciones (más de 500ms sin detección)
+        val hasGap = lastDetectionTime > 0 && (now - lastDetectionTime) > 500
+        lastDetectionTime = now
+
+        if (newCategory != currentCategory || hasGap) {
+            // Cambió la categoría o hubo un gap - reiniciar contador
+            if (hasGap && newCategory == currentCategory) {
+                VisionLog.d(TAG_STAB, "⚠️ Gap detectado (${now - lastDetectionTime}ms), reiniciando...")
+            } else {
+                VisionLog.d(TAG_STAB, "🔄 Cambio de categoría: ${currentCategory?.displayName ?: "ninguna"} → ${newCategory.displayName}")
+            }
+            currentCategory = newCategory
+            categoryStartTime = now
+            consecutiveFrames = 1
+            isStable = false
+            return null
+        }
+
+        // Misma categoría - incrementar contador de frames
+        consecutiveFrames++
+
+        // Verificar tiempo y frames consecutivos
+        val elapsedTime = now - categoryStartTime
+        val remainingTime = STABILITY_DURATION_MS - elapsedTime
+        val hasEnoughFrames = consecutiveFrames >= MIN_CONSECUTIVE_FRAMES
+
+        if (elapsedTime >= STABILITY_DURATION_MS && hasEnoughFrames && !isStable) {
+            // ¡Estable por 2 segundos Y suficientes frames!
+            isStable = true
+            VisionLog.d(TAG_STAB, "✅ ¡ESTABLE! ${newCategory.displayName}")
+            VisionLog.d(TAG_STAB, "   Tiempo: ${elapsedTime}ms, Frames: $consecutiveFrames")
+            return newCategory
+        }
+
+        if (!isStable && remainingTime > 0) {
+            VisionLog.d(TAG_STAB, "⏳ ${newCategory.displayName}: ${String.format("%.1f", remainingTime/1000.0)}s, frames: $consecutiveFrames/$MIN_CONSECUTIVE_FRAMES")
+        }
+
+        return null
+    }
+
+    /**
+     * Obtiene el progreso actual (0.0 a 1.0)
+     */
+    fun getProgress(now: Long = System.currentTimeMillis()): Float {
+        if (currentCategory == null) return 0f
+        val elapsed = now - categoryStartTime
+        return (elapsed.toFloat() / STABILITY_DURATION_MS).coerceIn(0f, 1f)
+    }
+
+    /**
+     * Obtiene la categoría actual siendo rastreada
+     */
+    fun getCurrentCategory(): MaterialCategory? = currentCategory
+
+    /**
+     * Verifica si ya se alcanzó estabilidad
+     */
+    fun isCurrentlyStable(): Boolean = isStable
+
+    /**
+     * Resetea el tracker (después de depositar o al perder detección)
+     */
+    fun reset() {
+        currentCategory = null
+        categoryStartTime = 0L
+        isStable = false
+        consecutiveFrames = 0
+        lastDetectionTime = 0L
+    }
+
+    /**
+     * Resetea solo el estado de estabilidad (para permitir nuevo depósito)
+     */
+    fun resetStability(now: Long = System.currentTimeMillis()) {
+        isStable = false
+        categoryStartTime = now
+        consecutiveFrames = 0
+    }
+}
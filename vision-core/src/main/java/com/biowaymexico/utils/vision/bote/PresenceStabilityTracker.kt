@@ -0,0 +1,70 @@
+package com.biowaymexico.utils.vision.bote
+
+import com.biowaymexico.utils.vision.VisionLog
+
+/**
+ * Tracker de presencia estable para disparar clasificación Gemini
+ * Espera 2 segundos de detección consistente antes de enviar a Gemini
+ * (para ahorrar tokens de API)
+ */
+object PresenceStabilityTracker {
+    private const val TAG_STAB = "PresenceStability"
+    private const val STABILITY_DURATION_MS = 3000L  // 3 segundos
+
+    private var presenceStartTime: Long = 0L
+    private var hasPresence = false
+    private var isStable = false
+
+    /**
+     * Actualiza el tracker con el estado de presencia actual
+     * @param now Hora del frame en ms
+     * @return true si la presencia es estable por 1.5 segundos
+     */
+    fun update(hasMaterial: Boolean, now: Long = System.currentTimeMillis()): Boolean {
+        if (!hasMaterial) {
+            if (hasPresence) {
+                VisionLog.d(TAG_STAB, "❌ Material perdido, reseteando...")
+            }
+            reset()
+            return false
+        }
+
+        if (!hasPresence) {
+            // Primera detección de material
+            VisionLog.d(TAG_STAB, "🔄 Material detectado, iniciando contador...")
+            hasPresence = true
+            presenceStartTime = now
+            isStable = false
+            return false
+        }
+
+        val elapsedTime = now - presenceStartTime
+        val remainingTime = STABILITY_DURATION_MS - elapsedTime
+
+        if (elapsedTime >= STABILITY_DURATION_MS && !isStable) {
+            isStable = true
+            VisionLog.d(TAG_STAB, "✅ ¡PRESENCIA ESTABLE! (${elapsedTime}ms)")
+            return true
+        }
+
+        if (!isStable && remainingTime > 0) {
+            VisionLog.d(TAG_STAB, "⏳ Esperando: ${remainingTime/1000.0}s restantes...")
+        }
+
+        return false
+    }
+
+    fun getProgress(now: Long = System.currentTimeMillis()): Float {
+        if (!hasPresence) return 0f
+        val elapsed = now - presenceStartTime
+        return (elapsed.toFloat() / STABILITY_DURATION_MS).coerceIn(0f, 1f)
+    }
+
+    fun isCurrentlyStable(): Boolean = isStable
+
+    fun reset() {
+        hasPresence = false
+        presenceStartTime = 0L
+        isStable = false
+    }
+}
@@ -0,0 +1,259 @@
+package com.biowaymexico.utils.vision.bote
+
+import com.biowaymexico.utils.vision.NormalizedRect
+import com.biowaymexico.utils.vision.VisionLog
+
+/**
+ * Estados del sistema de detección con zoom adaptativo
+ */
+enum class DetectionPhase {
+    SCANNING,           // Escaneando, buscando objetos (sin zoom)
+    LOCKING_ON,         // Objeto detectado, esperando 2s para hacer zoom
+    ZOOMED_CONFIRMING,  // Zoom aplicado, confirmando material por 3s
+    CONFIRMED,          // Material confirmado, enviando a ESP32
+    COOLDOWN            // Esperando antes de siguiente detección
+}
+
+/**
+ * Máquina de estados de la confirmación con zoom de ClasificadorBoteScreen, sin Compose
+ * ni Android:
+ * SCANNING -> LOCKING_ON (2 s del mismo material) -> ZOOMED_CONFIRMING (3 s de votos
+ * sobre la caja bloqueada con zoom) -> CONFIRMED -> COOLDOWN (3 s) -> SCANNING
+ *
+ * La pantalla llama a [update] con la mejor detección de cada resultado y ejecuta los
+ * efectos (vibración, depósito en el ESP32, puntos) según la [Transition] que retorna.
+ * CONFIRMED termina cuando la pantalla llama a [startCooldown] o a [reset].
+ * La hora se recibe como parámetro para repetir secuencias grabadas o de prueba.
+ * NO es thread-safe: la pantalla la usa solo desde el hilo principal.
+ */
+class ZoomConfirmationVoting {
+
+    companion object {
+        const val LOCK_CONFIDENCE = 0.4f        // Confianza mínima para bloquear un objeto
+        const val VOTE_CONFIDENCE = 0.5f        // Confianza mínima para votar con zoom
+        const val INITIAL_DETECTION_MS = 2000L  // 2 segundos de detección inicial antes de zoom
+        const val ZOOM_CONFIRMATION_MS = 3000L  // 3 segundos de confirmación con zoom
+        const val COOLDOWN_DURATION_MS = 3000L  // 3 segundos después de enviar a ESP32
+        const val LOCK_GRACE_MS = 500L          // Gracia sin detección durante LOCKING_ON
+        const val ZOOM_GRACE_MS = 1000L         // Gracia sin detección durante ZOOMED_CONFIRMING
+        const val MIN_WINNER_PERCENT = 60       // Porcentaje de votos para confirmar
+        const val BOX_SMOOTHING = 0.3f          // Promedio móvil de la caja bloqueada
+        const val ZOOM_PADDING = 0.2f           // Margen del zoom adaptativo alrededor de la caja
+
+        // Mismo tag que la pantalla para conservar los filtros de logcat
+        private const val TAG = "ClasificadorBote"
+    }
+
+    /**
+     * Mejor detección de un resultado: clase, confianza y caja normalizada (0-1)
+     */
+    data class Candidate(
+        val className: String,
+        val confidence: Float,
+        val box: NormalizedRect
+    )
+
+    /**
+     * Lo que cambió con el último [update]; la pantalla decide los efectos
+     */
+    enum class Transition {
+        NONE,
+        LOCKED,             // SCANNING -> LOCKING_ON
+        MATERIAL_CHANGED,   // LOCKING_ON con otro material: se bloquea el nuevo
+        ZOOMED,             // LOCKING_ON -> ZOOMED_CONFIRMING, [zoomRegion] nuevo
+        CONFIRMED,          // ZOOMED_CONFIRMING -> CONFIRMED, ver [confirmedMaterial]
+        REJECTED,           // Votación sin mayoría del material bloqueado -> SCANNING
+        LOST,               // Objeto perdido más que la gracia de la fase -> SCANNING
+        COOLDOWN_FINISHED   // COOLDOWN -> SCANNING
+    }
+
+    var phase = DetectionPhase.SCANNING
+        private set
+    var phaseStartTime = 0L
+        private set
+
+    // Objeto detectado durante LOCKING_ON (para comparar consistencia)
+    var lockedMaterial: String? = null
+        private set
+    var lockedBox: NormalizedRect? = null
+        private set
+    var lockedDetectionCount = 0
+        private set
+
+    // Zoom adaptativo: coordenadas normalizadas (0-1) relativas a la imagen analizada
+    var zoomRegion: NormalizedRect? = null
+        private set
+
+    // Votos por material; se reemplaza el mapa en cada voto (la UI compara por instancia)
+    var votes: Map<String, Int> = emptyMap()
+        private set
+
+    var confirmedMaterial: String? = null
+        private set
+    var confirmedConfidence = 0f
+        private set
+
+    var cooldownStartTime = 0L
+        private set
+
+    /**
+     * Avanza la máquina con la mejor detección del resultado actual ([top] null si no hubo)
+     */
+    fun update(top: Candidate?, now: Long): Transition = when (phase) {
+        DetectionPhase.SCANNING -> scan(top, now)
+        DetectionPhase.LOCKING_ON -> lockOn(top, now)
+        DetectionPhase.ZOOMED_CONFIRMING -> confirm(top, now)
+        // La transición a COOLDOWN la hace la pantalla al terminar el envío al ESP32
+        DetectionPhase.CONFIRMED -> Transition.NONE
+        DetectionPhase.COOLDOWN -> {
+            if (now - cooldownStartTime >= COOLDOWN_DURATION_MS) {
+                VisionLog.d(TAG, "✅ Cooldown terminado → SCANNING")
+                reset()
+                Transition.COOLDOWN_FINISHED
+            } else {
+                Transition.NONE
+            }
+        }
+    }
+
+    /**
+     * Pasa de CONFIRMED a COOLDOWN (depósito terminado o sin ESP32)
+     */
+    fun startCooldown(now: Long) {
+        phase = DetectionPhase.COOLDOWN
+        cooldownStartTime = now
+    }
+
+    /**
+     * Vuelve a SCANNING y olvida el objeto bloqueado, el zoom adaptativo y los votos
+     */
+    fun reset() {
+        phase = DetectionPhase.SCANNING
+        phaseStartTime = 0L
+        lockedMaterial = null
+        lockedBox = null
+        lockedDetectionCount = 0
+        zoomRegion = null
+        votes = emptyMap()
+        confirmedMaterial = null
+        confirmedConfidence = 0f
+    }
+
+    private fun scan(top: Candidate?, now: Long): Transition {
+        // Buscando objetos en el frame completo
+        if (top == null || top.confidence <= LOCK_CONFIDENCE) return Transition.NONE
+
+        // Objeto detectado, iniciar fase de bloqueo
+        phase = DetectionPhase.LOCKING_ON
+        phaseStartTime = now
+        lockedMaterial = top.className.lowercase()
+        lockedBox = top.box
+        lockedDetectionCount = 1
+
+        VisionLog.d(TAG, "═══════════════════════════════════════")
+        VisionLog.d(TAG, "🎯 OBJETO DETECTADO: ${top.className}")
+        VisionLog.d(TAG, "   Confianza: ${(top.confidence * 100).toInt()}%")
+        VisionLog.d(TAG, "   BBox: ${top.box}")
+        VisionLog.d(TAG, "   → Iniciando LOCKING_ON (2s)")
+        VisionLog.d(TAG, "═══════════════════════════════════════")
+        return Transition.LOCKED
+    }
+
+    private fun lockOn(top: Candidate?, now: Long): Transition {
+        // Esperando 2 segundos con detección consistente antes de zoom
+        val elapsed = now - phaseStartTime
+
+        if (top == null || top.confidence <= LOCK_CONFIDENCE) {
+            // Objeto perdido durante bloqueo
+            if (elapsed <= LOCK_GRACE_MS) return Transition.NONE
+            VisionLog.d(TAG, "⚠️ Objeto perdido durante LOCKING_ON → SCANNING")
+            reset()
+            return Transition.LOST
+        }
+
+        val detectedMaterial = top.className.lowercase()
+        if (detectedMaterial != lockedMaterial) {
+            // Material diferente detectado, reiniciar con nuevo material
+            VisionLog.d(TAG, "⚠️ Material cambió: $lockedMaterial → $detectedMaterial")
+            lockedMaterial = detectedMaterial
+            lockedBox = top.box
+            lockedDetectionCount = 1
+            phaseStartTime = now
+            return Transition.MATERIAL_CHANGED
+        }
+
+        lockedDetectionCount++
+        // Actualizar bounding box con promedio móvil para estabilidad
+        val box = lockedBox?.smoothedTowards(top.box, BOX_SMOOTHING) ?: return Transition.NONE
+        lockedBox = box
+
+        // ¿Pasaron 2 segundos?
+        if (elapsed < INITIAL_DETECTION_MS) return Transition.NONE
+
+        // Calcular región de zoom ADAPTATIVO y activar
+        zoomRegion = box.padded(ZOOM_PADDING)
+        phase = DetectionPhase.ZOOMED_CONFIRMING
+        phaseStartTime = now
+        votes = mapOf(detectedMaterial to 1)
+
+        VisionLog.d(TAG, "═══════════════════════════════════════")
+        VisionLog.d(TAG, "🔍 ZOOM ADAPTATIVO ACTIVADO")
+        VisionLog.d(TAG, "   Material: $lockedMaterial")
+        VisionLog.d(TAG, "   Detecciones consistentes: $lockedDetectionCount")
+        VisionLog.d(TAG, "   Zoom adaptativo: $zoomRegion")
+        VisionLog.d(TAG, "   → Iniciando ZOOMED_CONFIRMING (3s)")
+        VisionLog.d(TAG, "═══════════════════════════════════════")
+        return Transition.ZOOMED
+    }
+
+    private fun confirm(top: Candidate?, now: Long): Transition {
+        // Confirmando material con zoom durante 3 segundos
+        val elapsed = now - phaseStartTime
+
+        if (top == null || top.confidence <= VOTE_CONFIDENCE) {
+            // Objeto perdido durante confirmación con zoom
+            if (elapsed <= ZOOM_GRACE_MS) return Transition.NONE
+            VisionLog.d(TAG, "⚠️ Objeto perdido durante ZOOMED_CONFIRMING → SCANNING")
+            reset()
+            return Transition.LOST
+        }
+
+        // Agregar voto (uno por frame: la mayoría del 60% es sobre frames)
+        val detectedMaterial = top.className.lowercase()
+        val newVotes = votes.toMutableMap()
+        newVotes[detectedMaterial] = (newVotes[detectedMaterial] ?: 0) + 1
+        votes = newVotes
+
+        // ¿Pasaron 3 segundos?
+        if (elapsed < ZOOM_CONFIRMATION_MS) return Transition.NONE
+
+        // Verificar si el material dominante coincide con el bloqueado
+        val winner = votes.maxByOrNull { it.value }
+        val totalVotes = votes.values.sum()
+        val winnerPercentage = if (totalVotes > 0) (winner?.value ?: 0) * 100 / totalVotes else 0
+
+        VisionLog.d(TAG, "📊 Resultados de confirmación:")
+        votes.forEach { (material, count) ->
+            VisionLog.d(TAG, "   $material: $count votos")
+        }
+
+        if (winner == null || winner.key != lockedMaterial || winnerPercentage < MIN_WINNER_PERCENT) {
+            // Material no confirmado consistentemente, reiniciar
+            VisionLog.d(TAG, "⚠️ Material no confirmado (${winnerPercentage}% < $MIN_WINNER_PERCENT%), reseteando")
+            reset()
+            return Transition.REJECTED
+        }
+
+        // ¡Material confirmado!
+        confirmedMaterial = winner.key
+        confirmedConfidence = top.confidence
+        phase = DetectionPhase.CONFIRMED
+
+        VisionLog.d(TAG, "═══════════════════════════════════════")
+        VisionLog.d(TAG, "✅ MATERIAL CONFIRMADO CON ZOOM: ${winner.key}")
+        VisionLog.d(TAG, "   Votos: ${winner.value}/$totalVotes ($winnerPercentage%)")
+        VisionLog.d(TAG, "   Confianza final: ${(confirmedConfidence * 100).toInt()}%")
+        VisionLog.d(TAG, "═══════════════════════════════════════")
+        return Transition.CONFIRMED
+    }
+}
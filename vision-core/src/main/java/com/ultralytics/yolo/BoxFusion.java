@@ -0,0 +1,309 @@
+package com.ultralytics.yolo;
+
+import java.util.Arrays;
+
+/**
+ * BoxFusion - Weighted Box Fusion (WBF) over primitive arrays.
+ *
+ * Where NMS keeps the best box of each group of duplicates and drops the rest,
+ * WBF merges them: candidates are visited by descending score and joined to
+ * the fused box of the same class they overlap most (IoU above the threshold),
+ * or start a new one. A fused box is the score-weighted average of its members'
+ * coordinates; its score is the mean member score scaled by the fraction of
+ * passes that agree on it:
+ *
+ *   score = mean(member scores) * min(agreement, numPasses) / numPasses
+ *
+ * where agreement is the number of distinct passes (TTA views, scales...) that
+ * contributed a member, so a box seen by every pass keeps its confidence and a
+ * box seen by one pass out of many is discounted.
+ *
+ * Same storage model as {@link NmsEngine}: struct of arrays, per-class chains,
+ * buffers reused between calls. Passes are tracked in a 64-bit mask (pass ids
+ * wrap modulo 64). Not thread-safe: use one instance per caller.
+ */
+public final class BoxFusion {
+
+    // Candidates in insertion order
+    private float[] x1;
+    private float[] y1;
+    private float[] x2;
+    private float[] y2;
+    private float[] scores;
+    private int[] classes;
+    private int[] passes;
+    private int count;
+    private int maxClass;
+
+    private int[] order;
+    private long[] sortKeys;
+
+    // Fused boxes: running weighted sums and the current fused coordinates
+    private float[] sumWeight;
+    private float[] sumX1;
+    private float[] sumY1;
+    private float[] sumX2;
+    private float[] sumY2;
+    private float[] fusedX1;
+    private float[] fusedY1;
+    private float[] fusedX2;
+    private float[] fusedY2;
+    private float[] fusedScore;
+    private int[] fusedClass;
+    private int[] fusedMembers;
+    private long[] fusedPassMask;
+    private int[] fusedBest;
+    private int fusedCount;
+
+    // Per-class chains of fused boxes
+    private int[] classHead = new int[16];
+    private int[] nextSameClass;
+
+    // Result: fused box indices by descending fused score
+    private int[] resultOrder;
+    private int resultCount;
+
+    /**
+     * @param initialCapacity Expected number of candidates per call
+     */
+    public BoxFusion(int initialCapacity) {
+        allocate(Math.max(initialCapacity, 16));
+    }
+
+    private void allocate(int capacity) {
+        x1 = Arrays.copyOf(x1 == null ? new float[0] : x1, capacity);
+        y1 = Arrays.copyOf(y1 == null ? new float[0] : y1, capacity);
+        x2 = Arrays.copyOf(x2 == null ? new float[0] : x2, capacity);
+        y2 = Arrays.copyOf(y2 == null ? new float[0] : y2, capacity);
+        scores = Arrays.copyOf(scores == null ? new float[0] : scores, capacity);
+        classes = Arrays.copyOf(classes == null ? new int[0] : classes, capacity);
+        passes = Arrays.copyOf(passes == null ? new int[0] : passes, capacity);
+
+        order = new int[capacity];
+        sortKeys = new long[capacity];
+        sumWeight = new float[capacity];
+        sumX1 = new float[capacity];
+        sumY1 = new float[capacity];
+        sumX2 = new float[capacity];
+        sumY2 = new float[capacity];
+        fusedX1 = new float[capacity];
+        fusedY1 = new float[capacity];
+        fusedX2 = new float[capacity];
+        fusedY2 = new float[capacity];
+        fusedScore = new float[capacity];
+        fusedClass = new int[capacity];
+        fusedMembers = new int[capacity];
+        fusedPassMask = new long[capacity];
+        fusedBest = new int[capacity];
+        nextSameClass = new int[capacity];
+        resultOrder = new int[capacity];
+    }
+
+    /**
+     * Remove all candidates (buffers are kept).
+     */
+    public void clear() {
+        count = 0;
+        maxClass = 0;
+        fusedCount = 0;
+        resultCount = 0;
+    }
+
+    /**
+     * Add a candidate box in corner format.
+     *
+     * @param classIndex Non-negative class index
+     * @param pass       Id of the pass (view) that produced the box
+     * @return Insertion index of the candidate
+     */
+    public int add(float left, float top, float right, float bottom, float score, int classIndex, int pass) {
+        if (count == x1.length) {
+            allocate(count * 2);
+        }
+        if (classIndex > maxClass) {
+            maxClass = classIndex;
+            if (classIndex >= classHead.length) {
+                classHead = new int[Math.max(classIndex + 1, classHead.length * 2)];
+            }
+        }
+        x1[count] = left;
+        y1[count] = top;
+        x2[count] = right;
+        y2[count] = bottom;
+        scores[count] = score;
+        classes[count] = classIndex;
+        passes[count] = pass;
+        return count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Fuse the current candidates.
+     *
+     * @param iouThreshold  A candidate joins a fused box of its class when their IoU
+     *                      is strictly above this value
+     * @param numPasses     Passes that ran (denominator of the agreement factor);
+     *                      0 disables the agreement discount
+     * @param maxDetections Maximum number of fused boxes returned
+     * @return Number of fused boxes; read them with the getters, best first
+     */
+    public int run(float iouThreshold, int numPasses, int maxDetections) {
+        fusedCount = 0;
+        resultCount = 0;
+        final int n = count;
+        if (n == 0 || maxDetections <= 0) return 0;
+
+        sortByScore(scores, n, order);
+        Arrays.fill(classHead, 0, maxClass + 1, -1);
+
+        for (int r = 0; r < n; r++) {
+            final int i = order[r];
+            final int classIndex = classes[i];
+            final float bx1 = x1[i];
+            final float by1 = y1[i];
+            final float bx2 = x2[i];
+            final float by2 = y2[i];
+            final float areaB = (bx2 - bx1) * (by2 - by1);
+
+            // Fused box of the same class with the highest IoU above the threshold
+            int match = -1;
+            float bestIou = iouThreshold;
+            for (int f = classHead[classIndex]; f >= 0; f = nextSameClass[f]) {
+                float w = Math.min(bx2, fusedX2[f]) - Math.max(bx1, fusedX1[f]);
+                float h = Math.min(by2, fusedY2[f]) - Math.max(by1, fusedY1[f]);
+                if (w <= 0f || h <= 0f) continue;
+                float intersection = w * h;
+                float areaF = (fusedX2[f] - fusedX1[f]) * (fusedY2[f] - fusedY1[f]);
+                float union = areaB + areaF - intersection;
+                if (union > 0f) {
+                    float iou = intersection / union;
+                    if (iou > bestIou) {
+                        bestIou = iou;
+                        match = f;
+                    }
+                }
+            }
+
+            final float weight = scores[i];
+            if (match < 0) {
+                match = fusedCount++;
+                sumWeight[match] = 0f;
+                sumX1[match] = 0f;
+                sumY1[match] = 0f;
+                sumX2[match] = 0f;
+                sumY2[match] = 0f;
+                fusedClass[match] = classIndex;
+                fusedMembers[match] = 0;
+                fusedPassMask[match] = 0L;
+                fusedBest[match] = i;
+                nextSameClass[match] = classHead[classIndex];
+                classHead[classIndex] = match;
+            }
+
+            sumWeight[match] += weight;
+            sumX1[match] += bx1 * weight;
+            sumY1[match] += by1 * weight;
+            sumX2[match] += bx2 * weight;
+            sumY2[match] += by2 * weight;
+            fusedMembers[match]++;
+            fusedPassMask[match] |= 1L << passes[i];
+
+            // Score-weighted average; a zero-score member keeps the first box
+            final float total = sumWeight[match];
+            if (total > 0f) {
+                fusedX1[match] = sumX1[match] / total;
+                fusedY1[match] = sumY1[match] / total;
+                fusedX2[match] = sumX2[match] / total;
+                fusedY2[match] = sumY2[match] / total;
+            } else if (fusedMembers[match] == 1) {
+                fusedX1[match] = bx1;
+                fusedY1[match] = by1;
+                fusedX2[match] = bx2;
+                fusedY2[match] = by2;
+            }
+        }
+
+        for (int f = 0; f < fusedCount; f++) {
+            float mean = sumWeight[f] / fusedMembers[f];
+            if (numPasses > 0) {
+                int agreement = Long.bitCount(fusedPassMask[f]);
+                mean *= (float) Math.min(agreement, numPasses) / numPasses;
+            }
+            fusedScore[f] = mean;
+        }
+
+        sortByScore(fusedScore, fusedCount, resultOrder);
+        resultCount = Math.min(fusedCount, maxDetections);
+        return resultCount;
+    }
+
+    /**
+     * Fill target[0..n) with indices by descending score, ties in index order.
+     * Scores are non-negative, so their float bits sort as ints.
+     */
+    private void sortByScore(float[] values, int n, int[] target) {
+        final long[] keys = sortKeys;
+        for (int i = 0; i < n; i++) {
+            long bits = Float.floatToIntBits(Math.max(values[i], 0f));
+            keys[i] = (bits << 32) | (n - 1 - i);
+        }
+        Arrays.sort(keys, 0, n);
+        for (int r = 0; r < n; r++) {
+            target[r] = n - 1 - (int) keys[n - 1 - r];
+        }
+    }
+
+    public int getFusedCount() {
+        return resultCount;
+    }
+
+    // Fused box accessors by rank (0 = highest fused score)
+
+    public float getLeft(int rank) {
+        return fusedX1[resultOrder[rank]];
+    }
+
+    public float getTop(int rank) {
+        return fusedY1[resultOrder[rank]];
+    }
+
+    public float getRight(int rank) {
+        return fusedX2[resultOrder[rank]];
+    }
+
+    public float getBottom(int rank) {
+        return fusedY2[resultOrder[rank]];
+    }
+
+    public float getScore(int rank) {
+        return fusedScore[resultOrder[rank]];
+    }
+
+    public int getClassIndex(int rank) {
+        return fusedClass[resultOrder[rank]];
+    }
+
+    /**
+     * Number of distinct passes that contributed to the fused box.
+     */
+    public int getAgreement(int rank) {
+        return Long.bitCount(fusedPassMask[resultOrder[rank]]);
+    }
+
+    /**
+     * Number of candidate boxes merged into the fused box.
+     */
+    public int getMemberCount(int rank) {
+        return fusedMembers[resultOrder[rank]];
+    }
+
+    /**
+     * Insertion index of the highest-scoring member of the fused box.
+     */
+    public int getBestMember(int rank) {
+        return fusedBest[resultOrder[rank]];
+    }
+}
@@ -0,0 +1,454 @@
+package com.ultralytics.yolo;
+
+import java.util.Arrays;
+
+/**
+ * DetectionBuffer - Reusable struct-of-arrays list of detections.
+ *
+ * Holds boxes in corner format (usually normalized 0-1) with score, class,
+ * the id of the pass that produced them and how many passes agreed on them.
+ * Every post-processing stage works on the buffer in place: decoding appends,
+ * coordinate transforms rewrite a range, {@link #suppress} and {@link #fuse}
+ * replace the content with their survivors, and {@link #retain} / {@link #select}
+ * filter or reorder it. Detection objects are only built at the UI boundary.
+ *
+ * Arrays only grow (doubling) and are reused between frames, so a buffer that
+ * has seen its peak size does not allocate again. Not thread-safe: parallel
+ * passes each write to their own buffer.
+ */
+public final class DetectionBuffer {
+
+    /**
+     * Keep/drop decision for {@link #retain}.
+     */
+    public interface Filter {
+        boolean keep(DetectionBuffer buffer, int index);
+    }
+
+    private float[] left;
+    private float[] top;
+    private float[] right;
+    private float[] bottom;
+    private float[] scores;
+    private int[] classes;
+    private int[] passes;
+    private int[] agreement;
+    private int count;
+
+    // Second set of arrays for reordering (select / retainKept), swapped with the first
+    private float[] spareLeft;
+    private float[] spareTop;
+    private float[] spareRight;
+    private float[] spareBottom;
+    private float[] spareScores;
+    private int[] spareClasses;
+    private int[] sparePasses;
+    private int[] spareAgreement;
+
+    /**
+     * @param initialCapacity Expected number of detections
+     */
+    public DetectionBuffer(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        left = new float[capacity];
+        top = new float[capacity];
+        right = new float[capacity];
+        bottom = new float[capacity];
+        scores = new float[capacity];
+        classes = new int[capacity];
+        passes = new int[capacity];
+        agreement = new int[capacity];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= left.length) return;
+        int newCapacity = Math.max(capacity, left.length * 2);
+        left = Arrays.copyOf(left, newCapacity);
+        top = Arrays.copyOf(top, newCapacity);
+        right = Arrays.copyOf(right, newCapacity);
+        bottom = Arrays.copyOf(bottom, newCapacity);
+        scores = Arrays.copyOf(scores, newCapacity);
+        classes = Arrays.copyOf(classes, newCapacity);
+        passes = Arrays.copyOf(passes, newCapacity);
+        agreement = Arrays.copyOf(agreement, newCapacity);
+    }
+
+    private void ensureSpare() {
+        if (spareLeft != null && spareLeft.length >= left.length) return;
+        int capacity = left.length;
+        spareLeft = new float[capacity];
+        spareTop = new float[capacity];
+        spareRight = new float[capacity];
+        spareBottom = new float[capacity];
+        spareScores = new float[capacity];
+        spareClasses = new int[capacity];
+        sparePasses = new int[capacity];
+        spareAgreement = new int[capacity];
+    }
+
+    /**
+     * Remove all detections (arrays are kept).
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Append a detection from pass 0 with agreement 1.
+     *
+     * @return Index of the detection
+     */
+    public int add(float l, float t, float r, float b, float score, int classIndex) {
+        return add(l, t, r, b, score, classIndex, 0, 1);
+    }
+
+    /**
+     * Append a detection.
+     *
+     * @return Index of the detection
+     */
+    public int add(float l, float t, float r, float b, float score, int classIndex, int pass, int agreed) {
+        if (count == left.length) {
+            ensureCapacity(count + 1);
+        }
+        left[count] = l;
+        top[count] = t;
+        right[count] = r;
+        bottom[count] = b;
+        scores[count] = score;
+        classes[count] = classIndex;
+        passes[count] = pass;
+        agreement[count] = agreed;
+        return count++;
+    }
+
+    /**
+     * Append every detection of another buffer, tagged with the given pass id.
+     */
+    public void addAll(DetectionBuffer other, int pass) {
+        final int n = other.count;
+        ensureCapacity(count + n);
+        System.arraycopy(other.left, 0, left, count, n);
+        System.arraycopy(other.top, 0, top, count, n);
+        System.arraycopy(other.right, 0, right, count, n);
+        System.arraycopy(other.bottom, 0, bottom, count, n);
+        System.arraycopy(other.scores, 0, scores, count, n);
+        System.arraycopy(other.classes, 0, classes, count, n);
+        System.arraycopy(other.agreement, 0, agreement, count, n);
+        Arrays.fill(passes, count, count + n, pass);
+        count += n;
+    }
+
+    /**
+     * Append the first count candidates of a decoder whose boxes are already normalized
+     * (center, size in 0-1), converted to corners and clamped to 0-1.
+     */
+    public void addDecoded(YoloOutputDecoder decoder, int count) {
+        ensureCapacity(this.count + count);
+        for (int i = 0; i < count; i++) {
+            float cx = decoder.getCenterX(i);
+            float cy = decoder.getCenterY(i);
+            float w = decoder.getWidth(i);
+            float h = decoder.getHeight(i);
+            add(clampCorner(cx - w / 2), clampCorner(cy - h / 2), clampCorner(cx + w / 2), clampCorner(cy + h / 2),
+                    decoder.getScore(i), decoder.getClassIndex(i));
+        }
+    }
+
+    // Math.max/min rather than clamp01: -0 becomes +0, as the detector always produced
+    private static float clampCorner(float value) {
+        return Math.max(0f, Math.min(1f, value));
+    }
+
+    /**
+     * Replace the content with a copy of another buffer.
+     */
+    public void copyFrom(DetectionBuffer other) {
+        count = 0;
+        ensureCapacity(other.count);
+        System.arraycopy(other.left, 0, left, 0, other.count);
+        System.arraycopy(other.top, 0, top, 0, other.count);
+        System.arraycopy(other.right, 0, right, 0, other.count);
+        System.arraycopy(other.bottom, 0, bottom, 0, other.count);
+        System.arraycopy(other.scores, 0, scores, 0, other.count);
+        System.arraycopy(other.classes, 0, classes, 0, other.count);
+        System.arraycopy(other.passes, 0, passes, 0, other.count);
+        System.arraycopy(other.agreement, 0, agreement, 0, other.count);
+        count = other.count;
+    }
+
+    // ========================================================================
+    // In-place coordinate transforms over [from, size)
+    // ========================================================================
+
+    /**
+     * Map normalized boxes detected on a view rotated clockwise by rotationDegrees
+     * (0, 90, 180 or 270) back to the unrotated image, clamped to 0-1.
+     */
+    public void rotateBack(int from, int rotationDegrees) {
+        for (int i = from; i < count; i++) {
+            final float l = left[i];
+            final float t = top[i];
+            final float r = right[i];
+            final float b = bottom[i];
+            float nl;
+            float nt;
+            float nr;
+            float nb;
+            switch (rotationDegrees) {
+                case 90:
+                    // (x, y) -> (y, 1 - x)
+                    nl = t;
+                    nt = 1f - r;
+                    nr = b;
+                    nb = 1f - l;
+                    break;
+                case 180:
+                    // (x, y) -> (1 - x, 1 - y)
+                    nl = 1f - r;
+                    nt = 1f - b;
+                    nr = 1f - l;
+                    nb = 1f - t;
+                    break;
+                case 270:
+                    // (x, y) -> (1 - y, x)
+                    nl = 1f - b;
+                    nt = l;
+                    nr = 1f - t;
+                    nb = r;
+                    break;
+                default:
+                    nl = l;
+                    nt = t;
+                    nr = r;
+                    nb = b;
+                    break;
+            }
+            left[i] = clamp01(nl);
+            top[i] = clamp01(nt);
+            right[i] = clamp01(nr);
+            bottom[i] = clamp01(nb);
+        }
+    }
+
+    /**
+     * Map normalized boxes detected on the central 1/scale crop (enlarged back to
+     * full size) to the original image, clamped to 0-1.
+     */
+    public void mapFromCenterCrop(int from, float scale) {
+        final float cropFactor = 1.0f / scale;
+        final float offset = (1.0f - cropFactor) / 2.0f;
+        for (int i = from; i < count; i++) {
+            left[i] = clamp01(offset + left[i] * cropFactor);
+            top[i] = clamp01(offset + top[i] * cropFactor);
+            right[i] = clamp01(offset + right[i] * cropFactor);
+            bottom[i] = clamp01(offset + bottom[i] * cropFactor);
+        }
+    }
+
+    /**
+     * Map boxes normalized to a sub-region (tile, zoom crop, ROI) to the space
+     * the region is expressed in: x' = regionLeft + x * regionWidth.
+     */
+    public void mapToRegion(int from, float regionLeft, float regionTop, float regionWidth, float regionHeight) {
+        for (int i = from; i < count; i++) {
+            left[i] = regionLeft + left[i] * regionWidth;
+            top[i] = regionTop + top[i] * regionHeight;
+            right[i] = regionLeft + right[i] * regionWidth;
+            bottom[i] = regionTop + bottom[i] * regionHeight;
+        }
+    }
+
+    private static float clamp01(float value) {
+        return value < 0f ? 0f : (value > 1f ? 1f : value);
+    }
+
+    // ========================================================================
+    // Selection
+    // ========================================================================
+
+    /**
+     * Greedy NMS with {@link NmsEngine#run(float, boolean, float, int)}; the buffer
+     * keeps only the survivors, best score first.
+     *
+     * @return New size
+     */
+    public int suppress(NmsEngine nms, float iouThreshold, boolean classAware, float centerDistance, int maxDetections) {
+        nms.clear();
+        for (int i = 0; i < count; i++) {
+            nms.add(left[i], top[i], right[i], bottom[i], scores[i], classes[i]);
+        }
+        final int kept = nms.run(iouThreshold, classAware, centerDistance, maxDetections);
+
+        ensureSpare();
+        for (int k = 0; k < kept; k++) {
+            moveToSpare(nms.getKept(k), k);
+        }
+        swapSpare(kept);
+        return kept;
+    }
+
+    /**
+     * Weighted Box Fusion with {@link BoxFusion}, using each detection's pass id.
+     * The buffer is replaced by the fused boxes (best fused score first), tagged
+     * with their agreement and the pass of their best member.
+     *
+     * @return New size
+     */
+    public int fuse(BoxFusion fusion, float iouThreshold, int numPasses, int maxDetections) {
+        fusion.clear();
+        for (int i = 0; i < count; i++) {
+            fusion.add(left[i], top[i], right[i], bottom[i], scores[i], classes[i], passes[i]);
+        }
+        final int fused = fusion.run(iouThreshold, numPasses, maxDetections);
+
+        ensureSpare();
+        for (int k = 0; k < fused; k++) {
+            spareLeft[k] = fusion.getLeft(k);
+            spareTop[k] = fusion.getTop(k);
+            spareRight[k] = fusion.getRight(k);
+            spareBottom[k] = fusion.getBottom(k);
+            spareScores[k] = fusion.getScore(k);
+            spareClasses[k] = fusion.getClassIndex(k);
+            sparePasses[k] = passes[fusion.getBestMember(k)];
+            spareAgreement[k] = fusion.getAgreement(k);
+        }
+        swapSpare(fused);
+        return fused;
+    }
+
+    /**
+     * Keep the detections accepted by the filter, in their current order.
+     *
+     * @return New size
+     */
+    public int retain(Filter filter) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (!filter.keep(this, i)) continue;
+            if (kept != i) {
+                left[kept] = left[i];
+                top[kept] = top[i];
+                right[kept] = right[i];
+                bottom[kept] = bottom[i];
+                scores[kept] = scores[i];
+                classes[kept] = classes[i];
+                passes[kept] = passes[i];
+                agreement[kept] = agreement[i];
+            }
+            kept++;
+        }
+        count = kept;
+        return kept;
+    }
+
+    /**
+     * Keep only indices[0..n), in that order (indices must be distinct).
+     */
+    public void select(int[] indices, int n) {
+        ensureSpare();
+        for (int k = 0; k < n; k++) {
+            moveToSpare(indices[k], k);
+        }
+        swapSpare(n);
+    }
+
+    private void moveToSpare(int from, int to) {
+        spareLeft[to] = left[from];
+        spareTop[to] = top[from];
+        spareRight[to] = right[from];
+        spareBottom[to] = bottom[from];
+        spareScores[to] = scores[from];
+        spareClasses[to] = classes[from];
+        sparePasses[to] = passes[from];
+        spareAgreement[to] = agreement[from];
+    }
+
+    private void swapSpare(int newCount) {
+        float[] f;
+        int[] n;
+        f = left; left = spareLeft; spareLeft = f;
+        f = top; top = spareTop; spareTop = f;
+        f = right; right = spareRight; spareRight = f;
+        f = bottom; bottom = spareBottom; spareBottom = f;
+        f = scores; scores = spareScores; spareScores = f;
+        n = classes; classes = spareClasses; spareClasses = n;
+        n = passes; passes = sparePasses; sparePasses = n;
+        n = agreement; agreement = spareAgreement; spareAgreement = n;
+        count = newCount;
+    }
+
+    // ========================================================================
+    // Queries
+    // ========================================================================
+
+    /**
+     * Index of the highest score (first one on ties), or -1 if empty.
+     */
+    public int bestIndex() {
+        int best = -1;
+        for (int i = 0; i < count; i++) {
+            if (best < 0 || scores[i] > scores[best]) best = i;
+        }
+        return best;
+    }
+
+    /**
+     * Highest score among detections of a different class, or 0 if none.
+     */
+    public float bestScoreExcludingClass(int classIndex) {
+        float best = 0f;
+        for (int i = 0; i < count; i++) {
+            if (classes[i] != classIndex && scores[i] > best) best = scores[i];
+        }
+        return best;
+    }
+
+    public float getLeft(int index) {
+        return left[index];
+    }
+
+    public float getTop(int index) {
+        return top[index];
+    }
+
+    public float getRight(int index) {
+        return right[index];
+    }
+
+    public float getBottom(int index) {
+        return bottom[index];
+    }
+
+    public float getWidth(int index) {
+        return right[index] - left[index];
+    }
+
+    public float getHeight(int index) {
+        return bottom[index] - top[index];
+    }
+
+    public float getScore(int index) {
+        return scores[index];
+    }
+
+    public int getClassIndex(int index) {
+        return classes[index];
+    }
+
+    public int getPass(int index) {
+        return passes[index];
+    }
+
+    public int getAgreement(int index) {
+        return agreement[index];
+    }
+}
@@ -0,0 +1,276 @@
+package com.ultralytics.yolo;
+
+import java.util.Arrays;
+
+/**
+ * NmsEngine - Greedy non-maximum suppression over primitive arrays.
+ *
+ * Candidates are stored as a struct of arrays (x1, y1, x2, y2, score, class)
+ * instead of a list of objects. {@link #run} sorts an index array by score
+ * (score bits and insertion index packed into a long[], so ties keep insertion
+ * order) and walks it once: a candidate is kept unless a box that was already
+ * kept suppresses it. Kept boxes live in their own packed arrays, so every
+ * test reads at most maxDetections contiguous entries, and the pass stops as
+ * soon as maxDetections boxes are kept.
+ *
+ * Supported rules:
+ *   - IoU strictly above a threshold, between boxes of the same class
+ *     (class-aware) or of any class. In class-aware mode the kept boxes of
+ *     each class are chained by index, so a candidate only visits its own
+ *     class instead of every kept box.
+ *   - Optional center distance below a limit (any class), only against kept
+ *     boxes with a strictly higher score. This is the TTA merge rule for the
+ *     same object seen with different labels.
+ *
+ * All buffers are reused between calls; {@link #add} only allocates when the
+ * capacity has to grow. Not thread-safe: use one instance per caller.
+ */
+public final class NmsEngine {
+
+    // Candidates in insertion order
+    private float[] x1;
+    private float[] y1;
+    private float[] x2;
+    private float[] y2;
+    private float[] scores;
+    private int[] classes;
+    private int count;
+    private int maxClass;
+
+    // Score order
+    private int[] order;
+    private long[] sortKeys;
+
+    // Kept boxes (offset when class-aware)
+    private float[] keptX1;
+    private float[] keptY1;
+    private float[] keptX2;
+    private float[] keptY2;
+    private float[] keptArea;
+    private float[] keptScore;
+    private float[] keptCenterX;
+    private float[] keptCenterY;
+    private int[] keptClass;
+
+    // Per-class chains of kept boxes: head by class, next kept index of the same class
+    private int[] classHead = new int[16];
+    private int[] keptNextSameClass;
+
+    // Result: insertion indices of kept candidates, best first
+    private int[] kept;
+    private int keptCount;
+
+    /**
+     * @param initialCapacity Expected number of candidates per call
+     */
+    public NmsEngine(int initialCapacity) {
+        allocate(Math.max(initialCapacity, 16));
+    }
+
+    private void allocate(int capacity) {
+        x1 = Arrays.copyOf(x1 == null ? new float[0] : x1, capacity);
+        y1 = Arrays.copyOf(y1 == null ? new float[0] : y1, capacity);
+        x2 = Arrays.copyOf(x2 == null ? new float[0] : x2, capacity);
+        y2 = Arrays.copyOf(y2 == null ? new float[0] : y2, capacity);
+        scores = Arrays.copyOf(scores == null ? new float[0] : scores, capacity);
+        classes = Arrays.copyOf(classes == null ? new int[0] : classes, capacity);
+
+        order = new int[capacity];
+        sortKeys = new long[capacity];
+        keptX1 = new float[capacity];
+        keptY1 = new float[capacity];
+        keptX2 = new float[capacity];
+        keptY2 = new float[capacity];
+        keptArea = new float[capacity];
+        keptScore = new float[capacity];
+        keptCenterX = new float[capacity];
+        keptCenterY = new float[capacity];
+        keptClass = new int[capacity];
+        keptNextSameClass = new int[capacity];
+        kept = new int[capacity];
+    }
+
+    /**
+     * Remove all candidates (buffers are kept).
+     */
+    public void clear() {
+        count = 0;
+        keptCount = 0;
+        maxClass = 0;
+    }
+
+    /**
+     * Add a candidate box in corner format.
+     *
+     * @param classIndex Non-negative class index
+     * @return Insertion index of the candidate
+     */
+    public int add(float left, float top, float right, float bottom, float score, int classIndex) {
+        if (count == x1.length) {
+            allocate(count * 2);
+        }
+        if (classIndex > maxClass) {
+            maxClass = classIndex;
+            if (classIndex >= classHead.length) {
+                classHead = new int[Math.max(classIndex + 1, classHead.length * 2)];
+            }
+        }
+        x1[count] = left;
+        y1[count] = top;
+        x2[count] = right;
+        y2[count] = bottom;
+        scores[count] = score;
+        classes[count] = classIndex;
+        return count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Class-aware IoU suppression (the standard per-class NMS).
+     *
+     * @return Number of kept candidates
+     */
+    public int run(float iouThreshold, int maxDetections) {
+        return run(iouThreshold, true, 0f, maxDetections);
+    }
+
+    /**
+     * Run greedy suppression over the current candidates.
+     *
+     * @param iouThreshold   Suppress when IoU is strictly above this value
+     * @param classAware     Only boxes of the same class suppress each other by IoU
+     * @param centerDistance Also suppress boxes of any class whose center is closer
+     *                       than this to a higher-scored kept box (0 disables the rule)
+     * @param maxDetections  Stop after keeping this many candidates
+     * @return Number of kept candidates; read them with {@link #getKept}
+     */
+    public int run(float iouThreshold, boolean classAware, float centerDistance, int maxDetections) {
+        keptCount = 0;
+        final int n = count;
+        if (n == 0 || maxDetections <= 0) return 0;
+
+        sortByScore(n);
+        final boolean centerRule = centerDistance > 0f;
+        final float centerDistanceSq = centerDistance * centerDistance;
+        // Without the cross-class center rule, a class-aware candidate only has to be
+        // tested against the kept boxes of its own class
+        final boolean sameClassOnly = classAware && !centerRule;
+        if (classAware) {
+            Arrays.fill(classHead, 0, maxClass + 1, -1);
+        }
+
+        // Greedy pass in score order: a candidate survives if no kept box suppresses it
+        for (int r = 0; r < n; r++) {
+            final int i = order[r];
+            final int classIndex = classes[i];
+            final float bx1 = x1[i];
+            final float by1 = y1[i];
+            final float bx2 = x2[i];
+            final float by2 = y2[i];
+            final float areaB = (bx2 - bx1) * (by2 - by1);
+            final float scoreB = scores[i];
+            final float centerBX = (bx1 + bx2) * 0.5f;
+            final float centerBY = (by1 + by2) * 0.5f;
+
+            boolean suppressedByKept = false;
+            int k = sameClassOnly ? classHead[classIndex] : 0;
+            while (sameClassOnly ? k >= 0 : k < keptCount) {
+                if (!classAware || keptClass[k] == classIndex) {
+                    float w = Math.min(bx2, keptX2[k]) - Math.max(bx1, keptX1[k]);
+                    float h = Math.min(by2, keptY2[k]) - Math.max(by1, keptY1[k]);
+                    if (w > 0f && h > 0f) {
+                        float intersection = w * h;
+                        float union = areaB + keptArea[k] - intersection;
+                        if (union > 0f && intersection / union > iouThreshold) {
+                            suppressedByKept = true;
+                            break;
+                        }
+                    }
+                }
+                if (centerRule && scoreB < keptScore[k]) {
+                    float dx = centerBX - keptCenterX[k];
+                    float dy = centerBY - keptCenterY[k];
+                    if (dx * dx + dy * dy < centerDistanceSq) {
+                        suppressedByKept = true;
+                        break;
+                    }
+                }
+                k = sameClassOnly ? keptNextSameClass[k] : k + 1;
+            }
+            if (suppressedByKept) continue;
+
+            keptX1[keptCount] = bx1;
+            keptY1[keptCount] = by1;
+            keptX2[keptCount] = bx2;
+            keptY2[keptCount] = by2;
+            keptArea[keptCount] = areaB;
+            keptScore[keptCount] = scoreB;
+            keptCenterX[keptCount] = centerBX;
+            keptCenterY[keptCount] = centerBY;
+            keptClass[keptCount] = classIndex;
+            if (classAware) {
+                keptNextSameClass[keptCount] = classHead[classIndex];
+                classHead[classIndex] = keptCount;
+            }
+            kept[keptCount++] = i;
+            if (keptCount >= maxDetections) break;
+        }
+        return keptCount;
+    }
+
+    /**
+     * Fill order[0..n) with insertion indices by descending score, ties in
+     * insertion order. Scores are non-negative, so their float bits sort as ints.
+     */
+    private void sortByScore(int n) {
+        final long[] keys = sortKeys;
+        for (int i = 0; i < n; i++) {
+            long bits = Float.floatToIntBits(Math.max(scores[i], 0f));
+            keys[i] = (bits << 32) | (n - 1 - i);
+        }
+        Arrays.sort(keys, 0, n);
+        for (int r = 0; r < n; r++) {
+            order[r] = n - 1 - (int) keys[n - 1 - r];
+        }
+    }
+
+    public int getKeptCount() {
+        return keptCount;
+    }
+
+    /**
+     * Insertion index of the i-th kept candidate (best score first).
+     */
+    public int getKept(int i) {
+        return kept[i];
+    }
+
+    // Candidate accessors by insertion index
+
+    public float getLeft(int index) {
+        return x1[index];
+    }
+
+    public float getTop(int index) {
+        return y1[index];
+    }
+
+    public float getRight(int index) {
+        return x2[index];
+    }
+
+    public float getBottom(int index) {
+        return y2[index];
+    }
+
+    public float getScore(int index) {
+        return scores[index];
+    }
+
+    public int getClassIndex(int index) {
+        return classes[index];
+    }
+}
@@ -0,0 +1,358 @@
+package com.ultralytics.yolo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * YoloOutputDecoder - Bulk decoder for YOLOv8 detection output tensors.
+ *
+ * Copies the whole output tensor into a reusable float[] with a single bulk
+ * transfer and finds the best class of every anchor with a class-major running
+ * max over contiguous rows (instead of one bounds-checked read per class per
+ * anchor). Only anchors that pass the confidence threshold are emitted.
+ *
+ * The tensor layout is read from the model output shape:
+ *   [1, 4 + numClasses, numAnchors]  (channel-major, default YOLOv8 export)
+ *   [1, numAnchors, 4 + numClasses]  (anchor-major, transposed exports)
+ *
+ * Decoded candidates are stored in primitive arrays owned by the decoder
+ * (cx, cy, w, h in model-normalized units, score and class index), so a
+ * decode call does not allocate once the buffers are sized.
+ *
+ * Fully quantized exports (uint8/int8 output) are decoded with
+ * {@link #decodeQuantized}: the threshold is moved to the quantized domain,
+ * the running max compares raw integers and only the surviving anchors are
+ * dequantized.
+ *
+ * Not thread-safe: use one instance per interpreter.
+ */
+public final class YoloOutputDecoder {
+
+    private static final int BOX_FEATURES = 4;
+
+    private final boolean channelMajor;
+    private final int numAnchors;
+    private final int numFeatures;
+    private final int numClasses;
+
+    // Bulk copy of the output tensor
+    private final float[] data;
+
+    // Running max per anchor
+    private final float[] bestScore;
+    private final int[] bestClass;
+
+    // Decoded candidates (cx, cy, w, h interleaved)
+    private final float[] boxes;
+    private final float[] scores;
+    private final int[] classes;
+    private int count;
+
+    // Quantized decode buffers, allocated on first use
+    private byte[] quantizedData;
+    private int[] bestQuantized;
+
+    /**
+     * Create a decoder for the given output tensor shape.
+     *
+     * @param outputShape Output tensor shape from interpreter.getOutputTensor(0).shape()
+     */
+    public YoloOutputDecoder(int[] outputShape) {
+        if (outputShape.length != 3 || outputShape[0] != 1) {
+            throw new IllegalArgumentException("Output tensor shape not supported. Expected [1, F, A] or [1, A, F]. Got "
+                + Arrays.toString(outputShape));
+        }
+        // YOLOv8 always has far more anchors than features
+        this.channelMajor = outputShape[1] < outputShape[2];
+        this.numFeatures = channelMajor ? outputShape[1] : outputShape[2];
+        this.numAnchors = channelMajor ? outputShape[2] : outputShape[1];
+        this.numClasses = numFeatures - BOX_FEATURES;
+        if (numClasses <= 0) {
+            throw new IllegalArgumentException("Output tensor has no class scores: " + Arrays.toString(outputShape));
+        }
+
+        this.data = new float[numFeatures * numAnchors];
+        this.bestScore = new float[numAnchors];
+        this.bestClass = new int[numAnchors];
+        this.boxes = new float[numAnchors * BOX_FEATURES];
+        this.scores = new float[numAnchors];
+        this.classes = new int[numAnchors];
+    }
+
+    /**
+     * Decode a ByteBuffer holding the raw float32 output tensor.
+     * Prefer {@link #decode(FloatBuffer, float)} with a cached view in hot paths.
+     *
+     * @param output Output buffer (position is not modified)
+     * @param threshold Minimum score (inclusive) for an anchor to be emitted
+     * @return Number of decoded candidates
+     */
+    public int decode(ByteBuffer output, float threshold) {
+        ByteBuffer view = output.duplicate();
+        view.order(ByteOrder.nativeOrder());
+        view.rewind();
+        return decode(view.asFloatBuffer(), threshold);
+    }
+
+    /**
+     * Decode a FloatBuffer view of the output tensor (position is restored).
+     */
+    public int decode(FloatBuffer output, float threshold) {
+        return decode(output, 0, threshold);
+    }
+
+    /**
+     * Decode one image of a batched output tensor [N, F, A] (position is restored).
+     *
+     * @param offset Float offset of the image inside the buffer (batchIndex * F * A)
+     */
+    public int decode(FloatBuffer output, int offset, float threshold) {
+        int position = output.position();
+        output.position(offset);
+        output.get(data, 0, data.length);
+        output.position(position);
+        return decodeData(threshold);
+    }
+
+    /**
+     * Number of floats of one image in the output tensor (F * A).
+     */
+    public int getElementsPerImage() {
+        return data.length;
+    }
+
+    /**
+     * Decode a nested output array as produced by Interpreter.run(input, float[1][F][A]).
+     */
+    public int decode(float[][] output, float threshold) {
+        int rows = output.length;
+        int cols = output[0].length;
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(output[r], 0, data, r * cols, cols);
+        }
+        return decodeData(threshold);
+    }
+
+    /**
+     * Decode one image of a quantized (uint8/int8) output tensor without converting it to float.
+     *
+     * @param output Raw output buffer (position is not modified)
+     * @param offset Element offset of the image inside the buffer (batchIndex * F * A)
+     * @param scale Output quantization scale: real = (q - zeroPoint) * scale
+     * @param zeroPoint Output quantization zero point
+     * @param signed true for int8, false for uint8
+     * @param threshold Minimum score (inclusive) for an anchor to be emitted
+     * @return Number of decoded candidates
+     */
+    public int decodeQuantized(ByteBuffer output, int offset, float scale, int zeroPoint,
+                               boolean signed, float threshold) {
+        if (quantizedData == null) {
+            quantizedData = new byte[data.length];
+            bestQuantized = new int[numAnchors];
+        }
+        ByteBuffer view = output.duplicate();
+        view.position(offset);
+        view.get(quantizedData, 0, quantizedData.length);
+
+        // uint8 is mapped to the int8 ordering by flipping the sign bit, so both types
+        // compare as signed bytes with an adjusted zero point
+        int flip = signed ? 0 : 0x80;
+        int zero = signed ? zeroPoint : zeroPoint - 128;
+        int qThreshold = quantizeThreshold(threshold, scale, zero);
+
+        count = 0;
+        if (channelMajor) {
+            decodeQuantizedChannelMajor(flip, zero, scale, qThreshold);
+        } else {
+            decodeQuantizedAnchorMajor(flip, zero, scale, qThreshold);
+        }
+        return count;
+    }
+
+    /**
+     * Smallest quantized value whose dequantized score reaches the threshold.
+     * Returns 128 (above any int8) when no value can reach it.
+     */
+    static int quantizeThreshold(float threshold, float scale, int zero) {
+        if (scale <= 0f) return Byte.MAX_VALUE + 1;
+        double q = Math.ceil(threshold / (double) scale + zero);
+        if (q > Byte.MAX_VALUE) return Byte.MAX_VALUE + 1;
+        return (int) Math.max(q, Byte.MIN_VALUE);
+    }
+
+    private void decodeQuantizedChannelMajor(int flip, int zero, float scale, int qThreshold) {
+        final byte[] d = quantizedData;
+        final int anchors = numAnchors;
+
+        // Same class-major running max as the float path, on raw integers.
+        // Starting at the zero point mirrors the float path starting at 0
+        Arrays.fill(bestQuantized, zero);
+        Arrays.fill(bestClass, 0);
+        for (int c = 0; c < numClasses; c++) {
+            int rowStart = (BOX_FEATURES + c) * anchors;
+            for (int a = 0; a < anchors; a++) {
+                int q = (byte) (d[rowStart + a] ^ flip);
+                if (q > bestQuantized[a]) {
+                    bestQuantized[a] = q;
+                    bestClass[a] = c;
+                }
+            }
+        }
+
+        for (int a = 0; a < anchors; a++) {
+            int best = bestQuantized[a];
+            if (best < qThreshold) continue;
+            int base = count * BOX_FEATURES;
+            boxes[base] = ((byte) (d[a] ^ flip) - zero) * scale;
+            boxes[base + 1] = ((byte) (d[anchors + a] ^ flip) - zero) * scale;
+            boxes[base + 2] = ((byte) (d[2 * anchors + a] ^ flip) - zero) * scale;
+            boxes[base + 3] = ((byte) (d[3 * anchors + a] ^ flip) - zero) * scale;
+            scores[count] = (best - zero) * scale;
+            classes[count] = bestClass[a];
+            count++;
+        }
+    }
+
+    private void decodeQuantizedAnchorMajor(int flip, int zero, float scale, int qThreshold) {
+        final byte[] d = quantizedData;
+        final int features = numFeatures;
+
+        for (int a = 0; a < numAnchors; a++) {
+            int rowStart = a * features;
+            int best = zero;
+            int bestIdx = 0;
+            for (int c = 0; c < numClasses; c++) {
+                int q = (byte) (d[rowStart + BOX_FEATURES + c] ^ flip);
+                if (q > best) {
+                    best = q;
+                    bestIdx = c;
+                }
+            }
+            if (best < qThreshold) continue;
+            int base = count * BOX_FEATURES;
+            boxes[base] = ((byte) (d[rowStart] ^ flip) - zero) * scale;
+            boxes[base + 1] = ((byte) (d[rowStart + 1] ^ flip) - zero) * scale;
+            boxes[base + 2] = ((byte) (d[rowStart + 2] ^ flip) - zero) * scale;
+            boxes[base + 3] = ((byte) (d[rowStart + 3] ^ flip) - zero) * scale;
+            scores[count] = (best - zero) * scale;
+            classes[count] = bestIdx;
+            count++;
+        }
+    }
+
+    private int decodeData(float threshold) {
+        count = 0;
+        if (channelMajor) {
+            decodeChannelMajor(threshold);
+        } else {
+            decodeAnchorMajor(threshold);
+        }
+        return count;
+    }
+
+    private void decodeChannelMajor(float threshold) {
+        final float[] d = data;
+        final int anchors = numAnchors;
+
+        // Class-major running max: every pass reads one contiguous row
+        Arrays.fill(bestScore, 0f);
+        Arrays.fill(bestClass, 0);
+        for (int c = 0; c < numClasses; c++) {
+            int rowStart = (BOX_FEATURES + c) * anchors;
+            for (int a = 0; a < anchors; a++) {
+                float score = d[rowStart + a];
+                if (score > bestScore[a]) {
+                    bestScore[a] = score;
+                    bestClass[a] = c;
+                }
+            }
+        }
+
+        // Box coordinates are only read for anchors that survive the threshold
+        for (int a = 0; a < anchors; a++) {
+            float score = bestScore[a];
+            if (score < threshold) continue;
+            int base = count * BOX_FEATURES;
+            boxes[base] = d[a];
+            boxes[base + 1] = d[anchors + a];
+            boxes[base + 2] = d[2 * anchors + a];
+            boxes[base + 3] = d[3 * anchors + a];
+            scores[count] = score;
+            classes[count] = bestClass[a];
+            count++;
+        }
+    }
+
+    private void decodeAnchorMajor(float threshold) {
+        final float[] d = data;
+        final int features = numFeatures;
+
+        for (int a = 0; a < numAnchors; a++) {
+            int rowStart = a * features;
+            float best = 0f;
+            int bestIdx = 0;
+            for (int c = 0; c < numClasses; c++) {
+                float score = d[rowStart + BOX_FEATURES + c];
+                if (score > best) {
+                    best = score;
+                    bestIdx = c;
+                }
+            }
+            if (best < threshold) continue;
+            int base = count * BOX_FEATURES;
+            boxes[base] = d[rowStart];
+            boxes[base + 1] = d[rowStart + 1];
+            boxes[base + 2] = d[rowStart + 2];
+            boxes[base + 3] = d[rowStart + 3];
+            scores[count] = best;
+            classes[count] = bestIdx;
+            count++;
+        }
+    }
+
+    // ===== RESULTS =====
+
+    public int getCount() {
+        return count;
+    }
+
+    public float getCenterX(int i) {
+        return boxes[i * BOX_FEATURES];
+    }
+
+    public float getCenterY(int i) {
+        return boxes[i * BOX_FEATURES + 1];
+    }
+
+    public float getWidth(int i) {
+        return boxes[i * BOX_FEATURES + 2];
+    }
+
+    public float getHeight(int i) {
+        return boxes[i * BOX_FEATURES + 3];
+    }
+
+    public float getScore(int i) {
+        return scores[i];
+    }
+
+    public int getClassIndex(int i) {
+        return classes[i];
+    }
+
+    // ===== LAYOUT =====
+
+    public boolean isChannelMajor() {
+        return channelMajor;
+    }
+
+    public int getNumAnchors() {
+        return numAnchors;
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+}
@@ -0,0 +1,190 @@
+package com.biowaymexico.utils.vision
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Entrega de frames con una inferencia bloqueada a propósito: el último frame gana, cada
+ * frame vuelve con recycle exactamente una vez y los contadores lo reflejan; con etapas
+ * de duración fija, la preparación se solapa con la inferencia sin que crezca la latencia.
+ */
+class FramePipelineTest {
+
+    private val processed = Collections.synchronizedList(mutableListOf<Int>())
+    private val recycled = Collections.synchronizedList(mutableListOf<Int>())
+    private val started = CountDownLatch(1)
+    private val release = CountDownLatch(1)
+
+    private fun pipeline(minIntervalMs: Long = 0L) = FramePipeline<Int>(
+        "prueba",
+        minIntervalMs,
+        recycle = { recycled.add(it) },
+        process = {
+            started.countDown()
+            assertTrue(release.await(5, TimeUnit.SECONDS))
+            if (it < 0) throw IllegalStateException("frame $it")
+            processed.add(it)
+        }
+    )
+
+    private fun awaitProcessed(pipeline: FramePipeline<Int>, count: Long) {
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (pipeline.stats().let { it.processed + it.failed } < count || pipeline.stats().queueDepth > 0) {
+            assertTrue("Tiempo agotado: ${pipeline.stats()}", System.nanoTime() < deadline)
+            Thread.sleep(1)
+        }
+    }
+
+    private fun closeAndAwait(pipeline: FramePipeline<Int>) {
+        val stopped = CountDownLatch(1)
+        pipeline.close { stopped.countDown() }
+        assertTrue("Sin cerrar: ${pipeline.stats()}", stopped.await(5, TimeUnit.SECONDS))
+    }
+
+    @Test
+    fun latestFrameReplacesPendingWhileBusy() {
+        val pipeline = pipeline()
+        assertTrue(pipeline.offer { 1 })
+        assertTrue(started.await(5, TimeUnit.SECONDS))
+
+        // Con el frame 1 en inferencia solo espera el más reciente; el pendiente se
+        // descarta antes de preparar el nuevo (nunca hay más de dos frames vivos)
+        for (frame in 2..4) {
+            assertTrue(pipeline.offer {
+                assertEquals((2 until frame).toList(), recycled.toList())
+                frame
+            })
+        }
+        assertEquals(2, pipeline.stats().queueDepth)
+        assertEquals(listOf(2, 3), recycled.toList())
+
+        release.countDown()
+        awaitProcessed(pipeline, 2)
+        closeAndAwait(pipeline)
+
+        assertEquals(listOf(1, 4), processed.toList())
+        assertEquals(listOf(1, 2, 3, 4), recycled.sorted())
+        val stats = pipeline.stats()
+        assertEquals(4, stats.submitted)
+        assertEquals(2, stats.processed)
+        assertEquals(2, stats.dropped)
+        assertEquals(0, stats.queueDepth)
+    }
+
+    @Test
+    fun throttledFramesAreNotPrepared() {
+        val pipeline = pipeline(minIntervalMs = 60_000L)
+        release.countDown()
+        // Un frame que no se prepara (null) no cuenta como aceptado
+        assertFalse(pipeline.offer { null })
+        assertTrue(pipeline.offer { 1 })
+        var prepared = false
+        assertFalse(pipeline.offer { prepared = true; 2 })
+        assertFalse(prepared)
+
+        awaitProcessed(pipeline, 1)
+        closeAndAwait(pipeline)
+        assertEquals(1, pipeline.stats().throttled)
+        assertEquals(listOf(1), processed.toList())
+    }
+
+    @Test
+    fun preparationOverlapsInferenceWithoutGrowingLatency() {
+        val prepareMs = 20L
+        val processMs = 15L
+        val inferring = AtomicBoolean(false)
+        val overlapped = AtomicInteger()
+        val pipeline = FramePipeline<Int>("etapas", process = {
+            inferring.set(true)
+            Thread.sleep(processMs)
+            inferring.set(false)
+        })
+        // Cámara más rápida que ambas etapas: la etapa 1 no descansa entre frames
+        val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(600)
+        var frame = 0
+        while (System.nanoTime() < deadline) {
+            pipeline.offer {
+                Thread.sleep(prepareMs / 2)
+                if (inferring.get()) overlapped.incrementAndGet()
+                Thread.sleep(prepareMs / 2)
+                frame++
+            }
+        }
+        closeAndAwait(pipeline)
+
+        val stats = pipeline.stats()
+        // En serie cabrían 17 frames; solapadas, la etapa 1 marca el ritmo (30)
+        assertTrue("Sin solapamiento: $stats, $overlapped", overlapped.get() >= 15 && stats.processed >= 22)
+        assertTrue("$stats", stats.prepareMs >= prepareMs && stats.processMs >= processMs)
+        // Preparar + procesar, más a lo sumo una espera al frame en inferencia
+        assertTrue("Latencia creciente: $stats", stats.latencyMs < prepareMs + processMs * 2 + 10)
+    }
+
+    @Test
+    fun failedFramesAndCloseStillRecycle() {
+        val pipeline = pipeline()
+        assertTrue(pipeline.offer { -1 })
+        assertTrue(started.await(5, TimeUnit.SECONDS))
+        assertTrue(pipeline.offer { 2 })
+
+        // Al cerrar se descarta el pendiente sin esperar; el frame en curso termina en su
+        // hilo y después corre el cierre, también en ese hilo
+        val recycledAtStop = CountDownLatch(1)
+        var stopThread: Thread? = null
+        var recycledBeforeStop: List<Int>? = null
+        pipeline.close {
+            stopThread = Thread.currentThread()
+            recycledBeforeStop = recycled.sorted()
+            recycledAtStop.countDown()
+        }
+        assertEquals(listOf(2), recycled.toList())
+        assertFalse(recycledAtStop.await(50, TimeUnit.MILLISECONDS))
+        release.countDown()
+        assertTrue(recycledAtStop.await(5, TimeUnit.SECONDS))
+        assertEquals(listOf(-1, 2), recycledBeforeStop)
+        assertEquals("prueba", stopThread?.name)
+        assertFalse(pipeline.offer { 3 })
+
+        // Con el hilo ya terminado, el cierre corre en quien llama
+        var ranInline = false
+        pipeline.close { ranInline = true }
+        assertTrue(ranInline)
+
+        assertEquals(listOf(-1, 2), recycled.sorted())
+        assertEquals(1, pipeline.stats().failed)
+        assertEquals(0, pipeline.stats().processed)
+    }
+
+    @Test
+    fun exceptionsKeepTheWorkerRunningAndErrorsStopThePipeline() {
+        val pipeline = FramePipeline<Int>("errores", recycle = { recycled.add(it) }, process = {
+            if (it == -1) throw IllegalStateException("frame $it")
+            if (it == -2) throw AssertionError("frame $it")
+            processed.add(it)
+        })
+        // Una excepción cuenta como fallo y el hilo sigue con el frame siguiente
+        assertTrue(pipeline.offer { -1 })
+        awaitProcessed(pipeline, 1)
+        assertTrue(pipeline.offer { 2 })
+        awaitProcessed(pipeline, 2)
+
+        // Un Error cierra la pipeline sin dejar la etapa 2 marcada como ocupada
+        assertTrue(pipeline.offer { -2 })
+        awaitProcessed(pipeline, 3)
+        assertFalse(pipeline.offer { 3 })
+        // Lo que se libera al cerrar corre igual aunque el hilo haya muerto
+        closeAndAwait(pipeline)
+
+        assertEquals(listOf(2), processed.toList())
+        assertEquals(listOf(-2, -1, 2), recycled.sorted())
+        assertEquals(2, pipeline.stats().failed)
+        assertEquals(0, pipeline.stats().queueDepth)
+    }
+}
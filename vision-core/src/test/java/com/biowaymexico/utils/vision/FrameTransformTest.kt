@@ -0,0 +1,126 @@
+package com.biowaymexico.utils.vision
+
+import com.ultralytics.yolo.DetectionBuffer
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.math.abs
+
+/**
+ * La transformación compuesta contra la cadena de bitmaps que sustituye (rotar el frame,
+ * recortar, rotar el recorte), reproducida sobre arreglos ARGB sintéticos.
+ */
+class FrameTransformTest {
+
+    private val frameWidth = 12
+    private val frameHeight = 8
+    private val frame = IntArray(frameWidth * frameHeight) { i ->
+        val x = i % frameWidth
+        val y = i / frameWidth
+        (0xFF shl 24) or ((x * 20) shl 16) or ((y * 30) shl 8) or ((x * 7 + y * 11) % 256)
+    }
+
+    private class Image(val pixels: IntArray, val width: Int, val height: Int)
+
+    /** Rotación horaria exacta, como Bitmap.createBitmap con Matrix.postRotate */
+    private fun Image.rotated(degrees: Int): Image {
+        if (degrees == 0) return this
+        val swapped = degrees == 90 || degrees == 270
+        val outWidth = if (swapped) height else width
+        val outHeight = if (swapped) width else height
+        val out = IntArray(width * height)
+        for (y in 0 until height) {
+            for (x in 0 until width) {
+                val (ox, oy) = when (degrees) {
+                    90 -> Pair(height - 1 - y, x)
+                    180 -> Pair(width - 1 - x, height - 1 - y)
+                    else -> Pair(y, width - 1 - x)
+                }
+                out[oy * outWidth + ox] = pixels[y * width + x]
+            }
+        }
+        return Image(out, outWidth, outHeight)
+    }
+
+    private fun Image.cropped(x: Int, y: Int, cropWidth: Int, cropHeight: Int) =
+        Image(IntArray(cropWidth * cropHeight) { pixels[(y + it / cropWidth) * width + x + it % cropWidth] }, cropWidth, cropHeight)
+
+    @Test
+    fun copyMatchesRotateCropRotateChain() {
+        val region = NormalizedRect(0.25f, 0.1f, 0.75f, 0.6f)
+        for (sensor in intArrayOf(0, 90, 180, 270)) {
+            for (crop in intArrayOf(0, 90, 180, 270)) {
+                val upright = Image(frame, frameWidth, frameHeight).rotated(sensor)
+                val x = (region.left * upright.width).toInt()
+                val y = (region.top * upright.height).toInt()
+                val expected = upright
+                    .cropped(x, y, (region.width * upright.width).toInt(), (region.height * upright.height).toInt())
+                    .rotated(crop)
+
+                val transform = FrameTransform.of(frameWidth, frameHeight, sensor, region, crop)
+                assertEquals(expected.width, transform.width)
+                assertEquals(expected.height, transform.height)
+                val actual = transform.copyTo(frame, frameWidth, IntArray(transform.width * transform.height))
+                assertArrayEquals("sensor $sensor°, recorte $crop°", expected.pixels, actual)
+            }
+        }
+    }
+
+    @Test
+    fun fusedLetterboxMatchesLetterboxOfTransformedImage() {
+        val transform = FrameTransform.of(frameWidth, frameHeight, 90, NormalizedRect(0.1f, 0.2f, 0.9f, 0.8f), 270)
+        val logical = transform.copyTo(frame, frameWidth, IntArray(transform.width * transform.height))
+
+        val reference = LetterboxInputEngine(16)
+        reference.process(logical, 0, transform.width, transform.width, transform.height)
+        val fused = LetterboxInputEngine(16)
+        fused.process(frame, frameWidth, transform)
+
+        assertEquals(reference.geometry(), fused.geometry())
+        val expected = FloatArray(reference.floatView.capacity()).also { reference.floatView.rewind(); reference.floatView.get(it) }
+        val actual = FloatArray(fused.floatView.capacity()).also { fused.floatView.rewind(); fused.floatView.get(it) }
+        for (i in expected.indices) {
+            assertTrue("Canal $i: ${actual[i]} vs ${expected[i]}", abs(actual[i] - expected[i]) <= 1f / 255f + 1e-6f)
+        }
+    }
+
+    @Test
+    fun mapToFrameInvertsTheTransform() {
+        val region = NormalizedRect(0.25f, 0.25f, 0.75f, 1f)
+        val transform = FrameTransform.of(frameWidth, frameHeight, 90, region, 90)
+        // Upright: 8x12; recorte de 4x9 en (2, 3), rotado a 9x4
+        assertEquals(9, transform.width)
+        assertEquals(4, transform.height)
+
+        // El píxel lógico (1, 2) viene del píxel (x, y) del frame enderezado
+        val uprightX = 2 + 2
+        val uprightY = 3 + (9 - 1 - 1)
+        assertEquals(frame[(frameHeight - 1 - uprightX) * frameWidth + uprightY],
+            frame[transform.frameY(1f, 2f).toInt() * frameWidth + transform.frameX(1f, 2f).toInt()])
+
+        val boxes = DetectionBuffer(1)
+        boxes.add(1f / 9, 2f / 4, 2f / 9, 3f / 4, 0.9f, 0)
+        transform.mapToFrame(boxes, 0)
+        assertEquals(uprightX / 8f, boxes.getLeft(0), 1e-5f)
+        assertEquals(uprightY / 12f, boxes.getTop(0), 1e-5f)
+        assertEquals((uprightX + 1) / 8f, boxes.getRight(0), 1e-5f)
+        assertEquals((uprightY + 1) / 12f, boxes.getBottom(0), 1e-5f)
+    }
+
+    @Test
+    fun centerCropKeepsSizeAndMapsBoxesBack() {
+        val transform = FrameTransform.of(frameWidth, frameHeight).centerCrop(2f)
+        assertEquals(frameWidth, transform.width)
+        assertEquals(frameHeight, transform.height)
+        // El centro de la imagen ampliada sigue en el centro del frame
+        assertEquals((frameWidth - 1) / 2f, transform.frameX((frameWidth - 1) / 2f, 0f), 1e-4f)
+        assertEquals((frameHeight - 1) / 2f, transform.frameY(0f, (frameHeight - 1) / 2f), 1e-4f)
+
+        val boxes = DetectionBuffer(1)
+        boxes.add(0f, 0f, 1f, 1f, 0.9f, 0)
+        transform.mapToFrame(boxes, 0)
+        assertEquals(0.25f, boxes.getLeft(0), 1e-5f)
+        assertEquals(0.75f, boxes.getBottom(0), 1e-5f)
+    }
+}
@@ -0,0 +1,117 @@
+package com.biowaymexico.utils.vision
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+
+/**
+ * Cambio de versión con frames en vuelo: el modelo saliente se libera cuando termina su
+ * último frame, los frames preparados por la versión anterior se descartan sin contar
+ * para la prueba de la nueva, y una versión que falla se revierte a la anterior. La
+ * latencia se compara solo entre frames con el mismo trabajo (la misma cubeta).
+ */
+class HotSwapModelTest {
+
+    private class Model(val name: String) : AutoCloseable {
+        override fun close() = Unit
+    }
+
+    private class Lease(override val value: Model) : ModelLease<Model> {
+        var released = false
+
+        override fun close() {
+            released = true
+        }
+    }
+
+    private val verdicts = mutableListOf<Pair<Int, Boolean>>()
+
+    private fun models(initial: Lease) = HotSwapModel(initial, 0, trialFrames = 30).apply {
+        onVerdict = { version, accepted -> verdicts += version to accepted }
+    }
+
+    @Test
+    fun staleFramesAfterASwapAreSkippedWithoutFailingTheTrial() {
+        val stable = Lease(Model("v0"))
+        val candidate = Lease(Model("v1"))
+        val models = models(stable)
+        repeat(10) { models.use { it.name } }
+
+        // Swap con un frame de v0 en inferencia: termina con v0, que queda en espera
+        val inFlight = models.use { model ->
+            models.swap(candidate, 1)
+            model.name
+        }
+        assertEquals("v0", inFlight)
+        assertFalse(stable.released)
+
+        // Entradas que preparó v0 antes del swap (más de los errores que tolera la prueba)
+        repeat(5) {
+            val result = models.useIfCurrent(stable.value) { fail("frame de v0 procesado con ${it.name}") }
+            assertNull(result)
+        }
+        assertTrue(models.inTrial)
+
+        repeat(30) {
+            assertEquals("v1", models.useIfCurrent(candidate.value) { it.name })
+        }
+        assertEquals(listOf(1 to true), verdicts)
+        assertSame(candidate.value, models.current)
+        assertTrue(stable.released)
+        assertFalse(candidate.released)
+
+        models.close()
+        assertTrue(candidate.released)
+    }
+
+    @Test
+    fun failingVersionIsRolledBack() {
+        val stable = Lease(Model("v0"))
+        val candidate = Lease(Model("v1"))
+        val models = models(stable)
+        repeat(10) { models.use { it.name } }
+        models.swap(candidate, 1)
+
+        // 30 frames x 5% = 1 error tolerado; el segundo revierte
+        repeat(2) {
+            try {
+                models.use { throw IllegalStateException("falla ${it.name}") }
+            } catch (expected: IllegalStateException) {
+            }
+        }
+        assertEquals(listOf(1 to false), verdicts)
+        assertEquals(0, models.version)
+        assertFalse(models.inTrial)
+        assertTrue(candidate.released)
+        assertEquals("v0", models.use { it.name })
+    }
+
+    // Frame que tarda [ms] y declara como cubeta su número de pasadas
+    private fun HotSwapModel<Model>.frame(passes: Int, ms: Long) =
+        use(bucketOf = { it }) { Thread.sleep(ms); passes }
+
+    @Test
+    fun latencyIsComparedWithinTheSameWork() {
+        val stable = Lease(Model("v0"))
+        val models = models(stable)
+        // Antes: casi todo salidas tempranas de una pasada
+        repeat(20) { models.frame(1, 2) }
+        repeat(5) { models.frame(9, 12) }
+
+        // La nueva, igual de rápida por pasada, pero con frames más difíciles
+        models.swap(Lease(Model("v1")), 1)
+        repeat(5) { models.frame(1, 2) }
+        repeat(25) { models.frame(9, 12) }
+        assertEquals(listOf(1 to true), verdicts)
+
+        // Otra versión más lenta con el mismo trabajo se revierte
+        models.swap(Lease(Model("v2")), 2)
+        repeat(30) { models.frame(9, 24) }
+        assertEquals(listOf(1 to true, 2 to false), verdicts)
+        assertEquals(1, models.version)
+    }
+}
@@ -0,0 +1,115 @@
+package com.biowaymexico.utils.vision
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+
+/**
+ * Planos RGBA sintéticos con relleno por fila, píxeles intercalados y posición inicial
+ * distinta de cero, comparados contra el ARGB esperado píxel por píxel.
+ */
+class RgbaPlaneConverterTest {
+
+    private val width = 5
+    private val height = 3
+
+    /** Color distinto por píxel (y alfa no opaco) para detectar filas o canales cruzados */
+    private fun argb(x: Int, y: Int): Int =
+        ((0x80 + x) shl 24) or ((y * 40 + x) shl 16) or ((200 - x * 7) shl 8) or (y * 60 + 3)
+
+    private val expected = IntArray(width * height) { argb(it % width, it / width) }
+
+    /**
+     * Plano con [rowStride]/[pixelStride] sin relleno tras la última fila (como CameraX),
+     * con [leading] bytes basura antes del primer píxel; el relleno se llena con 0x7F
+     */
+    private fun plane(rowStride: Int, pixelStride: Int, leading: Int = 0): ByteBuffer {
+        val size = leading + RgbaPlaneConverter.requiredBytes(width, height, rowStride, pixelStride)
+        val bytes = ByteArray(size) { 0x7F }
+        for (y in 0 until height) {
+            for (x in 0 until width) {
+                val color = argb(x, y)
+                val index = leading + y * rowStride + x * pixelStride
+                bytes[index] = (color shr 16).toByte()
+                bytes[index + 1] = (color shr 8).toByte()
+                bytes[index + 2] = color.toByte()
+                bytes[index + 3] = (color ushr 24).toByte()
+            }
+        }
+        val direct = ByteBuffer.allocateDirect(size)
+        direct.put(bytes).flip()
+        return direct.apply { position(leading) }
+    }
+
+    private fun ByteBuffer.toArgbArray(): IntArray = IntArray(remaining() / 4) { i ->
+        val base = position() + i * 4
+        fun channel(offset: Int) = get(base + offset).toInt() and 0xFF
+        (channel(3) shl 24) or (channel(0) shl 16) or (channel(1) shl 8) or channel(2)
+    }
+
+    private fun assertConverts(plane: ByteBuffer, rowStride: Int, pixelStride: Int) {
+        val converter = RgbaPlaneConverter()
+        val position = plane.position()
+
+        val argb = converter.toArgb(plane, width, height, rowStride, pixelStride, IntArray(width * height))
+        assertArrayEquals(expected, argb)
+
+        val packed = converter.pack(plane, width, height, rowStride, pixelStride)
+        assertEquals(width * height * 4, packed.remaining())
+        assertArrayEquals(expected, packed.toArgbArray())
+
+        // El plano del llamador queda intacto
+        assertEquals(position, plane.position())
+    }
+
+    @Test
+    fun convertsPackedPlane() {
+        val rowStride = width * 4
+        assertTrue(RgbaPlaneConverter.isPacked(width, rowStride, 4))
+        assertConverts(plane(rowStride, 4), rowStride, 4)
+    }
+
+    @Test
+    fun skipsRowPaddingWithShortLastRow() {
+        // 20 bytes de píxeles + 12 de relleno por fila; la última fila sin relleno
+        val rowStride = 32
+        assertFalse(RgbaPlaneConverter.isPacked(width, rowStride, 4))
+        assertConverts(plane(rowStride, 4), rowStride, 4)
+    }
+
+    @Test
+    fun readsInterleavedPixelsFromPlaneOffset() {
+        assertConverts(plane(rowStride = 48, pixelStride = 8, leading = 7), 48, 8)
+    }
+
+    @Test
+    fun writesIntoStridedOutputAndReusesPackBuffer() {
+        val converter = RgbaPlaneConverter()
+        val plane = plane(rowStride = 24, pixelStride = 4)
+
+        // Mosaico dentro de un frame mayor: 2 enteros de margen y 8 por fila
+        val out = IntArray(2 + 8 * height) { -1 }
+        converter.toArgb(plane, width, height, 24, 4, out, offset = 2, outStride = 8)
+        for (y in 0 until height) {
+            for (x in 0 until width) assertEquals(argb(x, y), out[2 + y * 8 + x])
+            for (x in width until 8) {
+                if (2 + y * 8 + x < out.size) assertEquals(-1, out[2 + y * 8 + x])
+            }
+        }
+
+        val first = converter.pack(plane, width, height, 24, 4)
+        val second = converter.pack(plane, width, height, 24, 4)
+        assertSame(first, second)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun rejectsTruncatedPlane() {
+        val plane = plane(rowStride = 32, pixelStride = 4)
+        plane.limit(plane.limit() - 1)
+        RgbaPlaneConverter().pack(plane, width, height, 32, 4)
+    }
+}
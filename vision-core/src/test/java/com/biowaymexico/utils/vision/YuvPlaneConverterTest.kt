@@ -0,0 +1,108 @@
+package com.biowaymexico.utils.vision
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+import kotlin.math.abs
+import kotlin.math.roundToInt
+
+/**
+ * Frames YUV_420_888 sintéticos en los layouts que entrega CameraX (I420 planar y
+ * crominancia intercalada NV21), con relleno por fila y tamaño impar, contra la
+ * conversión BT.601 de rango completo calculada en float.
+ */
+class YuvPlaneConverterTest {
+
+    private val width = 7
+    private val height = 5
+    private val chromaWidth = (width + 1) / 2
+    private val chromaHeight = (height + 1) / 2
+
+    private fun luma(x: Int, y: Int) = (x * 37 + y * 23) % 256
+    private fun cb(x: Int, y: Int) = (x * 71 + y * 13 + 40) % 256
+    private fun cr(x: Int, y: Int) = (x * 19 + y * 89 + 200) % 256
+
+    private fun expected(x: Int, y: Int): Int {
+        val luma = luma(x, y).toFloat()
+        val u = cb(x / 2, y / 2) - 128f
+        val v = cr(x / 2, y / 2) - 128f
+        fun clamp(value: Float) = value.roundToInt().coerceIn(0, 255)
+        val red = clamp(luma + 1.402f * v)
+        val green = clamp(luma - 0.344136f * u - 0.714136f * v)
+        val blue = clamp(luma + 1.772f * u)
+        return (0xFF shl 24) or (red shl 16) or (green shl 8) or blue
+    }
+
+    /** Plano de [rows] filas con [rowStride]; la última sin relleno. Relleno = 0x55 */
+    private fun plane(
+        pixels: Int,
+        rows: Int,
+        rowStride: Int,
+        pixelStride: Int,
+        value: (Int, Int) -> Int
+    ): YuvPlaneConverter.Plane {
+        val size = (rows - 1) * rowStride + (pixels - 1) * pixelStride + 1
+        val buffer = ByteBuffer.allocateDirect(size)
+        for (i in 0 until size) buffer.put(i, 0x55)
+        for (y in 0 until rows) {
+            for (x in 0 until pixels) buffer.put(y * rowStride + x * pixelStride, value(x, y).toByte())
+        }
+        return YuvPlaneConverter.Plane(buffer, rowStride, pixelStride)
+    }
+
+    private fun assertMatches(out: IntArray, offset: Int = 0, outStride: Int = width) {
+        for (y in 0 until height) {
+            for (x in 0 until width) {
+                val actual = out[offset + y * outStride + x]
+                val target = expected(x, y)
+                for (shift in intArrayOf(24, 16, 8, 0)) {
+                    val difference = abs((actual ushr shift and 0xFF) - (target ushr shift and 0xFF))
+                    assertTrue("Píxel ($x, $y) canal $shift: ${actual.toUInt().toString(16)} vs ${target.toUInt().toString(16)}", difference <= 1)
+                }
+            }
+        }
+    }
+
+    @Test
+    fun convertsPlanarI420WithRowPadding() {
+        val y = plane(width, height, rowStride = 16, pixelStride = 1, ::luma)
+        val u = plane(chromaWidth, chromaHeight, rowStride = 8, pixelStride = 1, ::cb)
+        val v = plane(chromaWidth, chromaHeight, rowStride = 8, pixelStride = 1, ::cr)
+
+        assertMatches(YuvPlaneConverter().toArgb(y, u, v, width, height, IntArray(width * height)))
+    }
+
+    @Test
+    fun convertsInterleavedNv21Chroma() {
+        // V y U comparten un buffer intercalado (V primero), como NV21 en CameraX
+        val rowStride = 16
+        val interleaved = ByteBuffer.allocateDirect((chromaHeight - 1) * rowStride + chromaWidth * 2)
+        for (row in 0 until chromaHeight) {
+            for (x in 0 until chromaWidth) {
+                interleaved.put(row * rowStride + x * 2, cr(x, row).toByte())
+                interleaved.put(row * rowStride + x * 2 + 1, cb(x, row).toByte())
+            }
+        }
+        val v = YuvPlaneConverter.Plane(interleaved, rowStride, 2)
+        val u = YuvPlaneConverter.Plane(interleaved.duplicate().apply { position(1) }, rowStride, 2)
+        val y = plane(width, height, rowStride = 8, pixelStride = 1, ::luma)
+
+        val converter = YuvPlaneConverter()
+        assertMatches(converter.toArgb(y, u, v, width, height, IntArray(width * height)))
+
+        // Reutilizando el conversor, dentro de un arreglo mayor con desplazamiento y stride
+        val out = IntArray(3 + 10 * height)
+        converter.toArgb(y, u, v, width, height, out, offset = 3, outStride = 10)
+        assertMatches(out, offset = 3, outStride = 10)
+        assertEquals(0, out[0])
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun rejectsTruncatedChromaPlane() {
+        val y = plane(width, height, rowStride = 8, pixelStride = 1, ::luma)
+        val u = plane(chromaWidth, chromaHeight, rowStride = 4, pixelStride = 1, ::cb)
+        val v = plane(chromaWidth, chromaHeight - 1, rowStride = 4, pixelStride = 1, ::cr)
+        YuvPlaneConverter().toArgb(y, u, v, width, height, IntArray(width * height))
+    }
+}
@@ -0,0 +1,97 @@
+package com.biowaymexico.utils.vision.bote
+
+import com.biowaymexico.utils.vision.NormalizedRect
+import com.biowaymexico.utils.vision.bote.ZoomConfirmationVoting.Transition
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+/**
+ * Secuencias de la votación con zoom de ClasificadorBoteScreen con horas sintéticas:
+ * bloqueo, zoom, confirmación por mayoría, rechazo, pérdida del objeto y cooldown.
+ */
+class ZoomConfirmationVotingTest {
+
+    private val box = NormalizedRect(0.4f, 0.4f, 0.6f, 0.6f)
+
+    private fun candidate(className: String, confidence: Float = 0.8f) =
+        ZoomConfirmationVoting.Candidate(className, confidence, box)
+
+    /** Frames cada 100 ms del mismo material hasta activar el zoom; retorna la hora */
+    private fun lockAndZoom(voting: ZoomConfirmationVoting, className: String): Long {
+        assertEquals(Transition.LOCKED, voting.update(candidate(className), 0L))
+        var now = 0L
+        var transition: Transition
+        do {
+            now += 100
+            transition = voting.update(candidate(className), now)
+        } while (transition == Transition.NONE)
+        assertEquals(Transition.ZOOMED, transition)
+        assertEquals(ZoomConfirmationVoting.INITIAL_DETECTION_MS, now)
+        return now
+    }
+
+    @Test
+    fun confirmsLockedMaterialWithMajority() {
+        val voting = ZoomConfirmationVoting()
+        var now = lockAndZoom(voting, "Plastic")
+
+        assertEquals(DetectionPhase.ZOOMED_CONFIRMING, voting.phase)
+        assertEquals(box.padded(ZoomConfirmationVoting.ZOOM_PADDING), voting.zoomRegion)
+
+        // Un voto de otra clase no alcanza para quitar la mayoría
+        now += 100
+        assertEquals(Transition.NONE, voting.update(candidate("paper"), now))
+        var transition: Transition
+        do {
+            now += 100
+            transition = voting.update(candidate("plastic", confidence = 0.9f), now)
+        } while (transition == Transition.NONE)
+
+        assertEquals(Transition.CONFIRMED, transition)
+        assertEquals(DetectionPhase.CONFIRMED, voting.phase)
+        assertEquals("plastic", voting.confirmedMaterial)
+        assertEquals(0.9f, voting.confirmedConfidence, 0f)
+
+        // Sin depósito pendiente la máquina espera en CONFIRMED
+        assertEquals(Transition.NONE, voting.update(null, now + 10_000))
+
+        voting.startCooldown(now)
+        assertEquals(Transition.NONE, voting.update(null, now + ZoomConfirmationVoting.COOLDOWN_DURATION_MS - 1))
+        assertEquals(Transition.COOLDOWN_FINISHED, voting.update(null, now + ZoomConfirmationVoting.COOLDOWN_DURATION_MS))
+        assertEquals(DetectionPhase.SCANNING, voting.phase)
+        assertNull(voting.zoomRegion)
+    }
+
+    @Test
+    fun rejectsWhenAnotherMaterialWinsTheVote() {
+        val voting = ZoomConfirmationVoting()
+        var now = lockAndZoom(voting, "metal")
+
+        var transition: Transition
+        do {
+            now += 100
+            transition = voting.update(candidate("glass"), now)
+        } while (transition == Transition.NONE)
+
+        assertEquals(Transition.REJECTED, transition)
+        assertEquals(DetectionPhase.SCANNING, voting.phase)
+        assertNull(voting.confirmedMaterial)
+        assertEquals(emptyMap<String, Int>(), voting.votes)
+    }
+
+    @Test
+    fun relocksOnMaterialChangeAndResetsAfterGrace() {
+        val voting = ZoomConfirmationVoting()
+        assertEquals(Transition.LOCKED, voting.update(candidate("paper"), 0L))
+        assertEquals(Transition.MATERIAL_CHANGED, voting.update(candidate("cardboard"), 1500L))
+        assertEquals("cardboard", voting.lockedMaterial)
+        assertEquals(1500L, voting.phaseStartTime)
+
+        // Baja confianza cuenta como objeto perdido, con gracia de 500 ms
+        assertEquals(Transition.NONE, voting.update(candidate("cardboard", confidence = 0.3f), 2000L))
+        assertEquals(Transition.LOST, voting.update(null, 2001L))
+        assertEquals(DetectionPhase.SCANNING, voting.phase)
+        assertNull(voting.lockedMaterial)
+    }
+}
@@ -0,0 +1,100 @@
+package com.ultralytics.yolo
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Fusión de cajas de [BoxFusion] con candidatos escritos a mano: promedio ponderado por
+ * confianza, acuerdo entre pasadas y su descuento, separación por clase y por IoU, y
+ * orden y límite del resultado.
+ */
+class BoxFusionTest {
+
+    companion object {
+        private const val IOU_THRESHOLD = 0.3f
+        private const val MAX_DETECTIONS = 100
+        private const val EPSILON = 1e-5f
+    }
+
+    private val fusion = BoxFusion(16)
+
+    @Test
+    fun overlappingBoxesOfOnePassEachAreAveragedByScore() {
+        fusion.add(0.10f, 0.10f, 0.30f, 0.30f, 0.9f, 2, 0)
+        fusion.add(0.12f, 0.10f, 0.32f, 0.30f, 0.6f, 2, 1)
+        fusion.add(0.10f, 0.12f, 0.30f, 0.32f, 0.3f, 2, 2)
+
+        assertEquals(1, fusion.run(IOU_THRESHOLD, 3, MAX_DETECTIONS))
+        assertEquals(2, fusion.getClassIndex(0))
+        assertEquals(3, fusion.getAgreement(0))
+        assertEquals(3, fusion.getMemberCount(0))
+        assertEquals(0, fusion.getBestMember(0))
+        // Todas las pasadas coinciden: la confianza es la media, sin descuento
+        assertEquals(0.6f, fusion.getScore(0), EPSILON)
+        assertEquals((0.10f * 0.9f + 0.12f * 0.6f + 0.10f * 0.3f) / 1.8f, fusion.getLeft(0), EPSILON)
+        assertEquals((0.10f * 0.9f + 0.10f * 0.6f + 0.12f * 0.3f) / 1.8f, fusion.getTop(0), EPSILON)
+        assertEquals((0.30f * 0.9f + 0.32f * 0.6f + 0.30f * 0.3f) / 1.8f, fusion.getRight(0), EPSILON)
+        assertEquals((0.30f * 0.9f + 0.30f * 0.6f + 0.32f * 0.3f) / 1.8f, fusion.getBottom(0), EPSILON)
+    }
+
+    @Test
+    fun fewAgreeingPassesDiscountTheScore() {
+        fusion.add(0.10f, 0.10f, 0.30f, 0.30f, 0.8f, 1, 0)
+        fusion.add(0.11f, 0.10f, 0.31f, 0.30f, 0.6f, 1, 4)
+
+        assertEquals(1, fusion.run(IOU_THRESHOLD, 9, MAX_DETECTIONS))
+        assertEquals(2, fusion.getAgreement(0))
+        assertEquals(0.7f * 2 / 9, fusion.getScore(0), EPSILON)
+
+        // numPasses = 0 desactiva el descuento
+        assertEquals(1, fusion.run(IOU_THRESHOLD, 0, MAX_DETECTIONS))
+        assertEquals(0.7f, fusion.getScore(0), EPSILON)
+    }
+
+    @Test
+    fun duplicatesOfOnePassCountAsOneAgreeingPass() {
+        fusion.add(0.10f, 0.10f, 0.30f, 0.30f, 0.8f, 0, 3)
+        fusion.add(0.10f, 0.11f, 0.30f, 0.31f, 0.4f, 0, 3)
+
+        assertEquals(1, fusion.run(IOU_THRESHOLD, 2, MAX_DETECTIONS))
+        assertEquals(2, fusion.getMemberCount(0))
+        assertEquals(1, fusion.getAgreement(0))
+        assertEquals(0.6f / 2, fusion.getScore(0), EPSILON)
+    }
+
+    @Test
+    fun otherClassesAndSeparateObjectsAreNotFused() {
+        // Misma caja, otra clase; misma clase sin solapamiento suficiente
+        fusion.add(0.10f, 0.10f, 0.30f, 0.30f, 0.9f, 0, 0)
+        fusion.add(0.10f, 0.10f, 0.30f, 0.30f, 0.7f, 1, 0)
+        fusion.add(0.25f, 0.10f, 0.45f, 0.30f, 0.5f, 0, 1)
+
+        assertEquals(3, fusion.run(IOU_THRESHOLD, 0, MAX_DETECTIONS))
+        for (rank in 0 until 3) {
+            assertEquals(1, fusion.getMemberCount(rank))
+            assertEquals(rank, fusion.getBestMember(rank))
+        }
+        assertEquals(0.25f, fusion.getLeft(2), 0f)
+    }
+
+    @Test
+    fun resultsAreOrderedByFusedScoreAndCapped() {
+        // El candidato más confiable queda último: lo vio una sola de dos pasadas
+        fusion.add(0.60f, 0.60f, 0.80f, 0.80f, 0.9f, 0, 0)
+        fusion.add(0.10f, 0.10f, 0.30f, 0.30f, 0.7f, 1, 0)
+        fusion.add(0.10f, 0.10f, 0.30f, 0.30f, 0.7f, 1, 1)
+        fusion.add(0.40f, 0.10f, 0.50f, 0.20f, 0.5f, 2, 0)
+        fusion.add(0.40f, 0.10f, 0.50f, 0.20f, 0.5f, 2, 1)
+
+        assertEquals(2, fusion.run(IOU_THRESHOLD, 2, 2))
+        assertEquals(2, fusion.getFusedCount())
+        assertEquals(1, fusion.getClassIndex(0))
+        assertEquals(0.7f, fusion.getScore(0), EPSILON)
+        assertEquals(2, fusion.getClassIndex(1))
+
+        // clear() vacía los candidatos y el resultado anterior
+        fusion.clear()
+        assertEquals(0, fusion.size())
+        assertEquals(0, fusion.run(IOU_THRESHOLD, 2, MAX_DETECTIONS))
+    }
+}
@@ -0,0 +1,167 @@
+package com.ultralytics.yolo
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.math.sqrt
+import kotlin.random.Random
+
+/**
+ * [NmsEngine] contra la supresión anterior basada en listas de objetos (ordenar,
+ * `removeAt(0)` y `removeAll` con IoU) sobre 2400 candidatos sintéticos agrupados en
+ * objetos, como los que produce el TTA multi-escala sobre un plato con varios residuos.
+ * Ambas rutas deben conservar exactamente las mismas cajas, en el mismo orden, con la
+ * regla por clase, sin clases y con la regla de TTA (IoU por clase + distancia de
+ * centros), también con empates de confianza y con el límite de detecciones.
+ *
+ * Los tiempos se miden en :benchmarks (`NmsBenchmark`).
+ */
+class NmsEngineTest {
+
+    companion object {
+        private const val NUM_CANDIDATES = 2400
+        private const val NUM_OBJECTS = 40
+        private const val NUM_CLASSES = 12
+        private const val MAX_DETECTIONS = 100
+        private val SEEDS = 1..5
+    }
+
+    // Representación anterior: un objeto por candidato
+    private data class Candidate(
+        val index: Int,
+        val left: Float,
+        val top: Float,
+        val right: Float,
+        val bottom: Float,
+        val score: Float,
+        val classId: Int
+    )
+
+    /**
+     * Candidatos agrupados en objetos; con [coarseScores] las confianzas van en pasos de
+     * 0.05, así que hay muchos empates (se resuelven por orden de inserción)
+     */
+    private fun syntheticCandidates(seed: Int, coarseScores: Boolean = false): List<Candidate> {
+        val random = Random(seed)
+        return List(NUM_CANDIDATES) { i ->
+            // Varias vistas (rotación x escala) del mismo objeto caen cerca unas de otras
+            val obj = random.nextInt(NUM_OBJECTS)
+            val cx = (obj % 8) / 8f + 0.06f + random.nextFloat() * 0.02f
+            val cy = (obj / 8) / 5f + 0.10f + random.nextFloat() * 0.02f
+            val w = 0.05f + random.nextFloat() * 0.05f
+            val h = 0.05f + random.nextFloat() * 0.05f
+            val score = random.nextFloat().let { if (coarseScores) (it * 20).toInt() / 20f else it }
+            Candidate(i, cx - w / 2, cy - h / 2, cx + w / 2, cy + h / 2, score, random.nextInt(NUM_CLASSES))
+        }
+    }
+
+    private fun iou(a: Candidate, b: Candidate): Float {
+        val w = minOf(a.right, b.right) - maxOf(a.left, b.left)
+        val h = minOf(a.bottom, b.bottom) - maxOf(a.top, b.top)
+        if (w <= 0f || h <= 0f) return 0f
+        val intersection = w * h
+        val union = (a.right - a.left) * (a.bottom - a.top) + (b.right - b.left) * (b.bottom - b.top) - intersection
+        return if (union > 0f) intersection / union else 0f
+    }
+
+    // Ruta anterior de WasteDetector.applyNMS
+    private fun legacyNms(candidates: List<Candidate>, iouThreshold: Float, classAware: Boolean, maxDetections: Int): List<Int> {
+        val sorted = candidates.sortedByDescending { it.score }.toMutableList()
+        val result = mutableListOf<Candidate>()
+        while (sorted.isNotEmpty() && result.size < maxDetections) {
+            val best = sorted.removeAt(0)
+            result.add(best)
+            sorted.removeAll { other -> (!classAware || other.classId == best.classId) && iou(best, other) > iouThreshold }
+        }
+        return result.map { it.index }
+    }
+
+    // Ruta anterior de WasteClassifierYOLO.nonMaxSuppressionGlobal
+    private fun legacyGlobalNms(candidates: List<Candidate>, maxDetections: Int): List<Int> {
+        val selected = mutableListOf<Candidate>()
+        for (candidate in candidates.sortedByDescending { it.score }) {
+            val suppressed = selected.any { kept ->
+                val sameClassOverlap = candidate.classId == kept.classId && iou(candidate, kept) > 0.3f
+                val dx = (candidate.left + candidate.right) / 2 - (kept.left + kept.right) / 2
+                val dy = (candidate.top + candidate.bottom) / 2 - (kept.top + kept.bottom) / 2
+                sameClassOverlap || (sqrt(dx * dx + dy * dy) < 0.1f && candidate.score < kept.score)
+            }
+            if (!suppressed) {
+                selected.add(candidate)
+                if (selected.size >= maxDetections) break
+            }
+        }
+        return selected.map { it.index }
+    }
+
+    private val engine = NmsEngine(64)
+
+    private fun engineNms(
+        candidates: List<Candidate>,
+        iouThreshold: Float,
+        classAware: Boolean,
+        centerDistance: Float,
+        maxDetections: Int
+    ): List<Int> {
+        engine.clear()
+        for (c in candidates) engine.add(c.left, c.top, c.right, c.bottom, c.score, c.classId)
+        val kept = engine.run(iouThreshold, classAware, centerDistance, maxDetections)
+        assertEquals(kept, engine.keptCount)
+        return List(kept) { engine.getKept(it) }
+    }
+
+    private fun assertSameKept(name: String, expected: List<Int>, actual: List<Int>) {
+        assertTrue("$name: sin cajas conservadas", expected.isNotEmpty())
+        assertEquals(name, expected, actual)
+    }
+
+    @Test
+    fun perClassNmsKeepsTheLegacySet() {
+        for (seed in SEEDS) {
+            for (coarse in listOf(false, true)) {
+                val candidates = syntheticCandidates(seed, coarse)
+                assertSameKept(
+                    "semilla $seed, empates $coarse",
+                    legacyNms(candidates, 0.4f, true, MAX_DETECTIONS),
+                    engineNms(candidates, 0.4f, true, 0f, MAX_DETECTIONS)
+                )
+            }
+        }
+    }
+
+    @Test
+    fun classAgnosticNmsKeepsTheLegacySet() {
+        for (seed in SEEDS) {
+            val candidates = syntheticCandidates(seed)
+            assertSameKept(
+                "semilla $seed",
+                legacyNms(candidates, 0.4f, false, MAX_DETECTIONS),
+                engineNms(candidates, 0.4f, false, 0f, MAX_DETECTIONS)
+            )
+        }
+    }
+
+    @Test
+    fun ttaGlobalNmsKeepsTheLegacySet() {
+        for (seed in SEEDS) {
+            for (coarse in listOf(false, true)) {
+                val candidates = syntheticCandidates(seed, coarse)
+                assertSameKept(
+                    "semilla $seed, empates $coarse",
+                    legacyGlobalNms(candidates, MAX_DETECTIONS),
+                    engineNms(candidates, 0.3f, true, 0.1f, MAX_DETECTIONS)
+                )
+            }
+        }
+    }
+
+    @Test
+    fun stopsAtMaxDetections() {
+        val candidates = syntheticCandidates(42)
+        val expected = legacyNms(candidates, 0.4f, true, 10)
+        assertEquals(10, expected.size)
+        assertEquals(expected, engineNms(candidates, 0.4f, true, 0f, 10))
+        assertEquals(legacyGlobalNms(candidates, 10), engineNms(candidates, 0.3f, true, 0.1f, 10))
+        assertEquals(emptyList<Int>(), engineNms(candidates, 0.4f, true, 0f, 0))
+    }
+}
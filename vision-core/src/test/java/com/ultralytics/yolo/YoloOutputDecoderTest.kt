@@ -0,0 +1,143 @@
+package com.ultralytics.yolo
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import kotlin.random.Random
+
+/**
+ * [YoloOutputDecoder] contra la ruta anterior (un `ByteBuffer.getFloat` absoluto por clase
+ * y anchor) sobre tensores sintéticos [1, 16, 2100]: mismos candidatos, en el mismo orden,
+ * con la misma clase, confianza y caja. Cubre la salida float en ambos layouts y la
+ * salida cuantizada (UINT8 e INT8) contra el mismo tensor descuantizado.
+ *
+ * Los tiempos de ambas rutas se miden en :benchmarks (`OutputDecodeBenchmark`).
+ */
+class YoloOutputDecoderTest {
+
+    companion object {
+        private const val NUM_FEATURES = 16
+        private const val NUM_ANCHORS = 2100
+        private const val NUM_CLASSES = NUM_FEATURES - 4
+        private val THRESHOLDS = floatArrayOf(0.25f, 0.45f, 0.9f, 0.999f)
+        private const val QUANT_SCALE = 1f / 255f
+    }
+
+    private data class Candidate(
+        val cx: Float,
+        val cy: Float,
+        val w: Float,
+        val h: Float,
+        val score: Float,
+        val classIndex: Int
+    )
+
+    private fun channelMajor(values: FloatArray): ByteBuffer =
+        ByteBuffer.allocateDirect(4 * values.size).order(ByteOrder.nativeOrder()).apply {
+            asFloatBuffer().put(values)
+        }
+
+    private fun syntheticValues(seed: Int): FloatArray {
+        val random = Random(seed)
+        return FloatArray(NUM_FEATURES * NUM_ANCHORS) { i ->
+            if (i >= 4 * NUM_ANCHORS) random.nextFloat() else random.nextFloat() * 320f
+        }
+    }
+
+    // Ruta anterior de WasteDetector/WasteClassifierYOLO (solo layout [1, F, A])
+    private fun legacyDecode(buffer: ByteBuffer, threshold: Float): List<Candidate> {
+        val result = mutableListOf<Candidate>()
+        for (i in 0 until NUM_ANCHORS) {
+            var maxProb = 0f
+            var maxIdx = 0
+            for (c in 0 until NUM_CLASSES) {
+                val prob = buffer.getFloat((4 + c) * NUM_ANCHORS * 4 + i * 4)
+                if (prob > maxProb) {
+                    maxProb = prob
+                    maxIdx = c
+                }
+            }
+            if (maxProb >= threshold) {
+                result += Candidate(
+                    buffer.getFloat(i * 4),
+                    buffer.getFloat(NUM_ANCHORS * 4 + i * 4),
+                    buffer.getFloat(2 * NUM_ANCHORS * 4 + i * 4),
+                    buffer.getFloat(3 * NUM_ANCHORS * 4 + i * 4),
+                    maxProb,
+                    maxIdx
+                )
+            }
+        }
+        return result
+    }
+
+    private fun candidates(decoder: YoloOutputDecoder, count: Int): List<Candidate> = List(count) { i ->
+        Candidate(
+            decoder.getCenterX(i),
+            decoder.getCenterY(i),
+            decoder.getWidth(i),
+            decoder.getHeight(i),
+            decoder.getScore(i),
+            decoder.getClassIndex(i)
+        )
+    }
+
+    @Test
+    fun bulkDecodeMatchesLegacyDecode() {
+        val buffer = channelMajor(syntheticValues(42))
+        val floatView = buffer.asFloatBuffer()
+        val decoder = YoloOutputDecoder(intArrayOf(1, NUM_FEATURES, NUM_ANCHORS))
+
+        for (threshold in THRESHOLDS) {
+            val expected = legacyDecode(buffer, threshold)
+            assertEquals(expected, candidates(decoder, decoder.decode(floatView, threshold)))
+            assertEquals(expected, candidates(decoder, decoder.decode(buffer, threshold)))
+        }
+        assertTrue(decoder.decode(floatView, THRESHOLDS[0]) > 0)
+    }
+
+    @Test
+    fun anchorMajorLayoutMatchesLegacyDecode() {
+        val values = syntheticValues(11)
+        val transposed = FloatArray(values.size)
+        for (f in 0 until NUM_FEATURES) {
+            for (a in 0 until NUM_ANCHORS) transposed[a * NUM_FEATURES + f] = values[f * NUM_ANCHORS + a]
+        }
+        val decoder = YoloOutputDecoder(intArrayOf(1, NUM_ANCHORS, NUM_FEATURES))
+
+        for (threshold in THRESHOLDS) {
+            val count = decoder.decode(channelMajor(transposed).asFloatBuffer(), threshold)
+            assertEquals(legacyDecode(channelMajor(values), threshold), candidates(decoder, count))
+        }
+    }
+
+    @Test
+    fun quantizedDecodeMatchesLegacyDecodeOfDequantizedTensor() {
+        // UINT8 (zero point 0) e INT8 (zero point -128), ambos con la escala del export
+        for ((signed, zeroPoint) in listOf(false to 0, true to -128)) {
+            val random = Random(7)
+            val size = NUM_FEATURES * NUM_ANCHORS
+            val quantized = ByteBuffer.allocateDirect(size)
+            val dequantized = FloatArray(size)
+            for (i in 0 until size) {
+                val q = random.nextInt(256) + (if (signed) -128 else 0)
+                quantized.put(q.toByte())
+                dequantized[i] = (q - zeroPoint) * QUANT_SCALE
+            }
+            quantized.rewind()
+            val floatBuffer = channelMajor(dequantized)
+            val decoder = YoloOutputDecoder(intArrayOf(1, NUM_FEATURES, NUM_ANCHORS))
+
+            for (threshold in THRESHOLDS) {
+                val count = decoder.decodeQuantized(quantized, 0, QUANT_SCALE, zeroPoint, signed, threshold)
+                assertEquals(
+                    "signed=$signed, umbral $threshold",
+                    legacyDecode(floatBuffer, threshold),
+                    candidates(decoder, count)
+                )
+            }
+        }
+    }
+}